@@ -0,0 +1,90 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures tag collection and version resolution on generated repositories.
+ *
+ * Repositories are written to the directory given by the system property {@code gocd.jmh.repositories}
+ * (or {@code build/jmh-repositories}) and reused by later runs. Allocation rates are reported
+ * when the benchmarks are run with the {@code gc} profiler, which the build configures by default.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GitResolutionBenchmark {
+
+    static final String REPOSITORIES_PROPERTY = "gocd.jmh.repositories";
+
+    @Param({"1000", "100000", "1000000"})
+    public int commits;
+
+    @Param({"10", "10000", "100000"})
+    public int tags;
+
+    @Param({"LINEAR", "MERGE_HEAVY"})
+    public String topology;
+
+    @Param({"LIGHTWEIGHT", "ANNOTATED"})
+    public String tagType;
+
+    private Path workingDir;
+
+    private Repository repository;
+
+    @Setup(Level.Trial)
+    public void createRepository() throws Exception {
+        Path baseDirectory = Paths.get(System.getProperty(REPOSITORIES_PROPERTY, "build/jmh-repositories"));
+        workingDir = new SyntheticRepository(commits, tags,
+                                            SyntheticRepository.Topology.valueOf(topology),
+                                            SyntheticRepository.TagType.valueOf(tagType)).createIn(baseDirectory);
+        repository = new FileRepositoryBuilder().setWorkTree(workingDir.toFile())
+                                                .readEnvironment()
+                                                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void closeRepository() {
+        if (null != repository) {
+            repository.close();
+        }
+    }
+
+    @Benchmark
+    public Map<ObjectId, String> collectTags() throws Exception {
+        return new GitTagCollector(repository, GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, null).collectTags();
+    }
+
+    @Benchmark
+    public Object getLatestTag() throws Exception {
+        return new GitTagVersionHelper(null, workingDir).setMissingTagFallback("0.0").getLatestTag();
+    }
+
+    @Benchmark
+    public Object getLatestCommit() throws Exception {
+        return new GitTagVersionHelper(null, workingDir).setMissingTagFallback("0.0").getLatestCommit();
+    }
+}
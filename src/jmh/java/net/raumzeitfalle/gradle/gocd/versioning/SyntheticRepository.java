@@ -0,0 +1,185 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.PackInserter;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TagBuilder;
+import org.eclipse.jgit.lib.TreeFormatter;
+
+/**
+ * Generates deterministic Git repositories for benchmarks.
+ *
+ * All commits share the empty tree and have fixed authors and commit times, hence the same
+ * parameters always yield the same object ids. Objects are written into a single pack file and
+ * all references into a sorted packed-refs file, so that even repositories with millions of
+ * commits are generated within reasonable time. Generated repositories are reused when they exist.
+ */
+final class SyntheticRepository {
+
+    enum Topology {
+        /** Every commit has exactly one parent. */
+        LINEAR,
+        /** A side branch is forked and merged back every four commits. */
+        MERGE_HEAVY
+    }
+
+    enum TagType {
+        LIGHTWEIGHT,
+        ANNOTATED
+    }
+
+    private static final long FIRST_COMMIT_TIME = 1500000000L;
+
+    private static final String COMPLETE_MARKER = "synthetic-repository.complete";
+
+    private final int commitCount;
+    private final int tagCount;
+    private final Topology topology;
+    private final TagType tagType;
+
+    SyntheticRepository(int commitCount, int tagCount, Topology topology, TagType tagType) {
+        if (commitCount < 1) {
+            throw new IllegalArgumentException("At least one commit is required: " + commitCount);
+        }
+        this.commitCount = commitCount;
+        this.tagCount = Math.max(0, Math.min(tagCount, commitCount));
+        this.topology = topology;
+        this.tagType = tagType;
+    }
+
+    String getName() {
+        return String.format("%s-%s-%d-commits-%d-tags",
+                             topology.name().toLowerCase(), tagType.name().toLowerCase(), commitCount, tagCount);
+    }
+
+    /**
+     * Creates the repository below the given base directory unless it already exists.
+     *
+     * @param baseDirectory directory containing all generated repositories
+     * @return the working directory of the repository
+     * @throws Exception if the repository cannot be written
+     */
+    Path createIn(Path baseDirectory) throws Exception {
+        Path workingDir = baseDirectory.resolve(getName());
+        Path gitDir = workingDir.resolve(Constants.DOT_GIT);
+        if (Files.isRegularFile(gitDir.resolve(COMPLETE_MARKER))) {
+            return workingDir;
+        }
+        deleteRecursively(workingDir);
+        Files.createDirectories(workingDir);
+        Git.init().setDirectory(workingDir.toFile()).setBare(false).call().close();
+
+        try (Repository repository = new FileRepository(gitDir.toFile())) {
+            List<String> refLines = writeObjects((FileRepository) repository);
+            writePackedRefs(gitDir, refLines);
+        }
+        Files.write(gitDir.resolve("HEAD"), "ref: refs/heads/master\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(gitDir.resolve(COMPLETE_MARKER), new byte[0]);
+        return workingDir;
+    }
+
+    private List<String> writeObjects(FileRepository repository) throws IOException {
+        List<String> refLines = new ArrayList<>();
+        try (PackInserter inserter = repository.getObjectDatabase().newPackInserter()) {
+            inserter.checkExisting(false);
+            ObjectId emptyTree = inserter.insert(new TreeFormatter());
+
+            ObjectId[] commits = new ObjectId[commitCount];
+            ObjectId mainTip = null;
+            ObjectId sideTip = null;
+            for (int i = 0; i < commitCount; i++) {
+                CommitBuilder commit = new CommitBuilder();
+                commit.setTreeId(emptyTree);
+                PersonIdent ident = ident(FIRST_COMMIT_TIME + i * 60L);
+                commit.setAuthor(ident);
+                commit.setCommitter(ident);
+                commit.setMessage("commit " + i + "\n");
+
+                int step = i % 4;
+                if (Topology.MERGE_HEAVY == topology && step == 2 && null != mainTip) {
+                    /* side branch commit, forked from the main line */
+                    commit.setParentId(null == sideTip ? mainTip : sideTip);
+                    sideTip = inserter.insert(commit);
+                    commits[i] = sideTip;
+                    continue;
+                }
+                if (Topology.MERGE_HEAVY == topology && step == 3 && null != sideTip) {
+                    commit.setParentIds(mainTip, sideTip);
+                    sideTip = null;
+                } else if (null != mainTip) {
+                    commit.setParentId(mainTip);
+                }
+                mainTip = inserter.insert(commit);
+                commits[i] = mainTip;
+            }
+            refLines.add(mainTip.name() + " refs/heads/master");
+
+            for (int t = 0; t < tagCount; t++) {
+                /* oldest tag on the first commit, then evenly spread over the history */
+                int index = (int) ((long) t * commitCount / tagCount);
+                ObjectId tagged = commits[index];
+                String tagName = String.format("%d.%d.%d", t / 10000, (t / 100) % 100, t % 100);
+                if (TagType.ANNOTATED == tagType) {
+                    TagBuilder tag = new TagBuilder();
+                    tag.setObjectId(tagged, Constants.OBJ_COMMIT);
+                    tag.setTag(tagName);
+                    tag.setTagger(ident(FIRST_COMMIT_TIME + index * 60L));
+                    tag.setMessage("release " + tagName + "\n");
+                    ObjectId tagId = inserter.insert(tag);
+                    refLines.add(tagId.name() + " " + Constants.R_TAGS + tagName + "\n^" + tagged.name());
+                } else {
+                    refLines.add(tagged.name() + " " + Constants.R_TAGS + tagName);
+                }
+            }
+            inserter.flush();
+        }
+        return refLines;
+    }
+
+    private static void writePackedRefs(Path gitDir, List<String> refLines) throws IOException {
+        Collections.sort(refLines, (a, b) -> refName(a).compareTo(refName(b)));
+        StringBuilder packedRefs = new StringBuilder("# pack-refs with: peeled fully-peeled sorted \n");
+        for (String line : refLines) {
+            packedRefs.append(line).append('\n');
+        }
+        Files.write(gitDir.resolve("packed-refs"), packedRefs.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String refName(String refLine) {
+        int lineEnd = refLine.indexOf('\n');
+        return refLine.substring(Constants.OBJECT_ID_STRING_LENGTH + 1, lineEnd < 0 ? refLine.length() : lineEnd);
+    }
+
+    private static PersonIdent ident(long epochSeconds) {
+        return new PersonIdent("Benchmark", "benchmark@domain.xyz",
+                               new java.util.Date(epochSeconds * 1000L), TimeZone.getTimeZone("UTC"));
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        List<Path> paths = new ArrayList<>();
+        try (java.util.stream.Stream<Path> entries = Files.walk(directory)) {
+            entries.forEach(paths::add);
+        }
+        Collections.reverse(paths);
+        for (Path path : paths) {
+            Files.delete(path);
+        }
+    }
+}
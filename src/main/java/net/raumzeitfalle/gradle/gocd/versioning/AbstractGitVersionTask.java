@@ -0,0 +1,88 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.nio.file.Path;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Project;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+
+/**
+ * Base of the tasks resolving Git tag based versions outside of the project version, configured lazily from the
+ * {@code gocdVersion} extension so that they work with the configuration cache.
+ */
+public abstract class AbstractGitVersionTask extends DefaultTask {
+
+    protected AbstractGitVersionTask() {
+        this.setGroup("Versioning");
+    }
+
+    /**
+     * Connects the task to the shared {@link GitVersionService} and to the settings of the extension.
+     */
+    void configureFrom(Project project, GocdVersionPluginExtension extension,
+                       Provider<GitVersionService> gitVersionService) {
+        usesService(gitVersionService);
+        getGitVersionService().set(gitVersionService);
+        getWorkingDirectory().set(project.getProjectDir());
+        getSuitableTagRegex().set(project.provider(extension::getSuitableTagRegex));
+        getMissingTagVersionDefault().set(project.provider(extension::getMissingTagVersionDefault));
+        getAppendCommitCount().set(project.provider(extension::getAppendGitCommitCountToGitTagVersion));
+        getCommitCountMode().set(project.provider(extension::getCommitCountMode));
+        getMaxWalkDepth().set(project.provider(extension::getMaxWalkDepth));
+        getWalkTimeoutMillis().set(project.provider(extension::getWalkTimeoutMillis));
+        getTagPrefix().set(project.provider(extension::getTagPrefix));
+        getTagSelection().set(project.provider(extension::getTagSelection));
+    }
+
+    @Internal
+    public abstract Property<GitVersionService> getGitVersionService();
+
+    @Internal
+    public abstract DirectoryProperty getWorkingDirectory();
+
+    @Input
+    public abstract Property<String> getSuitableTagRegex();
+
+    @Input
+    @Optional
+    public abstract Property<String> getMissingTagVersionDefault();
+
+    @Input
+    public abstract Property<Boolean> getAppendCommitCount();
+
+    @Input
+    public abstract Property<CommitCountMode> getCommitCountMode();
+
+    @Input
+    public abstract Property<Integer> getMaxWalkDepth();
+
+    @Input
+    public abstract Property<Long> getWalkTimeoutMillis();
+
+    @Input
+    @Optional
+    public abstract Property<String> getTagPrefix();
+
+    @Input
+    public abstract Property<TagSelection> getTagSelection();
+
+    Path workingDir() {
+        return getWorkingDirectory().get().getAsFile().toPath();
+    }
+
+    /**
+     * @return options of the resolution, the commit count is never scoped to the project directory
+     */
+    ResolutionOptions resolutionOptions() {
+        return new ResolutionOptions(getCommitCountMode().get(),
+                                     new WalkBudget(getMaxWalkDepth().get(), getWalkTimeoutMillis().get()),
+                                     false,
+                                     getTagPrefix().getOrNull(),
+                                     getTagSelection().get());
+    }
+}
@@ -0,0 +1,121 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bloom filter hashes of a repository path and all its leading directories, as used by the
+ * changed-path filters of git's commit-graph.
+ *
+ * Git adds every changed path and all of its leading directories to the filter of a commit,
+ * hence a directory may only have been changed when all its prefixes may have been changed.
+ *
+ * @see <a href="https://git-scm.com/docs/commit-graph-format">commit-graph format</a>
+ */
+final class ChangedPathKey {
+
+    private static final int SEED_0 = 0x293ae76f;
+    private static final int SEED_1 = 0x7e646e2c;
+
+    private final String path;
+
+    private final List<int[]> hashes = new ArrayList<>();
+
+    private final boolean asciiOnly;
+
+    /**
+     * @param path repository relative path with forward slashes, e.g. {@code modules/payments}
+     */
+    ChangedPathKey(String path) {
+        this.path = normalize(path);
+        boolean ascii = true;
+        int end = this.path.length();
+        while (end > 0) {
+            byte[] bytes = this.path.substring(0, end).getBytes(StandardCharsets.UTF_8);
+            for (byte b : bytes) {
+                ascii &= b >= 0;
+            }
+            hashes.add(new int[] { murmur3(SEED_0, bytes), murmur3(SEED_1, bytes) });
+            end = this.path.lastIndexOf('/', end - 1);
+        }
+        this.asciiOnly = ascii;
+    }
+
+    static String normalize(String path) {
+        String normalized = path.replace('\\', '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    /**
+     * @return hash pairs of the path and its leading directories, longest path first
+     */
+    List<int[]> getHashes() {
+        return hashes;
+    }
+
+    /**
+     * Version 1 filters were written with a murmur3 implementation that sign-extended bytes
+     * above 0x7f, so these filters can only be used for ASCII paths.
+     */
+    boolean isSupportedBy(int hashVersion) {
+        return hashVersion == 2 || (hashVersion == 1 && asciiOnly);
+    }
+
+    /**
+     * 32 bit murmur3 hash, identical to {@code murmur3_seeded_v2} in git's bloom.c.
+     */
+    static int murmur3(int seed, byte[] data) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+        int hash = seed;
+        int blocks = data.length / 4;
+        for (int i = 0; i < blocks; i++) {
+            int k = (data[4 * i] & 0xFF)
+                    | (data[4 * i + 1] & 0xFF) << 8
+                    | (data[4 * i + 2] & 0xFF) << 16
+                    | (data[4 * i + 3] & 0xFF) << 24;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            hash ^= k;
+            hash = Integer.rotateLeft(hash, 13) * 5 + 0xe6546b64;
+        }
+        int tail = 4 * blocks;
+        int k1 = 0;
+        switch (data.length & 3) {
+            case 3:
+                k1 ^= (data[tail + 2] & 0xFF) << 16;
+                /* fall through */
+            case 2:
+                k1 ^= (data[tail + 1] & 0xFF) << 8;
+                /* fall through */
+            case 1:
+                k1 ^= data[tail] & 0xFF;
+                k1 *= c1;
+                k1 = Integer.rotateLeft(k1, 15);
+                k1 *= c2;
+                hash ^= k1;
+                break;
+            default:
+                break;
+        }
+        hash ^= data.length;
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
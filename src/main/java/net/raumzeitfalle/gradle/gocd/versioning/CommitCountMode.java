@@ -0,0 +1,18 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+/**
+ * Defines which commits are followed when searching the latest tag and counting the commits after it.
+ */
+public enum CommitCountMode {
+
+    /**
+     * All parents of a merge are followed, every commit of a merged branch counts (like {@code git log}).
+     */
+    ALL_PARENTS,
+
+    /**
+     * Only first parents are followed (like {@code git log --first-parent}). On a main branch which
+     * only receives merges, the commit count is the number of merges since the tag.
+     */
+    FIRST_PARENT
+}
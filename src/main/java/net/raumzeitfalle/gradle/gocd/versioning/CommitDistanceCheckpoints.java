@@ -0,0 +1,217 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.gradle.api.logging.Logger;
+
+/**
+ * Persists (commit id, distance) checkpoints of previous resolutions so that
+ * counting all commits of a repository without suitable tags only needs to walk the commits
+ * added since the last checkpoint.
+ *
+ * The distance stored with a checkpoint is the number of its ancestors (excluding itself),
+ * which is exactly what {@link GitTagVersionHelper} reports for repositories without tags.
+ */
+class CommitDistanceCheckpoints {
+
+    static final int MAX_CHECKPOINTS = 16;
+
+    private final Path checkpointFile;
+
+    private final Logger logger;
+
+    CommitDistanceCheckpoints(Path cacheDir, Path gitDir, Logger logger) {
+        Objects.requireNonNull(cacheDir, "cacheDir must not be null");
+        Objects.requireNonNull(gitDir, "gitDir must not be null");
+        this.checkpointFile = cacheDir.resolve("checkpoints-" + GitDirectoryReader.sha1Hex(gitDir.toString()) + ".txt");
+        this.logger = logger;
+    }
+
+    /**
+     * Counts all commits reachable from the given commit, including the commit itself.
+     * Checkpoints which are ancestors of the commit are used to limit the walk.
+     *
+     * @param repo repository to walk
+     * @param head start commit
+     * @return number of reachable commits
+     * @throws IOException if the repository cannot be read
+     */
+    int countReachableCommits(Repository repo, AnyObjectId head) throws IOException {
+        List<Checkpoint> checkpoints = load();
+        for (Checkpoint checkpoint : checkpoints) {
+            if (checkpoint.commitId.equals(head)) {
+                return checkpoint.distance + 1;
+            }
+        }
+
+        WalkResult probe = walk(repo, head, checkpoints);
+        if (probe.excluded == 0) {
+            return probe.count;
+        }
+        if (probe.reached.isEmpty()) {
+            return walk(repo, head, Collections.emptyList()).count;
+        }
+        if (probe.excluded == 1) {
+            return probe.count + probe.reached.get(0).distance + 1;
+        }
+
+        /*
+         * Only a single excluded history can be added to the walked commits without
+         * counting anything twice. When several checkpoints were excluded (e.g. both
+         * parents of a merge are covered or unrelated checkpoints share old history),
+         * the walk is repeated excluding only the reached checkpoint with the largest
+         * history.
+         */
+        Checkpoint best = probe.reached.get(0);
+        for (Checkpoint candidate : probe.reached) {
+            if (candidate.distance > best.distance) {
+                best = candidate;
+            }
+        }
+        WalkResult exact = walk(repo, head, Collections.singletonList(best));
+        return exact.count + best.distance + 1;
+    }
+
+    private WalkResult walk(Repository repo, AnyObjectId head, List<Checkpoint> excluded) throws IOException {
+        WalkResult result = new WalkResult();
+        try (RevWalk walk = new RevWalk(repo)) {
+            walk.setRetainBody(false);
+            List<Checkpoint> marked = new ArrayList<>();
+            for (Checkpoint checkpoint : excluded) {
+                try {
+                    walk.markUninteresting(walk.parseCommit(checkpoint.commitId));
+                    marked.add(checkpoint);
+                } catch (MissingObjectException notInRepository) {
+                    logDebug("GocdVersionPlugin: Ignoring checkpoint of unknown commit {}", checkpoint.commitId.getName());
+                }
+            }
+            result.excluded = marked.size();
+            walk.markStart(walk.parseCommit(head));
+            for (RevCommit commit : walk) {
+                result.count += 1;
+                for (RevCommit parent : commit.getParents()) {
+                    for (Checkpoint checkpoint : marked) {
+                        if (checkpoint.commitId.equals(parent) && !result.reached.contains(checkpoint)) {
+                            result.reached.add(checkpoint);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    List<Checkpoint> load() {
+        if (!Files.isRegularFile(checkpointFile)) {
+            return Collections.emptyList();
+        }
+        List<Checkpoint> checkpoints = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(checkpointFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Checkpoint checkpoint = Checkpoint.parse(line);
+                if (null != checkpoint) {
+                    checkpoints.add(checkpoint);
+                }
+            }
+        } catch (IOException error) {
+            logDebug("GocdVersionPlugin: Cannot read commit distance checkpoints from {}", checkpointFile);
+            return Collections.emptyList();
+        }
+        return checkpoints;
+    }
+
+    /**
+     * Adds a checkpoint, the most recent checkpoints are kept first.
+     */
+    void store(AnyObjectId commitId, int distance) {
+        List<Checkpoint> checkpoints = new ArrayList<>();
+        checkpoints.add(new Checkpoint(commitId.copy(), distance));
+        for (Checkpoint existing : load()) {
+            if (checkpoints.size() >= MAX_CHECKPOINTS) {
+                break;
+            }
+            if (!existing.commitId.equals(commitId)) {
+                checkpoints.add(existing);
+            }
+        }
+        try {
+            Path dir = checkpointFile.getParent();
+            Files.createDirectories(dir);
+            Path temp = Files.createTempFile(dir, checkpointFile.getFileName().toString(), ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Checkpoint checkpoint : checkpoints) {
+                    writer.write(checkpoint.format());
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException error) {
+            logDebug("GocdVersionPlugin: Cannot write commit distance checkpoints to {}", checkpointFile);
+        }
+    }
+
+    private void logDebug(String format, Object arg) {
+        if (this.logger != null) {
+            this.logger.debug(format, arg);
+        }
+    }
+
+    private static final class WalkResult {
+        private int count = 0;
+        private int excluded = 0;
+        private final List<Checkpoint> reached = new ArrayList<>();
+    }
+
+    static final class Checkpoint {
+        private final ObjectId commitId;
+        private final int distance;
+
+        Checkpoint(ObjectId commitId, int distance) {
+            this.commitId = commitId;
+            this.distance = distance;
+        }
+
+        ObjectId getCommitId() {
+            return commitId;
+        }
+
+        int getDistance() {
+            return distance;
+        }
+
+        String format() {
+            return commitId.getName() + " " + distance;
+        }
+
+        static Checkpoint parse(String line) {
+            /* lines of older versions carry a trailing tag name, which is ignored */
+            String[] parts = line.split(" ");
+            if (parts.length < 2 || !ObjectId.isId(parts[0])) {
+                return null;
+            }
+            try {
+                int distance = Integer.parseInt(parts[1]);
+                return new Checkpoint(ObjectId.fromString(parts[0]), distance);
+            } catch (NumberFormatException error) {
+                return null;
+            }
+        }
+    }
+}
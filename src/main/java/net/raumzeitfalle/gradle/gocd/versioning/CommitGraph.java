@@ -0,0 +1,305 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Read-only, in memory copy of git's {@code objects/info/commit-graph} file.
+ *
+ * The commit-graph stores the parents, the commit time and the generation number of every
+ * commit it contains in fixed size records. Walking these records is much cheaper than
+ * inflating and parsing commit objects from pack files. Only a single (non split) SHA-1
+ * commit-graph file is supported, {@link #open(Path)} returns null for anything else.
+ *
+ * When the graph was written with {@code --changed-paths}, it also contains a Bloom filter per
+ * commit of the paths changed against its first parent, see {@link #mayHaveChanged(int, ChangedPathKey)}.
+ *
+ * @see <a href="https://git-scm.com/docs/commit-graph-format">commit-graph format</a>
+ */
+class CommitGraph {
+
+    static final int NO_PARENT = -1;
+
+    private static final int SIGNATURE = 0x43475048; /* CGPH */
+    private static final int CHUNK_OID_FANOUT = 0x4f494446; /* OIDF */
+    private static final int CHUNK_OID_LOOKUP = 0x4f49444c; /* OIDL */
+    private static final int CHUNK_COMMIT_DATA = 0x43444154; /* CDAT */
+    private static final int CHUNK_EXTRA_EDGES = 0x45444745; /* EDGE */
+    private static final int CHUNK_BLOOM_INDEXES = 0x42494458; /* BIDX */
+    private static final int CHUNK_BLOOM_DATA = 0x42444154; /* BDAT */
+    private static final int BLOOM_DATA_HEADER = 12;
+
+    private static final int HASH_LENGTH = 20;
+    private static final int COMMIT_DATA_WIDTH = HASH_LENGTH + 16;
+
+    private static final int PARENT_NONE = 0x70000000;
+    private static final int EXTRA_EDGES_NEEDED = 0x80000000;
+    private static final int EDGE_LAST_MASK = 0x7fffffff;
+
+    private final ByteBuffer data;
+    private final int commitCount;
+    private final int fanoutOffset;
+    private final int lookupOffset;
+    private final int commitDataOffset;
+    private final int extraEdgesOffset;
+    private final int bloomIndexesOffset;
+    private final int bloomDataOffset;
+
+    private CommitGraph(ByteBuffer data, int fanoutOffset, int lookupOffset, int commitDataOffset, int extraEdgesOffset,
+                        int bloomIndexesOffset, int bloomDataOffset) {
+        this.data = data;
+        this.fanoutOffset = fanoutOffset;
+        this.lookupOffset = lookupOffset;
+        this.commitDataOffset = commitDataOffset;
+        this.extraEdgesOffset = extraEdgesOffset;
+        this.bloomIndexesOffset = bloomIndexesOffset;
+        this.bloomDataOffset = bloomDataOffset;
+        this.commitCount = data.getInt(fanoutOffset + 255 * 4);
+    }
+
+    /**
+     * Reads the commit-graph file of the given git directory.
+     *
+     * The file is copied to the heap instead of being memory mapped. A mapping is only released when
+     * it is garbage collected, and on Windows it keeps the file locked, so that git could not rewrite
+     * the commit-graph while the daemon holds on to it.
+     *
+     * @param gitDir git directory (for worktrees the common directory)
+     * @return The commit-graph or null if there is no supported commit-graph file.
+     * @throws IOException if the file exists but cannot be read
+     */
+    static CommitGraph open(Path gitDir) throws IOException {
+        Path graphFile = gitDir.resolve("objects").resolve("info").resolve("commit-graph");
+        if (!Files.isRegularFile(graphFile)) {
+            return null;
+        }
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(graphFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 8 || size > Integer.MAX_VALUE - 8) {
+                return null;
+            }
+            data = ByteBuffer.allocate((int) size);
+            while (data.hasRemaining() && channel.read(data) >= 0) {
+                /* read until the buffer is full or the file was truncated meanwhile */
+            }
+        }
+        if (data.hasRemaining()) {
+            return null;
+        }
+        data.flip();
+        return parse(data);
+    }
+
+    static CommitGraph parse(ByteBuffer data) {
+        if (data.getInt(0) != SIGNATURE
+                || data.get(4) != 1    /* file version */
+                || data.get(5) != 1    /* SHA-1 */
+                || data.get(7) != 0) { /* no base graphs, i.e. not part of a split chain */
+            return null;
+        }
+        int chunkCount = data.get(6) & 0xFF;
+        int fanout = -1;
+        int lookup = -1;
+        int commitData = -1;
+        int extraEdges = -1;
+        int bloomIndexes = -1;
+        int bloomData = -1;
+        for (int i = 0; i < chunkCount; i++) {
+            int entry = 8 + i * 12;
+            int chunkId = data.getInt(entry);
+            long offset = data.getLong(entry + 4);
+            if (offset < 0 || offset > data.limit()) {
+                return null;
+            }
+            switch (chunkId) {
+                case CHUNK_OID_FANOUT: fanout = (int) offset; break;
+                case CHUNK_OID_LOOKUP: lookup = (int) offset; break;
+                case CHUNK_COMMIT_DATA: commitData = (int) offset; break;
+                case CHUNK_EXTRA_EDGES: extraEdges = (int) offset; break;
+                case CHUNK_BLOOM_INDEXES: bloomIndexes = (int) offset; break;
+                case CHUNK_BLOOM_DATA: bloomData = (int) offset; break;
+                default: break;
+            }
+        }
+        if (fanout < 0 || lookup < 0 || commitData < 0) {
+            return null;
+        }
+        if (bloomIndexes < 0 || bloomData < 0 || bloomData + BLOOM_DATA_HEADER > data.limit()) {
+            bloomIndexes = -1;
+            bloomData = -1;
+        }
+        return new CommitGraph(data, fanout, lookup, commitData, extraEdges, bloomIndexes, bloomData);
+    }
+
+    int size() {
+        return commitCount;
+    }
+
+    /**
+     * @param id commit id
+     * @return Position of the commit within the graph or -1 if the graph does not contain it.
+     */
+    int findPosition(AnyObjectId id) {
+        byte[] raw = new byte[HASH_LENGTH];
+        id.copyRawTo(raw, 0);
+        int first = raw[0] & 0xFF;
+        int low = first == 0 ? 0 : data.getInt(fanoutOffset + (first - 1) * 4);
+        int high = data.getInt(fanoutOffset + first * 4) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareId(mid, raw);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compareId(int position, byte[] raw) {
+        int base = lookupOffset + position * HASH_LENGTH;
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            int a = data.get(base + i) & 0xFF;
+            int b = raw[i] & 0xFF;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return 0;
+    }
+
+    ObjectId getId(int position) {
+        byte[] raw = new byte[HASH_LENGTH];
+        int base = lookupOffset + position * HASH_LENGTH;
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            raw[i] = data.get(base + i);
+        }
+        return ObjectId.fromRaw(raw);
+    }
+
+    /**
+     * @return Commit time in seconds since epoch.
+     */
+    long getCommitTime(int position) {
+        int base = commitDataOffset + position * COMMIT_DATA_WIDTH + HASH_LENGTH + 8;
+        long upper = data.getInt(base) & 0x3L;
+        long lower = data.getInt(base + 4) & 0xFFFFFFFFL;
+        return (upper << 32) | lower;
+    }
+
+    /**
+     * @return Topological level (generation number v1), 0 if the graph was written without it.
+     */
+    int getGeneration(int position) {
+        int base = commitDataOffset + position * COMMIT_DATA_WIDTH + HASH_LENGTH + 8;
+        return data.getInt(base) >>> 2;
+    }
+
+    /**
+     * @return true if the graph contains changed-path Bloom filters which can be used for the given key
+     */
+    boolean hasChangedPathFilters(ChangedPathKey key) {
+        return bloomDataOffset >= 0 && key.isSupportedBy(getBloomHashVersion());
+    }
+
+    int getBloomHashVersion() {
+        return bloomDataOffset < 0 ? 0 : data.getInt(bloomDataOffset);
+    }
+
+    /**
+     * Tests whether the commit at the given position may have changed the path of the key, compared to its
+     * first parent. A false result is definite, a true result may be a false positive.
+     *
+     * @param position graph position of the commit
+     * @param key hashes of the path and all its leading directories
+     * @return false if the path was definitely not changed
+     */
+    boolean mayHaveChanged(int position, ChangedPathKey key) {
+        if (!hasChangedPathFilters(key)) {
+            return true;
+        }
+        int start = position == 0 ? 0 : data.getInt(bloomIndexesOffset + (position - 1) * 4);
+        int end = data.getInt(bloomIndexesOffset + position * 4);
+        if (end <= start) {
+            /* the filter was not computed for this commit */
+            return true;
+        }
+        int hashCount = data.getInt(bloomDataOffset + 4);
+        int filterStart = bloomDataOffset + BLOOM_DATA_HEADER + start;
+        long bits = (end - start) * 8L;
+        for (int[] hashes : key.getHashes()) {
+            boolean contained = true;
+            for (int i = 0; i < hashCount && contained; i++) {
+                long hash = (hashes[0] + i * hashes[1]) & 0xFFFFFFFFL;
+                long bit = hash % bits;
+                contained = (data.get(filterStart + (int) (bit >>> 3)) & (1 << (bit & 7))) != 0;
+            }
+            if (!contained) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int getFirstParent(int position) {
+        int parent = data.getInt(commitDataOffset + position * COMMIT_DATA_WIDTH + HASH_LENGTH);
+        return parent == PARENT_NONE ? NO_PARENT : parent;
+    }
+
+    /**
+     * Writes the graph positions of all parents into the given buffer, which is grown when needed.
+     *
+     * @return Number of parents written.
+     */
+    int getParents(int position, int[][] buffer) {
+        int base = commitDataOffset + position * COMMIT_DATA_WIDTH + HASH_LENGTH;
+        int first = data.getInt(base);
+        if (first == PARENT_NONE) {
+            return 0;
+        }
+        int[] parents = ensureCapacity(buffer, 2);
+        parents[0] = first;
+        int second = data.getInt(base + 4);
+        if (second == PARENT_NONE) {
+            return 1;
+        }
+        if ((second & EXTRA_EDGES_NEEDED) == 0) {
+            parents[1] = second;
+            return 2;
+        }
+        if (extraEdgesOffset < 0) {
+            throw new IllegalStateException("commit-graph references extra edges but has no EDGE chunk");
+        }
+        int count = 1;
+        int edge = extraEdgesOffset + (second & EDGE_LAST_MASK) * 4;
+        while (true) {
+            int value = data.getInt(edge);
+            parents = ensureCapacity(buffer, count + 1);
+            parents[count++] = value & EDGE_LAST_MASK;
+            if ((value & EXTRA_EDGES_NEEDED) != 0) {
+                return count;
+            }
+            edge += 4;
+        }
+    }
+
+    private static int[] ensureCapacity(int[][] buffer, int capacity) {
+        if (buffer[0].length < capacity) {
+            int[] grown = new int[Math.max(capacity, buffer[0].length * 2)];
+            System.arraycopy(buffer[0], 0, grown, 0, buffer[0].length);
+            buffer[0] = grown;
+        }
+        return buffer[0];
+    }
+}
@@ -0,0 +1,724 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * Computes the nearest tag distance and the number of reachable commits on top of a {@link CommitGraph}.
+ *
+ * The nearest tag search visits commits in the same order as the JGit log walk used by
+ * {@link GitTagVersionHelper} (newest commit time first, insertion order for equal times),
+ * hence it yields the same commit count without parsing a single commit object.
+ *
+ * With a commit filter, the walk is unchanged but only the visited commits accepted by the filter are
+ * counted, e.g. the commits which changed a project directory (see {@link PathScope}).
+ *
+ * The highest version search ({@link TagSelection#HIGHEST_VERSION}) visits commits by generation number
+ * instead, which allows to stop as soon as no tag with a higher version than the best one found so far can
+ * be reached anymore.
+ */
+class CommitGraphDistanceEngine {
+
+    /**
+     * Generation numbers are capped at this value, commits with the capped value cannot be ordered.
+     */
+    private static final int GENERATION_NUMBER_V1_MAX = 0x3FFFFFFF;
+
+    private final CommitGraph graph;
+
+    private final WalkBudget budget;
+
+    private final IntPredicate counted;
+
+    CommitGraphDistanceEngine(CommitGraph graph) {
+        this(graph, WalkBudget.UNLIMITED);
+    }
+
+    CommitGraphDistanceEngine(CommitGraph graph, WalkBudget budget) {
+        this(graph, budget, null);
+    }
+
+    /**
+     * @param graph the commit-graph to walk
+     * @param budget limits of the walk
+     * @param counted decides by graph position which visited commits are counted, null to count all commits
+     */
+    CommitGraphDistanceEngine(CommitGraph graph, WalkBudget budget, IntPredicate counted) {
+        this.graph = Objects.requireNonNull(graph, "graph must not be null");
+        this.budget = Objects.requireNonNull(budget, "budget must not be null");
+        this.counted = counted;
+    }
+
+    /**
+     * @param head graph position of the start commit
+     * @param tagsByPosition tag names of all suitable tags, keyed by the graph position of the tagged commit
+     * @return The nearest tag (may be null, when no tag is reachable) and the number of commits visited before it.
+     */
+    Distance findNearestTag(int head, Map<Integer, String> tagsByPosition) {
+        if (tagsByPosition.isEmpty()) {
+            return countAncestors(head);
+        }
+        WalkBudget.Tracker tracker = budget.start();
+        BitSet seen = new BitSet(graph.size());
+        DateQueue queue = new DateQueue();
+        int[][] parents = new int[][] { new int[2] };
+
+        seen.set(head);
+        queue.add(head, graph.getCommitTime(head));
+        int commitCount = -1;
+        int changes = 0;
+        while (!queue.isEmpty()) {
+            if (tracker.isExceeded(commitCount + 1)) {
+                return Distance.truncated(null == counted ? commitCount + 1 : changes);
+            }
+            int position = queue.poll();
+            commitCount += 1;
+            String tag = tagsByPosition.get(position);
+            if (null != tag) {
+                return new Distance(tag, null == counted ? commitCount : changes);
+            }
+            if (null != counted && counted.test(position)) {
+                changes += 1;
+            }
+            int parentCount = graph.getParents(position, parents);
+            for (int i = 0; i < parentCount; i++) {
+                int parent = parents[0][i];
+                if (!seen.get(parent)) {
+                    seen.set(parent);
+                    queue.add(parent, graph.getCommitTime(parent));
+                }
+            }
+        }
+        return new Distance(null, null == counted ? commitCount : changes);
+    }
+
+    /**
+     * Follows only first parents, like {@code git log --first-parent}. Tags on commits of merged
+     * branches are not found and these commits are not counted.
+     *
+     * @param head graph position of the start commit
+     * @param tagsByPosition tag names of all suitable tags, keyed by the graph position of the tagged commit
+     * @return The nearest tag on the first parent chain (may be null) and the number of commits visited before it.
+     */
+    Distance findNearestTagOnFirstParents(int head, Map<Integer, String> tagsByPosition) {
+        WalkBudget.Tracker tracker = budget.start();
+        int commitCount = -1;
+        int changes = 0;
+        for (int position = head; position != CommitGraph.NO_PARENT; position = graph.getFirstParent(position)) {
+            if (tracker.isExceeded(commitCount + 1)) {
+                return Distance.truncated(null == counted ? commitCount + 1 : changes);
+            }
+            commitCount += 1;
+            String tag = tagsByPosition.get(position);
+            if (null != tag) {
+                return new Distance(tag, null == counted ? commitCount : changes);
+            }
+            if (null != counted && counted.test(position)) {
+                changes += 1;
+            }
+        }
+        return new Distance(null, null == counted ? commitCount : changes);
+    }
+
+    /**
+     * Finds the nearest tag on the first parent chain of several heads (e.g. all branches of a repository).
+     * First parent chains of branches mostly end in the same commits, the distance of every visited commit is
+     * remembered, so that the walk of a later head stops where it meets the chain of an earlier one. Commits
+     * are not filtered, every visited commit is counted. The walk budget applies to each head.
+     *
+     * @param heads graph positions of the start commits
+     * @param tagsByPosition tag names of all suitable tags, keyed by the graph position of the tagged commit
+     * @return The distance of every head, in the order of the heads.
+     */
+    Distance[] findNearestTagOnFirstParents(int[] heads, Map<Integer, String> tagsByPosition) {
+        Map<Integer, Distance> known = new HashMap<>();
+        Distance[] distances = new Distance[heads.length];
+        int[] chain = new int[64];
+        for (int h = 0; h < heads.length; h++) {
+            WalkBudget.Tracker tracker = budget.start();
+            int length = 0;
+            Distance end = null;
+            int position = heads[h];
+            while (position != CommitGraph.NO_PARENT) {
+                end = known.get(position);
+                if (null != end) {
+                    break;
+                }
+                String tag = tagsByPosition.get(position);
+                if (null != tag) {
+                    end = new Distance(tag, 0);
+                    known.put(position, end);
+                    break;
+                }
+                if (tracker.isExceeded(length)) {
+                    end = Distance.truncated(length);
+                    break;
+                }
+                if (length == chain.length) {
+                    int[] grown = new int[chain.length * 2];
+                    System.arraycopy(chain, 0, grown, 0, chain.length);
+                    chain = grown;
+                }
+                chain[length++] = position;
+                position = graph.getFirstParent(position);
+            }
+            if (null != end && end.isTruncated()) {
+                distances[h] = end;
+                continue;
+            }
+            /* without tag, the root commit has distance 0 like in findNearestTagOnFirstParents(int, Map) */
+            String tag = null == end ? null : end.getTag();
+            int base = null == end ? -1 : end.getCommitCount();
+            for (int i = length - 1; i >= 0; i--) {
+                known.put(chain[i], new Distance(tag, base + length - i));
+            }
+            distances[h] = length == 0 ? end : known.get(chain[0]);
+        }
+        return distances;
+    }
+
+    /**
+     * @param head graph position of the start commit
+     * @return Number of commits reachable from head, including head itself, -1 when the walk budget is exhausted.
+     */
+    int countReachableCommits(int head) {
+        Distance ancestors = countAncestors(head);
+        return ancestors.isTruncated() ? -1 : ancestors.getCommitCount() + 1;
+    }
+
+    private Distance countAncestors(int head) {
+        WalkBudget.Tracker tracker = budget.start();
+        BitSet seen = new BitSet(graph.size());
+        int[] stack = new int[64];
+        int[][] parents = new int[][] { new int[2] };
+        int top = 0;
+        int count = 0;
+        int changes = 0;
+        stack[top++] = head;
+        seen.set(head);
+        while (top > 0) {
+            if (tracker.isExceeded(count)) {
+                return Distance.truncated(null == counted ? count : changes);
+            }
+            int position = stack[--top];
+            count += 1;
+            if (null != counted && counted.test(position)) {
+                changes += 1;
+            }
+            int parentCount = graph.getParents(position, parents);
+            for (int i = 0; i < parentCount; i++) {
+                int parent = parents[0][i];
+                if (!seen.get(parent)) {
+                    seen.set(parent);
+                    if (top == stack.length) {
+                        int[] grown = new int[stack.length * 2];
+                        System.arraycopy(stack, 0, grown, 0, stack.length);
+                        stack = grown;
+                    }
+                    stack[top++] = parent;
+                }
+            }
+        }
+        return new Distance(null, null == counted ? count - 1 : changes);
+    }
+
+    /**
+     * Finds the suitable tag with the highest version reachable from head with a single walk and counts
+     * the commits reachable from head but not from that tag (like {@code git rev-list --count <tag>..HEAD}).
+     *
+     * When the commit-graph has generation numbers, commits are visited by descending generation. A tag with
+     * a generation number above the one of every commit still to be visited cannot be reached anymore, so
+     * the walk ends once this applies to all tags with a higher version than the best one found. The commit
+     * count then only walks the commits between head and the selected tag.
+     *
+     * @param head graph position of the start commit
+     * @param tagsByPosition tag names of all suitable tags, keyed by the graph position of the tagged commit
+     * @param versionsByPosition versions of these tags, keyed by the graph position of the tagged commit
+     * @return The highest tag (may be null, when no tag is reachable) and the number of commits after it.
+     */
+    Distance findHighestTag(int head, Map<Integer, String> tagsByPosition,
+                            Map<Integer, VersionTag> versionsByPosition) {
+        if (tagsByPosition.isEmpty()) {
+            return countAncestors(head);
+        }
+        WalkBudget.Tracker tracker = budget.start();
+        boolean ordered = hasGenerations(head);
+        Candidates candidates = new Candidates(graph, versionsByPosition);
+        BitSet seen = new BitSet(graph.size());
+        DateQueue queue = new DateQueue();
+        int[][] parents = new int[][] { new int[2] };
+
+        seen.set(head);
+        queue.add(head, graph.getGeneration(head));
+        int visited = 0;
+        int best = -1;
+        while (!queue.isEmpty() && !candidates.isExhausted()) {
+            if (ordered && !candidates.mayReach(queue.peekTime())) {
+                break;
+            }
+            if (tracker.isExceeded(visited)) {
+                return Distance.truncated(visited);
+            }
+            int position = queue.poll();
+            visited += 1;
+            if (tagsByPosition.containsKey(position) && candidates.select(versionsByPosition.get(position))) {
+                best = position;
+            }
+            int parentCount = graph.getParents(position, parents);
+            for (int i = 0; i < parentCount; i++) {
+                int parent = parents[0][i];
+                if (!seen.get(parent)) {
+                    seen.set(parent);
+                    queue.add(parent, graph.getGeneration(parent));
+                }
+            }
+        }
+        if (best < 0) {
+            return countAncestors(head);
+        }
+        if (best == head) {
+            return new Distance(tagsByPosition.get(best), 0);
+        }
+        int commitCount = ordered
+                ? countExclusiveByGeneration(head, best, tracker, visited)
+                : countExclusive(head, best, tracker, visited);
+        return commitCount < 0 ? Distance.truncated(-commitCount) : new Distance(tagsByPosition.get(best), commitCount);
+    }
+
+    /**
+     * Like {@link #findHighestTag(int, Map, Map)}, but only follows first parents. The commit count is the
+     * number of first parent commits visited before the tag.
+     */
+    Distance findHighestTagOnFirstParents(int head, Map<Integer, String> tagsByPosition,
+                                          Map<Integer, VersionTag> versionsByPosition) {
+        WalkBudget.Tracker tracker = budget.start();
+        boolean ordered = hasGenerations(head);
+        Candidates candidates = new Candidates(graph, versionsByPosition);
+        String tag = null;
+        int tagCount = 0;
+        int commitCount = -1;
+        int changes = 0;
+        for (int position = head; position != CommitGraph.NO_PARENT && !candidates.isExhausted();
+             position = graph.getFirstParent(position)) {
+            if (ordered && !candidates.mayReach(graph.getGeneration(position))) {
+                break;
+            }
+            if (tracker.isExceeded(commitCount + 1)) {
+                return Distance.truncated(null == counted ? commitCount + 1 : changes);
+            }
+            commitCount += 1;
+            if (tagsByPosition.containsKey(position) && candidates.select(versionsByPosition.get(position))) {
+                tag = tagsByPosition.get(position);
+                tagCount = null == counted ? commitCount : changes;
+            }
+            if (null != counted && counted.test(position)) {
+                changes += 1;
+            }
+        }
+        if (null == tag) {
+            return findNearestTagOnFirstParents(head, Collections.emptyMap());
+        }
+        return new Distance(tag, tagCount);
+    }
+
+    private boolean hasGenerations(int head) {
+        int generation = graph.getGeneration(head);
+        return generation > 0 && generation < GENERATION_NUMBER_V1_MAX;
+    }
+
+    /**
+     * Counts the commits reachable from head but not from base, visiting commits by descending generation
+     * number. All descendants of a commit have a higher generation number, hence a commit is known to be
+     * reachable from base (or not) when it is visited, and the walk ends when only commits reachable from base
+     * are left.
+     *
+     * @return The number of commits (accepted by the filter), the negated number of visited commits when the
+     *         walk budget is exhausted.
+     */
+    private int countExclusiveByGeneration(int head, int base, WalkBudget.Tracker tracker, int visited) {
+        BitSet seen = new BitSet(graph.size());
+        BitSet excluded = new BitSet(graph.size());
+        DateQueue queue = new DateQueue();
+        int[][] parents = new int[][] { new int[2] };
+
+        seen.set(base);
+        excluded.set(base);
+        queue.add(base, graph.getGeneration(base));
+        seen.set(head);
+        queue.add(head, graph.getGeneration(head));
+        int pending = 1;
+        int count = 0;
+        while (pending > 0) {
+            int position = queue.poll();
+            boolean exclude = excluded.get(position);
+            if (!exclude) {
+                if (tracker.isExceeded(visited)) {
+                    return -visited;
+                }
+                visited += 1;
+                pending -= 1;
+                if (null == counted || counted.test(position)) {
+                    count += 1;
+                }
+            }
+            int parentCount = graph.getParents(position, parents);
+            for (int i = 0; i < parentCount; i++) {
+                int parent = parents[0][i];
+                if (!seen.get(parent)) {
+                    seen.set(parent);
+                    queue.add(parent, graph.getGeneration(parent));
+                    if (exclude) {
+                        excluded.set(parent);
+                    } else {
+                        pending += 1;
+                    }
+                } else if (exclude && !excluded.get(parent)) {
+                    /* still queued, as its generation number is below the one of the current commit */
+                    excluded.set(parent);
+                    pending -= 1;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the commits reachable from head but not from base, for commit-graphs without generation
+     * numbers: all ancestors of base are marked first.
+     *
+     * @return The number of commits (accepted by the filter), the negated number of visited commits when the
+     *         walk budget is exhausted.
+     */
+    private int countExclusive(int head, int base, WalkBudget.Tracker tracker, int visited) {
+        BitSet excluded = new BitSet(graph.size());
+        int[] stack = new int[64];
+        int[][] parents = new int[][] { new int[2] };
+        int count = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            boolean marking = pass == 0;
+            BitSet seen = marking ? excluded : new BitSet(graph.size());
+            int start = marking ? base : head;
+            int top = 0;
+            stack[top++] = start;
+            seen.set(start);
+            while (top > 0) {
+                if (tracker.isExceeded(visited)) {
+                    return -visited;
+                }
+                int position = stack[--top];
+                visited += 1;
+                if (!marking && (null == counted || counted.test(position))) {
+                    count += 1;
+                }
+                int parentCount = graph.getParents(position, parents);
+                for (int i = 0; i < parentCount; i++) {
+                    int parent = parents[0][i];
+                    if (!seen.get(parent) && (marking || !excluded.get(parent))) {
+                        seen.set(parent);
+                        if (top == stack.length) {
+                            int[] grown = new int[stack.length * 2];
+                            System.arraycopy(stack, 0, grown, 0, stack.length);
+                            stack = grown;
+                        }
+                        stack[top++] = parent;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the nearest tag of several targets (e.g. the modules of a monorepo) with a single walk, visiting
+     * commits in the same order as {@link #findNearestTag(int, Map)}. The walk stops as soon as every target
+     * has been found. Targets without a reachable tag get the number of all commits visited. Commits are
+     * not filtered, every visited commit is counted.
+     *
+     * @param head graph position of the start commit
+     * @param tagsByPosition tag names by target, keyed by the graph position of the tagged commit
+     * @param targets the targets to search
+     * @return distance by target
+     */
+    Map<String, Distance> findNearestTags(int head, Map<Integer, Map<String, String>> tagsByPosition,
+                                          Set<String> targets) {
+        WalkBudget.Tracker tracker = budget.start();
+        Targets remaining = new Targets(targets);
+        BitSet seen = new BitSet(graph.size());
+        DateQueue queue = new DateQueue();
+        int[][] parents = new int[][] { new int[2] };
+
+        seen.set(head);
+        queue.add(head, graph.getCommitTime(head));
+        int commitCount = -1;
+        while (!queue.isEmpty() && !remaining.isComplete()) {
+            if (tracker.isExceeded(commitCount + 1)) {
+                return remaining.truncate(commitCount + 1);
+            }
+            int position = queue.poll();
+            commitCount += 1;
+            remaining.visit(tagsByPosition.get(position), commitCount);
+            int parentCount = graph.getParents(position, parents);
+            for (int i = 0; i < parentCount; i++) {
+                int parent = parents[0][i];
+                if (!seen.get(parent)) {
+                    seen.set(parent);
+                    queue.add(parent, graph.getCommitTime(parent));
+                }
+            }
+        }
+        return remaining.complete(commitCount);
+    }
+
+    /**
+     * Like {@link #findNearestTags(int, Map, Set)}, but only follows first parents.
+     */
+    Map<String, Distance> findNearestTagsOnFirstParents(int head, Map<Integer, Map<String, String>> tagsByPosition,
+                                                        Set<String> targets) {
+        WalkBudget.Tracker tracker = budget.start();
+        Targets remaining = new Targets(targets);
+        int commitCount = -1;
+        for (int position = head; position != CommitGraph.NO_PARENT && !remaining.isComplete();
+             position = graph.getFirstParent(position)) {
+            if (tracker.isExceeded(commitCount + 1)) {
+                return remaining.truncate(commitCount + 1);
+            }
+            commitCount += 1;
+            remaining.visit(tagsByPosition.get(position), commitCount);
+        }
+        return remaining.complete(commitCount);
+    }
+
+    /**
+     * Collects the distances of a multi-target walk.
+     */
+    private static final class Targets {
+        private final Set<String> remaining;
+        private final Map<String, Distance> distances = new HashMap<>();
+
+        Targets(Set<String> targets) {
+            this.remaining = new HashSet<>(targets);
+        }
+
+        boolean isComplete() {
+            return remaining.isEmpty();
+        }
+
+        void visit(Map<String, String> tags, int commitCount) {
+            if (null == tags) {
+                return;
+            }
+            for (Map.Entry<String, String> tag : tags.entrySet()) {
+                if (remaining.remove(tag.getKey())) {
+                    distances.put(tag.getKey(), new Distance(tag.getValue(), commitCount));
+                }
+            }
+        }
+
+        Map<String, Distance> truncate(int visited) {
+            for (String target : remaining) {
+                distances.put(target, Distance.truncated(visited));
+            }
+            return distances;
+        }
+
+        Map<String, Distance> complete(int commitCount) {
+            for (String target : remaining) {
+                distances.put(target, new Distance(null, commitCount));
+            }
+            return distances;
+        }
+    }
+
+    /**
+     * Tags by descending version, together with the lowest generation number of each prefix of that order.
+     * Tracks the best version found so far and the number of tags with a higher version.
+     */
+    private static final class Candidates {
+        private final VersionTag[] versions;
+        private final int[] lowestGenerations;
+        private int higher;
+
+        Candidates(CommitGraph graph, Map<Integer, VersionTag> versionsByPosition) {
+            List<Map.Entry<Integer, VersionTag>> entries = new ArrayList<>(versionsByPosition.entrySet());
+            entries.sort((a, b) -> versionOf(b.getValue()).compareTo(versionOf(a.getValue())));
+            this.versions = new VersionTag[entries.size()];
+            this.lowestGenerations = new int[entries.size()];
+            int lowest = Integer.MAX_VALUE;
+            for (int i = 0; i < versions.length; i++) {
+                versions[i] = versionOf(entries.get(i).getValue());
+                lowest = Math.min(lowest, graph.getGeneration(entries.get(i).getKey()));
+                lowestGenerations[i] = lowest;
+            }
+            this.higher = versions.length;
+        }
+
+        private static VersionTag versionOf(VersionTag version) {
+            return null == version ? VersionTag.UNVERSIONED : version;
+        }
+
+        /**
+         * @return true if the version is higher than all versions selected before
+         */
+        boolean select(VersionTag version) {
+            VersionTag candidate = versionOf(version);
+            if (higher == 0 || candidate.compareTo(versions[higher - 1]) < 0) {
+                return false;
+            }
+            while (higher > 0 && versions[higher - 1].compareTo(candidate) <= 0) {
+                higher -= 1;
+            }
+            return true;
+        }
+
+        /**
+         * @return true if the highest version has been selected
+         */
+        boolean isExhausted() {
+            return higher == 0;
+        }
+
+        /**
+         * @param generation highest generation number of the commits still to be visited
+         * @return false if none of the tags with a higher version can be reached anymore
+         */
+        boolean mayReach(long generation) {
+            return higher > 0 && lowestGenerations[higher - 1] <= generation;
+        }
+    }
+
+    static final class Distance {
+        private final String tag;
+        private final int commitCount;
+        private final boolean truncated;
+
+        Distance(String tag, int commitCount) {
+            this(tag, commitCount, false);
+        }
+
+        private Distance(String tag, int commitCount, boolean truncated) {
+            this.tag = tag;
+            this.commitCount = commitCount;
+            this.truncated = truncated;
+        }
+
+        /**
+         * @param visited number of commits visited before the walk budget was exhausted
+         * @return distance without tag, the real distance is at least the given number of commits
+         */
+        static Distance truncated(int visited) {
+            return new Distance(null, visited, true);
+        }
+
+        boolean isTruncated() {
+            return truncated;
+        }
+
+        String getTag() {
+            return tag;
+        }
+
+        int getCommitCount() {
+            return commitCount;
+        }
+    }
+
+    /**
+     * Binary max-heap of graph positions ordered by commit time. Entries with equal
+     * commit time are returned in insertion order, like JGit's DateRevQueue does.
+     * The highest version search uses generation numbers instead of commit times.
+     */
+    private static final class DateQueue {
+        private long[] times = new long[64];
+        private long[] sequences = new long[64];
+        private int[] positions = new int[64];
+        private int size = 0;
+        private long sequence = 0;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long peekTime() {
+            return times[0];
+        }
+
+        void add(int position, long time) {
+            if (size == positions.length) {
+                int capacity = size * 2;
+                long[] grownTimes = new long[capacity];
+                long[] grownSequences = new long[capacity];
+                int[] grownPositions = new int[capacity];
+                System.arraycopy(times, 0, grownTimes, 0, size);
+                System.arraycopy(sequences, 0, grownSequences, 0, size);
+                System.arraycopy(positions, 0, grownPositions, 0, size);
+                times = grownTimes;
+                sequences = grownSequences;
+                positions = grownPositions;
+            }
+            int index = size++;
+            times[index] = time;
+            sequences[index] = sequence++;
+            positions[index] = position;
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!before(index, parent)) {
+                    break;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        int poll() {
+            int result = positions[0];
+            size -= 1;
+            if (size > 0) {
+                times[0] = times[size];
+                sequences[0] = sequences[size];
+                positions[0] = positions[size];
+                int index = 0;
+                while (true) {
+                    int left = 2 * index + 1;
+                    if (left >= size) {
+                        break;
+                    }
+                    int right = left + 1;
+                    int child = right < size && before(right, left) ? right : left;
+                    if (!before(child, index)) {
+                        break;
+                    }
+                    swap(index, child);
+                    index = child;
+                }
+            }
+            return result;
+        }
+
+        private boolean before(int a, int b) {
+            if (times[a] != times[b]) {
+                return times[a] > times[b];
+            }
+            return sequences[a] < sequences[b];
+        }
+
+        private void swap(int a, int b) {
+            long time = times[a];
+            times[a] = times[b];
+            times[b] = time;
+            long seq = sequences[a];
+            sequences[a] = sequences[b];
+            sequences[b] = seq;
+            int position = positions[a];
+            positions[a] = positions[b];
+            positions[b] = position;
+        }
+    }
+}
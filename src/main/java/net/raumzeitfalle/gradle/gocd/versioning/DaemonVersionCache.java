@@ -0,0 +1,102 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+
+/**
+ * In-memory cache of resolved {@link GitDetails} which lives as long as the Gradle daemon and is
+ * shared by all builds and checkouts the daemon serves. Builds of an already resolved revision
+ * (e.g. a re-run stage) are answered without reading the persistent {@link GitVersionCache}.
+ *
+ * Entries are keyed like the persistent cache (git directory, HEAD, tag references fingerprint and
+ * tag settings), the least recently used entries are evicted when either the number of entries
+ * or the approximate retained bytes exceed their limit.
+ */
+final class DaemonVersionCache {
+
+    static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024;
+
+    /* object headers, references and the date time of an entry, without strings */
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private static final DaemonVersionCache SHARED = new DaemonVersionCache(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+
+    private final int maxEntries;
+
+    private final long maxBytes;
+
+    /* access order, least recently used first */
+    private final Map<GitVersionCache.CacheKey, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long retainedBytes;
+
+    DaemonVersionCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    static DaemonVersionCache shared() {
+        return SHARED;
+    }
+
+    synchronized GitDetails get(GitVersionCache.CacheKey key) {
+        Entry entry = entries.get(key);
+        return null == entry ? null : entry.details;
+    }
+
+    synchronized void put(GitVersionCache.CacheKey key, GitDetails details) {
+        if (details.isTruncated()) {
+            return;
+        }
+        Entry entry = new Entry(details, key.estimatedBytes() + estimatedBytes(details));
+        if (entry.bytes > maxBytes) {
+            return;
+        }
+        Entry replaced = entries.put(key, entry);
+        if (null != replaced) {
+            retainedBytes -= replaced.bytes;
+        }
+        retainedBytes += entry.bytes;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext() && (entries.size() > maxEntries || retainedBytes > maxBytes)) {
+            retainedBytes -= iterator.next().bytes;
+            iterator.remove();
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long retainedBytes() {
+        return retainedBytes;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        retainedBytes = 0;
+    }
+
+    private static long estimatedBytes(GitDetails details) {
+        return ENTRY_OVERHEAD_BYTES + estimatedBytes(details.getTag()) + estimatedBytes(details.getCommitName());
+    }
+
+    static long estimatedBytes(String value) {
+        return null == value ? 0 : 40 + 2L * value.length();
+    }
+
+    private static final class Entry {
+        private final GitDetails details;
+        private final long bytes;
+
+        private Entry(GitDetails details, long bytes) {
+            this.details = details;
+            this.bytes = bytes;
+        }
+    }
+}
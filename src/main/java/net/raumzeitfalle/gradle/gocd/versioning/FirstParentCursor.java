@@ -0,0 +1,106 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.IOException;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Moves along the first parents of a commit, one commit at a time, without keeping visited commits.
+ *
+ * Commits contained in the commit-graph are read from the graph, all others are parsed by JGit. The JGit walk
+ * is disposed regularly, so that the memory used does not grow with the number of commits visited.
+ */
+final class FirstParentCursor implements AutoCloseable {
+
+    private static final int DISPOSE_INTERVAL = 1024;
+
+    private final CommitGraph graph;
+
+    private final RevWalk walk;
+
+    private ObjectId id;
+
+    private long commitTime;
+
+    private ObjectId parent;
+
+    private int position = -1;
+
+    private int parsed;
+
+    /**
+     * @param repo repository to read commits which are not in the commit-graph
+     * @param graph commit-graph, may be null
+     * @param start first commit of the cursor
+     */
+    FirstParentCursor(Repository repo, CommitGraph graph, ObjectId start) throws IOException {
+        this.graph = graph;
+        this.walk = new RevWalk(repo);
+        this.walk.setRetainBody(false);
+        load(start);
+    }
+
+    /**
+     * @return true while the cursor is on a commit, false after the root commit
+     */
+    boolean isValid() {
+        return null != id;
+    }
+
+    ObjectId getId() {
+        return id;
+    }
+
+    /**
+     * @return committer time in seconds since the epoch
+     */
+    long getCommitTime() {
+        return commitTime;
+    }
+
+    /**
+     * Moves to the first parent.
+     */
+    void next() throws IOException {
+        if (position >= 0) {
+            int first = graph.getFirstParent(position);
+            if (first == CommitGraph.NO_PARENT) {
+                id = null;
+            } else {
+                position = first;
+                id = graph.getId(first);
+                commitTime = graph.getCommitTime(first);
+            }
+            return;
+        }
+        load(parent);
+    }
+
+    private void load(ObjectId commit) throws IOException {
+        if (null == commit) {
+            id = null;
+            return;
+        }
+        position = null == graph ? -1 : graph.findPosition(commit);
+        if (position >= 0) {
+            id = commit.copy();
+            commitTime = graph.getCommitTime(position);
+            return;
+        }
+        if (++parsed % DISPOSE_INTERVAL == 0) {
+            walk.dispose();
+        }
+        RevCommit parsedCommit = walk.parseCommit(commit);
+        id = parsedCommit.copy();
+        commitTime = parsedCommit.getCommitTime();
+        parent = parsedCommit.getParentCount() == 0 ? null : parsedCommit.getParent(0).copy();
+    }
+
+    @Override
+    public void close() {
+        walk.close();
+    }
+}
@@ -6,6 +6,9 @@ public enum GOCD {
     GO_ENVIRONMENT_NAME,
 
     GO_MATERIAL_BRANCH,
+    GO_REVISION,
+    GO_FROM_REVISION,
+    GO_TO_REVISION,
     
     GO_TRIGGER_USER,
     GO_AGENT_RESOURCES,
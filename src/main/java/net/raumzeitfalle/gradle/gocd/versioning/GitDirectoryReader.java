@@ -0,0 +1,248 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Reads HEAD and references directly from a git directory, without using JGit.
+ *
+ * This is intentionally minimal: it only understands loose references, symbolic references
+ * and the packed-refs file. Whenever something cannot be answered, null is returned so that
+ * callers can fall back to a full JGit based resolution.
+ */
+class GitDirectoryReader {
+
+    private static final String SYMREF_PREFIX = "ref: ";
+
+    private static final int MAX_SYMREF_DEPTH = 5;
+
+    private static final String DOT_GIT = ".git";
+
+    private static final String GITDIR_PREFIX = "gitdir: ";
+
+    private static final String[] GIT_ENVIRONMENT = {"GIT_DIR", "GIT_WORK_TREE", "GIT_CEILING_DIRECTORIES",
+                                                     "GIT_OBJECT_DIRECTORY", "GIT_COMMON_DIR"};
+
+    private final Path gitDir;
+
+    private final Path commonDir;
+
+    GitDirectoryReader(Path gitDir) {
+        this.gitDir = gitDir;
+        this.commonDir = findCommonDir(gitDir);
+    }
+
+    /**
+     * Finds the git directory for the given working directory like {@code git rev-parse --git-dir},
+     * following a {@code .git} file (worktrees, submodules) to the directory it points to.
+     *
+     * @param workingDir directory where to start the search
+     * @return The git directory or null when there is none or when git environment variables
+     *         (e.g. {@code GIT_DIR}) are set, which are only honoured by JGit.
+     */
+    static Path findGitDir(Path workingDir) {
+        for (String variable : GIT_ENVIRONMENT) {
+            if (null != System.getenv(variable)) {
+                return null;
+            }
+        }
+        Path current = workingDir.toAbsolutePath().normalize();
+        while (null != current) {
+            Path dotGit = current.resolve(DOT_GIT);
+            if (Files.isDirectory(dotGit)) {
+                if (isGitDir(dotGit)) {
+                    return dotGit;
+                }
+            } else if (Files.isRegularFile(dotGit)) {
+                String line = readFirstLine(dotGit);
+                if (null != line && line.startsWith(GITDIR_PREFIX)) {
+                    Path target = current.resolve(line.substring(GITDIR_PREFIX.length()).trim()).normalize();
+                    if (isGitDir(target)) {
+                        return target;
+                    }
+                }
+            }
+            current = current.getParent();
+        }
+        return null;
+    }
+
+    private static boolean isGitDir(Path dir) {
+        Path common = findCommonDir(dir);
+        return Files.isRegularFile(dir.resolve("HEAD"))
+                && Files.isDirectory(common.resolve("objects"))
+                && Files.isDirectory(common.resolve("refs"));
+    }
+
+    /**
+     * Worktrees keep HEAD in their own directory while all shared references
+     * are located in the directory referenced by the commondir file.
+     */
+    private static Path findCommonDir(Path gitDir) {
+        Path commonDirFile = gitDir.resolve("commondir");
+        if (!Files.isRegularFile(commonDirFile)) {
+            return gitDir;
+        }
+        String location = readFirstLine(commonDirFile);
+        if (null == location || location.isEmpty()) {
+            return gitDir;
+        }
+        return gitDir.resolve(location).normalize();
+    }
+
+    /**
+     * @return Directory containing the shared references and objects, for worktrees this
+     *         differs from the git directory.
+     */
+    Path getCommonDir() {
+        return commonDir;
+    }
+
+    /**
+     * @return The full commit id HEAD points to or null if it cannot be determined.
+     */
+    String readHeadCommitId() {
+        return resolve("HEAD");
+    }
+
+    /**
+     * Resolves a reference name (e.g. HEAD or refs/heads/main) to an object id.
+     *
+     * @param refName name of the reference
+     * @return The object id as hex string or null if not resolvable.
+     */
+    String resolve(String refName) {
+        String current = refName;
+        for (int depth = 0; depth < MAX_SYMREF_DEPTH; depth++) {
+            String value = readLooseRef(current);
+            if (null == value) {
+                return findPackedRef(current);
+            }
+            if (value.startsWith(SYMREF_PREFIX)) {
+                current = value.substring(SYMREF_PREFIX.length()).trim();
+                continue;
+            }
+            return isObjectId(value) ? value : null;
+        }
+        return null;
+    }
+
+    private String readLooseRef(String refName) {
+        Path base = "HEAD".equals(refName) ? gitDir : commonDir;
+        Path refFile = base.resolve(refName);
+        if (!Files.isRegularFile(refFile)) {
+            return null;
+        }
+        return readFirstLine(refFile);
+    }
+
+    private String findPackedRef(String refName) {
+        Path packedRefs = commonDir.resolve("packed-refs");
+        if (!Files.isRegularFile(packedRefs)) {
+            return null;
+        }
+        String suffix = " " + refName;
+        try (BufferedReader reader = Files.newBufferedReader(packedRefs, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.endsWith(suffix) && line.length() == 40 + suffix.length()) {
+                    String id = line.substring(0, 40);
+                    return isObjectId(id) ? id : null;
+                }
+            }
+        } catch (IOException error) {
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * Creates a cheap fingerprint of all tag references. The fingerprint changes whenever
+     * packed-refs is rewritten or a loose tag is added, removed or modified. Object contents
+     * are never read, only file names, sizes and modification times.
+     *
+     * @return Fingerprint as hex string or null if the refs could not be inspected.
+     */
+    String tagRefsFingerprint() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            Path packedRefs = commonDir.resolve("packed-refs");
+            if (Files.isRegularFile(packedRefs)) {
+                update(digest, "packed-refs", Files.readAttributes(packedRefs, BasicFileAttributes.class));
+            }
+            Path tagsDir = commonDir.resolve("refs").resolve("tags");
+            if (Files.isDirectory(tagsDir)) {
+                for (Path tagFile : listFiles(tagsDir)) {
+                    String name = commonDir.relativize(tagFile).toString().replace('\\', '/');
+                    update(digest, name, Files.readAttributes(tagFile, BasicFileAttributes.class));
+                }
+            }
+            return toHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException error) {
+            return null;
+        }
+    }
+
+    private static List<Path> listFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> entries = Files.walk(directory)) {
+            entries.filter(Files::isRegularFile).forEach(files::add);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static void update(MessageDigest digest, String name, BasicFileAttributes attributes) {
+        String entry = name + ":" + attributes.size() + ":" + attributes.lastModifiedTime().toMillis() + "\n";
+        digest.update(entry.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String sha1Hex(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return toHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException error) {
+            return Integer.toHexString(value.hashCode());
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+               .append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    static boolean isObjectId(String value) {
+        if (null == value || value.length() != 40) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.digit(value.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String readFirstLine(Path file) {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            return null == line ? null : line.trim();
+        } catch (IOException error) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads single commit and tag objects directly from the object database, without using JGit.
+ *
+ * Like the {@link GitDirectoryReader}, this is intentionally minimal: loose objects and
+ * non-delta objects in version 2 pack indexes are supported. Deltified objects, objects in
+ * alternates and everything else are reported as unknown (null) so that callers fall back to JGit.
+ */
+class GitObjectReader {
+
+    static final int OBJ_COMMIT = 1;
+
+    static final int OBJ_TREE = 2;
+
+    static final int OBJ_BLOB = 3;
+
+    static final int OBJ_TAG = 4;
+
+    private static final int MAX_PEEL_DEPTH = 5;
+
+    private static final int IDX_MAGIC = 0xff744f63;
+
+    private static final int IDX_HEADER = 8;
+
+    private static final int FANOUT_SIZE = 256 * 4;
+
+    private final Path objectsDir;
+
+    GitObjectReader(Path commonDir) {
+        this.objectsDir = commonDir.resolve("objects");
+    }
+
+    /**
+     * Type and content of an object.
+     */
+    static final class RawObject {
+        private final int type;
+        private final byte[] data;
+
+        RawObject(int type, byte[] data) {
+            this.type = type;
+            this.data = data;
+        }
+
+        int getType() {
+            return type;
+        }
+
+        byte[] getData() {
+            return data;
+        }
+    }
+
+    /**
+     * @param id full object id as hex string
+     * @return The object or null when it cannot be read without JGit.
+     */
+    RawObject read(String id) {
+        if (!GitDirectoryReader.isObjectId(id)) {
+            return null;
+        }
+        try {
+            RawObject loose = readLoose(id);
+            return null != loose ? loose : readPacked(id);
+        } catch (IOException | DataFormatException | RuntimeException error) {
+            return null;
+        }
+    }
+
+    /**
+     * Looks up an object without reading it.
+     *
+     * @param id full object id as hex string
+     * @return Whether the object database contains the object, null when this cannot be answered without JGit,
+     *         e.g. for repositories with alternates or unsupported pack indexes.
+     */
+    Boolean contains(String id) {
+        if (!GitDirectoryReader.isObjectId(id) || Files.exists(objectsDir.resolve("info").resolve("alternates"))) {
+            return null;
+        }
+        try {
+            if (Files.isRegularFile(objectsDir.resolve(id.substring(0, 2)).resolve(id.substring(2)))) {
+                return Boolean.TRUE;
+            }
+            byte[] rawId = toBytes(id);
+            for (Path index : listPackIndexes()) {
+                if (findOffset(index, rawId) >= 0) {
+                    return Boolean.TRUE;
+                }
+            }
+            return Boolean.FALSE;
+        } catch (IOException | RuntimeException error) {
+            return null;
+        }
+    }
+
+    /**
+     * Follows annotated tags until a non-tag object is reached.
+     *
+     * @param id full object id as hex string
+     * @return The id of the tagged object or null when an object cannot be read.
+     */
+    String peel(String id) {
+        String current = id;
+        for (int depth = 0; depth < MAX_PEEL_DEPTH; depth++) {
+            RawObject object = read(current);
+            if (null == object) {
+                return null;
+            }
+            if (object.type != OBJ_TAG) {
+                return current;
+            }
+            current = header(object.data, "object");
+            if (null == current) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the committer date of a commit in the committer's time zone, the same way JGit reports it.
+     *
+     * @param id full commit id as hex string
+     * @return The commit date or null when the commit cannot be read.
+     */
+    ZonedDateTime readCommitDateTime(String id) {
+        RawObject object = read(id);
+        if (null == object || object.type != OBJ_COMMIT) {
+            return null;
+        }
+        String committer = header(object.data, "committer");
+        if (null == committer) {
+            return null;
+        }
+        int emailEnd = committer.lastIndexOf('>');
+        String[] whenAndZone = committer.substring(emailEnd + 1).trim().split(" ");
+        if (emailEnd < 0 || whenAndZone.length != 2 || whenAndZone[1].length() != 5) {
+            return null;
+        }
+        try {
+            long when = Long.parseLong(whenAndZone[0]);
+            /* JGit names the zone like this, e.g. GMT+0100 */
+            TimeZone timeZone = TimeZone.getTimeZone("GMT" + whenAndZone[1]);
+            return ZonedDateTime.ofInstant(Instant.ofEpochSecond(when), timeZone.toZoneId());
+        } catch (NumberFormatException error) {
+            return null;
+        }
+    }
+
+    /**
+     * @return Value of the first header line with the given key, only headers before the message are considered.
+     */
+    private static String header(byte[] data, String key) {
+        int start = 0;
+        while (start < data.length && data[start] != '\n') {
+            int end = start;
+            while (end < data.length && data[end] != '\n') {
+                end++;
+            }
+            String line = new String(data, start, end - start, StandardCharsets.UTF_8);
+            if (line.startsWith(key + " ")) {
+                return line.substring(key.length() + 1).trim();
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    private RawObject readLoose(String id) throws IOException {
+        Path file = objectsDir.resolve(id.substring(0, 2)).resolve(id.substring(2));
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        byte[] content;
+        try (InputStream in = new InflaterInputStream(Files.newInputStream(file))) {
+            content = readAll(in);
+        }
+        int headerEnd = 0;
+        while (headerEnd < content.length && content[headerEnd] != 0) {
+            headerEnd++;
+        }
+        String header = new String(content, 0, headerEnd, StandardCharsets.US_ASCII);
+        int type = typeOf(header.substring(0, Math.max(0, header.indexOf(' '))));
+        if (type < 0 || headerEnd >= content.length) {
+            return null;
+        }
+        byte[] data = new byte[content.length - headerEnd - 1];
+        System.arraycopy(content, headerEnd + 1, data, 0, data.length);
+        return new RawObject(type, data);
+    }
+
+    private RawObject readPacked(String id) throws IOException, DataFormatException {
+        byte[] rawId = toBytes(id);
+        for (Path index : listPackIndexes()) {
+            long offset = findOffset(index, rawId);
+            if (offset >= 0) {
+                String indexName = index.getFileName().toString();
+                Path pack = index.resolveSibling(indexName.substring(0, indexName.length() - 4) + ".pack");
+                return readPackEntry(pack, offset);
+            }
+        }
+        return null;
+    }
+
+    private List<Path> listPackIndexes() throws IOException {
+        List<Path> indexes = new ArrayList<>();
+        Path packDir = objectsDir.resolve("pack");
+        if (!Files.isDirectory(packDir)) {
+            return indexes;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(packDir, "pack-*.idx")) {
+            entries.forEach(indexes::add);
+        }
+        return indexes;
+    }
+
+    /**
+     * Looks up an object in a version 2 pack index. The index is read with positioned reads instead of
+     * being mapped, a mapping would keep the file locked on Windows until it is garbage collected.
+     *
+     * @return offset of the object in the pack file or -1 if the index does not contain it
+     * @throws IOException if the index cannot be read or is not a version 2 index
+     */
+    private static long findOffset(Path index, byte[] rawId) throws IOException {
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.READ)) {
+            ByteBuffer header = read(channel, 0, IDX_HEADER + FANOUT_SIZE);
+            if (header.getInt(0) != IDX_MAGIC || header.getInt(4) != 2) {
+                throw new IOException("Unsupported pack index: " + index);
+            }
+            int first = rawId[0] & 0xFF;
+            int count = header.getInt(IDX_HEADER + 255 * 4);
+            int low = first == 0 ? 0 : header.getInt(IDX_HEADER + (first - 1) * 4);
+            int high = header.getInt(IDX_HEADER + first * 4);
+            long idsStart = IDX_HEADER + FANOUT_SIZE;
+            ByteBuffer id = ByteBuffer.allocate(20);
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                id.clear();
+                readFully(channel, id, idsStart + mid * 20L);
+                int compared = compare(id, 0, rawId);
+                if (compared < 0) {
+                    low = mid + 1;
+                } else if (compared > 0) {
+                    high = mid;
+                } else {
+                    long offsetsStart = idsStart + count * 20L + count * 4L;
+                    int offset = read(channel, offsetsStart + mid * 4L, 4).getInt(0);
+                    if (offset >= 0) {
+                        return offset;
+                    }
+                    long largeOffsetsStart = offsetsStart + count * 4L;
+                    return read(channel, largeOffsetsStart + (offset & 0x7fffffff) * 8L, 8).getLong(0);
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(channel, buffer, position);
+        return buffer;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, current);
+            if (read < 0) {
+                throw new IOException("Unexpected end of pack index");
+            }
+            current += read;
+        }
+    }
+
+    private static int compare(ByteBuffer data, int position, byte[] rawId) {
+        for (int i = 0; i < rawId.length; i++) {
+            int a = data.get(position + i) & 0xFF;
+            int b = rawId[i] & 0xFF;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Reads a non-delta entry of a pack file.
+     *
+     * @return the object or null if the entry is a delta (type 6 or 7)
+     */
+    private static RawObject readPackEntry(Path pack, long offset) throws IOException, DataFormatException {
+        try (FileChannel channel = FileChannel.open(pack, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            long position = offset;
+            channel.read(buffer, position);
+            buffer.flip();
+
+            int c = buffer.get() & 0xFF;
+            int type = (c >> 4) & 7;
+            long size = c & 15;
+            int shift = 4;
+            while ((c & 0x80) != 0) {
+                c = buffer.get() & 0xFF;
+                size += (long) (c & 0x7f) << shift;
+                shift += 7;
+            }
+            if (type < OBJ_COMMIT || type > OBJ_TAG || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            position += buffer.position();
+
+            byte[] data = new byte[(int) size];
+            int written = 0;
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(buffer.array(), buffer.position(), buffer.remaining());
+                position += buffer.remaining();
+                while (!inflater.finished() && written < data.length) {
+                    if (inflater.needsInput()) {
+                        buffer.clear();
+                        int read = channel.read(buffer, position);
+                        if (read <= 0) {
+                            return null;
+                        }
+                        position += read;
+                        inflater.setInput(buffer.array(), 0, read);
+                    }
+                    written += inflater.inflate(data, written, data.length - written);
+                }
+            } finally {
+                inflater.end();
+            }
+            return written == data.length ? new RawObject(type, data) : null;
+        }
+    }
+
+    private static int typeOf(String name) {
+        switch (name) {
+            case "commit":
+                return OBJ_COMMIT;
+            case "tree":
+                return OBJ_TREE;
+            case "blob":
+                return OBJ_BLOB;
+            case "tag":
+                return OBJ_TAG;
+            default:
+                return -1;
+        }
+    }
+
+    private static byte[] toBytes(String id) {
+        byte[] raw = new byte[20];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = (byte) Integer.parseInt(id.substring(2 * i, 2 * i + 2), 16);
+        }
+        return raw;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int read;
+        while ((read = in.read(chunk)) > 0) {
+            out.write(chunk, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -3,16 +3,17 @@ package net.raumzeitfalle.gradle.gocd.versioning;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.util.SystemReader;
 import org.gradle.api.logging.Logger;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 class GitTagCollector {
 
@@ -20,20 +21,30 @@ class GitTagCollector {
 
     private final Logger logger;
     private final Repository repo;
-    private final Pattern versionTagPattern;
+    private final TagGrammar grammar;
+    private final String tagPrefix;
 
     public GitTagCollector(Repository repo, String versionTagRegex, Logger logger) {
+        this(repo, versionTagRegex, null, logger);
+    }
+
+    /**
+     * @param tagPrefix module prefix (e.g. {@code payments/}), only tags with this prefix are collected and
+     *                  the pattern is matched against the remainder, null to collect tags without prefix
+     */
+    GitTagCollector(Repository repo, String versionTagRegex, String tagPrefix, Logger logger) {
         this.repo = repo;
-        this.versionTagPattern = compilePatternAndWarnOnError(versionTagRegex);
         this.logger = logger;
+        this.grammar = compileGrammarAndWarnOnError(versionTagRegex);
+        this.tagPrefix = ModuleTagIndex.normalizePrefix(tagPrefix);
     }
 
-    private Pattern compilePatternAndWarnOnError(String regex) {
+    private TagGrammar compileGrammarAndWarnOnError(String regex) {
         try {
-            return Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+            return TagGrammar.compile(regex);
         } catch (IllegalArgumentException error) {
             logWarn("The given string is not a valid regular expression: " + regex, error);
-            return Pattern.compile(DEFAULT_VERSIONABLE_TAG_REGEX, Pattern.CASE_INSENSITIVE);
+            return TagGrammar.compile(DEFAULT_VERSIONABLE_TAG_REGEX);
         }
     }
 
@@ -46,10 +57,82 @@ class GitTagCollector {
     }
 
     public Map<ObjectId, String> collectTags() throws IOException {
-        Map<ObjectId, String> tags = new HashMap<>();
-        List<Ref> refs = repo.getRefDatabase().getRefsByPrefix(Constants.R_TAGS);
-        for (Ref ref : refs) {
-            storeSuitableTag(tags, ref);
+        return collectIndex().asMap();
+    }
+
+    /**
+     * Collects all suitable tags keyed by the id of the commit (or object) they finally point to.
+     * For annotated tags, this is the peeled id instead of the id of the tag object.
+     *
+     * With the files based reference storage, only packed-refs and the loose refs/tags directory are
+     * read, all other references (branches, remotes, pull requests) are skipped. Repositories using
+     * reftable are read through the JGit RefDatabase.
+     *
+     * @return index of suitable tags by peeled object id
+     * @throws IOException if the references cannot be read
+     */
+    public TagIndex collectIndex() throws IOException {
+        Path commonDir = new GitDirectoryReader(repo.getDirectory().toPath()).getCommonDir();
+        if (Files.isDirectory(commonDir.resolve("reftable"))) {
+            return collectIndexFromRefDatabase();
+        }
+        try (RevWalk walk = new RevWalk(repo)) {
+            return collectIndex(commonDir, id -> walk.peel(walk.parseAny(id)).copy());
+        }
+    }
+
+    /**
+     * Collects all suitable tags of the files based reference storage in the given directory.
+     * This does not use the repository, it may be null.
+     *
+     * @param commonDir directory containing packed-refs and refs/tags
+     * @param peeler used for annotated tags whose peeled id is not recorded in packed-refs
+     * @return index of suitable tags by peeled object id
+     * @throws IOException if the references cannot be read or a tag cannot be peeled
+     */
+    TagIndex collectIndex(Path commonDir, TagIndex.Peeler peeler) throws IOException {
+        return TagIndex.collect(commonDir, this::parseAndLog, peeler);
+    }
+
+    /**
+     * Collects the suitable tags of all modules with a single scan of the tag references, see
+     * {@link ModuleTagIndex}. The version part of each tag (after the last slash) is parsed once.
+     *
+     * @return index of suitable tags partitioned by module prefix
+     * @throws IOException if the references cannot be read
+     */
+    ModuleTagIndex collectModuleIndex() throws IOException {
+        ModuleTagIndex index = new ModuleTagIndex();
+        Path commonDir = new GitDirectoryReader(repo.getDirectory().toPath()).getCommonDir();
+        if (Files.isDirectory(commonDir.resolve("reftable"))) {
+            RefDatabase refDatabase = repo.getRefDatabase();
+            for (Ref ref : refDatabase.getRefsByPrefix(Constants.R_TAGS)) {
+                VersionTag version = parseModuleTag(ref.getName());
+                if (null != version) {
+                    Ref peeled = ref.isPeeled() ? ref : refDatabase.peel(ref);
+                    index.add(null != peeled.getPeeledObjectId() ? peeled.getPeeledObjectId() : peeled.getObjectId(),
+                              ref.getName(), version);
+                }
+            }
+            return index;
+        }
+        try (RevWalk walk = new RevWalk(repo)) {
+            TagIndex.scan(commonDir, this::parseModuleTag, id -> walk.peel(walk.parseAny(id)).copy(), index::add);
+        }
+        return index;
+    }
+
+    private TagIndex collectIndexFromRefDatabase() throws IOException {
+        TagIndex tags = TagIndex.of(Collections.emptyMap());
+        RefDatabase refDatabase = repo.getRefDatabase();
+        for (Ref ref : refDatabase.getRefsByPrefix(Constants.R_TAGS)) {
+            VersionTag version = parseAndLog(ref.getName());
+            if (null == version) {
+                continue;
+            }
+            Ref peeled = ref.isPeeled() ? ref : refDatabase.peel(ref);
+            ObjectId target = null != peeled.getPeeledObjectId() ? peeled.getPeeledObjectId() : peeled.getObjectId();
+            tags.add(target, ref.getName(), version);
         }
         return tags;
     }
@@ -58,21 +141,30 @@ class GitTagCollector {
         return refName.replace(Constants.R_TAGS, "");
     }
 
-    private void storeSuitableTag(Map<ObjectId, String> tags, Ref commitRef) {
-        String refName = commitRef.getName();
-        String tag = getTag(refName);
-        if (isSuitable(tag)) {
-            ObjectId key = commitRef.getObjectId();
-            tags.put(key, refName);
-        } else {
-            this.logDebug("Ignoring unsuitable tag: {0}", tag);
+    /**
+     * @param refName full reference name (refs/tags/...)
+     * @return The version of a suitable tag or null.
+     */
+    private VersionTag parseAndLog(String refName) {
+        int start = Constants.R_TAGS.length();
+        if (null != tagPrefix) {
+            if (!refName.startsWith(tagPrefix, start)) {
+                return null;
+            }
+            start += tagPrefix.length();
         }
+        return logIfUnsuitable(refName, grammar.parse(refName, start));
+    }
+
+    private VersionTag parseModuleTag(String refName) {
+        return logIfUnsuitable(refName, grammar.parse(refName, refName.lastIndexOf('/') + 1));
     }
 
-    private boolean isSuitable(String tag) {
-        return this.versionTagPattern
-                .matcher(tag)
-                .matches();
+    private VersionTag logIfUnsuitable(String refName, VersionTag version) {
+        if (null == version && null != this.logger && this.logger.isDebugEnabled()) {
+            this.logDebug("Ignoring unsuitable tag: {0}", getTag(refName));
+        }
+        return version;
     }
 
     private void logDebug(String format, Object arg) {
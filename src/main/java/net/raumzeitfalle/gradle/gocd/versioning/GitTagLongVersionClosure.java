@@ -28,12 +28,14 @@ public class GitTagLongVersionClosure extends Closure {
         Logger logger = this.project.getLogger();
         Path buildFilePath = this.project.getBuildFile().toPath().getParent();
         logger.lifecycle("Build file path: {}", buildFilePath);
-        GitTagVersionHelper gitTagHelper = new GitTagVersionHelper(logger, buildFilePath);
+        GitVersionResolution resolution = GitVersionService.obtain(this.project)
+                                                           .resolve(buildFilePath,
+                                                                    this.ext.getSuitableTagRegex(),
+                                                                    this.ext.getMissingTagVersionDefault(),
+                                                                    this.ext.getResolutionOptions(),
+                                                                    logger);
 
-        gitTagHelper.setMissingTagFallback(this.ext.getMissingTagVersionDefault());
-        gitTagHelper.setVersionTagRegex(this.ext.getSuitableTagRegex());
-
-        Optional<GitDetails> latestTag = gitTagHelper.getLatestTag();
+        Optional<GitDetails> latestTag = resolution.getLatestTag();
 
         StringBuilder versionBuilder = new StringBuilder();
 
@@ -50,7 +52,7 @@ public class GitTagLongVersionClosure extends Closure {
 
         logger.warn("GocdVersionPlugin: Cannot read latest related Git Tag to build version number. Trying latest commit ID...");
 
-        Optional<GitDetails> latestCommit = gitTagHelper.getLatestCommit();
+        Optional<GitDetails> latestCommit = resolution.getLatestCommit();
         if (latestCommit.isPresent()) {
             logger.lifecycle("...found commit ID: {}", latestCommit.get().getTag());
             GitDetails details = latestCommit.get();
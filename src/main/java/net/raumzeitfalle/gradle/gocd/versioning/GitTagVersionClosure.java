@@ -29,12 +29,14 @@ public class GitTagVersionClosure extends Closure {
         Logger logger = this.project.getLogger();
         Path buildFilePath = this.project.getBuildFile().toPath().getParent();
         logger.lifecycle("GocdVersionPlugin: Build file path: {}", buildFilePath);
-        GitTagVersionHelper gitTagHelper = new GitTagVersionHelper(logger,
-                                                                   buildFilePath);
+        GitVersionResolution resolution = GitVersionService.obtain(this.project)
+                                                           .resolve(buildFilePath,
+                                                                    this.ext.getSuitableTagRegex(),
+                                                                    null,
+                                                                    this.ext.getResolutionOptions(),
+                                                                    logger);
 
-        gitTagHelper.setVersionTagRegex(this.ext.getSuitableTagRegex());
-
-        Optional<GitDetails> latestTag = gitTagHelper.getLatestTag();
+        Optional<GitDetails> latestTag = resolution.getLatestTag();
 
         if (latestTag.isPresent()) {
             GitDetails details = latestTag.get();
@@ -43,7 +45,7 @@ public class GitTagVersionClosure extends Closure {
         } 
         logger.warn("GocdVersionPlugin: Cannot read latest related Git Tag to build version number. Trying latest commit ID...");
 
-        Optional<GitDetails> latestCommit = gitTagHelper.getLatestCommit();
+        Optional<GitDetails> latestCommit = resolution.getLatestCommit();
         if (latestCommit.isPresent()) {
             logger.lifecycle("GocdVersionPlugin: ...found commit ID: {}", latestCommit.get().getTag());
             return latestCommit.get().getTag();
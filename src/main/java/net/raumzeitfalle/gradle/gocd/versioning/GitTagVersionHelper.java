@@ -1,25 +1,42 @@
 package net.raumzeitfalle.gradle.gocd.versioning;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.lib.*;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.util.SystemReader;
 import org.gradle.api.logging.Logger;
 
 
 public class GitTagVersionHelper {
 
+    /* daemon wide, reported per build by the GitVersionService */
+    private static final AtomicLong HISTORY_WALKS = new AtomicLong();
+
     private final Logger logger;
     private Path workingDir;
     private Path gitDir;
     private String missingTagFallback;
     private String versionTagRegex;
+    private CommitDistanceCheckpoints checkpoints;
+    private CommitCountMode commitCountMode = CommitCountMode.ALL_PARENTS;
+    private WalkBudget walkBudget = WalkBudget.UNLIMITED;
+    private boolean projectScopedCommitCount;
+    private String tagPrefix;
+    private TagSelection tagSelection = TagSelection.NEAREST_TAG;
+    private String startRevision;
+    private String fromRevision;
 
     GitTagVersionHelper(Logger logger) {
         this(logger, Paths.get("."));
@@ -32,36 +49,121 @@ public class GitTagVersionHelper {
         this.versionTagRegex = GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX;
     }
 
+    /**
+     * @return number of latest tag resolutions which had to read the repository, since the class was loaded
+     */
+    static long historyWalks() {
+        return HISTORY_WALKS.get();
+    }
+
     Optional<GitDetails> getLatestTag() {
-        Repository repo = getRepository();
-        if (null == repo) {
-            return Optional.empty();
+        GitDetails onTag = TagSelection.NEAREST_TAG == tagSelection ? getTagOnHeadFromFilesystem() : null;
+        if (null != onTag) {
+            return Optional.of(onTag);
         }
-        logInfo("Found .git in: {}", this.gitDir);
+        try (RepositoryPool.Lease lease = leaseRepository()) {
+            if (null == lease) {
+                return Optional.empty();
+            }
+            Repository repo = lease.getRepository();
+            logInfo("Found .git in: {}", this.gitDir);
 
-        String currentBranch = getBranchName(repo);
-        if (null == currentBranch) {
-            return Optional.empty();
-        }
+            String currentBranch = startFrom(repo);
+            if (null == currentBranch) {
+                return Optional.empty();
+            }
 
-        GitDetails gitDetails = getLatestTagWithCommitCount(repo, currentBranch);
-        if (!gitDetails.isValid()) {
-            return Optional.empty();
+            GitDetails gitDetails = getLatestTagWithCommitCount(repo, currentBranch);
+            if (!gitDetails.isValid()) {
+                return Optional.empty();
+            }
+            return Optional.of(gitDetails);
         }
-        return Optional.of(gitDetails);
     }
 
     Optional<GitDetails> getLatestCommit() {
-        Repository repo = getRepository();
-        if (null == repo) {
-            return Optional.empty();
+        GitDetails headCommit = getLatestCommitFromFilesystem();
+        if (null != headCommit) {
+            return Optional.of(headCommit);
         }
-        logInfo("Found .git in: {}", this.gitDir);
+        try (RepositoryPool.Lease lease = leaseRepository()) {
+            if (null == lease) {
+                return Optional.empty();
+            }
+            Repository repo = lease.getRepository();
+            logInfo("Found .git in: {}", this.gitDir);
 
-        String currentBranch = getBranchName(repo);
-        if (null == currentBranch) {
-            return Optional.empty();
+            String currentBranch = startFrom(repo);
+            if (null == currentBranch) {
+                return Optional.empty();
+            }
+            return null == startRevision ? getLatestCommit(repo) : getCommit(repo, currentBranch);
         }
+    }
+
+    /**
+     * Answers release builds, where HEAD is exactly on a suitable tag, by reading HEAD, the tag
+     * references and the few required objects directly. The commit distance of such a tag is always zero,
+     * so neither JGit nor a history walk is required.
+     *
+     * @return details of the tag on HEAD or null when there is none or the full resolution is required
+     */
+    private GitDetails getTagOnHeadFromFilesystem() {
+        Path fastGitDir = GitDirectoryReader.findGitDir(workingDir);
+        if (null == fastGitDir) {
+            return null;
+        }
+        GitDirectoryReader reader = new GitDirectoryReader(fastGitDir);
+        String head = null != startRevision ? startRevision : reader.readHeadCommitId();
+        if (null == head || Files.isDirectory(reader.getCommonDir().resolve("reftable"))) {
+            return null;
+        }
+        GitObjectReader objects = new GitObjectReader(reader.getCommonDir());
+        TagIndex tags;
+        try {
+            tags = new GitTagCollector(null, versionTagRegex, tagPrefix, logger).collectIndex(reader.getCommonDir(), id -> {
+                String peeled = objects.peel(id.getName());
+                if (null == peeled) {
+                    throw new IOException("Cannot peel " + id.getName() + " without JGit.");
+                }
+                return ObjectId.fromString(peeled);
+            });
+        } catch (IOException error) {
+            return null;
+        }
+        String tagRef = tags.findTag(ObjectId.fromString(head));
+        ZonedDateTime commitDateTime = null == tagRef ? null : objects.readCommitDateTime(head);
+        if (null == commitDateTime) {
+            return null;
+        }
+        this.gitDir = fastGitDir;
+        logInfo("HEAD is tagged with {}, no history walk required.", getTag(tagRef));
+        return new GitDetails(getTag(tagRef), 0, head, commitDateTime);
+    }
+
+    /**
+     * Reads the HEAD commit without JGit.
+     *
+     * @return details of the HEAD commit or null when it cannot be read directly
+     */
+    private GitDetails getLatestCommitFromFilesystem() {
+        Path fastGitDir = GitDirectoryReader.findGitDir(workingDir);
+        if (null == fastGitDir) {
+            return null;
+        }
+        GitDirectoryReader reader = new GitDirectoryReader(fastGitDir);
+        String head = null != startRevision ? startRevision : reader.readHeadCommitId();
+        ZonedDateTime commitDateTime = null == head
+                ? null
+                : new GitObjectReader(reader.getCommonDir()).readCommitDateTime(head);
+        if (null == commitDateTime) {
+            return null;
+        }
+        this.gitDir = fastGitDir;
+        return new GitDetails(head.substring(0, 7), 0, head, commitDateTime);
+    }
+
+    private Optional<GitDetails> getLatestCommit(Repository repo) {
         RevCommit sourceCommit = null;
         try (Git git = new Git(repo)) {
             Iterable<RevCommit> commitlog = git.log().call();
@@ -84,70 +186,752 @@ public class GitTagVersionHelper {
         return Optional.of(details);
     }
 
+    private Optional<GitDetails> getCommit(Repository repo, String commitId) {
+        try (RevWalk walk = new RevWalk(repo)) {
+            RevCommit commit = walk.parseCommit(ObjectId.fromString(commitId));
+            return Optional.of(new GitDetails(commit.getName().substring(0, 7), 0, commit));
+        } catch (IOException error) {
+            logError("Could not obtain details of commit " + commitId, error);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * GoCD checks out the revision of the material, often as detached HEAD. Starting from this known commit
+     * saves resolving HEAD and the branch.
+     *
+     * @return the material revision if the repository contains it, otherwise the current branch
+     */
+    private String startFrom(Repository repo) {
+        if (null != startRevision) {
+            try {
+                if (repo.getObjectDatabase().has(ObjectId.fromString(startRevision))) {
+                    return startRevision;
+                }
+            } catch (IOException error) {
+                logError("Could not look up the material revision " + startRevision, error);
+            }
+            logWarn("GocdVersionPlugin: The material revision " + startRevision
+                    + " is not contained in the repository, using HEAD instead.");
+        }
+        return getBranchName(repo);
+    }
+
+    /**
+     * Extends the details of an earlier commit (e.g. the commit of the previous pipeline run) to the start
+     * commit by walking the first parents between them. With the first parent commit count and the nearest tag,
+     * the tag stays the same and the distance grows by the number of commits in between, as long as none of
+     * them is tagged. The walk is bounded by the modifications of the pipeline run: it ends after the oldest
+     * modification ({@code GO_FROM_REVISION}) and its parent.
+     *
+     * @param earlier details of an earlier resolution based on the same tags
+     * @return details of the start commit or null, when the range of modifications is unknown, the earlier commit
+     *         is not reached, a suitable tag is found in between or the mode does not allow to extend the distance
+     */
+    GitDetails extendFirstParentDistance(GitDetails earlier) {
+        if (CommitCountMode.FIRST_PARENT != commitCountMode || TagSelection.NEAREST_TAG != tagSelection
+                || projectScopedCommitCount || null == fromRevision || earlier.isTruncated()
+                || !MaterialRevision.isGitCommitId(earlier.getCommitName())) {
+            return null;
+        }
+        try (RepositoryPool.Lease lease = leaseRepository()) {
+            if (null == lease) {
+                return null;
+            }
+            Repository repo = lease.getRepository();
+            String start = startFrom(repo);
+            ObjectId startId = null == start ? null : repo.resolve(start + "^{commit}");
+            if (null == startId) {
+                return null;
+            }
+            ObjectId earlierId = ObjectId.fromString(earlier.getCommitName());
+            ObjectId oldestModification = ObjectId.fromString(fromRevision);
+            TagIndex tags = collectTags(repo);
+            WalkBudget.Tracker tracker = walkBudget.start();
+            int steps = 0;
+            boolean passedOldest = false;
+            try (FirstParentCursor cursor = new FirstParentCursor(repo, openCommitGraph(repo), startId)) {
+                for (; cursor.isValid(); cursor.next()) {
+                    if (cursor.getId().equals(earlierId)) {
+                        logInfo("Extended the commit distance of the previous build by {} commits.", steps);
+                        RevCommit head = repo.parseCommit(startId);
+                        return new GitDetails(earlier.getTag(), earlier.getCommitCount() + steps, head);
+                    }
+                    if (passedOldest || null != tags.findTag(cursor.getId()) || tracker.isExceeded(steps)) {
+                        return null;
+                    }
+                    passedOldest = cursor.getId().equals(oldestModification);
+                    steps += 1;
+                }
+            }
+            return null;
+        } catch (IOException error) {
+            logError("Could not extend the commit distance of " + earlier.getCommitName(), error);
+            return null;
+        }
+    }
+
     private String getTag(String refName) {
-        return refName.replace(Constants.R_TAGS, "");
+        String tag = refName.replace(Constants.R_TAGS, "");
+        return null != tagPrefix && tag.startsWith(tagPrefix) ? tag.substring(tagPrefix.length()) : tag;
     }
 
     private GitDetails getLatestTagWithCommitCount(Repository repo, String branch) {
+        HISTORY_WALKS.incrementAndGet();
+
+        TagIndex tags;
+        try {
+            if (null != tagPrefix) {
+                ModuleTagWalk modules = ModuleTagWalk.shared(moduleTagWalkKey(repo, branch));
+                ModuleTagIndex index = modules.getIndex(
+                        () -> new GitTagCollector(repo, versionTagRegex, logger).collectModuleIndex());
+                tags = index.get(tagPrefix);
+                if (!tags.isEmpty() && !projectScopedCommitCount && TagSelection.NEAREST_TAG == tagSelection) {
+                    return modules.getNearestTags(all -> getNearestModuleTags(repo, branch, all)).get(tagPrefix);
+                }
+            } else {
+                tags = new GitTagCollector(repo, versionTagRegex, logger).collectIndex();
+            }
+        } catch (IOException error) {
+            logError("Could not collect the tags of the given repository.", error);
+            tags = TagIndex.of(Collections.emptyMap());
+        }
+        return getLatestTagWithCommitCount(repo, branch, tags, getScopePath(repo));
+    }
 
-        GitTagCollector tagCollector = new GitTagCollector(repo, versionTagRegex, logger);
-        Map<ObjectId, String> tags = tagCollector.collect();
+    private GitDetails getLatestTagWithCommitCount(Repository repo, String branch, TagIndex tags, String scopePath) {
+        GitDetails fromCommitGraph = getLatestTagWithCommitCountFromCommitGraph(repo, branch, tags, scopePath);
+        if (null != fromCommitGraph) {
+            return fromCommitGraph;
+        }
+        if (TagSelection.HIGHEST_VERSION == tagSelection && !tags.isEmpty()) {
+            return getHighestTagWithCommitCount(repo, branch, tags, scopePath);
+        }
 
         int commitCount = -1;
+        int changes = 0;
         String tagName = null;
         RevCommit lastCommit = null;
-        try (Git git = new Git(repo)) {
-            if (!tags.isEmpty()) {
-                Map<AnyObjectId, Set<Ref>> peeledIdsByRefs = repo.getAllRefsByPeeledObjectId();
-                Iterable<RevCommit> commitlog = git.log().add(repo.resolve(branch)).call();
+        boolean truncated = false;
+        WalkBudget.Tracker tracker = walkBudget.start();
+        try (RevWalk commitlog = new RevWalk(repo);
+             PathScope scope = null == scopePath ? null : new PathScope(repo, scopePath, openCommitGraph(repo))) {
+            if (!tags.isEmpty() || null != scope) {
+                commitlog.setFirstParent(CommitCountMode.FIRST_PARENT == commitCountMode);
+                commitlog.markStart(commitlog.parseCommit(repo.resolve(branch)));
                 for (RevCommit commit : commitlog) {
-                    commitCount += 1;
                     if (lastCommit == null) {
                         lastCommit = commit;
                     }
-
-                    Set<Ref> relatedRefs = peeledIdsByRefs.get(commit.getId());
-                    if (relatedRefs != null) {
-                        for (Ref ref : relatedRefs) {
-                            String relatedRef = tags.get(ref.getObjectId());
-                            if (relatedRef != null) {
-                                tagName = getTag(relatedRef);
-                                break;
-                            }
-                        }
+                    if (tracker.isExceeded(commitCount + 1)) {
+                        truncated = true;
+                        commitCount += 1;
+                        break;
                     }
+                    commitCount += 1;
 
-                    if (tagName == null) {
-                        if (tags.containsKey(commit.getId())) {
-                            tagName = tags.get(commit.getId())
-                                    .replace(Constants.R_TAGS, "");
-                            break;
-                        }
+                    String relatedRef = tags.findTag(commit);
+                    if (relatedRef != null) {
+                        tagName = getTag(relatedRef);
+                        break;
+                    }
+                    if (null != scope && scope.changed(commit)) {
+                        changes += 1;
                     }
+                }
+                if (null != scope) {
+                    commitCount = changes;
+                    logScope(scope);
+                }
+            } else {
+                ObjectId head = repo.resolve(branch);
+                tagName = this.missingTagFallback;
+                lastCommit = repo.parseCommit(head);
+                int reachable = countReachableCommits(repo, head, tracker);
+                truncated = reachable < 0;
+                commitCount = truncated ? -reachable : reachable - 1;
+                if (null != checkpoints && CommitCountMode.ALL_PARENTS == commitCountMode && !truncated) {
+                    checkpoints.store(head, commitCount);
+                }
+            }
+        } catch (Exception error) {
+            logError("Could not collect all git branch/tag/commit details for the given repository.", error);
+        }
+        if (null == tagName || truncated) {
+            tagName = this.missingTagFallback;
+        }
+        if (truncated) {
+            logTruncation(commitCount);
+        }
+        return new GitDetails(tagName, commitCount, lastCommit, truncated);
+    }
+
+    private void logTruncation(int visited) {
+        logWarn(String.format("GocdVersionPlugin: Stopped the history walk after %d commits (%s), no suitable tag found. "
+                                      + "Using %s with commit distance %d+.",
+                              visited, walkBudget, this.missingTagFallback, visited));
+    }
+
+
+    /**
+     * Resolves tag and commit distance from git's commit-graph file, if there is one which
+     * contains the current HEAD. Otherwise null is returned and the regular walk is used.
+     */
+    private GitDetails getLatestTagWithCommitCountFromCommitGraph(Repository repo, String branch, TagIndex tags,
+                                                                  String scopePath) {
+        try {
+            Path commonDir = new GitDirectoryReader(repo.getDirectory().toPath()).getCommonDir();
+            CommitGraph graph = CommitGraph.open(commonDir);
+            if (null == graph) {
+                return null;
+            }
+            ObjectId head = repo.resolve(branch);
+            int headPosition = null == head ? -1 : graph.findPosition(head);
+            if (headPosition < 0) {
+                logInfo("The commit-graph does not contain {}, walking the commit history instead.", branch);
+                return null;
+            }
+
+            Map<Integer, String> tagsByPosition = new HashMap<>();
+            Map<Integer, VersionTag> versionsByPosition = new HashMap<>();
+            mapTagsToPositions(graph, tags, tagsByPosition, versionsByPosition);
+
+            try (PathScope scope = null == scopePath ? null : new PathScope(repo, scopePath, graph)) {
+                CommitGraphDistanceEngine engine = null == scope
+                        ? new CommitGraphDistanceEngine(graph, walkBudget)
+                        : new CommitGraphDistanceEngine(graph, walkBudget, scope::changedAt);
+                CommitGraphDistanceEngine.Distance distance = findDistance(engine, headPosition, tagsByPosition,
+                                                                           versionsByPosition);
+                logInfo("Resolved commit distance using commit-graph of: {}", commonDir);
+                logScope(scope);
+                return toGitDetails(distance, repo.parseCommit(head));
+            }
+        } catch (Exception error) {
+            logInfo("Cannot use commit-graph, walking the commit history instead: {}", error.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Adds the graph positions of all tagged commits, the versions only when the highest version is selected.
+     */
+    private void mapTagsToPositions(CommitGraph graph, TagIndex tags, Map<Integer, String> tagsByPosition,
+                                    Map<Integer, VersionTag> versionsByPosition) {
+        boolean highest = TagSelection.HIGHEST_VERSION == tagSelection;
+        tags.forEach((id, tag) -> {
+            int position = graph.findPosition(id);
+            if (position >= 0 && null == tagsByPosition.putIfAbsent(position, tag) && highest) {
+                versionsByPosition.put(position, tags.findVersion(id));
+            }
+        });
+    }
+
+    private CommitGraphDistanceEngine.Distance findDistance(CommitGraphDistanceEngine engine, int headPosition,
+                                                            Map<Integer, String> tagsByPosition,
+                                                            Map<Integer, VersionTag> versionsByPosition) {
+        boolean firstParent = CommitCountMode.FIRST_PARENT == commitCountMode;
+        if (TagSelection.HIGHEST_VERSION == tagSelection) {
+            return firstParent
+                    ? engine.findHighestTagOnFirstParents(headPosition, tagsByPosition, versionsByPosition)
+                    : engine.findHighestTag(headPosition, tagsByPosition, versionsByPosition);
+        }
+        return firstParent
+                ? engine.findNearestTagOnFirstParents(headPosition, tagsByPosition)
+                : engine.findNearestTag(headPosition, tagsByPosition);
+    }
+
+    private GitDetails toGitDetails(CommitGraphDistanceEngine.Distance distance, RevCommit head) {
+        String tagName = null == distance.getTag() ? this.missingTagFallback : getTag(distance.getTag());
+        if (distance.isTruncated()) {
+            logTruncation(distance.getCommitCount());
+        }
+        return new GitDetails(tagName, distance.getCommitCount(), head, distance.isTruncated());
+    }
+
+    /**
+     * Resolves the latest tag of many refs at once, e.g. of all branches (see {@link RefPatterns}). The refs and
+     * tags are read once, refs pointing to the same commit are resolved once. With a commit-graph, all heads
+     * share the graph and the tag positions, first parent walks share the distances of the commits already
+     * visited and all other walks run in parallel when requested. The commits of the whole repository are
+     * counted, the project directory does not matter.
+     *
+     * @param refPatterns ref names, globs or revisions
+     * @param parallel true to walk the heads on several threads
+     * @return details by ref name, refs which cannot be resolved are missing
+     */
+    Map<String, GitDetails> getLatestTags(Collection<String> refPatterns, boolean parallel) {
+        Map<String, GitDetails> details = new LinkedHashMap<>();
+        try (RepositoryPool.Lease lease = leaseRepository()) {
+            if (null == lease) {
+                return details;
+            }
+            Repository repo = lease.getRepository();
+            Map<String, ObjectId> refs = RefPatterns.resolve(repo, refPatterns);
+            Set<ObjectId> heads = new LinkedHashSet<>(refs.values());
+            logInfo("Resolving the latest tags of {}", String.format("%d refs (%d distinct commits)",
+                                                                       refs.size(), heads.size()));
+            TagIndex tags = collectTags(repo);
+
+            Map<ObjectId, GitDetails> byHead = getLatestTagsFromCommitGraph(repo, heads, tags, parallel);
+            for (ObjectId head : heads) {
+                if (!byHead.containsKey(head)) {
+                    byHead.put(head, getLatestTagWithCommitCount(repo, head.getName(), tags, null));
+                }
+            }
+            refs.forEach((ref, head) -> details.put(ref, byHead.get(head)));
+        } catch (IOException error) {
+            logError("Could not resolve the latest tags of the given refs.", error);
+        }
+        return details;
+    }
+
+    private TagIndex collectTags(Repository repo) throws IOException {
+        GitTagCollector collector = new GitTagCollector(repo, versionTagRegex, logger);
+        return null == tagPrefix ? collector.collectIndex() : collector.collectModuleIndex().get(tagPrefix);
+    }
+
+    /**
+     * Receives the rows of a version history.
+     */
+    interface HistoryConsumer {
+        /**
+         * @param details details a resolution at the commit yields, the commit date is in UTC
+         */
+        void accept(GitDetails details) throws IOException;
+    }
+
+    /**
+     * Reports the details a resolution would yield at every first parent commit from {@code to} back to
+     * {@code from}, newest commit first. Each row is passed on as soon as it is known. The commits of the whole
+     * repository are counted, the project directory does not matter.
+     *
+     * With {@link CommitCountMode#FIRST_PARENT} and the nearest tag, one cursor runs ahead to the next tag while
+     * a second one reports the commits up to it, hence the memory used does not depend on the length of the
+     * history. Otherwise every row is resolved on its own, on the commit-graph when possible.
+     *
+     * @param to newest commit, e.g. {@code HEAD}
+     * @param from oldest commit (included), null to walk to the root commit
+     * @param consumer receives the rows
+     * @return number of rows, -1 when there is no repository or a revision cannot be resolved
+     * @throws IOException if the repository cannot be read or the consumer fails
+     */
+    int walkVersionHistory(String to, String from, HistoryConsumer consumer) throws IOException {
+        try (RepositoryPool.Lease lease = leaseRepository()) {
+            if (null == lease) {
+                return -1;
+            }
+            Repository repo = lease.getRepository();
+            ObjectId end = repo.resolve(to + "^{commit}");
+            ObjectId start = null == from ? null : repo.resolve(from + "^{commit}");
+            if (null == end || (null != from && null == start)) {
+                logWarn(String.format("GocdVersionPlugin: Cannot resolve the commit range %s..%s", from, to));
+                return -1;
+            }
+            TagIndex tags = collectTags(repo);
+            CommitGraph graph = openCommitGraph(repo);
+            if (CommitCountMode.FIRST_PARENT == commitCountMode && TagSelection.NEAREST_TAG == tagSelection) {
+                return streamFirstParentHistory(repo, graph, tags, end, start, consumer);
+            }
+            return resolveHistory(repo, graph, tags, end, start, consumer);
+        }
+    }
 
-                    if (tagName != null) {
+    private int streamFirstParentHistory(Repository repo, CommitGraph graph, TagIndex tags, ObjectId end,
+                                         ObjectId start, HistoryConsumer consumer) throws IOException {
+        int rows = 0;
+        try (FirstParentCursor scout = new FirstParentCursor(repo, graph, end);
+             FirstParentCursor row = new FirstParentCursor(repo, graph, end)) {
+            /* number of commits the scout is ahead of the row cursor */
+            int ahead = 0;
+            while (row.isValid()) {
+                String relatedRef = null;
+                while (scout.isValid()) {
+                    relatedRef = tags.findTag(scout.getId());
+                    if (null != relatedRef) {
                         break;
                     }
+                    scout.next();
+                    ahead += 1;
+                }
+                /* without tag, the distance counts the commits up to the root commit */
+                int distance = scout.isValid() ? ahead : ahead - 1;
+                String tagName = null == relatedRef ? this.missingTagFallback : getTag(relatedRef);
+                while (row.isValid() && distance >= 0) {
+                    consumer.accept(new GitDetails(tagName, distance, row.getId().getName(),
+                                                   utc(row.getCommitTime()), false));
+                    rows += 1;
+                    if (row.getId().equals(start)) {
+                        return rows;
+                    }
+                    row.next();
+                    distance -= 1;
+                    ahead -= 1;
+                }
+                if (scout.isValid()) {
+                    scout.next();
+                    ahead += 1;
+                }
+            }
+        }
+        return rows;
+    }
+
+    private int resolveHistory(Repository repo, CommitGraph graph, TagIndex tags, ObjectId end, ObjectId start,
+                               HistoryConsumer consumer) throws IOException {
+        Map<Integer, String> tagsByPosition = new HashMap<>();
+        Map<Integer, VersionTag> versionsByPosition = new HashMap<>();
+        CommitGraphDistanceEngine engine = null;
+        if (null != graph) {
+            mapTagsToPositions(graph, tags, tagsByPosition, versionsByPosition);
+            engine = new CommitGraphDistanceEngine(graph, walkBudget);
+        }
+        int rows = 0;
+        try (FirstParentCursor row = new FirstParentCursor(repo, graph, end)) {
+            for (; row.isValid(); row.next()) {
+                String commitName = row.getId().getName();
+                int position = null == engine ? -1 : graph.findPosition(row.getId());
+                GitDetails details;
+                if (position >= 0) {
+                    CommitGraphDistanceEngine.Distance distance = findDistance(engine, position, tagsByPosition,
+                                                                               versionsByPosition);
+                    String tagName = null == distance.getTag() ? this.missingTagFallback : getTag(distance.getTag());
+                    details = new GitDetails(tagName, distance.getCommitCount(), commitName,
+                                             utc(row.getCommitTime()), distance.isTruncated());
+                } else {
+                    GitDetails resolved = getLatestTagWithCommitCount(repo, commitName, tags, null);
+                    details = new GitDetails(resolved.getTag(), resolved.getCommitCount(), commitName,
+                                             utc(row.getCommitTime()), resolved.isTruncated());
+                }
+                consumer.accept(details);
+                rows += 1;
+                if (row.getId().equals(start)) {
+                    break;
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static ZonedDateTime utc(long commitTime) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(commitTime), ZoneOffset.UTC);
+    }
+
+    /**
+     * @return details of all heads contained in the commit-graph, empty when there is no usable commit-graph
+     */
+    private Map<ObjectId, GitDetails> getLatestTagsFromCommitGraph(Repository repo, Collection<ObjectId> heads,
+                                                                   TagIndex tags, boolean parallel) {
+        Map<ObjectId, GitDetails> details = new HashMap<>();
+        try {
+            Path commonDir = new GitDirectoryReader(repo.getDirectory().toPath()).getCommonDir();
+            CommitGraph graph = CommitGraph.open(commonDir);
+            if (null == graph) {
+                return details;
+            }
+            List<ObjectId> found = new ArrayList<>();
+            int[] positions = new int[heads.size()];
+            for (ObjectId head : heads) {
+                int position = graph.findPosition(head);
+                if (position >= 0) {
+                    positions[found.size()] = position;
+                    found.add(head);
                 }
+            }
+            int[] headPositions = Arrays.copyOf(positions, found.size());
+            Map<Integer, String> tagsByPosition = new HashMap<>();
+            Map<Integer, VersionTag> versionsByPosition = new HashMap<>();
+            mapTagsToPositions(graph, tags, tagsByPosition, versionsByPosition);
+
+            CommitGraphDistanceEngine engine = new CommitGraphDistanceEngine(graph, walkBudget);
+            CommitGraphDistanceEngine.Distance[] distances;
+            if (CommitCountMode.FIRST_PARENT == commitCountMode && TagSelection.NEAREST_TAG == tagSelection) {
+                distances = engine.findNearestTagOnFirstParents(headPositions, tagsByPosition);
             } else {
-                Iterable<RevCommit> commitlog = git.log().add(repo.resolve(branch)).call();
-                for (RevCommit commit : commitlog) {
-                    tagName = this.missingTagFallback;
-                    if (lastCommit == null) {
-                        lastCommit = commit;
+                CommitGraphDistanceEngine.Distance[] walked =
+                        new CommitGraphDistanceEngine.Distance[headPositions.length];
+                IntStream indexes = IntStream.range(0, headPositions.length);
+                (parallel ? indexes.parallel() : indexes).forEach(
+                        i -> walked[i] = findDistance(engine, headPositions[i], tagsByPosition, versionsByPosition));
+                distances = walked;
+            }
+            for (int i = 0; i < distances.length; i++) {
+                details.put(found.get(i), toGitDetails(distances[i], repo.parseCommit(found.get(i))));
+            }
+            logInfo("Resolved commit distances using commit-graph of: {}", commonDir);
+            return details;
+        } catch (Exception error) {
+            logInfo("Cannot use commit-graph, walking the commit history instead: {}", error.getMessage());
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * Selects the highest version reachable from HEAD without commit-graph: one walk over all reachable
+     * commits (or first parents) finds the tag, a second one counts the commits reachable from HEAD but not
+     * from the tag. With first parents, the commits before the tag are counted.
+     */
+    private GitDetails getHighestTagWithCommitCount(Repository repo, String branch, TagIndex tags,
+                                                    String scopePath) {
+        boolean firstParent = CommitCountMode.FIRST_PARENT == commitCountMode;
+        WalkBudget.Tracker tracker = walkBudget.start();
+        int visited = 0;
+        int commitCount = -1;
+        String tagName = null;
+        RevCommit lastCommit = null;
+        boolean truncated = false;
+        try (RevWalk commitlog = new RevWalk(repo)) {
+            ObjectId head = repo.resolve(branch);
+            lastCommit = repo.parseCommit(head);
+            commitlog.setRetainBody(false);
+            commitlog.setFirstParent(firstParent);
+            commitlog.markStart(commitlog.parseCommit(head));
+            RevCommit tagged = null;
+            VersionTag highest = null;
+            for (RevCommit commit : commitlog) {
+                if (tracker.isExceeded(visited)) {
+                    truncated = true;
+                    break;
+                }
+                visited += 1;
+                String relatedRef = tags.findTag(commit);
+                VersionTag version = null == relatedRef ? null : tags.findVersion(commit);
+                if (null != relatedRef) {
+                    version = null == version ? VersionTag.UNVERSIONED : version;
+                    if (null == highest || version.compareTo(highest) > 0) {
+                        highest = version;
+                        tagged = commit;
+                        tagName = getTag(relatedRef);
                     }
-                    commitCount += 1;
                 }
             }
+            if (!truncated) {
+                commitCount = countCommitsAfter(repo, head, tagged, scopePath, tracker, visited);
+                truncated = commitCount < 0;
+                commitCount = truncated ? -commitCount : commitCount;
+            } else {
+                commitCount = visited;
+            }
         } catch (Exception error) {
             logError("Could not collect all git branch/tag/commit details for the given repository.", error);
         }
-        if (null == tagName) {
+        if (null == tagName || truncated) {
             tagName = this.missingTagFallback;
         }
-        return new GitDetails(tagName, commitCount, lastCommit);
+        if (truncated) {
+            logTruncation(commitCount);
+        }
+        return new GitDetails(tagName, commitCount, lastCommit, truncated);
+    }
+
+    /**
+     * @param tagged the selected tagged commit, null when there is no tag
+     * @param visited number of commits visited so far
+     * @return Number of commits reachable from head but not from the tagged commit (only first parents before it
+     *         with {@link CommitCountMode#FIRST_PARENT}), the negated number of visited commits when the walk budget
+     *         is exhausted.
+     */
+    private int countCommitsAfter(Repository repo, ObjectId head, RevCommit tagged, String scopePath,
+                                  WalkBudget.Tracker tracker, int visited) throws IOException {
+        boolean firstParent = CommitCountMode.FIRST_PARENT == commitCountMode;
+        int count = 0;
+        try (RevWalk walk = new RevWalk(repo);
+             PathScope scope = null == scopePath ? null : new PathScope(repo, scopePath, openCommitGraph(repo))) {
+            walk.setRetainBody(false);
+            walk.setFirstParent(firstParent);
+            walk.markStart(walk.parseCommit(head));
+            if (null != tagged && !firstParent) {
+                walk.markUninteresting(walk.parseCommit(tagged));
+            }
+            for (RevCommit commit : walk) {
+                if (commit.equals(tagged)) {
+                    break;
+                }
+                if (tracker.isExceeded(visited)) {
+                    return -visited;
+                }
+                visited += 1;
+                if (null == scope || scope.changed(commit)) {
+                    count += 1;
+                }
+            }
+            logScope(scope);
+            /* without tag, HEAD itself is not counted (like the nearest tag walk) */
+            return null == tagged && null == scope ? count - 1 : count;
+        }
     }
 
+    private ModuleTagWalk.Key moduleTagWalkKey(Repository repo, String branch) throws IOException {
+        GitDirectoryReader reader = new GitDirectoryReader(repo.getDirectory().toPath());
+        ObjectId head = repo.resolve(branch);
+        String fingerprint = reader.tagRefsFingerprint();
+        if (null == head || null == fingerprint || Files.isDirectory(reader.getCommonDir().resolve("reftable"))) {
+            return null;
+        }
+        return new ModuleTagWalk.Key(reader.getCommonDir(), head.getName(), fingerprint, versionTagRegex.trim(),
+                                     missingTagFallback, commitCountMode, walkBudget);
+    }
+
+    /**
+     * Finds the nearest tag of every module with a single walk, using the commit-graph when possible.
+     *
+     * @return details by module prefix, tag names without prefix
+     */
+    private Map<String, GitDetails> getNearestModuleTags(Repository repo, String branch, ModuleTagIndex index) {
+        Set<String> prefixes = index.getModulePrefixes();
+        logInfo("Resolving the latest tags of {} modules with a single history walk.", prefixes.size());
+        Map<String, GitDetails> fromCommitGraph = getNearestModuleTagsFromCommitGraph(repo, branch, index, prefixes);
+        if (null != fromCommitGraph) {
+            return fromCommitGraph;
+        }
+        Map<String, String> tagNames = new HashMap<>();
+        Map<String, Integer> commitCounts = new HashMap<>();
+        int commitCount = -1;
+        RevCommit lastCommit = null;
+        boolean truncated = false;
+        WalkBudget.Tracker tracker = walkBudget.start();
+        try (RevWalk commitlog = new RevWalk(repo)) {
+            commitlog.setFirstParent(CommitCountMode.FIRST_PARENT == commitCountMode);
+            commitlog.markStart(commitlog.parseCommit(repo.resolve(branch)));
+            for (RevCommit commit : commitlog) {
+                if (lastCommit == null) {
+                    lastCommit = commit;
+                }
+                if (tracker.isExceeded(commitCount + 1)) {
+                    truncated = true;
+                    commitCount += 1;
+                    break;
+                }
+                commitCount += 1;
+                for (String prefix : prefixes) {
+                    String relatedRef = tagNames.containsKey(prefix) ? null : index.get(prefix).findTag(commit);
+                    if (null != relatedRef) {
+                        tagNames.put(prefix, relatedRef.substring(Constants.R_TAGS.length() + prefix.length()));
+                        commitCounts.put(prefix, commitCount);
+                    }
+                }
+                if (tagNames.size() == prefixes.size()) {
+                    break;
+                }
+            }
+        } catch (Exception error) {
+            logError("Could not collect all git branch/tag/commit details for the given repository.", error);
+        }
+        if (truncated) {
+            logTruncation(commitCount);
+        }
+        Map<String, GitDetails> details = new HashMap<>();
+        for (String prefix : prefixes) {
+            String tagName = tagNames.getOrDefault(prefix, this.missingTagFallback);
+            int count = commitCounts.getOrDefault(prefix, commitCount);
+            details.put(prefix, new GitDetails(tagName, count, lastCommit, truncated && !tagNames.containsKey(prefix)));
+        }
+        return details;
+    }
+
+    private Map<String, GitDetails> getNearestModuleTagsFromCommitGraph(Repository repo, String branch,
+                                                                         ModuleTagIndex index, Set<String> prefixes) {
+        try {
+            Path commonDir = new GitDirectoryReader(repo.getDirectory().toPath()).getCommonDir();
+            CommitGraph graph = CommitGraph.open(commonDir);
+            ObjectId head = repo.resolve(branch);
+            int headPosition = null == graph || null == head ? -1 : graph.findPosition(head);
+            if (headPosition < 0) {
+                return null;
+            }
+            Map<Integer, Map<String, String>> tagsByPosition = new HashMap<>();
+            for (String prefix : prefixes) {
+                index.get(prefix).forEach((id, tag) -> {
+                    int position = graph.findPosition(id);
+                    if (position >= 0) {
+                        tagsByPosition.computeIfAbsent(position, p -> new HashMap<>()).putIfAbsent(prefix, tag);
+                    }
+                });
+            }
+            CommitGraphDistanceEngine engine = new CommitGraphDistanceEngine(graph, walkBudget);
+            Map<String, CommitGraphDistanceEngine.Distance> distances = CommitCountMode.FIRST_PARENT == commitCountMode
+                    ? engine.findNearestTagsOnFirstParents(headPosition, tagsByPosition, prefixes)
+                    : engine.findNearestTags(headPosition, tagsByPosition, prefixes);
+            logInfo("Resolved module commit distances using commit-graph of: {}", commonDir);
+            RevCommit headCommit = repo.parseCommit(head);
+            Map<String, GitDetails> details = new HashMap<>();
+            for (Map.Entry<String, CommitGraphDistanceEngine.Distance> entry : distances.entrySet()) {
+                CommitGraphDistanceEngine.Distance distance = entry.getValue();
+                String tagName = null == distance.getTag()
+                        ? this.missingTagFallback
+                        : distance.getTag().substring(Constants.R_TAGS.length() + entry.getKey().length());
+                if (distance.isTruncated()) {
+                    logTruncation(distance.getCommitCount());
+                }
+                details.put(entry.getKey(), new GitDetails(tagName, distance.getCommitCount(), headCommit,
+                                                           distance.isTruncated()));
+            }
+            return details;
+        } catch (Exception error) {
+            logInfo("Cannot use commit-graph, walking the commit history instead: {}", error.getMessage());
+            return null;
+        }
+    }
+
+    private void logScope(PathScope scope) {
+        if (null != scope) {
+            logInfo("Counted only the commits which changed the project directory: {}",
+                    String.format("%s (%d commits skipped by changed-path filters, %d trees compared)",
+                                  scope.getPath(), scope.getFilteredCount(), scope.getComparedCount()));
+        }
+    }
+
+    private static CommitGraph openCommitGraph(Repository repo) {
+        try {
+            return CommitGraph.open(new GitDirectoryReader(repo.getDirectory().toPath()).getCommonDir());
+        } catch (IOException error) {
+            return null;
+        }
+    }
+
+    /**
+     * @return Directory of the project relative to the work tree, null when commits of the whole
+     *         repository are counted.
+     */
+    private String getScopePath(Repository repo) {
+        if (!projectScopedCommitCount || repo.isBare()) {
+            return null;
+        }
+        try {
+            Path workTree = repo.getWorkTree().toPath().toRealPath();
+            Path project = workingDir.toRealPath();
+            if (!project.startsWith(workTree) || project.equals(workTree)) {
+                return null;
+            }
+            return workTree.relativize(project).toString().replace('\\', '/');
+        } catch (IOException error) {
+            logWarn("Cannot determine the project directory within the repository, counting all commits.");
+            return null;
+        }
+    }
+
+    /**
+     * @return Number of commits reachable from head including head, or the negated number
+     *         of commits visited when the walk budget was exhausted.
+     */
+    private int countReachableCommits(Repository repo, ObjectId head, WalkBudget.Tracker tracker) throws IOException {
+        boolean firstParent = CommitCountMode.FIRST_PARENT == commitCountMode;
+        if (null != checkpoints && !firstParent && !walkBudget.isLimited()) {
+            return checkpoints.countReachableCommits(repo, head);
+        }
+        int count = 0;
+        try (RevWalk walk = new RevWalk(repo)) {
+            walk.setRetainBody(false);
+            walk.setFirstParent(firstParent);
+            walk.markStart(walk.parseCommit(head));
+            for (RevCommit ignored : walk) {
+                if (tracker.isExceeded(count)) {
+                    return -count;
+                }
+                count += 1;
+            }
+        }
+        return count;
+    }
 
     protected String getBranchName(Repository repo) {
         try {
@@ -158,13 +942,14 @@ public class GitTagVersionHelper {
         }
     }
 
+    /**
+     * Opens the repository without pooling, the caller is responsible for closing it.
+     */
     protected Repository getRepository() {
+        JGitNoExecSystemReader.install();
         logInfo("Looking for git repository in: {}", workingDir.toAbsolutePath().normalize());
         try {
-            Repository repo = new RepositoryBuilder().findGitDir(workingDir.toFile())
-                    .readEnvironment()
-                    .setMustExist(true)
-                    .build();
+            Repository repo = repositoryBuilder().build();
             this.gitDir = repo.getDirectory().toPath().toAbsolutePath();
             logInfo("Found git repository in: {}", this.gitDir);
             return repo;
@@ -174,6 +959,35 @@ public class GitTagVersionHelper {
         }
     }
 
+    /**
+     * Leases the repository from the daemon wide {@link RepositoryPool}, so that pack indexes
+     * loaded by earlier resolutions are reused. The lease must be closed, the repository not.
+     */
+    private RepositoryPool.Lease leaseRepository() {
+        JGitNoExecSystemReader.install();
+        logInfo("Looking for git repository in: {}", workingDir.toAbsolutePath().normalize());
+        try {
+            RepositoryBuilder builder = repositoryBuilder();
+            if (null == builder.getGitDir()) {
+                logWarn("Could not find a valid .git repository!");
+                return null;
+            }
+            RepositoryPool.Lease lease = RepositoryPool.shared().acquire(builder.getGitDir().toPath(), builder::build);
+            this.gitDir = lease.getRepository().getDirectory().toPath().toAbsolutePath();
+            logInfo("Found git repository in: {}", this.gitDir);
+            return lease;
+        } catch (Exception error) {
+            logWarn("Could not find a valid .git repository!");
+            return null;
+        }
+    }
+
+    private RepositoryBuilder repositoryBuilder() {
+        return new RepositoryBuilder().findGitDir(workingDir.toFile())
+                .readEnvironment()
+                .setMustExist(true);
+    }
+
     GitTagVersionHelper setMissingTagFallback(String missingTagVersionDefault) {
         Objects.requireNonNull(missingTagVersionDefault, "missing tag version default must never be null!");
         this.missingTagFallback = missingTagVersionDefault;
@@ -186,6 +1000,66 @@ public class GitTagVersionHelper {
         return this;
     }
 
+    GitTagVersionHelper setCommitCountMode(CommitCountMode mode) {
+        this.commitCountMode = null == mode ? CommitCountMode.ALL_PARENTS : mode;
+        return this;
+    }
+
+    GitTagVersionHelper setWalkBudget(WalkBudget budget) {
+        this.walkBudget = null == budget ? WalkBudget.UNLIMITED : budget;
+        return this;
+    }
+
+    /**
+     * Counts only the commits which changed the working directory (the project directory),
+     * instead of all commits of the repository.
+     */
+    GitTagVersionHelper setProjectScopedCommitCount(boolean projectScoped) {
+        this.projectScopedCommitCount = projectScoped;
+        return this;
+    }
+
+    /**
+     * Uses module prefixed tags like {@code payments/v2.3.1}, the version tag pattern then applies to the part
+     * after the prefix and the prefix is not part of the resulting tag name.
+     *
+     * @param prefix module prefix, e.g. {@code payments/}, null for tags without prefix
+     */
+    GitTagVersionHelper setTagPrefix(String prefix) {
+        this.tagPrefix = ModuleTagIndex.normalizePrefix(prefix);
+        return this;
+    }
+
+    /**
+     * Selects the highest version reachable from HEAD instead of the nearest tag.
+     *
+     * @param selection the selection, null restores {@link TagSelection#NEAREST_TAG}
+     */
+    GitTagVersionHelper setTagSelection(TagSelection selection) {
+        this.tagSelection = null == selection ? TagSelection.NEAREST_TAG : selection;
+        return this;
+    }
+
+    /**
+     * Starts from the revision GoCD built instead of HEAD, and uses the range of modifications to extend an
+     * earlier result, see {@link #extendFirstParentDistance(GitDetails)}. Revisions other than Git commit ids
+     * are ignored.
+     *
+     * @param revision revisions of the material, null to start from HEAD
+     */
+    GitTagVersionHelper setMaterialRevision(MaterialRevision revision) {
+        String built = null == revision ? null : revision.getBuiltRevision();
+        this.startRevision = MaterialRevision.isGitCommitId(built) ? built.toLowerCase(Locale.ROOT) : null;
+        String from = null == revision ? null : revision.getFromRevision();
+        this.fromRevision = MaterialRevision.isGitCommitId(from) ? from.toLowerCase(Locale.ROOT) : null;
+        return this;
+    }
+
+    GitTagVersionHelper setCheckpoints(CommitDistanceCheckpoints checkpoints) {
+        this.checkpoints = checkpoints;
+        return this;
+    }
+
     private void logError(String errorMessage, Throwable throwable) {
         if (this.logger != null) {
             this.logger.error(errorMessage, throwable);
@@ -213,16 +1087,44 @@ public class GitTagVersionHelper {
     static class GitDetails {
         private final String tagName;
         private final int commitCount;
-        private final RevCommit commit;
+        private final String commitName;
+        private final ZonedDateTime commitDateTime;
+        private final boolean truncated;
 
         public GitDetails(String tagName, int commitCount, RevCommit commit) {
+            this(tagName, commitCount, commit, false);
+        }
+
+        GitDetails(String tagName, int commitCount, RevCommit commit, boolean truncated) {
+            this(tagName,
+                 commitCount,
+                 null == commit ? null : commit.getName(),
+                 null == commit ? null : commitDateTime(commit),
+                 truncated);
+        }
+
+        GitDetails(String tagName, int commitCount, String commitName, ZonedDateTime commitDateTime) {
+            this(tagName, commitCount, commitName, commitDateTime, false);
+        }
+
+        GitDetails(String tagName, int commitCount, String commitName, ZonedDateTime commitDateTime,
+                   boolean truncated) {
             this.tagName = tagName;
             this.commitCount = commitCount;
-            this.commit = commit;
+            this.commitName = commitName;
+            this.commitDateTime = commitDateTime;
+            this.truncated = truncated;
+        }
+
+        private static ZonedDateTime commitDateTime(RevCommit commit) {
+            PersonIdent ident = commit.getCommitterIdent();
+            TimeZone timeZone = ident.getTimeZone();
+            Date date = ident.getWhen();
+            return ZonedDateTime.ofInstant(date.toInstant(), timeZone.toZoneId());
         }
 
         boolean isValid() {
-            if (commit == null) {
+            if (commitName == null) {
                 return false;
             }
             if (commitCount < 0) {
@@ -239,11 +1141,11 @@ public class GitTagVersionHelper {
         }
 
         public String getShortCommitName() {
-            return commit.getName().substring(0, 7);
+            return commitName.substring(0, 7);
         }
 
         public String getCommitName() {
-            return commit.getName();
+            return commitName;
         }
 
         public int getCommitCount() {
@@ -251,14 +1153,23 @@ public class GitTagVersionHelper {
         }
 
         public ZonedDateTime getCommitDateTime() {
-            PersonIdent ident = commit.getCommitterIdent();
-            TimeZone timeZone = ident.getTimeZone();
-            Date date = ident.getWhen();
-            return ZonedDateTime.ofInstant(date.toInstant(), timeZone.toZoneId());
+            return commitDateTime;
+        }
+
+        /**
+         * @return true when the walk budget was exhausted before a tag was found, the
+         *         commit count then is a lower bound of the real distance
+         */
+        public boolean isTruncated() {
+            return truncated;
         }
 
         public String map(GocdVersionPluginExtension extension) {
-            if (extension.getAppendGitCommitCountToGitTagVersion()) {
+            return map(extension.getAppendGitCommitCountToGitTagVersion());
+        }
+
+        String map(boolean appendCommitCount) {
+            if (appendCommitCount) {
                 if (tagName.toUpperCase().endsWith("-SNAPSHOT")) {
                     return tagName;
                 }
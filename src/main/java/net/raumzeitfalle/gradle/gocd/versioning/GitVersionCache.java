@@ -0,0 +1,255 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Properties;
+
+import org.gradle.api.logging.Logger;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+
+/**
+ * Persistent cache for resolved {@link GitDetails}, usually located in the {@code .gradle}
+ * directory of the root project.
+ *
+ * An entry is only valid for the HEAD commit, the tag settings and the tag references
+ * fingerprint it was created with. Looking up an entry never opens a JGit repository.
+ */
+class GitVersionCache {
+
+    private static final String FORMAT_VERSION = "1";
+
+    private final Path cacheDir;
+
+    private final Logger logger;
+
+    GitVersionCache(Path cacheDir, Logger logger) {
+        this.cacheDir = Objects.requireNonNull(cacheDir, "cacheDir must not be null");
+        this.logger = logger;
+    }
+
+    /**
+     * Determines the cache key for the current state of the given git directory.
+     *
+     * @param options commit count mode, tag selection, module tag prefix and material revision of the resolution
+     * @param scope project directory when only commits changing it are counted, otherwise null
+     * @return The cache key or null, when HEAD or the tag references cannot be read.
+     */
+    CacheKey keyFor(Path gitDir, String versionTagRegex, String missingTagFallback, ResolutionOptions options,
+                    Path scope) {
+        GitDirectoryReader reader = new GitDirectoryReader(gitDir);
+        String head = startCommitId(reader, options.getMaterialRevision());
+        if (null == head) {
+            return null;
+        }
+        String fingerprint = reader.tagRefsFingerprint();
+        if (null == fingerprint) {
+            return null;
+        }
+        return new CacheKey(gitDir, head, fingerprint, versionTagRegex, missingTagFallback,
+                            options.getCommitCountMode(), null == scope ? null : scope.toString(),
+                            options.getTagPrefix(), options.getTagSelection());
+    }
+
+    /**
+     * Resolution starts from the material revision only when the repository contains it, otherwise from HEAD.
+     * The key must name the same commit, so that a result based on HEAD is never stored for the revision.
+     *
+     * @return The start commit id or null, when it cannot be determined without JGit.
+     */
+    private static String startCommitId(GitDirectoryReader reader, MaterialRevision material) {
+        String revision = null == material ? null : material.getBuiltRevision();
+        if (!MaterialRevision.isGitCommitId(revision)) {
+            return reader.readHeadCommitId();
+        }
+        String commitId = revision.toLowerCase(Locale.ROOT);
+        Boolean contained = new GitObjectReader(reader.getCommonDir()).contains(commitId);
+        if (null == contained) {
+            return null;
+        }
+        return contained ? commitId : reader.readHeadCommitId();
+    }
+
+    GitDetails load(CacheKey key) {
+        return read(key, true);
+    }
+
+    /**
+     * Loads the entry of the same repository, settings and tags, even when it was created for another HEAD
+     * commit, e.g. by the previous build of a CI agent.
+     *
+     * @return details of the earlier HEAD commit or null
+     */
+    GitDetails loadEarlier(CacheKey key) {
+        return read(key, false);
+    }
+
+    private GitDetails read(CacheKey key, boolean sameHead) {
+        Path entry = cacheDir.resolve(key.fileName());
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(entry)) {
+            properties.load(in);
+        } catch (IOException error) {
+            logDebug("GocdVersionPlugin: Cannot read version cache entry {}", entry);
+            return null;
+        }
+        if (!FORMAT_VERSION.equals(properties.getProperty("format"))
+                || (sameHead && !key.head.equals(properties.getProperty("head")))
+                || !key.fingerprint.equals(properties.getProperty("fingerprint"))) {
+            logDebug("GocdVersionPlugin: Version cache entry {} is stale.", entry);
+            return null;
+        }
+        String tag = properties.getProperty("tag");
+        String commitCount = properties.getProperty("commitCount");
+        String commitName = properties.getProperty("commitName");
+        String commitDateTime = properties.getProperty("commitDateTime");
+        if (null == commitCount || null == commitName || null == commitDateTime) {
+            logDebug("GocdVersionPlugin: Ignoring incomplete version cache entry {}", entry);
+            return null;
+        }
+        try {
+            return new GitDetails(tag,
+                                  Integer.parseInt(commitCount),
+                                  commitName,
+                                  ZonedDateTime.parse(commitDateTime));
+        } catch (NumberFormatException | DateTimeParseException error) {
+            logDebug("GocdVersionPlugin: Ignoring malformed version cache entry {}", entry);
+            return null;
+        }
+    }
+
+    void store(CacheKey key, GitDetails details) {
+        if (null == details.getCommitName() || null == details.getCommitDateTime()) {
+            return;
+        }
+        Properties properties = new Properties();
+        properties.setProperty("format", FORMAT_VERSION);
+        properties.setProperty("gitDir", key.gitDir.toString());
+        properties.setProperty("head", key.head);
+        properties.setProperty("fingerprint", key.fingerprint);
+        if (null != details.getTag()) {
+            properties.setProperty("tag", details.getTag());
+        }
+        properties.setProperty("commitCount", Integer.toString(details.getCommitCount()));
+        properties.setProperty("commitName", details.getCommitName());
+        properties.setProperty("commitDateTime", details.getCommitDateTime().toString());
+        try {
+            Files.createDirectories(cacheDir);
+            Path entry = cacheDir.resolve(key.fileName());
+            Path temp = Files.createTempFile(cacheDir, key.fileName(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, "GocdVersionPlugin version cache");
+            }
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException error) {
+            logDebug("GocdVersionPlugin: Cannot write version cache entry in {}", cacheDir);
+        }
+    }
+
+    private void logDebug(String format, Object arg) {
+        if (this.logger != null) {
+            this.logger.debug(format, arg);
+        }
+    }
+
+    static final class CacheKey {
+        private final Path gitDir;
+        private final String head;
+        private final String fingerprint;
+        private final String versionTagRegex;
+        private final String missingTagFallback;
+        private final CommitCountMode commitCountMode;
+        private final String scope;
+        private final String tagPrefix;
+        private final TagSelection tagSelection;
+
+        CacheKey(Path gitDir, String head, String fingerprint, String versionTagRegex, String missingTagFallback,
+                 CommitCountMode commitCountMode, String scope, String tagPrefix, TagSelection tagSelection) {
+            this.gitDir = gitDir;
+            this.head = head;
+            this.fingerprint = fingerprint;
+            this.versionTagRegex = versionTagRegex;
+            this.missingTagFallback = missingTagFallback;
+            this.commitCountMode = commitCountMode;
+            this.scope = scope;
+            this.tagPrefix = tagPrefix;
+            this.tagSelection = tagSelection;
+        }
+
+        /**
+         * One entry per repository and tag settings, HEAD and fingerprint are verified on load,
+         * so that the cache directory does not grow with every commit.
+         */
+        String fileName() {
+            String settings = gitDir + "\n" + versionTagRegex + "\n" + missingTagFallback;
+            if (CommitCountMode.FIRST_PARENT == commitCountMode) {
+                /* existing entries of the default mode remain valid */
+                settings += "\n" + commitCountMode;
+            }
+            if (null != scope) {
+                settings += "\nscope=" + scope;
+            }
+            if (null != tagPrefix) {
+                settings += "\ntagPrefix=" + tagPrefix;
+            }
+            if (TagSelection.HIGHEST_VERSION == tagSelection) {
+                settings += "\n" + tagSelection;
+            }
+            return "version-" + GitDirectoryReader.sha1Hex(settings) + ".properties";
+        }
+
+        /**
+         * @return commit the entry is valid for
+         */
+        String getHead() {
+            return head;
+        }
+
+        long estimatedBytes() {
+            return DaemonVersionCache.estimatedBytes(gitDir.toString())
+                    + DaemonVersionCache.estimatedBytes(head)
+                    + DaemonVersionCache.estimatedBytes(fingerprint)
+                    + DaemonVersionCache.estimatedBytes(versionTagRegex)
+                    + DaemonVersionCache.estimatedBytes(missingTagFallback)
+                    + DaemonVersionCache.estimatedBytes(scope)
+                    + DaemonVersionCache.estimatedBytes(tagPrefix);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey that = (CacheKey) other;
+            return gitDir.equals(that.gitDir)
+                    && head.equals(that.head)
+                    && fingerprint.equals(that.fingerprint)
+                    && Objects.equals(versionTagRegex, that.versionTagRegex)
+                    && Objects.equals(missingTagFallback, that.missingTagFallback)
+                    && commitCountMode == that.commitCountMode
+                    && Objects.equals(scope, that.scope)
+                    && Objects.equals(tagPrefix, that.tagPrefix)
+                    && tagSelection == that.tagSelection;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(gitDir, head, fingerprint, versionTagRegex, missingTagFallback, commitCountMode, scope,
+                                tagPrefix, tagSelection);
+        }
+    }
+}
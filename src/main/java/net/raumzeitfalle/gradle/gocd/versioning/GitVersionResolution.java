@@ -0,0 +1,114 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+
+/**
+ * Memoizes the results of a {@link GitTagVersionHelper} so that the latest tag and the
+ * latest commit of a repository are only determined once, regardless how often they are requested.
+ *
+ * When a persistent {@link GitVersionCache} is available, a matching cache entry is used instead
+ * of walking the commit history and a fresh walk result is written back to the cache. Entries
+ * are also kept in the {@link DaemonVersionCache}, which is consulted before the persistent cache.
+ * An entry of an earlier HEAD commit, e.g. of the previous build on a CI agent, is extended by the
+ * commits added since when possible, see {@link GitTagVersionHelper#extendFirstParentDistance(GitDetails)}.
+ */
+class GitVersionResolution {
+
+    private final GitTagVersionHelper helper;
+
+    private final GitVersionCache cache;
+
+    private final GitVersionCache.CacheKey cacheKey;
+
+    private final DaemonVersionCache daemonCache;
+
+    private Optional<GitDetails> latestTag;
+
+    private Optional<GitDetails> latestCommit;
+
+    GitVersionResolution(GitTagVersionHelper helper) {
+        this(helper, null, null);
+    }
+
+    GitVersionResolution(GitTagVersionHelper helper, GitVersionCache cache, GitVersionCache.CacheKey cacheKey) {
+        this(helper, cache, cacheKey, DaemonVersionCache.shared());
+    }
+
+    GitVersionResolution(GitTagVersionHelper helper, GitVersionCache cache, GitVersionCache.CacheKey cacheKey,
+                         DaemonVersionCache daemonCache) {
+        this.helper = Objects.requireNonNull(helper, "helper must not be null");
+        this.cache = cache;
+        this.cacheKey = cacheKey;
+        this.daemonCache = Objects.requireNonNull(daemonCache, "daemonCache must not be null");
+    }
+
+    synchronized Optional<GitDetails> getLatestTag() {
+        if (null == latestTag) {
+            latestTag = loadOrResolveLatestTag();
+        }
+        return latestTag;
+    }
+
+    private Optional<GitDetails> loadOrResolveLatestTag() {
+        if (null == cache || null == cacheKey) {
+            return helper.getLatestTag();
+        }
+        GitDetails cached = loadCached();
+        if (null != cached) {
+            return Optional.of(cached);
+        }
+        GitDetails earlier = cache.loadEarlier(cacheKey);
+        GitDetails extended = null == earlier || earlier.getCommitName().equals(cacheKey.getHead())
+                ? null
+                : helper.extendFirstParentDistance(earlier);
+        Optional<GitDetails> resolved = null != extended ? Optional.of(extended) : helper.getLatestTag();
+        resolved.filter(details -> !details.isTruncated())
+                .ifPresent(details -> {
+                    cache.store(cacheKey, details);
+                    daemonCache.put(cacheKey, details);
+                });
+        return resolved;
+    }
+
+    private GitDetails loadCached() {
+        GitDetails remembered = daemonCache.get(cacheKey);
+        if (null != remembered) {
+            return remembered;
+        }
+        GitDetails cached = cache.load(cacheKey);
+        if (null != cached) {
+            daemonCache.put(cacheKey, cached);
+        }
+        return cached;
+    }
+
+    synchronized Optional<GitDetails> getLatestCommit() {
+        if (null == latestCommit) {
+            latestCommit = deriveLatestCommitFromCache();
+        }
+        if (null == latestCommit) {
+            latestCommit = helper.getLatestCommit();
+        }
+        return latestCommit;
+    }
+
+    /**
+     * A cached tag resolution already knows the HEAD commit, hence the latest
+     * commit can be derived from it without opening the repository.
+     */
+    private Optional<GitDetails> deriveLatestCommitFromCache() {
+        if (null == cache || null == cacheKey) {
+            return null;
+        }
+        GitDetails cached = null != latestTag && latestTag.isPresent() ? latestTag.get() : loadCached();
+        if (null == cached) {
+            return null;
+        }
+        return Optional.of(new GitDetails(cached.getShortCommitName(), 0,
+                                          cached.getCommitName(),
+                                          cached.getCommitDateTime()));
+    }
+}
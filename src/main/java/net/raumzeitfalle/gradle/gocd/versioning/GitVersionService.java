@@ -0,0 +1,363 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.gradle.api.Project;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.HistoryConsumer;
+
+/**
+ * Build scoped service which resolves Git details (tag, commit distance, commit id and date) once per
+ * discovered git directory and serves all closures and all (sub-)projects of a build from that result.
+ *
+ * Without this service, every project and every closure invocation opened a new repository and walked
+ * the commit history again. Across builds, results are kept in a persistent {@link GitVersionCache}.
+ * Concurrent requests (parallel project configuration) for the same repository and settings wait
+ * for the one resolution in flight instead of opening the repository again.
+ *
+ * Repositories stay open in the daemon wide {@link RepositoryPool}, when the build finishes
+ * idle repositories beyond the pool limits are closed.
+ */
+public abstract class GitVersionService implements BuildService<GitVersionService.Params>, AutoCloseable {
+
+    public interface Params extends BuildServiceParameters {
+        /**
+         * @return Directory for the persistent version cache. When not set, no persistent cache is used.
+         */
+        DirectoryProperty getCacheDirectory();
+    }
+
+    static final String SERVICE_NAME = "gocdGitVersionService";
+
+    private static final String CACHE_DIR_NAME = "gocd-version";
+
+    private final Map<Path, Path> gitDirsByWorkingDir = new ConcurrentHashMap<>();
+
+    private final Map<ResolutionKey, GitVersionResolution> resolutions = new ConcurrentHashMap<>();
+
+    private final long historyWalksAtStart = GitTagVersionHelper.historyWalks();
+
+    /**
+     * Shared by all value sources of this class loader, which are not bound to a service instance.
+     */
+    private static final SingleFlight<ResolutionKey, Optional<GitDetails>> LATEST_TAGS = new SingleFlight<>();
+
+    static Provider<GitVersionService> register(Project project) {
+        File cacheDir = defaultCacheDirectory(project);
+        return project.getGradle()
+                      .getSharedServices()
+                      .registerIfAbsent(SERVICE_NAME, GitVersionService.class,
+                                        spec -> spec.getParameters().getCacheDirectory().set(cacheDir));
+    }
+
+    static GitVersionService obtain(Project project) {
+        return register(project).get();
+    }
+
+    /**
+     * Number of times the tags and commit history of a repository were read to resolve a latest tag since this
+     * service was created, i.e. resolutions which were not served from a cache. Resolutions of other builds
+     * running concurrently in the same daemon are included.
+     *
+     * @return number of history walks of this build
+     */
+    public long getHistoryWalks() {
+        return GitTagVersionHelper.historyWalks() - historyWalksAtStart;
+    }
+
+    /**
+     * Called by Gradle at the end of the build.
+     */
+    @Override
+    public void close() {
+        RepositoryPool.shared().evictIdle();
+    }
+
+    /**
+     * Provides the Git resolution for the repository containing the given working directory.
+     * All callers working in the same repository with the same settings share one resolution.
+     *
+     * @param workingDir directory where to start the search for a git repository
+     * @param versionTagRegex regular expression describing a tag suitable as a version number
+     * @param missingTagFallback tag name to be used when no suitable tag exists, may be null
+     * @param logger logger used for the (single) resolution, may be null
+     * @return shared resolution, never null
+     */
+    GitVersionResolution resolve(Path workingDir, String versionTagRegex, String missingTagFallback, Logger logger) {
+        return resolve(workingDir, versionTagRegex, missingTagFallback, ResolutionOptions.DEFAULT, logger);
+    }
+
+    /**
+     * Provides the Git resolution for the repository containing the given working directory.
+     * All callers working in the same repository with the same settings share one resolution.
+     *
+     * @param workingDir directory where to start the search for a git repository
+     * @param versionTagRegex regular expression describing a tag suitable as a version number
+     * @param missingTagFallback tag name to be used when no suitable tag exists, may be null
+     * @param options commit count mode, walk budget and project scope of the resolution
+     * @param logger logger used for the (single) resolution, may be null
+     * @return shared resolution, never null
+     */
+    GitVersionResolution resolve(Path workingDir,
+                                 String versionTagRegex,
+                                 String missingTagFallback,
+                                 ResolutionOptions options,
+                                 Logger logger) {
+        Path normalizedWorkingDir = workingDir.toAbsolutePath().normalize();
+        Path gitDir = findGitDir(normalizedWorkingDir);
+        if (null == gitDir) {
+            /*
+             * Without a repository there is nothing to share, the helper will report the
+             * missing repository as before.
+             */
+            return new GitVersionResolution(createHelper(normalizedWorkingDir, versionTagRegex, missingTagFallback,
+                                                         options, logger));
+        }
+        ResolutionKey key = new ResolutionKey(gitDir, normalizedWorkingDir, versionTagRegex, missingTagFallback, options);
+        GitVersionResolution resolution = resolutions.get(key);
+        if (null == resolution) {
+            GitVersionResolution created = createResolution(cacheDirectory(), gitDir, normalizedWorkingDir,
+                                                            versionTagRegex, missingTagFallback, options, logger);
+            resolution = resolutions.putIfAbsent(key, created);
+            if (null == resolution) {
+                resolution = created;
+            }
+        }
+        return resolution;
+    }
+
+    /**
+     * Resolves tag, commit distance and commit id of many refs of the repository containing the given working
+     * directory at once, e.g. of all branches. Refs and tags are read once and the heads share one commit-graph
+     * walk state, see {@link GitTagVersionHelper#getLatestTags(Collection, boolean)}. Results are not cached.
+     *
+     * @param workingDir directory where to start the search for a git repository
+     * @param versionTagRegex regular expression describing a tag suitable as a version number
+     * @param missingTagFallback tag name to be used when no suitable tag exists, may be null
+     * @param options commit count mode, walk budget, tag selection and prefix, the project scope is ignored
+     * @param refPatterns ref names, globs (e.g. {@code refs/heads/*}) or revisions
+     * @param parallel true to walk independent heads on several threads
+     * @param logger logger, may be null
+     * @return details by ref name, refs which cannot be resolved are missing
+     */
+    Map<String, GitDetails> resolveVersions(Path workingDir,
+                                            String versionTagRegex,
+                                            String missingTagFallback,
+                                            ResolutionOptions options,
+                                            Collection<String> refPatterns,
+                                            boolean parallel,
+                                            Logger logger) {
+        return createHelper(workingDir.toAbsolutePath().normalize(), versionTagRegex, missingTagFallback, options,
+                            logger).getLatestTags(refPatterns, parallel);
+    }
+
+    /**
+     * Reports tag, commit distance and commit id at every first parent commit of a commit range, newest commit
+     * first, see {@link GitTagVersionHelper#walkVersionHistory(String, String, HistoryConsumer)}. Results are
+     * not cached.
+     *
+     * @param workingDir directory where to start the search for a git repository
+     * @param versionTagRegex regular expression describing a tag suitable as a version number
+     * @param missingTagFallback tag name to be used when no suitable tag exists, may be null
+     * @param options commit count mode, tag selection and module tag prefix of the resolution
+     * @param to newest commit of the range
+     * @param from oldest commit of the range (included), null to walk to the root commit
+     * @param consumer receives the rows
+     * @param logger logger used for the resolution, may be null
+     * @return number of rows, -1 when there is no repository or the range cannot be resolved
+     * @throws IOException if the repository cannot be read or the consumer fails
+     */
+    int walkVersionHistory(Path workingDir,
+                           String versionTagRegex,
+                           String missingTagFallback,
+                           ResolutionOptions options,
+                           String to,
+                           String from,
+                           HistoryConsumer consumer,
+                           Logger logger) throws IOException {
+        return createHelper(workingDir.toAbsolutePath().normalize(), versionTagRegex, missingTagFallback, options,
+                            logger).walkVersionHistory(to, from, consumer);
+    }
+
+    /**
+     * Creates an unshared resolution for the given git directory, backed by the persistent
+     * cache and the distance checkpoints in the given cache directory.
+     *
+     * @param cacheDir directory of the persistent cache, may be null
+     * @param gitDir the git directory of the repository
+     * @param workingDir directory where to start the search for a git repository
+     * @param versionTagRegex regular expression describing a tag suitable as a version number
+     * @param missingTagFallback tag name to be used when no suitable tag exists, may be null
+     * @param options commit count mode, walk budget (truncated results are not stored in the persistent cache)
+     *                and project scope of the resolution
+     * @param logger logger used for the resolution, may be null
+     * @return new resolution
+     */
+    static GitVersionResolution createResolution(Path cacheDir,
+                                                 Path gitDir,
+                                                 Path workingDir,
+                                                 String versionTagRegex,
+                                                 String missingTagFallback,
+                                                 ResolutionOptions options,
+                                                 Logger logger) {
+        GitTagVersionHelper helper = createHelper(workingDir, versionTagRegex, missingTagFallback, options, logger);
+        if (null == cacheDir || null == gitDir) {
+            return new GitVersionResolution(helper);
+        }
+        helper.setCheckpoints(new CommitDistanceCheckpoints(cacheDir, gitDir, logger));
+        GitVersionCache cache = new GitVersionCache(cacheDir, logger);
+        GitVersionCache.CacheKey cacheKey = cache.keyFor(gitDir, versionTagRegex.trim(), missingTagFallback,
+                                                         options, scopeOf(workingDir, options));
+        return new GitVersionResolution(helper, cache, cacheKey);
+    }
+
+    /**
+     * Resolves the latest tag like {@link #createResolution}, concurrent calls for the same
+     * git directory and settings share a single resolution.
+     *
+     * @return latest tag details, empty when there is no repository or no commit
+     */
+    static Optional<GitDetails> resolveLatestTag(Path cacheDir,
+                                                 Path gitDir,
+                                                 Path workingDir,
+                                                 String versionTagRegex,
+                                                 String missingTagFallback,
+                                                 ResolutionOptions options,
+                                                 Logger logger) {
+        Supplier<Optional<GitDetails>> resolution = () -> createResolution(cacheDir, gitDir, workingDir,
+                                                                           versionTagRegex, missingTagFallback,
+                                                                           options, logger)
+                                                          .getLatestTag();
+        if (null == gitDir) {
+            return resolution.get();
+        }
+        ResolutionKey key = new ResolutionKey(gitDir, workingDir, versionTagRegex, missingTagFallback, options);
+        return LATEST_TAGS.execute(key, resolution);
+    }
+
+    /**
+     * Finds the git directory without JGit when possible, JGit is only used when git environment
+     * variables are set or no git directory was found.
+     */
+    static Path findGitDir(File workingDir) {
+        Path gitDir = GitDirectoryReader.findGitDir(workingDir.toPath());
+        if (null != gitDir) {
+            return gitDir;
+        }
+        JGitNoExecSystemReader.install();
+        RepositoryBuilder builder = new RepositoryBuilder().readEnvironment()
+                                                           .findGitDir(workingDir);
+        if (null == builder.getGitDir()) {
+            return null;
+        }
+        return builder.getGitDir().toPath().toAbsolutePath().normalize();
+    }
+
+    static File defaultCacheDirectory(Project project) {
+        File projectCacheDir = project.getGradle().getStartParameter().getProjectCacheDir();
+        return null != projectCacheDir
+                ? new File(projectCacheDir, CACHE_DIR_NAME)
+                : project.getRootDir().toPath().resolve(".gradle").resolve(CACHE_DIR_NAME).toFile();
+    }
+
+    private Path findGitDir(Path workingDir) {
+        Path known = gitDirsByWorkingDir.get(workingDir);
+        if (null != known) {
+            return known;
+        }
+        Path gitDir = findGitDir(workingDir.toFile());
+        if (null != gitDir) {
+            gitDirsByWorkingDir.put(workingDir, gitDir);
+        }
+        return gitDir;
+    }
+
+    private Path cacheDirectory() {
+        if (!getParameters().getCacheDirectory().isPresent()) {
+            return null;
+        }
+        return getParameters().getCacheDirectory().get().getAsFile().toPath();
+    }
+
+    private static GitTagVersionHelper createHelper(Path workingDir,
+                                                    String versionTagRegex,
+                                                    String missingTagFallback,
+                                                    ResolutionOptions options,
+                                                    Logger logger) {
+        GitTagVersionHelper helper = new GitTagVersionHelper(logger, workingDir);
+        helper.setVersionTagRegex(versionTagRegex);
+        helper.setCommitCountMode(options.getCommitCountMode());
+        helper.setWalkBudget(options.getWalkBudget());
+        helper.setProjectScopedCommitCount(options.isProjectScopedCommitCount());
+        helper.setTagPrefix(options.getTagPrefix());
+        helper.setTagSelection(options.getTagSelection());
+        helper.setMaterialRevision(options.getMaterialRevision());
+        if (null != missingTagFallback) {
+            helper.setMissingTagFallback(missingTagFallback);
+        }
+        return helper;
+    }
+
+    /**
+     * Project scoped counts differ per project directory, all other resolutions are shared by
+     * every project of the repository.
+     */
+    private static Path scopeOf(Path workingDir, ResolutionOptions options) {
+        return options.isProjectScopedCommitCount() && null != workingDir
+                ? workingDir.toAbsolutePath().normalize()
+                : null;
+    }
+
+    private static final class ResolutionKey {
+        private final Path gitDir;
+        private final Path scope;
+        private final String versionTagRegex;
+        private final String missingTagFallback;
+        private final ResolutionOptions options;
+
+        ResolutionKey(Path gitDir, Path workingDir, String versionTagRegex, String missingTagFallback,
+                      ResolutionOptions options) {
+            this.gitDir = gitDir;
+            this.scope = scopeOf(workingDir, options);
+            this.versionTagRegex = versionTagRegex.trim();
+            this.missingTagFallback = missingTagFallback;
+            this.options = options;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof ResolutionKey)) {
+                return false;
+            }
+            ResolutionKey that = (ResolutionKey) other;
+            return gitDir.equals(that.gitDir)
+                    && Objects.equals(scope, that.scope)
+                    && versionTagRegex.equals(that.versionTagRegex)
+                    && Objects.equals(missingTagFallback, that.missingTagFallback)
+                    && options.equals(that.options);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(gitDir, scope, versionTagRegex, missingTagFallback, options);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ValueSource;
+import org.gradle.api.provider.ValueSourceParameters;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+
+/**
+ * Provides the Git tag based version (tag plus optional commit count) of a project directory.
+ *
+ * Reading the repository inside a {@link ValueSource} keeps the files below {@code .git} from
+ * becoming configuration cache inputs. Instead, Gradle obtains the value again before reusing a
+ * cache entry and only discards the entry if the version changed. Thanks to the persistent
+ * {@link GitVersionCache} that check reads HEAD and the tag references but does not open the repository.
+ *
+ * On GoCD, a valid {@link VersionHandoff} of the pipeline run is used before the repository is looked at.
+ */
+public abstract class GitVersionValueSource implements ValueSource<String, GitVersionValueSource.Params> {
+
+    public interface Params extends ValueSourceParameters {
+        DirectoryProperty getWorkingDirectory();
+
+        DirectoryProperty getCacheDirectory();
+
+        Property<String> getVersionTagRegex();
+
+        Property<String> getMissingTagFallback();
+
+        Property<Boolean> getAppendCommitCount();
+
+        Property<CommitCountMode> getCommitCountMode();
+
+        Property<Integer> getMaxWalkDepth();
+
+        Property<Long> getWalkTimeoutMillis();
+
+        Property<Boolean> getProjectScopedCommitCount();
+
+        Property<String> getTagPrefix();
+
+        Property<TagSelection> getTagSelection();
+
+        DirectoryProperty getHandoffDirectory();
+
+        Property<HandoffFallback> getHandoffFallback();
+
+        Property<String> getProjectPath();
+
+        Property<String> getPipelineName();
+
+        Property<String> getPipelineCounter();
+
+        Property<String> getMaterialName();
+
+        Property<String> getMaterialRevision();
+
+        Property<String> getMaterialFromRevision();
+
+        Property<String> getMaterialToRevision();
+    }
+
+    /**
+     * Creates a lazy provider for the Git tag based version of the given project. The extension
+     * is read when the provider is queried, not when it is created.
+     *
+     * @param project project whose build file directory is used to find the repository
+     * @param extension plugin configuration
+     * @return provider without value when no suitable tag or commit can be found
+     */
+    static Provider<String> create(Project project, GocdVersionPluginExtension extension) {
+        File workingDir = project.getBuildFile().toPath().getParent().toFile();
+        File cacheDir = GitVersionService.defaultCacheDirectory(project);
+        /* the per run revision variables become configuration inputs only when they are used */
+        Provider<MaterialRevision> material = project.provider(() -> extension.isUseMaterialRevision()
+                ? MaterialRevision.select(GocdEnvironmentService.obtain(project)
+                                                                .snapshot(project)
+                                                                .getMaterialRevisions(),
+                                          extension.getGitMaterialName())
+                : null);
+        return project.getProviders().of(GitVersionValueSource.class, spec -> {
+            Params parameters = spec.getParameters();
+            parameters.getWorkingDirectory().set(workingDir);
+            parameters.getCacheDirectory().set(cacheDir);
+            parameters.getVersionTagRegex().set(project.provider(extension::getSuitableTagRegex));
+            parameters.getMissingTagFallback().set(project.provider(extension::getMissingTagVersionDefault));
+            parameters.getAppendCommitCount().set(project.provider(extension::getAppendGitCommitCountToGitTagVersion));
+            parameters.getCommitCountMode().set(project.provider(extension::getCommitCountMode));
+            parameters.getMaxWalkDepth().set(project.provider(extension::getMaxWalkDepth));
+            parameters.getWalkTimeoutMillis().set(project.provider(extension::getWalkTimeoutMillis));
+            parameters.getProjectScopedCommitCount().set(project.provider(extension::isProjectScopedCommitCount));
+            parameters.getTagPrefix().set(project.provider(extension::getTagPrefix));
+            parameters.getTagSelection().set(project.provider(extension::getTagSelection));
+            parameters.getHandoffDirectory().fileProvider(project.provider(extension::getVersionHandoffDirectory));
+            parameters.getHandoffFallback().set(project.provider(extension::getVersionHandoffFallback));
+            parameters.getProjectPath().set(project.getPath());
+            parameters.getPipelineName()
+                      .set(project.getProviders().environmentVariable(GOCD.GO_PIPELINE_NAME.toString()));
+            parameters.getPipelineCounter()
+                      .set(project.getProviders().environmentVariable(GOCD.GO_PIPELINE_COUNTER.toString()));
+            parameters.getMaterialName().set(material.map(MaterialRevision::getMaterialName));
+            parameters.getMaterialRevision().set(material.map(MaterialRevision::getRevision));
+            parameters.getMaterialFromRevision().set(material.map(MaterialRevision::getFromRevision));
+            parameters.getMaterialToRevision().set(material.map(MaterialRevision::getToRevision));
+        });
+    }
+
+    @Override
+    public String obtain() {
+        Params parameters = getParameters();
+        Path workingDir = parameters.getWorkingDirectory().get().getAsFile().toPath().toAbsolutePath().normalize();
+        Path cacheDir = parameters.getCacheDirectory().isPresent()
+                ? parameters.getCacheDirectory().get().getAsFile().toPath()
+                : null;
+        boolean appendCommitCount = parameters.getAppendCommitCount().getOrElse(Boolean.TRUE);
+        ResolutionOptions options = options(parameters);
+        Logger logger = Logging.getLogger(GitVersionValueSource.class);
+        VersionHandoff handoff = handoff(parameters, options, logger);
+        if (null != handoff) {
+            GitDetails handedOff = handoff.load();
+            if (null != handedOff) {
+                logger.info("GocdVersionPlugin: Using version handoff {}", handoff.getFile());
+                return handedOff.map(appendCommitCount);
+            }
+            if (HandoffFallback.FAIL == parameters.getHandoffFallback().getOrElse(HandoffFallback.RESOLVE)) {
+                String message = "GocdVersionPlugin: No valid version handoff of pipeline run %s/%s found (%s).";
+                throw new GradleException(String.format(message, parameters.getPipelineName().get(),
+                                                        parameters.getPipelineCounter().get(), handoff.getFile()));
+            }
+        }
+        Path gitDir = GitVersionService.findGitDir(workingDir.toFile());
+        Optional<GitDetails> resolved = GitVersionService.resolveLatestTag(cacheDir,
+                                                                           gitDir,
+                                                                           workingDir,
+                                                                           parameters.getVersionTagRegex().get(),
+                                                                           parameters.getMissingTagFallback()
+                                                                                     .getOrNull(),
+                                                                           options,
+                                                                           logger);
+        if (null != handoff) {
+            resolved.ifPresent(handoff::store);
+        }
+        return resolved.map(details -> details.map(appendCommitCount))
+                       .orElse(null);
+    }
+
+    /**
+     * The descriptor depends on the project and its tag settings, but not on the location of the checkout,
+     * which usually differs between the agents running the stages.
+     */
+    private static VersionHandoff handoff(Params parameters, ResolutionOptions options, Logger logger) {
+        if (!parameters.getHandoffDirectory().isPresent()) {
+            return null;
+        }
+        String settings = parameters.getVersionTagRegex().get() + "\n"
+                        + parameters.getMissingTagFallback().getOrNull() + "\n"
+                        + options;
+        return VersionHandoff.of(parameters.getHandoffDirectory().get().getAsFile().toPath(),
+                                 parameters.getProjectPath().getOrElse(""),
+                                 settings,
+                                 parameters.getPipelineName().getOrNull(),
+                                 parameters.getPipelineCounter().getOrNull(),
+                                 logger);
+    }
+
+    private static ResolutionOptions options(Params parameters) {
+        return new ResolutionOptions(parameters.getCommitCountMode().getOrElse(CommitCountMode.ALL_PARENTS),
+                                     new WalkBudget(parameters.getMaxWalkDepth().getOrElse(0),
+                                                    parameters.getWalkTimeoutMillis().getOrElse(0L)),
+                                     parameters.getProjectScopedCommitCount().getOrElse(Boolean.FALSE),
+                                     parameters.getTagPrefix().getOrNull(),
+                                     parameters.getTagSelection().getOrElse(TagSelection.NEAREST_TAG),
+                                     materialRevision(parameters));
+    }
+
+    private static MaterialRevision materialRevision(Params parameters) {
+        if (!parameters.getMaterialName().isPresent()) {
+            return null;
+        }
+        return new MaterialRevision(parameters.getMaterialName().get(),
+                                    parameters.getMaterialRevision().getOrNull(),
+                                    parameters.getMaterialFromRevision().getOrNull(),
+                                    parameters.getMaterialToRevision().getOrNull());
+    }
+}
@@ -1,6 +1,9 @@
 package net.raumzeitfalle.gradle.gocd.versioning;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public interface GocdEnvironment {
     String getServerUrl();
@@ -11,6 +14,35 @@ public interface GocdEnvironment {
     void setEnvVariable(GOCD variable, String value);
     
     String getMaterialBranch(String materialName);
+
+    /**
+     * Environments which only provide single variables know the revisions of the unnamed material.
+     *
+     * @param materialName name of the material
+     * @return the built revision of the material or an empty string
+     */
+    default String getMaterialRevision(String materialName) {
+        if (null == materialName) {
+            throw new IllegalArgumentException("Please provide a correct GOCD material name. A material name must not be null!");
+        }
+        if ("".equalsIgnoreCase(materialName)) {
+            throw new IllegalArgumentException("Please provide a correct GOCD material name. A material name must not be blank!");
+        }
+        MaterialRevision revision = MaterialRevision.select(getMaterialRevisions(), materialName);
+        return null == revision || null == revision.getRevision() ? "" : revision.getRevision();
+    }
+
+    /**
+     * @return revisions by upper case material name, by default only the unnamed material
+     */
+    default Map<String, MaterialRevision> getMaterialRevisions() {
+        Map<String, String> variables = new HashMap<>();
+        for (GOCD variable : Arrays.asList(GOCD.GO_REVISION, GOCD.GO_FROM_REVISION, GOCD.GO_TO_REVISION)) {
+            variables.put(variable.toString(), get(variable));
+        }
+        return MaterialRevision.parseAll(variables);
+    }
+
     String getPipelineLabel();
     String getPipelineName();
     int getPipelineCounter();
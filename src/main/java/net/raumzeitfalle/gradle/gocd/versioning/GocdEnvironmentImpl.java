@@ -1,15 +1,14 @@
 package net.raumzeitfalle.gradle.gocd.versioning;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -18,11 +17,31 @@ import org.gradle.api.Project;
 public class GocdEnvironmentImpl implements GocdEnvironment {
 
     private final Map<String,String> environment;
+
+    private final Function<String,String> lookup;
+
+    private final Set<String> removed = new HashSet<>();
     
     private final Project project;
 
     public GocdEnvironmentImpl(Project project, Map<String,String> systemEnvironment) {
+        this(project, systemEnvironment, name -> null);
+    }
+
+    /**
+     * Creates an environment which looks up variables only on request, e.g. through Gradle's
+     * {@code ProviderFactory}, so that only the variables actually used become build inputs.
+     *
+     * @param project the project using the environment
+     * @param lookup function returning the value of an environment variable or null
+     */
+    public GocdEnvironmentImpl(Project project, Function<String,String> lookup) {
+        this(project, new HashMap<>(), lookup);
+    }
+
+    private GocdEnvironmentImpl(Project project, Map<String,String> systemEnvironment, Function<String,String> lookup) {
         this.environment = Objects.requireNonNull(systemEnvironment, "systemEnvironment must not be null");
+        this.lookup = Objects.requireNonNull(lookup, "lookup must not be null");
         this.project = Objects.requireNonNull(project);
     }
 
@@ -31,14 +50,16 @@ public class GocdEnvironmentImpl implements GocdEnvironment {
         Objects.requireNonNull(variable, "variable must not be null");
         if (value == null || "".equalsIgnoreCase(value.trim())) {
             environment.remove(variable.toString());
+            removed.add(variable.toString());
         } else {
             environment.put(variable.toString(), value.trim());
+            removed.remove(variable.toString());
         }
     }
 
     @Override
     public String getComputerName() {
-        return getEnvOrDefault("COMPUTERNAME", ()->tryHostname(()->fromHostName()));
+        return getEnvOrDefault("COMPUTERNAME", ()->lookupHostIdentity(HostIdentityValueSource.Kind.COMPUTER_NAME));
     }
     
     @Override
@@ -91,12 +112,12 @@ public class GocdEnvironmentImpl implements GocdEnvironment {
         Supplier<String> defaultUser = ()->"";
         String triggerUser = getEnvOrDefault(GOCD.GO_TRIGGER_USER, defaultUser);
         if ("".equalsIgnoreCase(triggerUser)) {
-            if (environment.containsKey("USER")) {
-                triggerUser = environment.get("USER");
-            } else if (environment.containsKey("USERNAME")) {
-                triggerUser = environment.get("USERNAME");
+            if (null != getenv("USER")) {
+                triggerUser = getenv("USER");
+            } else if (null != getenv("USERNAME")) {
+                triggerUser = getenv("USERNAME");
             } else {
-                triggerUser = tryWhoami(defaultUser);
+                triggerUser = lookupHostIdentity(HostIdentityValueSource.Kind.USER);
             }
         }
         return triggerUser;
@@ -116,27 +137,34 @@ public class GocdEnvironmentImpl implements GocdEnvironment {
         return getEnvOrDefault(GOCD.GO_MATERIAL_BRANCH.toString()
                               +"_"+String.valueOf(materialName).toUpperCase(), ()->"");
     }
-    
-    private String tryWhoami(Supplier<String> defaultUser) {
-        try {
-            return whoami(defaultUser);
-        } catch (IOException e) {
-            project.getLogger().warn("GocdVersionPlugin: Failed to obtain user with execution of whoami command. Continuing with fallback.", e);
+        
+    @Override
+    public String getMaterialRevision(String materialName) {
+        if (null == materialName) {
+            throw new IllegalArgumentException("Please provide a correct GOCD material name. A material name must not be null!");
+        }
+
+        if ("".equalsIgnoreCase(materialName)) {
+            throw new IllegalArgumentException("Please provide a correct GOCD material name. A material name must not be blank!");
         }
-        return defaultUser.get();
+
+        return getEnvOrDefault(MaterialRevision.REVISION_PREFIX + String.valueOf(materialName).toUpperCase(), ()->"");
     }
-    
-    private String whoami(Supplier<String> defaultUser) throws IOException {
-        ProcessBuilder pb = new ProcessBuilder("whoami");
-        Process process = pb.start();
-        String line = null;
-        try (InputStreamReader isr = new InputStreamReader(process.getInputStream());
-             BufferedReader reader = new BufferedReader(isr)){
-            while ((line=reader.readLine()) != null) {
-                return line;
+
+    /**
+     * Named materials are only known when the environment was created from a map of all variables,
+     * the unnamed material is always looked up.
+     */
+    @Override
+    public Map<String, MaterialRevision> getMaterialRevisions() {
+        Map<String, String> variables = new HashMap<>(environment);
+        for (GOCD variable : Arrays.asList(GOCD.GO_REVISION, GOCD.GO_FROM_REVISION, GOCD.GO_TO_REVISION)) {
+            String value = getenv(variable.toString());
+            if (null != value) {
+                variables.put(variable.toString(), value);
             }
-            return defaultUser.get();
         }
+        return MaterialRevision.parseAll(variables);
     }
 
     @Override
@@ -159,17 +187,17 @@ public class GocdEnvironmentImpl implements GocdEnvironment {
      */
     @Override
     public boolean isAutomatedBuild() {
-        String value = environment.get(GOCD.GO_PIPELINE_COUNTER.toString());
+        String value = getenv(GOCD.GO_PIPELINE_COUNTER.toString());
         if (null != value) {
             return true;
         }
 
-        value = environment.get(GitlabCICD.CI.toString());
+        value = getenv(GitlabCICD.CI.toString());
         if ("true".equalsIgnoreCase(value)) {
             return true;
         }
 
-        value = environment.get(GithubActions.GITHUB_ACTIONS.toString());
+        value = getenv(GithubActions.GITHUB_ACTIONS.toString());
         if ("true".equalsIgnoreCase(value)) {
             return true;
         }
@@ -178,37 +206,22 @@ public class GocdEnvironmentImpl implements GocdEnvironment {
     }
 
     private String getenv(String name) {
-        return environment.get(name);
-    }
-
-    private String fromHostName() {
-        try {
-            return InetAddress.getLocalHost().getHostName();
-        } catch (UnknownHostException error) {
-            return "LOCALBUILD";
+        if (environment.containsKey(name)) {
+            return environment.get(name);
         }
-    }
-    
-    private String tryHostname(Supplier<String> defaultHostname) {
-        try {
-            return hostname(defaultHostname);
-        } catch (IOException e) {
-            project.getLogger().warn("GocdVersionPlugin: Failed to obtain hostname with execution of hostname command. Continuing with fallback.", e);
+        if (removed.contains(name)) {
+            return null;
         }
-        return defaultHostname.get();
+        return lookup.apply(name);
     }
-    
-    private String hostname(Supplier<String> defaultHostname) throws IOException {
-        ProcessBuilder pb = new ProcessBuilder("hostname");
-        Process process = pb.start();
-        String line = null;
-        try (InputStreamReader isr = new InputStreamReader(process.getInputStream());
-             BufferedReader reader = new BufferedReader(isr)){
-            while ((line=reader.readLine()) != null) {
-                return line;
-            }
-            return defaultHostname.get();
-        }
+        
+    /**
+     * Computer and user name lookups may start processes or wait for DNS. They are performed
+     * once per build and shared by all environments and projects.
+     */
+    private String lookupHostIdentity(HostIdentityValueSource.Kind kind) {
+        return GocdEnvironmentService.obtain(project)
+                                  .resolve(kind, () -> HostIdentityValueSource.create(project, kind).get());
     }
 
     private int fromEnvOrDefault(GOCD variable, int defaultValue) {
@@ -0,0 +1,86 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.gradle.api.Project;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Build scoped holder of the {@link GocdEnvironmentSnapshot} and of computer name and user name lookups.
+ * The environment is captured and each lookup is performed at most once per build, all closures and all
+ * (sub-)projects share the result.
+ */
+public abstract class GocdEnvironmentService implements BuildService<BuildServiceParameters.None> {
+
+    static final String SERVICE_NAME = "gocdEnvironmentService";
+
+    private final Map<HostIdentityValueSource.Kind, String> identities = new ConcurrentHashMap<>();
+
+    private GocdEnvironmentSnapshot snapshot;
+
+    static Provider<GocdEnvironmentService> register(Project project) {
+        return project.getGradle()
+                      .getSharedServices()
+                      .registerIfAbsent(SERVICE_NAME, GocdEnvironmentService.class, spec -> { });
+    }
+
+    static GocdEnvironmentService obtain(Project project) {
+        return register(project).get();
+    }
+
+    /**
+     * Provides the environment snapshot of this build. Variables are read through Gradle's
+     * providers, so that they are tracked as configuration inputs.
+     *
+     * @param project project used to read the environment and to look up identities
+     * @return the snapshot, captured on first use
+     */
+    synchronized GocdEnvironmentSnapshot snapshot(Project project) {
+        if (null == snapshot) {
+            ProviderFactory providers = project.getProviders();
+            snapshot = GocdEnvironmentSnapshot.capture(
+                    name -> providers.environmentVariable(name).getOrNull(),
+                    providers.environmentVariablesPrefixedBy(GOCD.GO_MATERIAL_BRANCH.toString() + "_").get(),
+                    () -> revisionVariables(providers),
+                    kind -> resolve(kind, () -> HostIdentityValueSource.create(project, kind).get()),
+                    project.getLogger());
+        }
+        return snapshot;
+    }
+
+    /*
+     * The revisions change with every pipeline run, reading them only when requested keeps
+     * the configuration cache valid for builds which do not use them.
+     */
+    private static Map<String, String> revisionVariables(ProviderFactory providers) {
+        Map<String, String> variables = new HashMap<>();
+        for (String prefix : Arrays.asList(MaterialRevision.REVISION_PREFIX,
+                                           MaterialRevision.FROM_REVISION_PREFIX,
+                                           MaterialRevision.TO_REVISION_PREFIX)) {
+            variables.putAll(providers.environmentVariablesPrefixedBy(prefix).get());
+        }
+        for (GOCD variable : Arrays.asList(GOCD.GO_REVISION, GOCD.GO_FROM_REVISION, GOCD.GO_TO_REVISION)) {
+            String value = providers.environmentVariable(variable.toString()).getOrNull();
+            if (null != value) {
+                variables.put(variable.toString(), value);
+            }
+        }
+        return variables;
+    }
+
+    /**
+     * @param kind the identity to look up
+     * @param lookup performs the lookup, only called if the identity is not yet known
+     * @return the identity as determined by the first lookup of this build
+     */
+    String resolve(HostIdentityValueSource.Kind kind, Supplier<String> lookup) {
+        return identities.computeIfAbsent(kind, k -> lookup.get());
+    }
+}
@@ -0,0 +1,351 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
+
+/**
+ * Immutable view of the GoCD related environment of a build.
+ *
+ * All variables are read and parsed once, when the snapshot is captured. Computer name and user
+ * name are only looked up when they are requested and not provided by the environment. The material
+ * revisions change with every pipeline run, they are only read when requested. The snapshot
+ * is serializable, so it can be used as (part of) a task input and be stored by the configuration cache.
+ */
+public final class GocdEnvironmentSnapshot implements GocdEnvironment, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String MATERIAL_BRANCH_PREFIX = GOCD.GO_MATERIAL_BRANCH.toString() + "_";
+
+    private static final List<String> REVISION_VARIABLES = Arrays.asList(GOCD.GO_REVISION.toString(),
+                                                                         GOCD.GO_FROM_REVISION.toString(),
+                                                                         GOCD.GO_TO_REVISION.toString());
+
+    private final Map<String, String> variables;
+
+    private final Map<String, String> materialBranchVariables;
+
+    private final Map<String, String> materialBranches;
+
+    private Map<String, String> revisionVariables;
+
+    private Map<String, MaterialRevision> materialRevisions;
+
+    private final List<String> agentResources;
+
+    private final int pipelineCounter;
+
+    private final int stageCounter;
+
+    private final boolean automatedBuild;
+
+    private String computerName;
+
+    private String triggerUser;
+
+    private transient Function<HostIdentityValueSource.Kind, String> identities;
+
+    private transient Supplier<Map<String, String>> revisionLookup;
+
+    private GocdEnvironmentSnapshot(Map<String, String> variables,
+                                    Map<String, String> materialBranchVariables,
+                                    Map<String, String> materialBranches,
+                                    Supplier<Map<String, String>> revisionLookup,
+                                    Function<HostIdentityValueSource.Kind, String> identities,
+                                    Logger logger) {
+        this.variables = Collections.unmodifiableMap(new HashMap<>(variables));
+        this.materialBranchVariables = Collections.unmodifiableMap(new HashMap<>(materialBranchVariables));
+        this.materialBranches = Collections.unmodifiableMap(new HashMap<>(materialBranches));
+        this.revisionLookup = revisionLookup;
+        this.identities = identities;
+        this.agentResources = parseAgentResources(variables.get(GOCD.GO_AGENT_RESOURCES.toString()));
+        this.pipelineCounter = parseCounter(GOCD.GO_PIPELINE_COUNTER, logger);
+        this.stageCounter = parseCounter(GOCD.GO_STAGE_COUNTER, logger);
+        this.automatedBuild = detectAutomatedBuild();
+        this.computerName = variables.get(GOCD.COMPUTERNAME.toString());
+        this.triggerUser = triggerUserFromEnvironment();
+    }
+
+    /**
+     * Captures the environment.
+     *
+     * @param environment lookup for single environment variables, returns null for undefined variables
+     * @param materialVariables all {@code GO_MATERIAL_BRANCH_*}, {@code GO_REVISION_*}, {@code GO_FROM_REVISION_*}
+     *                          and {@code GO_TO_REVISION_*} variables
+     * @param identities lookup of computer name and user name, used when the environment does not define them
+     * @param logger used to report unparseable values, may be null
+     * @return the snapshot
+     */
+    static GocdEnvironmentSnapshot capture(Function<String, String> environment,
+                                           Map<String, String> materialVariables,
+                                           Function<HostIdentityValueSource.Kind, String> identities,
+                                           Logger logger) {
+        Supplier<Map<String, String>> revisionLookup = () -> {
+            Map<String, String> revisions = new HashMap<>(materialVariables);
+            for (String name : REVISION_VARIABLES) {
+                String value = environment.apply(name);
+                if (null != value) {
+                    revisions.put(name, value);
+                }
+            }
+            return revisions;
+        };
+        return capture(environment, materialVariables, revisionLookup, identities, logger);
+    }
+
+    /**
+     * Captures the environment, material revisions are looked up when they are requested for the first time.
+     *
+     * @param environment lookup for single environment variables, returns null for undefined variables
+     * @param materialBranchVariables all {@code GO_MATERIAL_BRANCH_*} variables
+     * @param revisionLookup provides the {@code GO_REVISION*}, {@code GO_FROM_REVISION*} and
+     *                       {@code GO_TO_REVISION*} variables
+     * @param identities lookup of computer name and user name, used when the environment does not define them
+     * @param logger used to report unparseable values, may be null
+     * @return the snapshot
+     */
+    static GocdEnvironmentSnapshot capture(Function<String, String> environment,
+                                           Map<String, String> materialBranchVariables,
+                                           Supplier<Map<String, String>> revisionLookup,
+                                           Function<HostIdentityValueSource.Kind, String> identities,
+                                           Logger logger) {
+        Map<String, String> variables = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        Arrays.stream(GOCD.values()).map(GOCD::toString)
+              .filter(name -> !REVISION_VARIABLES.contains(name))
+              .forEach(names::add);
+        names.add(GitlabCICD.CI.toString());
+        names.add(GithubActions.GITHUB_ACTIONS.toString());
+        names.add("USER");
+        names.add("USERNAME");
+        for (String name : names) {
+            String value = environment.apply(name);
+            if (null != value) {
+                variables.put(name, value);
+            }
+        }
+        Map<String, String> branchVariables = new HashMap<>();
+        Map<String, String> materialBranches = new HashMap<>();
+        materialBranchVariables.forEach((name, value) -> {
+            if (name.startsWith(MATERIAL_BRANCH_PREFIX)) {
+                branchVariables.put(name, value);
+                materialBranches.put(name.substring(MATERIAL_BRANCH_PREFIX.length()).toUpperCase(), value);
+            }
+        });
+        return new GocdEnvironmentSnapshot(variables, branchVariables, materialBranches,
+                                           revisionLookup, identities, logger);
+    }
+
+    /**
+     * Creates a mutable environment initialized with the captured variables. Changes made through
+     * {@link GocdEnvironment#setEnvVariable(GOCD, String)} affect only the returned instance.
+     *
+     * @param project the project using the environment
+     * @return a new mutable environment
+     */
+    GocdEnvironment toMutableEnvironment(Project project) {
+        Map<String, String> environment = new HashMap<>(materialBranchVariables);
+        environment.putAll(revisionVariables());
+        environment.putAll(variables);
+        return new GocdEnvironmentImpl(project, environment);
+    }
+
+    private static List<String> parseAgentResources(String configuredResources) {
+        if (null == configuredResources || "".equals(configuredResources.trim())) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.stream(configuredResources.trim().split(","))
+                                                  .collect(Collectors.toList()));
+    }
+
+    private int parseCounter(GOCD variable, Logger logger) {
+        String value = variables.get(variable.toString());
+        if (null == value) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException nfe) {
+            if (null != logger) {
+                logger.warn("Found unexpected value \"{}\" for GOCD env variable \"{}\"", value, variable);
+            }
+            return 0;
+        }
+    }
+
+    private boolean detectAutomatedBuild() {
+        return variables.containsKey(GOCD.GO_PIPELINE_COUNTER.toString())
+                || "true".equalsIgnoreCase(variables.get(GitlabCICD.CI.toString()))
+                || "true".equalsIgnoreCase(variables.get(GithubActions.GITHUB_ACTIONS.toString()));
+    }
+
+    private String triggerUserFromEnvironment() {
+        String user = variables.getOrDefault(GOCD.GO_TRIGGER_USER.toString(), "");
+        if (!"".equalsIgnoreCase(user)) {
+            return user;
+        }
+        if (variables.containsKey("USER")) {
+            return variables.get("USER");
+        }
+        return variables.get("USERNAME");
+    }
+
+    /**
+     * The snapshot is immutable, use {@link #toMutableEnvironment(Project)} to modify variables.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void setEnvVariable(GOCD variable, String value) {
+        throw new UnsupportedOperationException("The GoCD environment snapshot cannot be modified.");
+    }
+
+    @Override
+    public String getServerUrl() {
+        return get(GOCD.GO_SERVER_URL);
+    }
+
+    @Override
+    public String getPipelineGroupName() {
+        return get(GOCD.GO_PIPELINE_GROUP_NAME);
+    }
+
+    @Override
+    public String getEnvironmentName() {
+        return get(GOCD.GO_ENVIRONMENT_NAME);
+    }
+
+    @Override
+    public List<String> getAgentResources() {
+        return agentResources;
+    }
+
+    @Override
+    public String getMaterialBranch(String materialName) {
+        if (null == materialName) {
+            throw new IllegalArgumentException("Please provide a correct GOCD material name. A material name must not be null!");
+        }
+        if ("".equalsIgnoreCase(materialName)) {
+            throw new IllegalArgumentException("Please provide a correct GOCD material name. A material name must not be blank!");
+        }
+        return materialBranches.getOrDefault(materialName.toUpperCase(), "");
+    }
+
+    @Override
+    public String getMaterialRevision(String materialName) {
+        if (null == materialName) {
+            throw new IllegalArgumentException("Please provide a correct GOCD material name. A material name must not be null!");
+        }
+        if ("".equalsIgnoreCase(materialName)) {
+            throw new IllegalArgumentException("Please provide a correct GOCD material name. A material name must not be blank!");
+        }
+        MaterialRevision revision = getMaterialRevisions().get(materialName.toUpperCase());
+        return null == revision || null == revision.getRevision() ? "" : revision.getRevision();
+    }
+
+    @Override
+    public synchronized Map<String, MaterialRevision> getMaterialRevisions() {
+        if (null == materialRevisions) {
+            materialRevisions = MaterialRevision.parseAll(revisionVariables());
+        }
+        return materialRevisions;
+    }
+
+    private synchronized Map<String, String> revisionVariables() {
+        if (null == revisionVariables) {
+            Map<String, String> lookedUp = null == revisionLookup ? null : revisionLookup.get();
+            revisionVariables = Collections.unmodifiableMap(null == lookedUp ? new HashMap<>()
+                                                                              : new HashMap<>(lookedUp));
+        }
+        return revisionVariables;
+    }
+
+    @Override
+    public String getPipelineLabel() {
+        return get(GOCD.GO_PIPELINE_LABEL);
+    }
+
+    @Override
+    public String getPipelineName() {
+        return get(GOCD.GO_PIPELINE_NAME);
+    }
+
+    @Override
+    public int getPipelineCounter() {
+        return pipelineCounter;
+    }
+
+    @Override
+    public String getStageName() {
+        return get(GOCD.GO_STAGE_NAME);
+    }
+
+    @Override
+    public int getStageCounter() {
+        return stageCounter;
+    }
+
+    @Override
+    public String getJobName() {
+        return get(GOCD.GO_JOB_NAME);
+    }
+
+    @Override
+    public synchronized String getTriggerUser() {
+        if (null == triggerUser) {
+            triggerUser = lookup(HostIdentityValueSource.Kind.USER);
+        }
+        return triggerUser;
+    }
+
+    @Override
+    public String get(GOCD variable) {
+        String name = Objects.requireNonNull(variable, "variable must not be null").toString();
+        if (REVISION_VARIABLES.contains(name)) {
+            return revisionVariables().getOrDefault(name, "");
+        }
+        return variables.getOrDefault(name, "");
+    }
+
+    @Override
+    public boolean isAutomatedBuild() {
+        return automatedBuild;
+    }
+
+    @Override
+    public synchronized String getComputerName() {
+        if (null == computerName) {
+            computerName = lookup(HostIdentityValueSource.Kind.COMPUTER_NAME);
+        }
+        return computerName;
+    }
+
+    private String lookup(HostIdentityValueSource.Kind kind) {
+        String value = null == identities ? null : identities.apply(kind);
+        return null == value ? kind.getFallback() : value;
+    }
+
+    /**
+     * Identities and revisions are resolved before writing, as the lookups cannot be serialized.
+     */
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        getComputerName();
+        getTriggerUser();
+        getMaterialRevisions();
+        out.defaultWriteObject();
+    }
+}
@@ -9,6 +9,7 @@ import java.util.function.Supplier;
 
 import org.gradle.api.Project;
 import org.gradle.api.logging.Logger;
+import org.gradle.api.provider.Provider;
 
 public class GocdVersionBuilder {
 
@@ -26,6 +27,10 @@ public class GocdVersionBuilder {
 
     private final Path buildFilePath;
 
+    private final GitVersionService gitVersionService;
+
+    private final Provider<String> gitVersion;
+
     public GocdVersionBuilder(Project project,
                               GocdEnvironment environment,
                               GocdVersionPluginExtension extension) {
@@ -36,6 +41,8 @@ public class GocdVersionBuilder {
         this.manualBuildVersion = null;
         this.autoBuildVersion = null;
         this.buildFilePath = Objects.requireNonNull(project).getBuildFile().toPath().getParent();
+        this.gitVersionService = GitVersionService.obtain(project);
+        this.gitVersion = GitVersionValueSource.create(project, extension);
     }
 
     public GocdVersionBuilder(Project project,
@@ -50,6 +57,8 @@ public class GocdVersionBuilder {
         this.extension = Objects.requireNonNull(extension, "extension must not be null");
         this.projectVersion = projectVersion(project);
         this.buildFilePath = Objects.requireNonNull(project).getBuildFile().toPath().getParent();
+        this.gitVersionService = GitVersionService.obtain(project);
+        this.gitVersion = GitVersionValueSource.create(project, extension);
     }
 
     private Supplier<Object> projectVersion(Project project) {
@@ -79,13 +88,8 @@ public class GocdVersionBuilder {
         String manual = manualBuildVersion;
 
         if (manualBuildVersion == null && autoBuildVersion == null) {
-            String gradleProjectVersion = getProjectVersionWithFallback();
-            String projectVersion = new GitTagVersionHelper(logger, buildFilePath)
-                    .setVersionTagRegex(this.extension.getSuitableTagRegex())
-                    .setMissingTagFallback(this.extension.getMissingTagVersionDefault())
-                    .getLatestTag()
-                    .map(details -> details.map(this.extension))
-                    .orElseGet(() -> gradleProjectVersion);
+            String projectVersion = Optional.ofNullable(gitVersion.getOrNull())
+                    .orElseGet(this::getProjectVersionWithFallback);
             auto = projectVersion;
             manual = projectVersion;
         }
@@ -96,11 +100,7 @@ public class GocdVersionBuilder {
         String gradleProjectVersion = String.valueOf(this.projectVersion.get()).trim();
         if (null == gradleProjectVersion || "unspecified".equalsIgnoreCase(gradleProjectVersion.toLowerCase())) {
 
-            GitTagVersionHelper gitHelper = new GitTagVersionHelper(logger, buildFilePath);
-            gitHelper.setVersionTagRegex(this.extension.getSuitableTagRegex());
-            gitHelper.setMissingTagFallback(this.extension.getMissingTagVersionDefault());
-
-            Optional<GitTagVersionHelper.GitDetails> gitDetails = gitHelper.getLatestCommit();
+            Optional<GitTagVersionHelper.GitDetails> gitDetails = resolveGitVersion().getLatestCommit();
             if (gitDetails.isPresent()) {
                 GitTagVersionHelper.GitDetails details = gitDetails.get();
                 gradleProjectVersion = details.getShortCommitName();
@@ -109,6 +109,14 @@ public class GocdVersionBuilder {
         return gradleProjectVersion;
     }
 
+    private GitVersionResolution resolveGitVersion() {
+        return gitVersionService.resolve(buildFilePath,
+                                         this.extension.getSuitableTagRegex(),
+                                         this.extension.getMissingTagVersionDefault(),
+                                         this.extension.getResolutionOptions(),
+                                         logger);
+    }
+
     String createVersion(String autoVersion, String manualVersion) {
         StringBuilder versionBuilder = new StringBuilder();
         if (gocdEnvironment.isAutomatedBuild()) {
@@ -1,47 +1,53 @@
 package net.raumzeitfalle.gradle.gocd.versioning;
 
+import java.util.concurrent.Callable;
 import java.util.function.Supplier;
 
-import org.eclipse.jgit.util.SystemReader;
-import org.gradle.BuildListener;
-import org.gradle.BuildResult;
+import javax.inject.Inject;
+
 import org.gradle.api.Project;
-import org.gradle.api.initialization.Settings;
-import org.gradle.api.invocation.Gradle;
 import org.gradle.api.plugins.ExtraPropertiesExtension;
+import org.gradle.api.provider.Provider;
+import org.gradle.build.event.BuildEventsListenerRegistry;
 
 import groovy.lang.Closure;
-import org.gradle.tooling.events.OperationCompletionListener;
 
 public final class GocdVersionPlugin implements org.gradle.api.Plugin<Project> {
 
-    static {
-        suppressJGitAttemptToExecLocalGit();
-    }
-
-    private static final void suppressJGitAttemptToExecLocalGit() {
-        SystemReader.setInstance(JGitNoExecSystemReader.get());
-    }
-
     @SuppressWarnings("unused")
     private static final String GROUP = "GOCD CI/CD";
 
+    private final BuildEventsListenerRegistry buildEventsListenerRegistry;
+
+    @Inject
+    public GocdVersionPlugin(BuildEventsListenerRegistry buildEventsListenerRegistry) {
+        this.buildEventsListenerRegistry = buildEventsListenerRegistry;
+    }
+
     @SuppressWarnings("serial")
     @Override
     public void apply(Project project) {
 
         project.getExtensions().create("gocdVersion", GocdVersionPluginExtension.class);
-        project.getTasks().register("printGocdEnvironment", PrintGocdEnvironmentTask.class);
+        Provider<GitVersionService> gitVersionService = GitVersionService.register(project);
+        Provider<GocdEnvironmentService> environmentService = GocdEnvironmentService.register(project);
+        project.getTasks().register("printGocdEnvironment", PrintGocdEnvironmentTask.class, task -> {
+            task.usesService(gitVersionService);
+            task.usesService(environmentService);
+        });
 
-        Supplier<GocdEnvironment> environmentSupplier = () -> new GocdEnvironmentImpl(project, System.getenv());
+        Supplier<GocdEnvironment> environmentSupplier = () -> environmentService.get().snapshot(project);
+        /* build scripts may modify the returned environment, so each call gets its own copy */
         project.getExtensions().getExtraProperties().set("gocdEnvironment", new Closure<GocdEnvironment>(this, this) {
             @SuppressWarnings("unused")
             public GocdEnvironment doCall(Object args) {
-                return environmentSupplier.get();
+                return environmentService.get().snapshot(project).toMutableEnvironment(project);
             }
         });
 
         GocdVersionPluginExtension ext = project.getExtensions().getByType(GocdVersionPluginExtension.class);
+        ResolveVersionsTask.register(project, ext, gitVersionService);
+        VersionHistoryTask.register(project, ext, gitVersionService);
         ExtraPropertiesExtension extras = project.getExtensions().getExtraProperties();
         GocdVersionClosure gocdVersion = new GocdVersionClosure(project, environmentSupplier, ext, this);
 
@@ -64,68 +70,52 @@ public final class GocdVersionPlugin implements org.gradle.api.Plugin<Project> {
         extras.set("gocdComputerName", new GocdComputerNameClosure(environmentSupplier, this));
         extras.set("gocdServerUrl", new GocdServerUrlClosure(environmentSupplier, this));
 
-        /*
-         * Ensure that after configuration phase, the version closure is evaluated and the projects version property
-         * is updated accordingly.
-         */
-        project.afterEvaluate(p->this.updateProjectVersionIfNotStaticallyDefined(p,gocdVersion));
+        ext.setVersionProvider(project.provider(memoize(() -> gocdVersion.doCall().build())));
 
         /*
-         * This needs to be replaced with a build service.
-         * https://docs.gradle.org/current/userguide/build_services.html
-         *https://discuss.gradle.org/t/which-method-can-replace-getproject-getgradle-buildfinished/43768/5
-         *
+         * Ensure that after configuration phase, the projects version property is updated accordingly.
+         * The version closure is evaluated only when the version is read for the first time.
          */
-        project.getGradle().addBuildListener(new BuildListener() {
-            @Override
-            public void settingsEvaluated(Settings settings) {
+        project.afterEvaluate(p->this.updateProjectVersionIfNotStaticallyDefined(p,ext));
 
-            }
-
-            @Override
-            public void projectsLoaded(Gradle gradle) {
-
-            }
-
-            @Override
-            public void projectsEvaluated(Gradle gradle) {
-
-            }
+        VersionReportService.register(project, buildEventsListenerRegistry);
+    }
 
-            @Override
-            public void buildFinished(BuildResult result) {
-                Supplier<String> version = ()->project.getVersion().toString();
-                result.getGradle().getRootProject().getLogger().lifecycle("Version built: " + version.get());
+    private static Callable<String> memoize(Supplier<String> supplier) {
+        String[] value = new String[1];
+        return () -> {
+            synchronized (value) {
+                if (null == value[0]) {
+                    value[0] = supplier.get();
+                }
+                return value[0];
             }
-        });
-
-
+        };
     }
 
-    private void updateProjectVersionIfNotStaticallyDefined(Project project, GocdVersionClosure gocdVersion) {
+    private void updateProjectVersionIfNotStaticallyDefined(Project project, GocdVersionPluginExtension ext) {
         Object version = project.getVersion();
         if (null == version) {
-            updateVersion(project, gocdVersion);
+            updateVersion(project, ext);
             return;
         }
 
         if ("unspecified".equals(version.toString())) {
-            updateVersion(project, gocdVersion);
+            updateVersion(project, ext);
             return;
         }
 
         if ("".equalsIgnoreCase(version.toString().trim())) {
-            updateVersion(project, gocdVersion);
+            updateVersion(project, ext);
             return;
         }
 
         project.getLogger().info("GocdVersionPlugin: The project property [version] is already configured to [{}]. Skipping evaluation of Git tags for version number creation.", version);
     }
 
-    private static void updateVersion(Project project, GocdVersionClosure gocdVersion) {
-        String updatedVersion = gocdVersion.doCall().build();
-        project.setVersion(updatedVersion);
-        project.getLogger().lifecycle("Generated version: " + updatedVersion);
+    private static void updateVersion(Project project, GocdVersionPluginExtension ext) {
+        Provider<String> versionProvider = ext.getVersionProvider();
+        project.setVersion(new LazyVersion(versionProvider::get, project.getLogger()));
     }
 
 }
@@ -1,13 +1,48 @@
 package net.raumzeitfalle.gradle.gocd.versioning;
+import java.io.File;
 import java.time.LocalDateTime;
 import java.util.Objects;
 import java.util.function.Supplier;
 
+import org.gradle.api.provider.Provider;
+
 /**
  * Extension for GocdVersionPlugin
  */
 public class GocdVersionPluginExtension {
 
+    static final long DEFAULT_IDENTITY_LOOKUP_TIMEOUT_MILLIS = 2000;
+
+    /**
+     * Allows to write {@code commitCountMode = FIRST_PARENT} inside the {@code gocdVersion} block.
+     */
+    public static final CommitCountMode FIRST_PARENT = CommitCountMode.FIRST_PARENT;
+
+    /**
+     * Allows to write {@code commitCountMode = ALL_PARENTS} inside the {@code gocdVersion} block.
+     */
+    public static final CommitCountMode ALL_PARENTS = CommitCountMode.ALL_PARENTS;
+
+    /**
+     * Allows to write {@code tagSelection = NEAREST_TAG} inside the {@code gocdVersion} block.
+     */
+    public static final TagSelection NEAREST_TAG = TagSelection.NEAREST_TAG;
+
+    /**
+     * Allows to write {@code tagSelection = HIGHEST_VERSION} inside the {@code gocdVersion} block.
+     */
+    public static final TagSelection HIGHEST_VERSION = TagSelection.HIGHEST_VERSION;
+
+    /**
+     * Allows to write {@code versionHandoffFallback = RESOLVE} inside the {@code gocdVersion} block.
+     */
+    public static final HandoffFallback RESOLVE = HandoffFallback.RESOLVE;
+
+    /**
+     * Allows to write {@code versionHandoffFallback = FAIL} inside the {@code gocdVersion} block.
+     */
+    public static final HandoffFallback FAIL = HandoffFallback.FAIL;
+
     private String defaultTimestampPattern = "yyyyMMddHHmmss";
     private String timestampPattern = "yyyyMMddHHmmss";
     private Supplier<LocalDateTime> timestampSupplier = ()->LocalDateTime.now();
@@ -19,6 +54,18 @@ public class GocdVersionPluginExtension {
     private String  missingGitCommitFallbackTag = "<notag>";
     private String  missingGitTagVersionDefault = "0.0";
     private String  suitableTagRegex = "^([vV])?\\d+([.]\\d+)?([.]\\d+)?([.]\\d+)?(-SNAPSHOT)?$";
+    private long identityLookupTimeoutMillis = DEFAULT_IDENTITY_LOOKUP_TIMEOUT_MILLIS;
+    private CommitCountMode commitCountMode = CommitCountMode.ALL_PARENTS;
+    private int maxWalkDepth = 0;
+    private long walkTimeoutMillis = 0;
+    private boolean projectScopedCommitCount = false;
+    private String tagPrefix = null;
+    private TagSelection tagSelection = TagSelection.NEAREST_TAG;
+    private File versionHandoffDirectory = null;
+    private HandoffFallback versionHandoffFallback = HandoffFallback.RESOLVE;
+    private boolean useMaterialRevision = false;
+    private String gitMaterialName = null;
+    private Provider<String> versionProvider;
 
     /**
      * Allows to configure a regular expression defining how a Git tag should look like,
@@ -159,4 +206,193 @@ public class GocdVersionPluginExtension {
     public String getMissingTagVersionDefault() {
         return missingGitTagVersionDefault;
     }
+
+    /**
+     * Configures which commits are followed when searching the latest tag and counting the commits after it.
+     * With {@link CommitCountMode#FIRST_PARENT} merged branches are not visited, the commit count of a
+     * main branch then is the number of merges since the tag.
+     *
+     * @param mode the mode, null restores the default {@link CommitCountMode#ALL_PARENTS}
+     */
+    public void setCommitCountMode(CommitCountMode mode) {
+        this.commitCountMode = null == mode ? CommitCountMode.ALL_PARENTS : mode;
+    }
+
+    public CommitCountMode getCommitCountMode() {
+        return commitCountMode;
+    }
+
+    /**
+     * Limits the number of commits visited while searching the latest tag or counting commits.
+     * When the limit is reached, the missing tag default is used together with the number of
+     * visited commits as commit distance and a warning is logged.
+     *
+     * @param maxWalkDepth maximum number of commits to visit, values below 1 mean unlimited (default)
+     */
+    public void setMaxWalkDepth(int maxWalkDepth) {
+        this.maxWalkDepth = Math.max(0, maxWalkDepth);
+    }
+
+    public int getMaxWalkDepth() {
+        return maxWalkDepth;
+    }
+
+    /**
+     * Limits the time spent while searching the latest tag or counting commits. When the time is up,
+     * the missing tag default is used together with the number of visited commits as commit distance
+     * and a warning is logged.
+     *
+     * @param walkTimeoutMillis maximum duration in milliseconds, values below 1 mean unlimited (default)
+     */
+    public void setWalkTimeoutMillis(long walkTimeoutMillis) {
+        this.walkTimeoutMillis = Math.max(0, walkTimeoutMillis);
+    }
+
+    public long getWalkTimeoutMillis() {
+        return walkTimeoutMillis;
+    }
+
+    WalkBudget getWalkBudget() {
+        return new WalkBudget(maxWalkDepth, walkTimeoutMillis);
+    }
+
+    /**
+     * Configures whether the commit count only includes commits which changed the directory of the
+     * project's build file. In a monorepo, each project then gets its own commit count after the
+     * latest tag. When the commit-graph was written with {@code git commit-graph write --changed-paths},
+     * its Bloom filters are used to skip most commits without comparing trees.
+     *
+     * @param projectScopedCommitCount true to count only commits of the project directory, default is false
+     */
+    public void setProjectScopedCommitCount(boolean projectScopedCommitCount) {
+        this.projectScopedCommitCount = projectScopedCommitCount;
+    }
+
+    public boolean isProjectScopedCommitCount() {
+        return projectScopedCommitCount;
+    }
+
+    /**
+     * Configures the module prefix of version tags in a monorepo, e.g. {@code payments} for tags like
+     * {@code payments/v2.3.1}. The suitable tag regex then describes the part after the prefix, and the
+     * prefix is not part of the version. The tags of all modules are scanned once and the nearest tag of
+     * every module is found with a single history walk shared by all projects.
+     *
+     * @param tagPrefix module prefix (a trailing slash is added when missing), null or blank for tags without prefix
+     */
+    public void setTagPrefix(String tagPrefix) {
+        this.tagPrefix = ModuleTagIndex.normalizePrefix(tagPrefix);
+    }
+
+    public String getTagPrefix() {
+        return tagPrefix;
+    }
+
+    /**
+     * Configures which of the suitable tags reachable from HEAD is used. With
+     * {@link TagSelection#HIGHEST_VERSION} the highest version wins, even when a merged maintenance branch
+     * has a nearer tag with a lower version. The commit count then is the number of commits reachable from
+     * HEAD but not from the tag.
+     *
+     * @param tagSelection the selection, null restores the default {@link TagSelection#NEAREST_TAG}
+     */
+    public void setTagSelection(TagSelection tagSelection) {
+        this.tagSelection = null == tagSelection ? TagSelection.NEAREST_TAG : tagSelection;
+    }
+
+    public TagSelection getTagSelection() {
+        return tagSelection;
+    }
+
+    /**
+     * Configures the directory of the version handoff descriptors. On GoCD, the Git tag based version resolved
+     * by the first stage of a pipeline run is written there. When the directory is published as pipeline
+     * artifact and fetched to the same location by later stages, these use the descriptor of their pipeline
+     * run ({@code GO_PIPELINE_NAME} and {@code GO_PIPELINE_COUNTER}) instead of reading the Git repository.
+     *
+     * @param versionHandoffDirectory the directory, null disables the handoff (default)
+     */
+    public void setVersionHandoffDirectory(File versionHandoffDirectory) {
+        this.versionHandoffDirectory = versionHandoffDirectory;
+    }
+
+    public File getVersionHandoffDirectory() {
+        return versionHandoffDirectory;
+    }
+
+    /**
+     * Configures what happens on GoCD when the version handoff directory contains no valid descriptor of the
+     * current pipeline run.
+     *
+     * @param fallback the fallback, null restores the default {@link HandoffFallback#RESOLVE}
+     */
+    public void setVersionHandoffFallback(HandoffFallback fallback) {
+        this.versionHandoffFallback = null == fallback ? HandoffFallback.RESOLVE : fallback;
+    }
+
+    public HandoffFallback getVersionHandoffFallback() {
+        return versionHandoffFallback;
+    }
+
+    /**
+     * Configures whether the Git tag based version is resolved for the revision GoCD built
+     * ({@code GO_REVISION_<MATERIAL>}) instead of HEAD, so that neither HEAD nor the branch must be resolved.
+     * With {@link CommitCountMode#FIRST_PARENT}, the range of modifications of the pipeline run
+     * ({@code GO_FROM_REVISION_<MATERIAL>}) is used to extend the cached distance of the previous build.
+     *
+     * @param useMaterialRevision true to start from the material revision, default is false
+     */
+    public void setUseMaterialRevision(boolean useMaterialRevision) {
+        this.useMaterialRevision = useMaterialRevision;
+    }
+
+    public boolean isUseMaterialRevision() {
+        return useMaterialRevision;
+    }
+
+    /**
+     * Configures the name of the GoCD material of the Git repository, used with {@link #setUseMaterialRevision(boolean)}.
+     *
+     * @param gitMaterialName the material name, null (default) for the unnamed material or the only named one
+     */
+    public void setGitMaterialName(String gitMaterialName) {
+        this.gitMaterialName = gitMaterialName;
+    }
+
+    public String getGitMaterialName() {
+        return gitMaterialName;
+    }
+
+    ResolutionOptions getResolutionOptions() {
+        return new ResolutionOptions(commitCountMode, getWalkBudget(), projectScopedCommitCount, tagPrefix,
+                                     tagSelection);
+    }
+
+    /**
+     * Configures how long each strategy to determine the computer name or the user name (running
+     * {@code hostname} or {@code whoami}, local host name lookup) may take before the next one is tried.
+     *
+     * @param timeoutMillis timeout in milliseconds, values below 1 restore the default of 2000 ms
+     */
+    public void setIdentityLookupTimeoutMillis(long timeoutMillis) {
+        this.identityLookupTimeoutMillis = timeoutMillis < 1 ? DEFAULT_IDENTITY_LOOKUP_TIMEOUT_MILLIS : timeoutMillis;
+    }
+
+    public long getIdentityLookupTimeoutMillis() {
+        return identityLookupTimeoutMillis;
+    }
+
+    /**
+     * Provides the version as generated by {@code gocdVersion()}. The version is computed once,
+     * when the provider is queried for the first time.
+     *
+     * @return lazy provider of the generated version
+     */
+    public Provider<String> getVersionProvider() {
+        return versionProvider;
+    }
+
+    void setVersionProvider(Provider<String> versionProvider) {
+        this.versionProvider = versionProvider;
+    }
 }
@@ -0,0 +1,17 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+/**
+ * Defines what happens when a GoCD job finds no valid version handoff descriptor of its pipeline run.
+ */
+public enum HandoffFallback {
+
+    /**
+     * The version is resolved from the Git repository and handed off to later stages (default).
+     */
+    RESOLVE,
+
+    /**
+     * The build fails, e.g. for test, package and deploy stages which must use the version of the build stage.
+     */
+    FAIL
+}
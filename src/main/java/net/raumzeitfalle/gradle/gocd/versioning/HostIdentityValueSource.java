@@ -0,0 +1,125 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ValueSource;
+import org.gradle.api.provider.ValueSourceParameters;
+
+/**
+ * Determines the name of the computer or of the current user when the environment does not provide it.
+ *
+ * Every lookup strategy (running {@code hostname} or {@code whoami}, asking {@link InetAddress}) is
+ * bounded by a timeout, so that broken reverse DNS or a hanging process cannot stall the build.
+ * Running these lookups inside a {@link ValueSource} keeps the configuration cache usable.
+ */
+public abstract class HostIdentityValueSource implements ValueSource<String, HostIdentityValueSource.Params> {
+
+    enum Kind {
+        COMPUTER_NAME("LOCALBUILD"),
+        USER("");
+
+        private final String fallback;
+
+        Kind(String fallback) {
+            this.fallback = fallback;
+        }
+
+        String getFallback() {
+            return fallback;
+        }
+    }
+
+    public interface Params extends ValueSourceParameters {
+        Property<Kind> getKind();
+
+        Property<Long> getTimeoutMillis();
+    }
+
+    private static final Logger LOGGER = Logging.getLogger(HostIdentityValueSource.class);
+
+    static Provider<String> create(Project project, Kind kind) {
+        GocdVersionPluginExtension ext = project.getExtensions().findByType(GocdVersionPluginExtension.class);
+        long timeoutMillis = null == ext
+                ? GocdVersionPluginExtension.DEFAULT_IDENTITY_LOOKUP_TIMEOUT_MILLIS
+                : ext.getIdentityLookupTimeoutMillis();
+        return project.getProviders().of(HostIdentityValueSource.class, spec -> {
+            spec.getParameters().getKind().set(kind);
+            spec.getParameters().getTimeoutMillis().set(timeoutMillis);
+        });
+    }
+
+    @Override
+    public String obtain() {
+        Kind kind = getParameters().getKind().get();
+        long timeoutMillis = getParameters().getTimeoutMillis().get();
+        String value;
+        if (Kind.COMPUTER_NAME == kind) {
+            value = runCommand(timeoutMillis, "hostname");
+            if (null == value) {
+                value = fromLocalHost(timeoutMillis);
+            }
+        } else {
+            value = runCommand(timeoutMillis, "whoami");
+        }
+        return null == value ? kind.getFallback() : value;
+    }
+
+    private static String runCommand(long timeoutMillis, String command) {
+        try {
+            Process process = new ProcessBuilder(command).start();
+            if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+                LOGGER.warn("GocdVersionPlugin: Command {} did not finish within {} ms. Continuing with fallback.", command, timeoutMillis);
+                return null;
+            }
+            try (InputStreamReader isr = new InputStreamReader(process.getInputStream());
+                 BufferedReader reader = new BufferedReader(isr)) {
+                String line = reader.readLine();
+                return null == line || line.trim().isEmpty() ? null : line.trim();
+            }
+        } catch (IOException error) {
+            LOGGER.warn("GocdVersionPlugin: Failed to obtain " + command + " result. Continuing with fallback.", error);
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * {@link InetAddress#getLocalHost()} cannot be interrupted, hence it runs on a daemon thread
+     * which is abandoned when it does not answer in time.
+     */
+    private static String fromLocalHost(long timeoutMillis) {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gocd-version-localhost-lookup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<String> hostName = executor.submit(() -> InetAddress.getLocalHost().getHostName());
+            return hostName.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException error) {
+            LOGGER.warn("GocdVersionPlugin: Local host name lookup did not finish within {} ms. Continuing with fallback.", timeoutMillis);
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        } catch (Exception error) {
+            LOGGER.debug("GocdVersionPlugin: Local host name lookup failed.", error);
+        } finally {
+            executor.shutdownNow();
+        }
+        return null;
+    }
+}
@@ -5,15 +5,41 @@ import org.eclipse.jgit.storage.file.FileBasedConfig;
 import org.eclipse.jgit.util.FS;
 import org.eclipse.jgit.util.SystemReader;
 
+/**
+ * Keeps JGit from executing the local git installation to locate the system configuration.
+ *
+ * The reader is process global in JGit. {@link #install()} is idempotent and thread-safe: it wraps
+ * the reader which is active at that time and leaves an already installed reader untouched, also
+ * when that one was installed by a copy of this plugin loaded by another class loader of the
+ * same daemon. Hence builds sharing a daemon do not stack readers on top of each other.
+ */
 class JGitNoExecSystemReader extends SystemReader {
 
-    private static final JGitNoExecSystemReader instance = new JGitNoExecSystemReader();
+    /**
+     * Installs the reader unless it (or an equivalent reader) is already active.
+     */
+    static void install() {
+        if (SystemReader.getInstance() instanceof JGitNoExecSystemReader) {
+            return;
+        }
+        synchronized (SystemReader.class) {
+            SystemReader current = SystemReader.getInstance();
+            if (!isNoExecReader(current)) {
+                SystemReader.setInstance(new JGitNoExecSystemReader(current));
+            }
+        }
+    }
 
-    public static JGitNoExecSystemReader get() {
-        return instance;
+    private static boolean isNoExecReader(SystemReader reader) {
+        return reader instanceof JGitNoExecSystemReader
+                || JGitNoExecSystemReader.class.getName().equals(reader.getClass().getName());
     }
 
-    private final SystemReader delegate = SystemReader.getInstance();
+    private final SystemReader delegate;
+
+    JGitNoExecSystemReader(SystemReader delegate) {
+        this.delegate = delegate;
+    }
 
     @Override
     public String getHostname() {
@@ -74,11 +74,41 @@ public class JPackageVersionBuilder {
         return version;
     }
     
-    private String tagWithCommitDistVersion(LocalDate date, int commitDist) {
+    /**
+     * Builds the MSI/WIX compatible version without logging, e.g. for a version history.
+     *
+     * @param autoBuildVersion version following the pattern yyyyMMdd.patch
+     * @return year.weekOfYear.patch or null when the version does not follow the pattern, the date is invalid
+     *         or the patch exceeds 255
+     */
+    static String compatibleVersionOf(String autoBuildVersion) {
+        String versionBase = String.valueOf(autoBuildVersion).trim();
+        if (!versionBase.matches("^\\d{8}[.]\\d{1,3}$")) {
+            return null;
+        }
+        int firstDot = versionBase.indexOf('.');
+        int commitDist = Integer.parseInt(versionBase.substring(firstDot+1));
+        if (commitDist > 255) {
+            return null;
+        }
+        try {
+            LocalDate tagDate = LocalDate.parse(versionBase.substring(0, firstDot),
+                                                DateTimeFormatter.ofPattern("yyyyMMdd"));
+            return format(tagDate, commitDist);
+        } catch (DateTimeParseException parseError) {
+            return null;
+        }
+    }
+
+    private static String format(LocalDate date, int commitDist) {
         String major = DateTimeFormatter.ofPattern("YY").format(date);
         String minor = DateTimeFormatter.ofPattern("ww").format(date);
         String patch = Integer.toString(commitDist);
-        String version = major+"."+minor+"."+patch;
+        return major+"."+minor+"."+patch;
+    }
+
+    private String tagWithCommitDistVersion(LocalDate date, int commitDist) {
+        String version = format(date, commitDist);
         String message = "GocdVersionPlugin: JPackageVersion: %s (using LocalDate.CommitDistance strategy, year.weekOfYear.commitDistance)";
         logger.lifecycle(String.format(message, version));
         return version;
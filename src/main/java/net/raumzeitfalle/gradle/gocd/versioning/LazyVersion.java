@@ -0,0 +1,70 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import org.gradle.api.logging.Logger;
+
+/**
+ * Project version which is generated when it is converted to a String for the first time.
+ *
+ * Gradle and most plugins call {@code toString()} on {@code project.version} only when they
+ * actually need it. Builds which never read the version (e.g. {@code help}, {@code tasks} or
+ * running tests of a single module) therefore never open the Git repository.
+ */
+final class LazyVersion implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String UNSPECIFIED = "unspecified";
+
+    private final transient Supplier<String> generator;
+
+    private final transient Logger logger;
+
+    private String version;
+
+    private boolean generating;
+
+    LazyVersion(Supplier<String> generator, Logger logger) {
+        this.generator = Objects.requireNonNull(generator, "generator must not be null");
+        this.logger = logger;
+    }
+
+    synchronized boolean isResolved() {
+        return null != version;
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (null != version) {
+            return version;
+        }
+        if (generating) {
+            /*
+             * Version generation falls back to the project version when there is no Git tag,
+             * during generation the version is still unspecified.
+             */
+            return UNSPECIFIED;
+        }
+        generating = true;
+        try {
+            version = generator.get();
+        } finally {
+            generating = false;
+        }
+        if (null != logger) {
+            logger.lifecycle("Generated version: " + version);
+        }
+        return version;
+    }
+
+    /**
+     * Serialized (e.g. into the configuration cache) as plain String.
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        return toString();
+    }
+}
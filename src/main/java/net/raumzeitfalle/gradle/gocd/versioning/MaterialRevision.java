@@ -0,0 +1,170 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Revisions GoCD exports for a material of a pipeline run: {@code GO_REVISION_<MATERIAL>} (the built revision),
+ * {@code GO_FROM_REVISION_<MATERIAL>} and {@code GO_TO_REVISION_<MATERIAL>} (the modifications of the run). A
+ * pipeline with a single unnamed material gets the variables without suffix, its material name is empty.
+ */
+public final class MaterialRevision implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final String REVISION_PREFIX = GOCD.GO_REVISION.toString() + "_";
+
+    static final String FROM_REVISION_PREFIX = GOCD.GO_FROM_REVISION.toString() + "_";
+
+    static final String TO_REVISION_PREFIX = GOCD.GO_TO_REVISION.toString() + "_";
+
+    private final String materialName;
+
+    private final String revision;
+
+    private final String fromRevision;
+
+    private final String toRevision;
+
+    MaterialRevision(String materialName, String revision, String fromRevision, String toRevision) {
+        this.materialName = Objects.requireNonNull(materialName, "materialName must not be null");
+        this.revision = revision;
+        this.fromRevision = fromRevision;
+        this.toRevision = toRevision;
+    }
+
+    /**
+     * Collects the revisions of all materials.
+     *
+     * @param variables environment variables, at least the {@code GO_REVISION*}, {@code GO_FROM_REVISION*}
+     *                  and {@code GO_TO_REVISION*} ones
+     * @return revisions by upper case material name, the unnamed material has the empty name
+     */
+    static Map<String, MaterialRevision> parseAll(Map<String, String> variables) {
+        Map<String, String[]> values = new HashMap<>();
+        variables.forEach((name, value) -> {
+            if (null == value || value.trim().isEmpty()) {
+                return;
+            }
+            if (name.equals(GOCD.GO_REVISION.toString())) {
+                valuesOf(values, "")[0] = value.trim();
+            } else if (name.equals(GOCD.GO_FROM_REVISION.toString())) {
+                valuesOf(values, "")[1] = value.trim();
+            } else if (name.equals(GOCD.GO_TO_REVISION.toString())) {
+                valuesOf(values, "")[2] = value.trim();
+            } else if (name.startsWith(REVISION_PREFIX)) {
+                valuesOf(values, name.substring(REVISION_PREFIX.length()))[0] = value.trim();
+            } else if (name.startsWith(FROM_REVISION_PREFIX)) {
+                valuesOf(values, name.substring(FROM_REVISION_PREFIX.length()))[1] = value.trim();
+            } else if (name.startsWith(TO_REVISION_PREFIX)) {
+                valuesOf(values, name.substring(TO_REVISION_PREFIX.length()))[2] = value.trim();
+            }
+        });
+        Map<String, MaterialRevision> revisions = new HashMap<>();
+        values.forEach((material, revision) -> revisions.put(material,
+                new MaterialRevision(material, revision[0], revision[1], revision[2])));
+        return Collections.unmodifiableMap(revisions);
+    }
+
+    private static String[] valuesOf(Map<String, String[]> values, String materialName) {
+        return values.computeIfAbsent(materialName.toUpperCase(), name -> new String[3]);
+    }
+
+    /**
+     * Selects the material of the Git repository being built.
+     *
+     * @param revisions revisions by upper case material name
+     * @param materialName configured material name, null to use the unnamed material or the only named one
+     * @return the revisions of the material or null when it cannot be determined
+     */
+    static MaterialRevision select(Map<String, MaterialRevision> revisions, String materialName) {
+        if (null != materialName && !materialName.trim().isEmpty()) {
+            return revisions.get(materialName.trim().toUpperCase());
+        }
+        MaterialRevision unnamed = revisions.get("");
+        if (null != unnamed || revisions.size() != 1) {
+            return unnamed;
+        }
+        return revisions.values().iterator().next();
+    }
+
+    /**
+     * @param revision revision of a material
+     * @return true for full (SHA-1) Git commit ids, other materials (e.g. Subversion) use other revisions
+     */
+    static boolean isGitCommitId(String revision) {
+        if (null == revision || revision.length() != 40) {
+            return false;
+        }
+        for (int i = 0; i < revision.length(); i++) {
+            if (Character.digit(revision.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return upper case material name, empty for the unnamed material
+     */
+    public String getMaterialName() {
+        return materialName;
+    }
+
+    /**
+     * @return the built revision ({@code GO_REVISION}), null when not defined
+     */
+    public String getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return the oldest modification of the pipeline run ({@code GO_FROM_REVISION}), null when not defined
+     */
+    public String getFromRevision() {
+        return fromRevision;
+    }
+
+    /**
+     * @return the newest modification of the pipeline run ({@code GO_TO_REVISION}), null when not defined
+     */
+    public String getToRevision() {
+        return toRevision;
+    }
+
+    /**
+     * @return the built revision, or the newest modification when the revision is not defined
+     */
+    String getBuiltRevision() {
+        return null != revision ? revision : toRevision;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof MaterialRevision)) {
+            return false;
+        }
+        MaterialRevision that = (MaterialRevision) other;
+        return materialName.equals(that.materialName)
+                && Objects.equals(revision, that.revision)
+                && Objects.equals(fromRevision, that.fromRevision)
+                && Objects.equals(toRevision, that.toRevision);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(materialName, revision, fromRevision, toRevision);
+    }
+
+    @Override
+    public String toString() {
+        return "MaterialRevision [materialName=" + materialName + ", revision=" + revision
+                + ", fromRevision=" + fromRevision + ", toRevision=" + toRevision + "]";
+    }
+}
@@ -0,0 +1,79 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Suitable tags of all modules of a monorepo, partitioned by module prefix.
+ *
+ * A module tag consists of a prefix and a version, e.g. {@code payments/v2.3.1}. The prefix is
+ * everything up to and including the last slash ({@code payments/}), only the version part has to
+ * match the version tag pattern. Tags without a slash belong to the empty prefix. The index is built
+ * by a single scan of all tags and then serves every module of the repository.
+ */
+final class ModuleTagIndex {
+
+    private final Map<String, TagIndex> partitions = new HashMap<>();
+
+    /**
+     * @param tag tag name without refs/tags/
+     * @return The module prefix including the trailing slash, an empty string for tags without a slash.
+     */
+    static String prefixOf(String tag) {
+        return tag.substring(0, tag.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * @param prefix configured module prefix, e.g. {@code payments} or {@code payments/}
+     * @return The prefix with trailing slash or null when no prefix is configured.
+     */
+    static String normalizePrefix(String prefix) {
+        if (null == prefix || prefix.trim().isEmpty()) {
+            return null;
+        }
+        String normalized = prefix.trim();
+        return normalized.endsWith("/") ? normalized : normalized + "/";
+    }
+
+    /**
+     * @param target peeled id of the tag
+     * @param refName full reference name (refs/tags/...)
+     * @param version version of the tag
+     */
+    void add(ObjectId target, String refName, VersionTag version) {
+        String prefix = prefixOf(refName.substring(Constants.R_TAGS.length()));
+        partitions.computeIfAbsent(prefix, p -> TagIndex.of(Collections.emptyMap())).add(target, refName, version);
+    }
+
+    /**
+     * @param prefix module prefix including the trailing slash
+     * @return The tags of the module, empty when the module was never tagged.
+     */
+    TagIndex get(String prefix) {
+        TagIndex partition = partitions.get(prefix);
+        return null == partition ? TagIndex.of(Collections.emptyMap()) : partition;
+    }
+
+    /**
+     * @return All (non empty) module prefixes with at least one suitable tag, sorted.
+     */
+    Set<String> getModulePrefixes() {
+        Set<String> prefixes = new TreeSet<>(partitions.keySet());
+        prefixes.remove("");
+        return prefixes;
+    }
+
+    int size() {
+        int size = 0;
+        for (TagIndex partition : partitions.values()) {
+            size += partition.size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,131 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+
+/**
+ * Shares the module tag index and the nearest tag of every module between all projects of a monorepo.
+ *
+ * The first project resolving a module prefixed version scans the tags once and walks the history once,
+ * searching the nearest tag of all modules at the same time. All other projects then only look up their
+ * module. Entries are kept by the Gradle daemon for the same HEAD, tag references and settings, the
+ * least recently used entries are discarded first.
+ */
+final class ModuleTagWalk {
+
+    /**
+     * Builds the module tag index.
+     */
+    interface IndexLoader {
+        ModuleTagIndex load() throws IOException;
+    }
+
+    private static final int MAX_ENTRIES = 16;
+
+    private static final Map<Key, ModuleTagWalk> SHARED = new LinkedHashMap<Key, ModuleTagWalk>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, ModuleTagWalk> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private ModuleTagIndex index;
+
+    private Map<String, GitDetails> nearestTags;
+
+    /**
+     * @param key HEAD, tag references and settings of the walk, null when the state of the tag references
+     *            cannot be determined (the walk is then not shared)
+     * @return the shared walk for the key
+     */
+    static ModuleTagWalk shared(Key key) {
+        if (null == key) {
+            return new ModuleTagWalk();
+        }
+        synchronized (SHARED) {
+            return SHARED.computeIfAbsent(key, k -> new ModuleTagWalk());
+        }
+    }
+
+    static void clear() {
+        synchronized (SHARED) {
+            SHARED.clear();
+        }
+    }
+
+    synchronized ModuleTagIndex getIndex(IndexLoader loader) throws IOException {
+        if (null == index) {
+            index = loader.load();
+        }
+        return index;
+    }
+
+    /**
+     * @param walk computes the nearest tag of every module of the index, only called once
+     * @return nearest tag by module prefix
+     */
+    synchronized Map<String, GitDetails> getNearestTags(Function<ModuleTagIndex, Map<String, GitDetails>> walk) {
+        if (null == nearestTags) {
+            Map<String, GitDetails> computed = walk.apply(index);
+            if (computed.values().stream().anyMatch(GitDetails::isTruncated)) {
+                /* a truncated walk may reach further next time, e.g. with a time budget */
+                return computed;
+            }
+            nearestTags = computed;
+        }
+        return nearestTags;
+    }
+
+    static final class Key {
+        private final Path gitDir;
+        private final String head;
+        private final String fingerprint;
+        private final String versionTagRegex;
+        private final String missingTagFallback;
+        private final CommitCountMode commitCountMode;
+        private final WalkBudget walkBudget;
+
+        Key(Path gitDir, String head, String fingerprint, String versionTagRegex, String missingTagFallback,
+            CommitCountMode commitCountMode, WalkBudget walkBudget) {
+            this.gitDir = gitDir;
+            this.head = head;
+            this.fingerprint = fingerprint;
+            this.versionTagRegex = versionTagRegex;
+            this.missingTagFallback = missingTagFallback;
+            this.commitCountMode = commitCountMode;
+            this.walkBudget = walkBudget;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) other;
+            return gitDir.equals(that.gitDir)
+                    && head.equals(that.head)
+                    && fingerprint.equals(that.fingerprint)
+                    && Objects.equals(versionTagRegex, that.versionTagRegex)
+                    && Objects.equals(missingTagFallback, that.missingTagFallback)
+                    && commitCountMode == that.commitCountMode
+                    && Objects.equals(walkBudget, that.walkBudget);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(gitDir, head, fingerprint, versionTagRegex, missingTagFallback, commitCountMode,
+                                walkBudget);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.util.Arrays;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Open addressing hash map from object ids to non-negative int values.
+ *
+ * Object ids are stored as five ints per slot, so neither keys nor values are boxed and
+ * lookups do not allocate. As object ids are uniformly distributed, one of their words
+ * ({@link AnyObjectId#hashCode()}) is used as hash code.
+ */
+class ObjectIdIntMap {
+
+    static final int MISSING = -1;
+
+    private static final int WORDS = 5;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    ObjectIdIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        this.keys = new int[capacity * WORDS];
+        this.values = new int[capacity];
+        Arrays.fill(values, MISSING);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The value stored for the id or {@link #MISSING}.
+     */
+    int get(AnyObjectId id) {
+        int slot = find(id);
+        return values[slot];
+    }
+
+    /**
+     * Stores the value unless the id is already present.
+     *
+     * @return true if the value was stored.
+     */
+    boolean putIfAbsent(AnyObjectId id, int value) {
+        checkValue(value);
+        ensureCapacity();
+        int slot = find(id);
+        if (values[slot] != MISSING) {
+            return false;
+        }
+        id.copyRawTo(keys, slot * WORDS);
+        values[slot] = value;
+        size += 1;
+        return true;
+    }
+
+    /**
+     * Replaces the value of an existing id or adds it.
+     */
+    void put(AnyObjectId id, int value) {
+        checkValue(value);
+        ensureCapacity();
+        int slot = find(id);
+        if (values[slot] == MISSING) {
+            id.copyRawTo(keys, slot * WORDS);
+            size += 1;
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * @return Number of slots, slots with a value of {@link #MISSING} are empty.
+     */
+    int capacity() {
+        return values.length;
+    }
+
+    ObjectId keyAt(int slot) {
+        return ObjectId.fromRaw(keys, slot * WORDS);
+    }
+
+    int valueAt(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * @return Slot containing the id or the empty slot where it would be stored.
+     */
+    private int find(AnyObjectId id) {
+        int mask = values.length - 1;
+        int slot = id.hashCode() & mask;
+        while (values[slot] != MISSING && id.compareTo(keys, slot * WORDS) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static void checkValue(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Only non-negative values are supported: " + value);
+        }
+    }
+
+    private void ensureCapacity() {
+        if ((size + 1) * 2 <= values.length) {
+            return;
+        }
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(values, MISSING);
+        for (int slot = 0; slot < oldValues.length; slot++) {
+            if (oldValues[slot] != MISSING) {
+                ObjectId id = ObjectId.fromRaw(oldKeys, slot * WORDS);
+                int target = find(id);
+                System.arraycopy(oldKeys, slot * WORDS, keys, target * WORDS, WORDS);
+                values[target] = oldValues[slot];
+            }
+        }
+    }
+}
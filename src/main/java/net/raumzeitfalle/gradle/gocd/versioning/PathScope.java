@@ -0,0 +1,138 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+/**
+ * Decides whether a commit changed a directory of the repository, used to count only the
+ * commits of one project in a monorepo.
+ *
+ * A commit changed the directory when the directory differs from every parent of the commit
+ * (a merge which takes the directory unchanged from one side did not change it). When the
+ * commit-graph contains changed-path Bloom filters, most commits are rejected by their filter
+ * and only the remaining candidates are checked by comparing trees.
+ */
+final class PathScope implements AutoCloseable {
+
+    private final ChangedPathKey key;
+
+    private final CommitGraph graph;
+
+    private final boolean useFilters;
+
+    private final ObjectReader reader;
+
+    private final RevWalk walk;
+
+    private int filtered;
+
+    private int compared;
+
+    /**
+     * @param repository repository to read trees from
+     * @param path repository relative directory
+     * @param graph commit-graph whose Bloom filters should be used, may be null
+     */
+    PathScope(Repository repository, String path, CommitGraph graph) {
+        this.key = new ChangedPathKey(Objects.requireNonNull(path, "path must not be null"));
+        this.graph = graph;
+        this.useFilters = null != graph && graph.hasChangedPathFilters(key);
+        this.reader = repository.newObjectReader();
+        this.walk = new RevWalk(reader);
+        this.walk.setRetainBody(false);
+    }
+
+    String getPath() {
+        return key.getPath();
+    }
+
+    boolean usesChangedPathFilters() {
+        return useFilters;
+    }
+
+    /**
+     * @param position graph position of a commit, the scope must have been created with that graph
+     * @return true if the commit changed the directory
+     */
+    boolean changedAt(int position) {
+        if (useFilters && !graph.mayHaveChanged(position, key)) {
+            filtered += 1;
+            return false;
+        }
+        return compareTrees(graph.getId(position));
+    }
+
+    /**
+     * @param commit id of a commit
+     * @return true if the commit changed the directory
+     */
+    boolean changed(AnyObjectId commit) {
+        if (useFilters) {
+            int position = graph.findPosition(commit);
+            if (position >= 0 && !graph.mayHaveChanged(position, key)) {
+                filtered += 1;
+                return false;
+            }
+        }
+        return compareTrees(commit);
+    }
+
+    /**
+     * @return number of commits rejected by a Bloom filter
+     */
+    int getFilteredCount() {
+        return filtered;
+    }
+
+    /**
+     * @return number of commits whose trees were compared
+     */
+    int getComparedCount() {
+        return compared;
+    }
+
+    private boolean compareTrees(AnyObjectId commitId) {
+        compared += 1;
+        try {
+            RevCommit commit = walk.parseCommit(commitId);
+            ObjectId scoped = scopedTree(commit.getTree());
+            if (commit.getParentCount() == 0) {
+                return null != scoped;
+            }
+            for (RevCommit parent : commit.getParents()) {
+                walk.parseHeaders(parent);
+                if (Objects.equals(scoped, scopedTree(parent.getTree()))) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    private ObjectId scopedTree(RevTree tree) throws IOException {
+        if (key.getPath().isEmpty()) {
+            return tree.copy();
+        }
+        try (TreeWalk treeWalk = TreeWalk.forPath(reader, key.getPath(), tree)) {
+            return null == treeWalk ? null : treeWalk.getObjectId(0);
+        }
+    }
+
+    @Override
+    public void close() {
+        walk.close();
+        reader.close();
+    }
+}
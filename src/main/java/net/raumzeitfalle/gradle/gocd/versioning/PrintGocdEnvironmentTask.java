@@ -16,13 +16,14 @@ public class PrintGocdEnvironmentTask extends org.gradle.api.DefaultTask {
     private final Function<Project,GocdEnvironment> environmentSupplier;
 
     public PrintGocdEnvironmentTask() {
-        this(project->new GocdEnvironmentImpl(project, System.getenv()));
+        this(project->GocdEnvironmentService.obtain(project).snapshot(project));
     }
 
     PrintGocdEnvironmentTask(Function<Project,GocdEnvironment> environmentSupplier) {
         this.environmentSupplier = Objects.requireNonNull(environmentSupplier);
         this.setGroup("Versioning");
         this.setDescription("Shows all Gocd related environment details");
+        this.notCompatibleWithConfigurationCache("Reads project version and extension while printing the environment.");
     }
 
     String prepareMessage() {
@@ -61,9 +62,12 @@ public class PrintGocdEnvironmentTask extends org.gradle.api.DefaultTask {
 
         Path projectDir = getProject().getProjectDir().toPath();
         getProject().getLogger().info("GocdVersionPlugin: GocdVersionPlugin: Project directory: {}", projectDir);
-        String automatedVersion = new GitTagVersionHelper(getProject().getLogger(), projectDir)
-                .setVersionTagRegex(ext.getSuitableTagRegex())
-                .setMissingTagFallback(ext.getMissingTagVersionDefault())
+        String automatedVersion = GitVersionService.obtain(getProject())
+                .resolve(projectDir,
+                         ext.getSuitableTagRegex(),
+                         ext.getMissingTagVersionDefault(),
+                         ext.getResolutionOptions(),
+                         getProject().getLogger())
                 .getLatestTag()
                 .map(details->details.map(ext))
                 .orElseGet(()->{
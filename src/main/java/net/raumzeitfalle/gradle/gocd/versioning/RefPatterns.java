@@ -0,0 +1,126 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import org.eclipse.jgit.errors.AmbiguousObjectException;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.RevisionSyntaxException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Expands the refs given to a batch resolution, e.g. {@code refs/heads/*}, {@code release/**} or {@code main}.
+ *
+ * A pattern containing {@code *} is a glob, where {@code *} matches within one path segment and {@code **}
+ * across segments. Globs not starting with {@code refs/} are matched against local branches
+ * ({@code refs/heads/}) and remote tracking branches ({@code refs/remotes/}). Any other pattern is resolved
+ * like {@code git rev-parse} does, e.g. {@code main}, {@code origin/main}, {@code HEAD~1} or a commit id.
+ * Only the refs below the literal directory prefix of a glob are listed, e.g. {@code refs/tags/} for
+ * {@code refs/tags/v*}.
+ */
+final class RefPatterns {
+
+    private static final String[] SHORT_NAME_PREFIXES = { Constants.R_HEADS, Constants.R_REMOTES };
+
+    private RefPatterns() {
+        /* static utility */
+    }
+
+    /**
+     * @param repo repository whose references are read
+     * @param patterns ref names, globs or revisions
+     * @return Commit ids by ref name (globs) or by pattern (everything else), globs sorted by ref name.
+     *         Patterns which cannot be resolved are not contained.
+     * @throws IOException if the references cannot be read
+     */
+    static Map<String, ObjectId> resolve(Repository repo, Collection<String> patterns) throws IOException {
+        Map<String, ObjectId> resolved = new LinkedHashMap<>();
+        for (String pattern : patterns) {
+            String trimmed = pattern.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int firstWildcard = trimmed.indexOf('*');
+            if (firstWildcard < 0) {
+                ObjectId id = resolveCommit(repo, trimmed);
+                if (null != id) {
+                    resolved.putIfAbsent(trimmed, id);
+                }
+                continue;
+            }
+            Pattern glob = compile(trimmed);
+            boolean fullName = trimmed.startsWith(Constants.R_REFS);
+            String[] prefixes = fullName
+                    ? new String[] { trimmed.substring(0, trimmed.lastIndexOf('/', firstWildcard) + 1) }
+                    : SHORT_NAME_PREFIXES;
+            Map<String, ObjectId> matches = new TreeMap<>();
+            for (Ref ref : repo.getRefDatabase().getRefsByPrefix(prefixes)) {
+                if (ref.isSymbolic() || !matches(glob, ref.getName(), fullName)) {
+                    continue;
+                }
+                /* tags matched by a glob are peeled to the tagged commit */
+                ObjectId id = resolveCommit(repo, ref.getName());
+                if (null != id) {
+                    matches.put(ref.getName(), id);
+                }
+            }
+            matches.forEach(resolved::putIfAbsent);
+        }
+        return resolved;
+    }
+
+    private static boolean matches(Pattern glob, String refName, boolean fullName) {
+        if (fullName) {
+            return glob.matcher(refName).matches();
+        }
+        for (String prefix : SHORT_NAME_PREFIXES) {
+            if (refName.startsWith(prefix) && glob.matcher(refName.substring(prefix.length())).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ObjectId resolveCommit(Repository repo, String revision) throws IOException {
+        /* invalid or ambiguous revisions and refs to trees or blobs are skipped */
+        try {
+            return repo.resolve(revision + "^{commit}");
+        } catch (IncorrectObjectTypeException | AmbiguousObjectException | RevisionSyntaxException error) {
+            return null;
+        }
+    }
+
+    /**
+     * @param glob pattern with {@code *} (one path segment) and {@code **} (any number of segments)
+     * @return equivalent regular expression
+     */
+    static Pattern compile(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int index = 0;
+        while (index < glob.length()) {
+            char c = glob.charAt(index);
+            if (c == '*') {
+                if (index + 1 < glob.length() && glob.charAt(index + 1) == '*') {
+                    regex.append(".*");
+                    index += 2;
+                } else {
+                    regex.append("[^/]*");
+                    index += 1;
+                }
+            } else {
+                int next = glob.indexOf('*', index);
+                int end = next < 0 ? glob.length() : next;
+                regex.append(Pattern.quote(glob.substring(index, end)));
+                index = end;
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,264 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Keeps JGit repositories open for the lifetime of the Gradle daemon, so that later builds reuse
+ * loaded pack indexes and the {@code WindowCache} instead of reading them again.
+ *
+ * Repositories are keyed by their canonical git directory and handed out as {@link Lease}s.
+ * A repository without leases is idle. Idle repositories are closed when they were not used for
+ * {@link #DEFAULT_IDLE_MILLIS}, when more than {@link #DEFAULT_MAX_IDLE} repositories are idle
+ * (least recently used first) or when their git directory was deleted or replaced. Eviction runs
+ * whenever a repository is acquired and at the end of each build.
+ */
+final class RepositoryPool {
+
+    static final long DEFAULT_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    static final int DEFAULT_MAX_IDLE = 8;
+
+    private static final RepositoryPool SHARED = new RepositoryPool(DEFAULT_IDLE_MILLIS, DEFAULT_MAX_IDLE,
+                                                                    System::currentTimeMillis);
+
+    /**
+     * Opens a repository when the pool does not hold it yet.
+     */
+    interface Opener {
+        Repository open() throws IOException;
+    }
+
+    private final long idleMillis;
+
+    private final int maxIdle;
+
+    private final LongSupplier clock;
+
+    /* access order, least recently used first */
+    private final Map<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    RepositoryPool(long idleMillis, int maxIdle, LongSupplier clock) {
+        this.idleMillis = idleMillis;
+        this.maxIdle = maxIdle;
+        this.clock = Objects.requireNonNull(clock, "clock must not be null");
+    }
+
+    static RepositoryPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Leases the repository of the given git directory, opening it if needed.
+     *
+     * @param gitDir git directory of the repository
+     * @param opener opens the repository when it is not pooled (or no longer valid)
+     * @return the lease, to be closed when the repository is no longer used
+     * @throws IOException when the repository cannot be opened
+     */
+    Lease acquire(Path gitDir, Opener opener) throws IOException {
+        Path key = canonical(gitDir);
+        Object identity = identityOf(key);
+        List<Repository> evicted = new ArrayList<>();
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (null != entry && !Objects.equals(entry.identity, identity)) {
+                /* outdated, leased instances stay with their holders until released */
+                if (entry.leases == 0) {
+                    entries.remove(key);
+                    entry.pooled = false;
+                    evicted.add(entry.repository);
+                }
+                entry = null;
+            }
+            if (null != entry) {
+                entry.leases += 1;
+            }
+            collectEvictions(evicted);
+        }
+        closeAll(evicted);
+        if (null != entry) {
+            return new Lease(entry);
+        }
+
+        Repository opened = opener.open();
+        synchronized (this) {
+            Entry concurrent = entries.get(key);
+            if (null != concurrent && Objects.equals(concurrent.identity, identity)) {
+                /* another thread opened the same repository meanwhile */
+                concurrent.leases += 1;
+                evicted.add(opened);
+                entry = concurrent;
+            } else {
+                entry = new Entry(key, identity, opened);
+                entry.leases = 1;
+                if (null == concurrent || concurrent.leases == 0) {
+                    if (null != concurrent) {
+                        evicted.add(concurrent.repository);
+                    }
+                    entries.put(key, entry);
+                } else {
+                    /* the pooled instance is in use but outdated, this one is not pooled */
+                    entry.pooled = false;
+                }
+            }
+        }
+        closeAll(evicted);
+        return new Lease(entry);
+    }
+
+    /**
+     * Closes idle repositories which exceeded the idle time or the idle limit.
+     *
+     * @return number of closed repositories
+     */
+    int evictIdle() {
+        List<Repository> evicted = new ArrayList<>();
+        synchronized (this) {
+            collectEvictions(evicted);
+        }
+        closeAll(evicted);
+        return evicted.size();
+    }
+
+    /**
+     * Closes all idle repositories, repositories in use are closed when their last lease is returned.
+     */
+    void clear() {
+        List<Repository> evicted = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                entry.pooled = false;
+                if (entry.leases == 0) {
+                    evicted.add(entry.repository);
+                }
+                iterator.remove();
+            }
+        }
+        closeAll(evicted);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private void release(Entry entry) {
+        Repository toClose = null;
+        synchronized (this) {
+            entry.leases -= 1;
+            entry.lastUsed = clock.getAsLong();
+            if (entry.leases == 0 && !entry.pooled) {
+                toClose = entry.repository;
+            }
+        }
+        if (null != toClose) {
+            toClose.close();
+        }
+    }
+
+    private void collectEvictions(List<Repository> evicted) {
+        long now = clock.getAsLong();
+        int idle = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.leases == 0) {
+                idle += 1;
+            }
+        }
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.leases > 0) {
+                continue;
+            }
+            boolean expired = now - entry.lastUsed >= idleMillis;
+            if (expired || idle > maxIdle || !Files.isDirectory(entry.gitDir)) {
+                iterator.remove();
+                entry.pooled = false;
+                evicted.add(entry.repository);
+                idle -= 1;
+            }
+        }
+    }
+
+    private static void closeAll(List<Repository> repositories) {
+        for (Repository repository : repositories) {
+            repository.close();
+        }
+    }
+
+    private static Path canonical(Path gitDir) {
+        try {
+            return gitDir.toRealPath();
+        } catch (IOException error) {
+            return gitDir.toAbsolutePath().normalize();
+        }
+    }
+
+    /**
+     * Identifies the git directory itself, so that a directory which was deleted and
+     * created again (e.g. a fresh clone on a build agent) is not served from the pool.
+     */
+    private static Object identityOf(Path gitDir) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(gitDir, BasicFileAttributes.class);
+            Object fileKey = attributes.fileKey();
+            return null != fileKey ? fileKey : attributes.creationTime();
+        } catch (IOException error) {
+            return null;
+        }
+    }
+
+    private static final class Entry {
+        private final Path gitDir;
+        private final Object identity;
+        private final Repository repository;
+        private int leases;
+        private long lastUsed;
+        private boolean pooled = true;
+
+        private Entry(Path gitDir, Object identity, Repository repository) {
+            this.gitDir = gitDir;
+            this.identity = identity;
+            this.repository = repository;
+        }
+    }
+
+    /**
+     * Grants use of a pooled repository until it is closed. The repository itself must not be closed.
+     */
+    final class Lease implements AutoCloseable {
+        private final Entry entry;
+        private boolean released;
+
+        private Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        Repository getRepository() {
+            return entry.repository;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(entry);
+            }
+        }
+    }
+}
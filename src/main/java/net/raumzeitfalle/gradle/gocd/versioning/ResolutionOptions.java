@@ -0,0 +1,151 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.util.Objects;
+
+/**
+ * Settings of a Git resolution besides the tag pattern and fallback, i.e. the module tag prefix, which tag
+ * is selected, how the commit history is walked, which commits are counted and the GoCD material revision
+ * to start from. Instances are immutable and used as part of resolution and cache keys.
+ */
+final class ResolutionOptions {
+
+    static final ResolutionOptions DEFAULT = new ResolutionOptions(CommitCountMode.ALL_PARENTS,
+                                                                   WalkBudget.UNLIMITED,
+                                                                   false,
+                                                                   null,
+                                                                   TagSelection.NEAREST_TAG);
+
+    private final CommitCountMode commitCountMode;
+
+    private final WalkBudget walkBudget;
+
+    private final boolean projectScopedCommitCount;
+
+    private final String tagPrefix;
+
+    private final TagSelection tagSelection;
+
+    private final MaterialRevision materialRevision;
+
+    ResolutionOptions(CommitCountMode commitCountMode, WalkBudget walkBudget, boolean projectScopedCommitCount,
+                      String tagPrefix) {
+        this(commitCountMode, walkBudget, projectScopedCommitCount, tagPrefix, TagSelection.NEAREST_TAG);
+    }
+
+    ResolutionOptions(CommitCountMode commitCountMode, WalkBudget walkBudget, boolean projectScopedCommitCount,
+                      String tagPrefix, TagSelection tagSelection) {
+        this(commitCountMode, walkBudget, projectScopedCommitCount, tagPrefix, tagSelection, null);
+    }
+
+    ResolutionOptions(CommitCountMode commitCountMode, WalkBudget walkBudget, boolean projectScopedCommitCount,
+                      String tagPrefix, TagSelection tagSelection, MaterialRevision materialRevision) {
+        this.commitCountMode = null == commitCountMode ? CommitCountMode.ALL_PARENTS : commitCountMode;
+        this.walkBudget = null == walkBudget ? WalkBudget.UNLIMITED : walkBudget;
+        this.projectScopedCommitCount = projectScopedCommitCount;
+        this.tagPrefix = ModuleTagIndex.normalizePrefix(tagPrefix);
+        this.tagSelection = null == tagSelection ? TagSelection.NEAREST_TAG : tagSelection;
+        this.materialRevision = materialRevision;
+    }
+
+    /**
+     * @return which parents are followed when searching the tag and counting commits
+     */
+    CommitCountMode getCommitCountMode() {
+        return commitCountMode;
+    }
+
+    /**
+     * @return limits of the history walk
+     */
+    WalkBudget getWalkBudget() {
+        return walkBudget;
+    }
+
+    /**
+     * @return true if only commits changing the project directory are counted
+     */
+    boolean isProjectScopedCommitCount() {
+        return projectScopedCommitCount;
+    }
+
+    /**
+     * @return module prefix of the version tags including the trailing slash, null for tags without prefix
+     */
+    String getTagPrefix() {
+        return tagPrefix;
+    }
+
+    /**
+     * @return whether the nearest tag or the highest reachable version is used
+     */
+    TagSelection getTagSelection() {
+        return tagSelection;
+    }
+
+    /**
+     * @return revisions of the GoCD material being built, null to start from HEAD
+     */
+    MaterialRevision getMaterialRevision() {
+        return materialRevision;
+    }
+
+    ResolutionOptions withCommitCountMode(CommitCountMode mode) {
+        return new ResolutionOptions(mode, walkBudget, projectScopedCommitCount, tagPrefix, tagSelection,
+                                     materialRevision);
+    }
+
+    ResolutionOptions withWalkBudget(WalkBudget budget) {
+        return new ResolutionOptions(commitCountMode, budget, projectScopedCommitCount, tagPrefix, tagSelection,
+                                     materialRevision);
+    }
+
+    ResolutionOptions withProjectScopedCommitCount(boolean projectScoped) {
+        return new ResolutionOptions(commitCountMode, walkBudget, projectScoped, tagPrefix, tagSelection,
+                                     materialRevision);
+    }
+
+    ResolutionOptions withTagPrefix(String prefix) {
+        return new ResolutionOptions(commitCountMode, walkBudget, projectScopedCommitCount, prefix, tagSelection,
+                                     materialRevision);
+    }
+
+    ResolutionOptions withTagSelection(TagSelection selection) {
+        return new ResolutionOptions(commitCountMode, walkBudget, projectScopedCommitCount, tagPrefix, selection,
+                                     materialRevision);
+    }
+
+    ResolutionOptions withMaterialRevision(MaterialRevision revision) {
+        return new ResolutionOptions(commitCountMode, walkBudget, projectScopedCommitCount, tagPrefix, tagSelection,
+                                     revision);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ResolutionOptions)) {
+            return false;
+        }
+        ResolutionOptions that = (ResolutionOptions) other;
+        return commitCountMode == that.commitCountMode
+                && walkBudget.equals(that.walkBudget)
+                && projectScopedCommitCount == that.projectScopedCommitCount
+                && Objects.equals(tagPrefix, that.tagPrefix)
+                && tagSelection == that.tagSelection
+                && Objects.equals(materialRevision, that.materialRevision);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(commitCountMode, walkBudget, projectScopedCommitCount, tagPrefix, tagSelection,
+                            materialRevision);
+    }
+
+    @Override
+    public String toString() {
+        return "ResolutionOptions [commitCountMode=" + commitCountMode + ", walkBudget=" + walkBudget
+                + ", projectScopedCommitCount=" + projectScopedCommitCount + ", tagPrefix=" + tagPrefix
+                + ", tagSelection=" + tagSelection + ", materialRevision=" + materialRevision + "]";
+    }
+}
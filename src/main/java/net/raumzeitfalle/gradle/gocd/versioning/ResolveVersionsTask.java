@@ -0,0 +1,101 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.gradle.api.Project;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.options.Option;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+
+/**
+ * Shows the Git tag based version of many refs at once, e.g. of all branches for a dashboard or release
+ * tooling: {@code gradle resolveVersions --refs='refs/heads/*' --refs='origin/release/*'}.
+ *
+ * All refs are resolved with one tag scan and one shared commit-graph walk state instead of one resolution
+ * per checkout. The tag settings are taken from the {@code gocdVersion} extension.
+ */
+public abstract class ResolveVersionsTask extends AbstractGitVersionTask {
+
+    static final String NAME = "resolveVersions";
+
+    public ResolveVersionsTask() {
+        this.setDescription("Shows the Git tag based versions of many refs, by default of all local branches");
+        getRefs().convention(Collections.singletonList("refs/heads/*"));
+        getParallel().convention(Boolean.TRUE);
+    }
+
+    static TaskProvider<ResolveVersionsTask> register(Project project, GocdVersionPluginExtension extension,
+                                                      Provider<GitVersionService> gitVersionService) {
+        return project.getTasks().register(NAME, ResolveVersionsTask.class,
+                                           task -> task.configureFrom(project, extension, gitVersionService));
+    }
+
+    /**
+     * @return ref names, globs (e.g. {@code refs/heads/*}, {@code release/**}) or revisions to resolve
+     */
+    @Input
+    @Option(option = "refs", description = "Ref name, glob (e.g. refs/heads/*) or revision to resolve, may be repeated.")
+    public abstract ListProperty<String> getRefs();
+
+    /**
+     * @return whether independent heads are walked on several threads, default is true
+     */
+    @Input
+    public abstract Property<Boolean> getParallel();
+
+    Map<String, GitDetails> resolveVersions() {
+        return getGitVersionService().get().resolveVersions(workingDir(),
+                                                             getSuitableTagRegex().get(),
+                                                             getMissingTagVersionDefault().getOrNull(),
+                                                             resolutionOptions(),
+                                                             getRefs().get(),
+                                                             getParallel().get(),
+                                                             getLogger());
+    }
+
+    String prepareMessage(Map<String, GitDetails> versions) {
+        int maxWidth = versions.keySet().stream()
+                               .mapToInt(String::length)
+                               .max()
+                               .orElse(0);
+        List<String> lines = new ArrayList<>();
+        boolean appendCommitCount = getAppendCommitCount().get();
+        versions.forEach((ref, details) -> {
+            StringBuilder line = new StringBuilder(ref);
+            for (int width = ref.length(); width < maxWidth; width++) {
+                line.append(' ');
+            }
+            line.append(" = ")
+                .append(details.map(appendCommitCount))
+                .append(" (tag ")
+                .append(details.getTag())
+                .append(", distance ")
+                .append(details.getCommitCount())
+                .append(details.isTruncated() ? "+" : "")
+                .append(", ")
+                .append(details.getShortCommitName())
+                .append(')');
+            lines.add(line.toString());
+        });
+        return String.join(System.lineSeparator(), lines);
+    }
+
+    @TaskAction
+    public void printVersions() {
+        Map<String, GitDetails> versions = resolveVersions();
+        if (versions.isEmpty()) {
+            getLogger().warn("GocdVersionPlugin: None of the refs {} could be resolved.", getRefs().get());
+            return;
+        }
+        getLogger().lifecycle(prepareMessage(versions));
+    }
+}
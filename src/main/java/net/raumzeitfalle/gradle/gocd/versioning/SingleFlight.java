@@ -0,0 +1,61 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent computations of the same key: the first caller computes the value,
+ * all callers arriving while the computation is in flight wait for and share its result.
+ * Nothing is kept once the computation has finished.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+final class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param key identifies the computation
+     * @param computation computes the value, only called when no computation for the key is in flight
+     * @return the computed or the shared value
+     */
+    V execute(K key, Supplier<V> computation) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, created);
+        if (null != running) {
+            return await(running);
+        }
+        try {
+            V value = computation.get();
+            created.complete(value);
+            return value;
+        } catch (RuntimeException | Error error) {
+            created.completeExceptionally(error);
+            throw error;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> running) {
+        try {
+            return running.get();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a concurrent Git resolution.", error);
+        } catch (ExecutionException error) {
+            Throwable cause = error.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled form of the suitable tag regular expression, deciding whether a tag is suitable and
+ * reading its {@link VersionTag} at the same time.
+ *
+ * The default expression {@link GitTagCollector#DEFAULT_VERSIONABLE_TAG_REGEX} is recognized and
+ * replaced by a hand written parser, which neither runs a regular expression nor allocates for unsuitable
+ * tags. Any other expression is matched by a (case insensitive) {@link Pattern}, but only for tags
+ * starting with the literal prefix of the expression (e.g. {@code release-} of {@code ^release-\d+$}).
+ *
+ * Instances reuse a single {@link Matcher} and are not thread safe.
+ */
+abstract class TagGrammar {
+
+    private static final String SNAPSHOT = "-SNAPSHOT";
+
+    /**
+     * @param regex suitable tag regular expression, an invalid expression must have been replaced before
+     * @return the grammar for the expression
+     */
+    static TagGrammar compile(String regex) {
+        if (GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX.equals(regex.trim())) {
+            return new DefaultGrammar();
+        }
+        return new PatternGrammar(Pattern.compile(regex, Pattern.CASE_INSENSITIVE), literalPrefix(regex));
+    }
+
+    /**
+     * @param tag tag name or reference name
+     * @param start index where the part to be matched starts (e.g. after refs/tags/ or a module prefix)
+     * @return the version of a suitable tag or null when the tag is not suitable
+     */
+    abstract VersionTag parse(CharSequence tag, int start);
+
+    final VersionTag parse(String tag) {
+        return parse(tag, 0);
+    }
+
+    /**
+     * Determines the characters each match must start with: the literal characters at the start of
+     * the expression up to the first meta character. Expressions with alternatives have no prefix.
+     */
+    static String literalPrefix(String regex) {
+        if (regex.indexOf('|') >= 0) {
+            return "";
+        }
+        StringBuilder prefix = new StringBuilder();
+        int index = regex.startsWith("^") ? 1 : 0;
+        while (index < regex.length()) {
+            char c = regex.charAt(index);
+            char literal;
+            int next;
+            if (c == '\\' && index + 1 < regex.length() && isEscapedPunctuation(regex.charAt(index + 1))) {
+                literal = regex.charAt(index + 1);
+                next = index + 2;
+            } else if (Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '/' || c == '@' || c == ' ') {
+                literal = c;
+                next = index + 1;
+            } else {
+                break;
+            }
+            if (next < regex.length() && "?*{".indexOf(regex.charAt(next)) >= 0) {
+                /* the character is optional or repeated */
+                break;
+            }
+            prefix.append(literal);
+            index = next;
+        }
+        return prefix.toString();
+    }
+
+    private static boolean isEscapedPunctuation(char c) {
+        return ".-/_@$^()[]{}*+?|\\".indexOf(c) >= 0;
+    }
+
+    /**
+     * Parser for {@code ^([vV])?\d+([.]\d+)?([.]\d+)?([.]\d+)?(-SNAPSHOT)?$}, case insensitive.
+     */
+    private static final class DefaultGrammar extends TagGrammar {
+        @Override
+        VersionTag parse(CharSequence tag, int start) {
+            int length = tag.length();
+            int index = start;
+            if (index < length && (tag.charAt(index) == 'v' || tag.charAt(index) == 'V')) {
+                index++;
+            }
+            int components = 0;
+            while (true) {
+                int digits = index;
+                while (index < length && VersionTag.isDigit(tag.charAt(index))) {
+                    index++;
+                }
+                if (index == digits) {
+                    return null;
+                }
+                components++;
+                if (components < 4 && index < length && tag.charAt(index) == '.') {
+                    index++;
+                } else {
+                    break;
+                }
+            }
+            if (index < length) {
+                if (length - index != SNAPSHOT.length()
+                        || !regionMatchesIgnoreCase(tag, index, SNAPSHOT)) {
+                    return null;
+                }
+            }
+            return VersionTag.parse(tag, start);
+        }
+
+        private static boolean regionMatchesIgnoreCase(CharSequence tag, int start, String expected) {
+            for (int i = 0; i < expected.length(); i++) {
+                if (Character.toUpperCase(tag.charAt(start + i)) != expected.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class PatternGrammar extends TagGrammar {
+        private final Matcher matcher;
+        private final String prefix;
+        /* digits of the prefix belong to the version, e.g. the major version 1 of ^1\.\d+$ */
+        private final int versionOffset;
+
+        PatternGrammar(Pattern pattern, String prefix) {
+            this.matcher = pattern.matcher("");
+            this.prefix = prefix;
+            int offset = 0;
+            while (offset < prefix.length() && !VersionTag.isDigit(prefix.charAt(offset))) {
+                offset++;
+            }
+            this.versionOffset = offset;
+        }
+
+        @Override
+        VersionTag parse(CharSequence tag, int start) {
+            if (tag.length() - start < prefix.length()) {
+                return null;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                char a = tag.charAt(start + i);
+                char b = prefix.charAt(i);
+                if (a != b && Character.toUpperCase(a) != Character.toUpperCase(b)
+                        && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                    return null;
+                }
+            }
+            matcher.reset(tag).region(start, tag.length());
+            if (!matcher.matches()) {
+                return null;
+            }
+            return VersionTag.parse(tag, start + versionOffset);
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Index of all suitable tags, keyed by the id of the commit they (finally) point to.
+ *
+ * The index is built directly from the bytes of the {@code packed-refs} file and the loose
+ * {@code refs/tags} directory. References outside of {@code refs/tags/} are never materialized,
+ * in a sorted packed-refs file they are not even scanned. Peeled ids are taken from packed-refs
+ * whenever git recorded them there, only loose annotated tags need to be peeled by a {@link Peeler}.
+ *
+ * Together with each tag its {@link VersionTag} is kept. When several suitable tags point to the same
+ * commit, the highest version wins (for equal versions the smaller reference name).
+ */
+class TagIndex {
+
+    /**
+     * Resolves an object id to the id of the object it finally points to (for annotated tags the tagged commit).
+     */
+    interface Peeler {
+        ObjectId peel(ObjectId id) throws IOException;
+    }
+
+    /**
+     * Decides on a tag by its full reference name (refs/tags/...).
+     */
+    interface TagParser {
+        /**
+         * @return The version of a suitable tag or null when the tag is not suitable.
+         */
+        VersionTag parse(String refName);
+    }
+
+    /**
+     * Receives the suitable tags of a scan.
+     */
+    interface TagConsumer {
+        void accept(ObjectId target, String refName, VersionTag version);
+    }
+
+    private static final byte[] TAGS_PREFIX = Constants.R_TAGS.getBytes(StandardCharsets.US_ASCII);
+
+    private static final int ID_LENGTH = Constants.OBJECT_ID_STRING_LENGTH;
+
+    private final List<String> refNames = new ArrayList<>();
+
+    private final List<VersionTag> versions = new ArrayList<>();
+
+    private final ObjectIdIntMap tagsByTarget;
+
+    private TagIndex(int expectedSize) {
+        this.tagsByTarget = new ObjectIdIntMap(expectedSize);
+    }
+
+    /**
+     * Builds the index for the references of the given (common) git directory.
+     *
+     * @param commonDir directory containing packed-refs and refs/tags
+     * @param isSuitableTag predicate deciding on the tag name (without refs/tags/ prefix)
+     * @param peeler used for tags whose peeled id is not recorded in packed-refs
+     * @return the index, never null
+     * @throws IOException if the references cannot be read
+     */
+    static TagIndex build(Path commonDir, Predicate<String> isSuitableTag, Peeler peeler) throws IOException {
+        return collect(commonDir,
+                       refName -> isSuitableTag.test(refName.substring(Constants.R_TAGS.length()))
+                               ? VersionTag.parse(refName, Constants.R_TAGS.length())
+                               : null,
+                       peeler);
+    }
+
+    /**
+     * Builds the index for the references of the given (common) git directory.
+     *
+     * @param commonDir directory containing packed-refs and refs/tags
+     * @param parser decides on the tags and reads their versions
+     * @param peeler used for tags whose peeled id is not recorded in packed-refs
+     * @return the index, never null
+     * @throws IOException if the references cannot be read
+     */
+    static TagIndex collect(Path commonDir, TagParser parser, Peeler peeler) throws IOException {
+        Map<String, ObjectId> looseTags = readLooseTags(commonDir);
+        List<PackedTag> packedTags = readPackedTags(commonDir.resolve("packed-refs"), looseTags);
+
+        TagIndex index = new TagIndex(looseTags.size() + packedTags.size());
+        scan(looseTags, packedTags, parser, peeler, index::add);
+        return index;
+    }
+
+    /**
+     * Reads the references of the given (common) git directory like {@link #collect(Path, TagParser, Peeler)},
+     * but passes every suitable tag to the given consumer instead of collecting them into a single index.
+     *
+     * @param commonDir directory containing packed-refs and refs/tags
+     * @param parser decides on the tags and reads their versions
+     * @param peeler used for tags whose peeled id is not recorded in packed-refs
+     * @param consumer receives the peeled id, the full reference name and the version of each suitable tag
+     * @throws IOException if the references cannot be read
+     */
+    static void scan(Path commonDir, TagParser parser, Peeler peeler, TagConsumer consumer) throws IOException {
+        Map<String, ObjectId> looseTags = readLooseTags(commonDir);
+        List<PackedTag> packedTags = readPackedTags(commonDir.resolve("packed-refs"), looseTags);
+        scan(looseTags, packedTags, parser, peeler, consumer);
+    }
+
+    private static void scan(Map<String, ObjectId> looseTags, List<PackedTag> packedTags,
+                             TagParser parser, Peeler peeler, TagConsumer consumer) throws IOException {
+        for (PackedTag packed : packedTags) {
+            VersionTag version = parser.parse(packed.refName);
+            if (null != version) {
+                ObjectId target = null != packed.peeled ? packed.peeled : packed.id;
+                if (!packed.peeledKnown) {
+                    target = peeler.peel(packed.id);
+                }
+                consumer.accept(target, packed.refName, version);
+            }
+        }
+        for (Map.Entry<String, ObjectId> loose : looseTags.entrySet()) {
+            VersionTag version = parser.parse(loose.getKey());
+            if (null != version) {
+                consumer.accept(peeler.peel(loose.getValue()), loose.getKey(), version);
+            }
+        }
+    }
+
+    /**
+     * Creates an index from already peeled references, e.g. when reading from a JGit RefDatabase.
+     */
+    static TagIndex of(Map<ObjectId, String> tagsByTarget) {
+        TagIndex index = new TagIndex(tagsByTarget.size());
+        tagsByTarget.forEach((target, refName) -> index.add(target, refName, null));
+        return index;
+    }
+
+    /**
+     * Adds a tag, unless a tag with a higher version already points to the same target.
+     *
+     * @param target peeled id
+     * @param refName full reference name (refs/tags/...)
+     * @param version version of the tag, null if unknown
+     */
+    void add(ObjectId target, String refName, VersionTag version) {
+        if (null == target) {
+            return;
+        }
+        int ordinal = tagsByTarget.get(target);
+        if (ordinal == ObjectIdIntMap.MISSING) {
+            tagsByTarget.put(target, refNames.size());
+            refNames.add(refName);
+            versions.add(version);
+        } else if (isPreferred(version, refName, versions.get(ordinal), refNames.get(ordinal))) {
+            refNames.set(ordinal, refName);
+            versions.set(ordinal, version);
+        }
+    }
+
+    private static boolean isPreferred(VersionTag version, String refName, VersionTag existing, String existingRef) {
+        if (null == version || null == existing) {
+            return null == existing && null != version;
+        }
+        int result = version.compareTo(existing);
+        return result > 0 || (result == 0 && refName.compareTo(existingRef) < 0);
+    }
+
+    int size() {
+        return tagsByTarget.size();
+    }
+
+    boolean isEmpty() {
+        return tagsByTarget.size() == 0;
+    }
+
+    /**
+     * @param commitId id of a commit
+     * @return The full reference name (refs/tags/...) of the suitable tag pointing to the commit or null.
+     */
+    String findTag(AnyObjectId commitId) {
+        int ordinal = tagsByTarget.get(commitId);
+        return ordinal == ObjectIdIntMap.MISSING ? null : refNames.get(ordinal);
+    }
+
+    /**
+     * @param commitId id of a commit
+     * @return The version of the suitable tag pointing to the commit, null if there is none or its version is unknown.
+     */
+    VersionTag findVersion(AnyObjectId commitId) {
+        int ordinal = tagsByTarget.get(commitId);
+        return ordinal == ObjectIdIntMap.MISSING ? null : versions.get(ordinal);
+    }
+
+    void forEach(BiConsumer<ObjectId, String> consumer) {
+        for (int slot = 0; slot < tagsByTarget.capacity(); slot++) {
+            int ordinal = tagsByTarget.valueAt(slot);
+            if (ordinal != ObjectIdIntMap.MISSING) {
+                consumer.accept(tagsByTarget.keyAt(slot), refNames.get(ordinal));
+            }
+        }
+    }
+
+    Map<ObjectId, String> asMap() {
+        Map<ObjectId, String> map = new HashMap<>();
+        forEach(map::put);
+        return map;
+    }
+
+    private static Map<String, ObjectId> readLooseTags(Path commonDir) throws IOException {
+        Map<String, ObjectId> tags = new LinkedHashMap<>();
+        Path tagsDir = commonDir.resolve("refs").resolve("tags");
+        if (!Files.isDirectory(tagsDir)) {
+            return tags;
+        }
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> entries = Files.walk(tagsDir)) {
+            entries.filter(Files::isRegularFile).forEach(files::add);
+        }
+        for (Path file : files) {
+            String line;
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                line = reader.readLine();
+            }
+            if (null != line && ObjectId.isId(line.trim())) {
+                String refName = commonDir.relativize(file).toString().replace('\\', '/');
+                tags.put(refName, ObjectId.fromString(line.trim()));
+            }
+        }
+        return tags;
+    }
+
+    private static List<PackedTag> readPackedTags(Path packedRefs, Map<String, ObjectId> looseTags) throws IOException {
+        List<PackedTag> tags = new ArrayList<>();
+        if (!Files.isRegularFile(packedRefs)) {
+            return tags;
+        }
+        /* read, not mapped: git replaces packed-refs by rename, which fails on Windows while a mapping exists */
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(packedRefs));
+        if (data.limit() == 0) {
+            return tags;
+        }
+        int end = data.limit();
+        int position = 0;
+        boolean sorted = false;
+        boolean peeled = false;
+        if (data.get(0) == '#') {
+            int lineEnd = lineEnd(data, 0, end);
+            String header = readString(data, 0, lineEnd);
+            sorted = header.contains(" sorted");
+            peeled = header.contains(" peeled") || header.contains(" fully-peeled");
+            position = Math.min(end, lineEnd + 1);
+        }
+
+        int line = sorted ? findFirstTagLine(data, position, end) : nextRefLine(data, position, end);
+        byte[] scratch = new byte[ID_LENGTH];
+        while (line >= 0) {
+            int lineEnd = lineEnd(data, line, end);
+            int nameStart = line + ID_LENGTH + 1;
+            if (startsWithTagsPrefix(data, nameStart, lineEnd)) {
+                String refName = readString(data, nameStart, lineEnd);
+                ObjectId id = readId(data, line, scratch);
+                ObjectId peeledId = null;
+                int next = Math.min(end, lineEnd + 1);
+                if (next < end && data.get(next) == '^') {
+                    peeledId = readId(data, next + 1, scratch);
+                }
+                if (!looseTags.containsKey(refName)) {
+                    tags.add(new PackedTag(refName, id, peeledId, peeled || null != peeledId));
+                }
+            } else if (sorted) {
+                break;
+            }
+            line = nextRefLine(data, Math.min(end, lineEnd + 1), end);
+        }
+        return tags;
+    }
+
+    /**
+     * Binary search for the first reference line with a name greater or equal to refs/tags/.
+     */
+    private static int findFirstTagLine(ByteBuffer data, int start, int end) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int line = nextRefLine(data, isLineStart(data, mid, start) ? mid : Math.min(end, lineEnd(data, mid, end) + 1), high);
+            if (line < 0) {
+                high = mid;
+            } else if (compareToTagsPrefix(data, line + ID_LENGTH + 1, lineEnd(data, line, end)) < 0) {
+                low = Math.min(end, lineEnd(data, line, end) + 1);
+            } else {
+                high = mid;
+            }
+        }
+        return nextRefLine(data, isLineStart(data, low, start) ? low : Math.min(end, lineEnd(data, low, end) + 1), end);
+    }
+
+    private static boolean isLineStart(ByteBuffer data, int position, int start) {
+        return position <= start || data.get(position - 1) == '\n';
+    }
+
+    /**
+     * @return Start of the first reference line (not a peeled or comment line) starting at or after position, or -1.
+     */
+    private static int nextRefLine(ByteBuffer data, int position, int end) {
+        int line = position;
+        while (line < end) {
+            byte first = data.get(line);
+            if (first != '^' && first != '#' && first != '\n') {
+                return line;
+            }
+            line = lineEnd(data, line, end) + 1;
+        }
+        return -1;
+    }
+
+    private static int lineEnd(ByteBuffer data, int position, int end) {
+        int index = position;
+        while (index < end && data.get(index) != '\n') {
+            index++;
+        }
+        return index;
+    }
+
+    private static boolean startsWithTagsPrefix(ByteBuffer data, int nameStart, int lineEnd) {
+        if (lineEnd - nameStart < TAGS_PREFIX.length) {
+            return false;
+        }
+        for (int i = 0; i < TAGS_PREFIX.length; i++) {
+            if (data.get(nameStart + i) != TAGS_PREFIX[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int compareToTagsPrefix(ByteBuffer data, int nameStart, int lineEnd) {
+        for (int i = 0; i < TAGS_PREFIX.length; i++) {
+            if (nameStart + i >= lineEnd) {
+                return -1;
+            }
+            int a = data.get(nameStart + i) & 0xFF;
+            int b = TAGS_PREFIX[i] & 0xFF;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return 0;
+    }
+
+    private static ObjectId readId(ByteBuffer data, int position, byte[] scratch) {
+        for (int i = 0; i < ID_LENGTH; i++) {
+            scratch[i] = data.get(position + i);
+        }
+        return ObjectId.fromString(scratch, 0);
+    }
+
+    private static String readString(ByteBuffer data, int start, int end) {
+        int length = end - start;
+        if (length > 0 && data.get(end - 1) == '\r') {
+            length -= 1;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = data.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class PackedTag {
+        private final String refName;
+        private final ObjectId id;
+        private final ObjectId peeled;
+        private final boolean peeledKnown;
+
+        PackedTag(String refName, ObjectId id, ObjectId peeled, boolean peeledKnown) {
+            this.refName = refName;
+            this.id = id;
+            this.peeled = peeled;
+            this.peeledKnown = peeledKnown;
+        }
+    }
+}
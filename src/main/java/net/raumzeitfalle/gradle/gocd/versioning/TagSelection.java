@@ -0,0 +1,20 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+/**
+ * Defines which of the suitable tags reachable from HEAD is used as version.
+ */
+public enum TagSelection {
+
+    /**
+     * The first suitable tag found when walking back from HEAD (like {@code git describe}). The commit
+     * count is the number of commits visited before the tag.
+     */
+    NEAREST_TAG,
+
+    /**
+     * The suitable tag with the highest version reachable from HEAD, e.g. {@code 2.0.0} on the main branch
+     * instead of {@code 1.4.2} of a merged maintenance branch. The commit count is the number of commits
+     * reachable from HEAD but not from the tag (like {@code git rev-list --count <tag>..HEAD}).
+     */
+    HIGHEST_VERSION
+}
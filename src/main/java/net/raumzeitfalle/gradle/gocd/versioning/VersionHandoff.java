@@ -0,0 +1,180 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import org.gradle.api.logging.Logger;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+
+/**
+ * Descriptor handing the resolved Git version of a GoCD pipeline run from the build stage to later stages, so
+ * that they neither walk the history of a fresh checkout nor see tags pushed in the meantime.
+ *
+ * The descriptor is a properties file per project and tag settings in the handoff directory, which is published
+ * as pipeline artifact and fetched by later stages. It is only valid for the pipeline name and counter it was
+ * written for and carries a SHA-256 checksum of its content, so that truncated or edited files are rejected.
+ */
+final class VersionHandoff {
+
+    private static final String FORMAT_VERSION = "1";
+
+    private static final String CHECKSUM = "checksum";
+
+    private final Path file;
+
+    private final String pipelineName;
+
+    private final String pipelineCounter;
+
+    private final Logger logger;
+
+    private VersionHandoff(Path file, String pipelineName, String pipelineCounter, Logger logger) {
+        this.file = file;
+        this.pipelineName = pipelineName;
+        this.pipelineCounter = pipelineCounter;
+        this.logger = logger;
+    }
+
+    /**
+     * @param directory handoff directory, null when the handoff is not configured
+     * @param projectPath Gradle path of the project, e.g. {@code :app}
+     * @param settings tag settings of the resolution, a changed setting invalidates the descriptor
+     * @param pipelineName value of {@code GO_PIPELINE_NAME}
+     * @param pipelineCounter value of {@code GO_PIPELINE_COUNTER}
+     * @param logger logger, may be null
+     * @return the handoff or null, when no directory is configured or the build does not run on GoCD
+     */
+    static VersionHandoff of(Path directory, String projectPath, String settings, String pipelineName,
+                             String pipelineCounter, Logger logger) {
+        if (null == directory || isBlank(pipelineName) || isBlank(pipelineCounter)) {
+            return null;
+        }
+        String fileName = "version-" + GitDirectoryReader.sha1Hex(projectPath + "\n" + settings) + ".properties";
+        return new VersionHandoff(directory.resolve(fileName), pipelineName.trim(), pipelineCounter.trim(), logger);
+    }
+
+    private static boolean isBlank(String value) {
+        return null == value || value.trim().isEmpty();
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return the handed off details or null, when there is no valid descriptor of this pipeline run
+     */
+    GitDetails load() {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (IOException error) {
+            logWarn("GocdVersionPlugin: Cannot read version handoff {}", file);
+            return null;
+        }
+        if (!checksum(properties).equals(properties.getProperty(CHECKSUM))) {
+            logWarn("GocdVersionPlugin: Ignoring version handoff {} with invalid checksum.", file);
+            return null;
+        }
+        if (!FORMAT_VERSION.equals(properties.getProperty("format"))
+                || !pipelineName.equals(properties.getProperty("pipelineName"))
+                || !pipelineCounter.equals(properties.getProperty("pipelineCounter"))) {
+            logInfo("GocdVersionPlugin: Version handoff {} belongs to another pipeline run.", file);
+            return null;
+        }
+        String commitCount = properties.getProperty("commitCount");
+        String commitName = properties.getProperty("commitName");
+        String commitDateTime = properties.getProperty("commitDateTime");
+        if (null == commitCount || null == commitName || null == commitDateTime) {
+            logWarn("GocdVersionPlugin: Ignoring incomplete version handoff {}", file);
+            return null;
+        }
+        try {
+            return new GitDetails(properties.getProperty("tag"),
+                                  Integer.parseInt(commitCount),
+                                  commitName,
+                                  ZonedDateTime.parse(commitDateTime),
+                                  Boolean.parseBoolean(properties.getProperty("truncated")));
+        } catch (NumberFormatException | DateTimeParseException error) {
+            logWarn("GocdVersionPlugin: Ignoring malformed version handoff {}", file);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the descriptor of this pipeline run, replacing an older one.
+     */
+    void store(GitDetails details) {
+        if (null == details.getCommitName() || null == details.getCommitDateTime()) {
+            return;
+        }
+        Properties properties = new Properties();
+        properties.setProperty("format", FORMAT_VERSION);
+        properties.setProperty("pipelineName", pipelineName);
+        properties.setProperty("pipelineCounter", pipelineCounter);
+        if (null != details.getTag()) {
+            properties.setProperty("tag", details.getTag());
+        }
+        properties.setProperty("commitCount", Integer.toString(details.getCommitCount()));
+        properties.setProperty("commitName", details.getCommitName());
+        properties.setProperty("commitDateTime", details.getCommitDateTime().toString());
+        properties.setProperty("truncated", Boolean.toString(details.isTruncated()));
+        properties.setProperty(CHECKSUM, checksum(properties));
+        Path directory = file.toAbsolutePath().getParent();
+        try {
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, "GocdVersionPlugin version handoff");
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException error) {
+            logWarn("GocdVersionPlugin: Cannot write version handoff {}", file);
+        }
+    }
+
+    /**
+     * @return SHA-256 of all properties except the checksum, sorted by name
+     */
+    static String checksum(Properties properties) {
+        StringBuilder content = new StringBuilder();
+        for (String name : new TreeSet<>(properties.stringPropertyNames())) {
+            if (!CHECKSUM.equals(name)) {
+                content.append(name).append('=').append(properties.getProperty(name)).append('\n');
+            }
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return GitDirectoryReader.toHex(digest.digest(content.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException error) {
+            throw new IllegalStateException("SHA-256 is not available", error);
+        }
+    }
+
+    private void logWarn(String format, Object arg) {
+        if (this.logger != null) {
+            this.logger.warn(format, arg);
+        }
+    }
+
+    private void logInfo(String format, Object arg) {
+        if (this.logger != null) {
+            this.logger.info(format, arg);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.options.Option;
+
+/**
+ * Writes the version {@code GocdVersionBuilder} would have produced from the Git tag at every first parent commit
+ * of a range, e.g. for release notes: {@code gradle versionHistory --from=1.4.0 --to=main --format=json}.
+ *
+ * The rows are written while the history is walked, newest commit first. With the first parent commit count and
+ * the nearest tag, the walk is linear and its memory does not depend on the length of the range. The pipeline
+ * and stage counters of past builds are not known, hence the version column is the Git tag version.
+ */
+public abstract class VersionHistoryTask extends AbstractGitVersionTask {
+
+    static final String NAME = "versionHistory";
+
+    public VersionHistoryTask() {
+        this.setDescription("Writes the Git tag based version of every first parent commit of a range as CSV or JSON");
+        this.doNotTrackState("The version history depends on the state of the Git repository");
+        getTo().convention("HEAD");
+        getFormat().convention(VersionHistoryWriter.CSV);
+    }
+
+    static TaskProvider<VersionHistoryTask> register(Project project, GocdVersionPluginExtension extension,
+                                                     Provider<GitVersionService> gitVersionService) {
+        return project.getTasks().register(NAME, VersionHistoryTask.class, task -> {
+            task.configureFrom(project, extension, gitVersionService);
+            task.getOutputFile().convention(project.getLayout().getBuildDirectory().file(
+                    task.getFormat().map(format -> "reports/gocd/version-history." + format.trim().toLowerCase(Locale.ROOT))));
+        });
+    }
+
+    /**
+     * @return oldest commit (included) of the range, e.g. a tag, the history starts at the root commit when not set
+     */
+    @Input
+    @Optional
+    @Option(option = "from", description = "Oldest commit of the history, e.g. a tag. Default is the root commit.")
+    public abstract Property<String> getFrom();
+
+    /**
+     * @return newest commit of the range, default is {@code HEAD}
+     */
+    @Input
+    @Option(option = "to", description = "Newest commit of the history, default is HEAD.")
+    public abstract Property<String> getTo();
+
+    /**
+     * @return {@code csv} (default) or {@code json}
+     */
+    @Input
+    @Option(option = "format", description = "Format of the history, csv (default) or json.")
+    public abstract Property<String> getFormat();
+
+    @OutputFile
+    public abstract RegularFileProperty getOutputFile();
+
+    @TaskAction
+    public void writeHistory() {
+        Path file = getOutputFile().get().getAsFile().toPath();
+        int rows;
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+            VersionHistoryWriter writer = VersionHistoryWriter.create(getFormat().get(), out,
+                                                                      getAppendCommitCount().get());
+            if (null == writer) {
+                out.close();
+                String message = "GocdVersionPlugin: Unknown version history format (%s). Expected: csv or json";
+                throw new GradleException(String.format(message, getFormat().get()));
+            }
+            try (VersionHistoryWriter history = writer) {
+                rows = getGitVersionService().get().walkVersionHistory(workingDir(),
+                                                                       getSuitableTagRegex().get(),
+                                                                       getMissingTagVersionDefault().getOrNull(),
+                                                                       resolutionOptions(),
+                                                                       getTo().get(),
+                                                                       getFrom().getOrNull(),
+                                                                       history,
+                                                                       getLogger());
+            }
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+        if (rows < 0) {
+            getLogger().warn("GocdVersionPlugin: No version history written for {}..{}",
+                             getFrom().getOrNull(), getTo().get());
+            return;
+        }
+        getLogger().lifecycle("GocdVersionPlugin: Version history of {} commits written to {}", rows, file);
+    }
+}
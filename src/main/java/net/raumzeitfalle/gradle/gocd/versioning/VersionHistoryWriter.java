@@ -0,0 +1,177 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.HistoryConsumer;
+
+/**
+ * Writes the rows of a version history as soon as they are received, either as CSV (with header line) or as
+ * JSON array. Columns are commit id, commit date (UTC), nearest tag, commit distance, version and the MSI/WIX
+ * compatible version built by {@link JPackageVersionBuilder}, empty or null when the version does not follow
+ * the pattern yyyyMMdd.patch.
+ */
+abstract class VersionHistoryWriter implements HistoryConsumer, Closeable {
+
+    static final String CSV = "csv";
+
+    static final String JSON = "json";
+
+    private static final String[] COLUMNS = { "commit", "date", "tag", "distance", "version", "jpackageVersion" };
+
+    protected final Writer out;
+
+    private final boolean appendCommitCount;
+
+    private int rows;
+
+    private VersionHistoryWriter(Writer out, boolean appendCommitCount) {
+        this.out = out;
+        this.appendCommitCount = appendCommitCount;
+    }
+
+    /**
+     * @param format {@value #CSV} or {@value #JSON}, case is ignored
+     * @param out target, closed with the writer
+     * @param appendCommitCount whether the commit distance is appended to the version
+     * @return writer for the format or null when the format is unknown
+     */
+    static VersionHistoryWriter create(String format, Writer out, boolean appendCommitCount) {
+        switch (format.trim().toLowerCase(Locale.ROOT)) {
+            case CSV:
+                return new Csv(out, appendCommitCount);
+            case JSON:
+                return new Json(out, appendCommitCount);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public void accept(GitDetails details) throws IOException {
+        String version = details.map(appendCommitCount);
+        String[] values = {
+            details.getCommitName(),
+            DateTimeFormatter.ISO_INSTANT.format(details.getCommitDateTime()),
+            details.getTag(),
+            Integer.toString(details.getCommitCount()),
+            version,
+            JPackageVersionBuilder.compatibleVersionOf(version)
+        };
+        writeRow(rows++, values);
+    }
+
+    /**
+     * @return number of rows written so far
+     */
+    int getRows() {
+        return rows;
+    }
+
+    protected abstract void writeRow(int index, String[] values) throws IOException;
+
+    protected abstract void finish() throws IOException;
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static final class Csv extends VersionHistoryWriter {
+
+        private Csv(Writer out, boolean appendCommitCount) {
+            super(out, appendCommitCount);
+        }
+
+        @Override
+        protected void writeRow(int index, String[] values) throws IOException {
+            if (index == 0) {
+                writeLine(COLUMNS);
+            }
+            writeLine(values);
+        }
+
+        private void writeLine(String[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.write(quote(null == values[i] ? "" : values[i]));
+            }
+            out.write('\n');
+        }
+
+        private static String quote(String value) {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+                    && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+
+        @Override
+        protected void finish() throws IOException {
+            if (getRows() == 0) {
+                writeLine(COLUMNS);
+            }
+        }
+    }
+
+    private static final class Json extends VersionHistoryWriter {
+
+        private Json(Writer out, boolean appendCommitCount) {
+            super(out, appendCommitCount);
+        }
+
+        @Override
+        protected void writeRow(int index, String[] values) throws IOException {
+            out.write(index == 0 ? "[\n" : ",\n");
+            out.write("  {");
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.write(", ");
+                }
+                out.write('"');
+                out.write(COLUMNS[i]);
+                out.write("\": ");
+                if (null == values[i]) {
+                    out.write("null");
+                } else if (i == 3) {
+                    out.write(values[i]);
+                } else {
+                    writeString(values[i]);
+                }
+            }
+            out.write('}');
+        }
+
+        private void writeString(String value) throws IOException {
+            out.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    out.write('\\');
+                    out.write(c);
+                } else if (c < 0x20) {
+                    out.write(String.format("\\u%04x", (int) c));
+                } else {
+                    out.write(c);
+                }
+            }
+            out.write('"');
+        }
+
+        @Override
+        protected void finish() throws IOException {
+            out.write(getRows() == 0 ? "[]\n" : "\n]\n");
+        }
+    }
+}
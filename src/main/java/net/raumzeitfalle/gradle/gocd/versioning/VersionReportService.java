@@ -0,0 +1,58 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.gradle.api.Project;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.build.event.BuildEventsListenerRegistry;
+import org.gradle.tooling.events.FinishEvent;
+import org.gradle.tooling.events.OperationCompletionListener;
+
+/**
+ * Reports the version of a project at the end of the build. Replaces the former {@code BuildListener},
+ * which is not supported by the configuration cache. The service is closed when the build finishes.
+ */
+public abstract class VersionReportService implements BuildService<VersionReportService.Params>,
+                                                      OperationCompletionListener,
+                                                      AutoCloseable {
+
+    public interface Params extends BuildServiceParameters {
+        Property<String> getVersion();
+    }
+
+    private static final String SERVICE_NAME = "gocdVersionReport";
+
+    static void register(Project project, BuildEventsListenerRegistry registry) {
+        Provider<String> version = project.provider(() -> reportableVersion(project.getVersion()));
+        Provider<VersionReportService> service = project.getGradle()
+                .getSharedServices()
+                .registerIfAbsent(SERVICE_NAME + project.getPath(), VersionReportService.class,
+                                  spec -> spec.getParameters().getVersion().set(version));
+        registry.onTaskCompletion(service);
+    }
+
+    /**
+     * A lazily generated version is only reported when the build actually used it.
+     */
+    private static String reportableVersion(Object version) {
+        if (version instanceof LazyVersion && !((LazyVersion) version).isResolved()) {
+            return null;
+        }
+        return String.valueOf(version);
+    }
+
+    @Override
+    public void onFinish(FinishEvent event) {
+        /* only the end of the build is of interest */
+    }
+
+    @Override
+    public void close() {
+        if (getParameters().getVersion().isPresent()) {
+            Logging.getLogger(VersionReportService.class)
+                   .lifecycle("Version built: " + getParameters().getVersion().get());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+/**
+ * Numeric version of a suitable tag, e.g. {@code v2.3.1-SNAPSHOT} is major 2, minor 3, patch 1 with a qualifier.
+ *
+ * Missing components are -1, so that {@code 1.0.0} is higher than {@code 1.0}. A version with qualifier
+ * (any text after the numbers) is lower than the same version without. Tags which are suitable but do not
+ * start with a number (after an optional {@code v}) are {@link #UNVERSIONED} and lower than any version.
+ */
+final class VersionTag implements Comparable<VersionTag> {
+
+    static final VersionTag UNVERSIONED = new VersionTag(-1, -1, -1, -1, true);
+
+    private final int major;
+    private final int minor;
+    private final int patch;
+    private final int build;
+    private final boolean qualified;
+
+    VersionTag(int major, int minor, int patch, int build, boolean qualified) {
+        this.major = major;
+        this.minor = minor;
+        this.patch = patch;
+        this.build = build;
+        this.qualified = qualified;
+    }
+
+    /**
+     * Reads the version numbers of a tag without creating intermediate strings.
+     *
+     * @param tag tag name (or reference name)
+     * @param start index of the version within the tag, an optional {@code v} or {@code V} is skipped
+     * @return the version, {@link #UNVERSIONED} if there is no number at the start
+     */
+    static VersionTag parse(CharSequence tag, int start) {
+        int[] numbers = { -1, -1, -1, -1 };
+        int index = start;
+        if (index < tag.length() && (tag.charAt(index) == 'v' || tag.charAt(index) == 'V')) {
+            index++;
+        }
+        int component = 0;
+        while (component < numbers.length && index < tag.length() && isDigit(tag.charAt(index))) {
+            long value = 0;
+            while (index < tag.length() && isDigit(tag.charAt(index))) {
+                value = Math.min(Integer.MAX_VALUE, value * 10 + (tag.charAt(index) - '0'));
+                index++;
+            }
+            numbers[component++] = (int) value;
+            if (component < numbers.length && index + 1 < tag.length()
+                    && tag.charAt(index) == '.' && isDigit(tag.charAt(index + 1))) {
+                index++;
+            } else {
+                break;
+            }
+        }
+        if (component == 0) {
+            return UNVERSIONED;
+        }
+        return new VersionTag(numbers[0], numbers[1], numbers[2], numbers[3], index < tag.length());
+    }
+
+    static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    int getMajor() {
+        return major;
+    }
+
+    int getMinor() {
+        return minor;
+    }
+
+    int getPatch() {
+        return patch;
+    }
+
+    int getBuild() {
+        return build;
+    }
+
+    /**
+     * @return true if the tag has text after the version numbers, e.g. {@code -SNAPSHOT}
+     */
+    boolean isQualified() {
+        return qualified;
+    }
+
+    @Override
+    public int compareTo(VersionTag other) {
+        int result = Integer.compare(major, other.major);
+        if (result == 0) {
+            result = Integer.compare(minor, other.minor);
+        }
+        if (result == 0) {
+            result = Integer.compare(patch, other.patch);
+        }
+        if (result == 0) {
+            result = Integer.compare(build, other.build);
+        }
+        if (result == 0) {
+            result = Boolean.compare(other.qualified, qualified);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof VersionTag)) {
+            return false;
+        }
+        return compareTo((VersionTag) other) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((31 * major + minor) * 31 + patch) * 31 + build + (qualified ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "VersionTag [" + major + "." + minor + "." + patch + "." + build + (qualified ? ", qualified" : "") + "]";
+    }
+}
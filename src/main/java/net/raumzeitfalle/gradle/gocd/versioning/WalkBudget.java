@@ -0,0 +1,89 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of commits and the time a single history walk may take.
+ *
+ * A walk which exceeds its budget stops and reports the tag fallback with the number
+ * of commits visited so far, flagged as truncated.
+ */
+final class WalkBudget {
+
+    static final WalkBudget UNLIMITED = new WalkBudget(0, 0);
+
+    private final int maxDepth;
+
+    private final long timeoutMillis;
+
+    /**
+     * @param maxDepth maximum number of commits to visit, values below 1 mean unlimited
+     * @param timeoutMillis maximum duration of a walk in milliseconds, values below 1 mean unlimited
+     */
+    WalkBudget(int maxDepth, long timeoutMillis) {
+        this.maxDepth = Math.max(0, maxDepth);
+        this.timeoutMillis = Math.max(0, timeoutMillis);
+    }
+
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    boolean isLimited() {
+        return maxDepth > 0 || timeoutMillis > 0;
+    }
+
+    /**
+     * @return tracker for a walk starting now
+     */
+    Tracker start() {
+        long deadline = timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+        return new Tracker(deadline);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof WalkBudget)) {
+            return false;
+        }
+        WalkBudget that = (WalkBudget) other;
+        return maxDepth == that.maxDepth && timeoutMillis == that.timeoutMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * maxDepth + Long.hashCode(timeoutMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "WalkBudget[maxDepth=" + maxDepth + ", timeoutMillis=" + timeoutMillis + "]";
+    }
+
+    final class Tracker {
+        private final long deadline;
+
+        private Tracker(long deadline) {
+            this.deadline = deadline;
+        }
+
+        /**
+         * @param visited number of commits visited so far
+         * @return true when the walk must stop before visiting another commit
+         */
+        boolean isExceeded(int visited) {
+            if (maxDepth > 0 && visited >= maxDepth) {
+                return true;
+            }
+            /* reading the clock for every commit would be noticeable on the commit-graph */
+            return deadline != 0 && (visited & 0xff) == 0 && System.nanoTime() - deadline > 0;
+        }
+    }
+}
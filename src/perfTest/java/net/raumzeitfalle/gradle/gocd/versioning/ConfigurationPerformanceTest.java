@@ -0,0 +1,161 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.eclipse.jgit.api.Git;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Generates multi-project builds on top of a synthetic Git history and measures the configuration
+ * phase with Gradle TestKit.
+ *
+ * Each build is run twice in the same daemon: the first run is cold (no persistent version cache),
+ * configuration time and heap are taken from the second run. Budgets are given per number of
+ * subprojects with the system properties {@code gocd.perf.budget.configurationMillis},
+ * {@code gocd.perf.budget.heapMegabytes} and {@code gocd.perf.budget.gitWalks},
+ * e.g. {@code 1=5000,50=10000}. Git walks are read from the statistics of the {@code GitVersionService}.
+ */
+public class ConfigurationPerformanceTest {
+
+    private static final int COMMITS = 200;
+
+    private static final int COMMITS_PER_TAG = 50;
+
+    private static final Pattern MEASUREMENT = Pattern.compile(
+            "gocd-perf configurationMillis=(\\d+) heapBytes=(\\d+) gitWalks=(\\d+)");
+
+    @TempDir
+    Path projectDir;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 50, 500})
+    void that_configuration_stays_within_budget(int subprojects, TestReporter reporter) throws Exception {
+        generateBuild(subprojects);
+        createHistory();
+
+        GradleRunner runner = GradleRunner.create()
+                                          .withProjectDir(projectDir.toFile())
+                                          .withPluginClasspath()
+                                          .withArguments("help");
+        Measurement cold = Measurement.of(runner.build());
+        Measurement warm = Measurement.of(runner.build());
+
+        Map<String, String> report = new LinkedHashMap<>();
+        report.put("subprojects", String.valueOf(subprojects));
+        report.put("cold", cold.toString());
+        report.put("warm", warm.toString());
+        reporter.publishEntry(report);
+
+        long configurationBudget = budget("gocd.perf.budget.configurationMillis", subprojects);
+        long heapBudget = budget("gocd.perf.budget.heapMegabytes", subprojects) * 1024 * 1024;
+        long walkBudget = budget("gocd.perf.budget.gitWalks", subprojects);
+        assertAll(
+                () -> assertTrue(warm.configurationMillis <= configurationBudget,
+                                 "Configuration took " + warm.configurationMillis + " ms, budget is " + configurationBudget + " ms"),
+                () -> assertTrue(warm.heapBytes <= heapBudget,
+                                 "Heap after configuration is " + warm.heapBytes + " bytes, budget is " + heapBudget + " bytes"),
+                () -> assertTrue(cold.gitWalks <= walkBudget,
+                                 "Cold build walked the history " + cold.gitWalks + " times, budget is " + walkBudget),
+                () -> assertTrue(warm.gitWalks <= walkBudget,
+                                 "Warm build walked the history " + warm.gitWalks + " times, budget is " + walkBudget)
+        );
+    }
+
+    private void generateBuild(int subprojects) throws Exception {
+        StringBuilder settings = new StringBuilder();
+        settings.append("def configurationStart = System.nanoTime()\n")
+                .append("rootProject.name = 'performance'\n");
+        for (int i = 0; i < subprojects; i++) {
+            String name = "module-" + i;
+            settings.append("include '").append(name).append("'\n");
+            Path moduleDir = Files.createDirectories(projectDir.resolve(name));
+            write(moduleDir.resolve("build.gradle"),
+                  "plugins {\n    id 'net.raumzeitfalle.gradle.gocdversion'\n}\n");
+        }
+        settings.append("gradle.projectsEvaluated { g ->\n")
+                .append("    g.rootProject.allprojects { it.version.toString() }\n")
+                .append("    long millis = (System.nanoTime() - configurationStart).intdiv(1000000)\n")
+                .append("    System.gc()\n")
+                .append("    def runtime = Runtime.runtime\n")
+                .append("    def service = g.sharedServices.registrations.getByName('gocdGitVersionService').service.get()\n")
+                .append("    println \"gocd-perf configurationMillis=${millis} heapBytes=${runtime.totalMemory() - runtime.freeMemory()}")
+                .append(" gitWalks=${service.historyWalks}\"\n")
+                .append("}\n");
+        write(projectDir.resolve("settings.gradle"), settings.toString());
+        write(projectDir.resolve("build.gradle"), "plugins {\n    id 'net.raumzeitfalle.gradle.gocdversion'\n}\n");
+        write(projectDir.resolve(".gitignore"), ".gradle/\nbuild/\n");
+    }
+
+    private void createHistory() throws Exception {
+        try (Git git = Git.init().setDirectory(projectDir.toFile()).setBare(false).call()) {
+            git.add().addFilepattern(".").call();
+            for (int i = 0; i < COMMITS; i++) {
+                git.commit().setSign(false)
+                            .setAllowEmpty(true)
+                            .setAuthor("Junit", "test@domain.xyz")
+                            .setCommitter("Junit", "test@domain.xyz")
+                            .setMessage("commit " + i)
+                            .call();
+                if (i % COMMITS_PER_TAG == 0) {
+                    git.tag().setName("1." + i / COMMITS_PER_TAG).setMessage("release").call();
+                }
+            }
+        }
+    }
+
+    private static void write(Path file, String content) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long budget(String property, int subprojects) {
+        Map<Integer, Long> budgets = new HashMap<>();
+        String configured = System.getProperty(property, "");
+        for (String entry : configured.split(",")) {
+            String[] sizeAndBudget = entry.trim().split("=");
+            if (sizeAndBudget.length == 2) {
+                budgets.put(Integer.parseInt(sizeAndBudget[0].trim()), Long.parseLong(sizeAndBudget[1].trim()));
+            }
+        }
+        return budgets.getOrDefault(subprojects, Long.MAX_VALUE);
+    }
+
+    private static class Measurement {
+        private final long configurationMillis;
+        private final long heapBytes;
+        private final int gitWalks;
+
+        private Measurement(long configurationMillis, long heapBytes, int gitWalks) {
+            this.configurationMillis = configurationMillis;
+            this.heapBytes = heapBytes;
+            this.gitWalks = gitWalks;
+        }
+
+        static Measurement of(BuildResult result) {
+            String output = result.getOutput();
+            Matcher matcher = MEASUREMENT.matcher(output);
+            assertTrue(matcher.find(), "The build did not report its configuration measurement.");
+            return new Measurement(Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)),
+                                   Integer.parseInt(matcher.group(3)));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("configuration %d ms, heap %d MB, %d git walk(s)",
+                                 configurationMillis, heapBytes / (1024 * 1024), gitWalks);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchResolutionTest {
+
+    @TempDir
+    Path workDir;
+
+    private TestHelper.GitFixture fixture;
+
+    private Git git;
+
+    private String main;
+
+    @BeforeEach
+    void prepare() throws Exception {
+        fixture = TestHelper.initRepository(workDir);
+        git = fixture.getGit();
+        main = git.getRepository().getBranch();
+    }
+
+    /*
+     * main:         1.0 - c2 - 1.1 - c4          (same points to c4)
+     * feature/a:           \- a1 - a2
+     * feature/b:                      \- b1
+     * release/2.x:               \- 2.0.0 - r2
+     */
+    private void createBranches() throws Exception {
+        RevCommit first = fixture.commit("first");
+        fixture.tag("1.0", first);
+        RevCommit second = fixture.commit("second");
+        RevCommit third = fixture.commit("third");
+        fixture.tag("1.1", third);
+        RevCommit fourth = fixture.commit("fourth");
+        fixture.branch("same", fourth);
+        fixture.branch("feature/a", second);
+        fixture.commit("a1");
+        fixture.commit("a2");
+        fixture.branch("feature/b", fourth);
+        fixture.commit("b1");
+        fixture.branch("release/2.x", third);
+        fixture.tag("2.0.0", fixture.commit("r1"));
+        fixture.commit("r2");
+        git.checkout().setName(main).call();
+    }
+
+    private Map<String, GitDetails> resolve(CommitCountMode mode, boolean parallel, String... patterns) {
+        return new GitTagVersionHelper(null, workDir).setCommitCountMode(mode)
+                                                     .setMissingTagFallback("0.0")
+                                                     .getLatestTags(Arrays.asList(patterns), parallel);
+    }
+
+    private void assertBranches(CommitCountMode mode, boolean parallel) {
+        Map<String, GitDetails> versions = resolve(mode, parallel, "refs/heads/*", "release/*", "HEAD");
+
+        assertEquals(Arrays.asList("refs/heads/" + main, "refs/heads/same", "refs/heads/release/2.x", "HEAD"),
+                     Arrays.asList(versions.keySet().toArray()));
+        assertEquals("1.1.1", versions.get("refs/heads/" + main).map(true));
+        assertEquals("1.1.1", versions.get("refs/heads/same").map(true));
+        assertEquals("2.0.0.1", versions.get("refs/heads/release/2.x").map(true));
+        assertEquals("1.1.1", versions.get("HEAD").map(true));
+
+        Map<String, GitDetails> features = resolve(mode, parallel, "feature/**");
+        assertEquals("1.0.3", features.get("refs/heads/feature/a").map(true));
+        assertEquals("1.1.2", features.get("refs/heads/feature/b").map(true));
+        assertEquals(7, features.get("refs/heads/feature/b").getShortCommitName().length());
+    }
+
+    @Test
+    void that_all_refs_are_resolved_with_one_call() throws Exception {
+        createBranches();
+
+        assertBranches(CommitCountMode.ALL_PARENTS, false);
+        assertBranches(CommitCountMode.FIRST_PARENT, false);
+        assertTrue(resolve(CommitCountMode.ALL_PARENTS, false, "unknown/*", "unknown").isEmpty());
+    }
+
+    @Test
+    void that_unresolvable_patterns_are_skipped() throws Exception {
+        createBranches();
+        ObjectId tree = git.getRepository().resolve("HEAD^{tree}");
+        RefUpdate update = git.getRepository().updateRef("refs/heads/tree");
+        update.setNewObjectId(tree);
+        update.forceUpdate();
+
+        Map<String, GitDetails> versions = resolve(CommitCountMode.ALL_PARENTS, false,
+                                                   "HEAD^{nonsense}", tree.name(), "tree", "refs/heads/*", "HEAD");
+
+        assertEquals(Arrays.asList("refs/heads/" + main, "refs/heads/same", "HEAD"),
+                     Arrays.asList(versions.keySet().toArray()));
+        assertEquals("1.1.1", versions.get("HEAD").map(true));
+    }
+
+    @Test
+    void that_commit_graph_resolves_the_same_versions() throws Exception {
+        createBranches();
+        TestHelper.assumeCommitGraph(workDir);
+
+        assertBranches(CommitCountMode.ALL_PARENTS, false);
+        assertBranches(CommitCountMode.ALL_PARENTS, true);
+        assertBranches(CommitCountMode.FIRST_PARENT, false);
+    }
+
+    @Test
+    void that_first_parent_walks_share_visited_commits() throws Exception {
+        createBranches();
+        for (int i = 0; i < 5; i++) {
+            fixture.commit("main " + i);
+        }
+        TestHelper.assumeCommitGraph(workDir);
+
+        CommitGraph graph = CommitGraph.open(workDir.resolve(".git"));
+        TagIndex index = new GitTagCollector(git.getRepository(), GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, null)
+                .collectIndex();
+        Map<Integer, String> tags = new HashMap<>();
+        index.forEach((id, tag) -> tags.put(graph.findPosition(id), tag));
+        int[] heads = new int[5];
+        int h = 0;
+        for (String ref : Arrays.asList(main, "same", "feature/a", "feature/b", "release/2.x")) {
+            heads[h++] = graph.findPosition(git.getRepository().resolve(ref));
+        }
+
+        CommitGraphDistanceEngine engine = new CommitGraphDistanceEngine(graph);
+        CommitGraphDistanceEngine.Distance[] shared = engine.findNearestTagOnFirstParents(heads, tags);
+        for (int i = 0; i < heads.length; i++) {
+            CommitGraphDistanceEngine.Distance single = engine.findNearestTagOnFirstParents(heads[i], tags);
+            assertEquals(single.getTag(), shared[i].getTag());
+            assertEquals(single.getCommitCount(), shared[i].getCommitCount());
+        }
+
+        CommitGraphDistanceEngine.Distance[] untagged = engine.findNearestTagOnFirstParents(heads,
+                                                                                           Collections.emptyMap());
+        assertEquals(8, untagged[0].getCommitCount());
+        assertEquals(4, untagged[3].getCommitCount());
+    }
+
+    @Test
+    void that_globs_match_path_segments() {
+        Pattern oneSegment = RefPatterns.compile("refs/heads/*");
+        assertTrue(oneSegment.matcher("refs/heads/main").matches());
+        assertFalse(oneSegment.matcher("refs/heads/feature/a").matches());
+
+        Pattern anySegments = RefPatterns.compile("refs/heads/**");
+        assertTrue(anySegments.matcher("refs/heads/feature/a").matches());
+
+        assertTrue(RefPatterns.compile("release/2.*").matcher("release/2.x").matches());
+        assertFalse(RefPatterns.compile("release/2.*").matcher("release/23x").matches());
+    }
+}
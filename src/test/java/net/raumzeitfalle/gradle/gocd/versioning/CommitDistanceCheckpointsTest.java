@@ -0,0 +1,113 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeResult;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CommitDistanceCheckpointsTest {
+
+    @TempDir
+    Path workDir;
+
+    private Git git;
+
+    private Repository repo;
+
+    private CommitDistanceCheckpoints classUnderTest;
+
+    @BeforeEach
+    void prepare() throws Exception {
+        git = Git.init().setDirectory(workDir.toFile()).setBare(false).call();
+        repo = git.getRepository();
+        classUnderTest = new CommitDistanceCheckpoints(workDir.resolve(".gradle"), workDir.resolve(".git"), null);
+    }
+
+    private RevCommit commit(String file, String message) throws Exception {
+        Files.write(workDir.resolve(file), message.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        git.add().addFilepattern(file).call();
+        return git.commit().setSign(false)
+                  .setAuthor("Junit", "test@domain.xyz")
+                  .setCommitter("Junit", "test@domain.xyz")
+                  .setMessage(message)
+                  .call();
+    }
+
+    private int countWithoutCheckpoints(ObjectId head) throws Exception {
+        CommitDistanceCheckpoints empty = new CommitDistanceCheckpoints(workDir.resolve("empty"), workDir.resolve(".git"), null);
+        return empty.countReachableCommits(repo, head);
+    }
+
+    @Test
+    void that_linear_history_is_counted_from_checkpoint() throws Exception {
+        RevCommit first = null;
+        for (int i = 0; i < 5; i++) {
+            first = commit("a.txt", "commit " + i);
+        }
+        assertEquals(5, classUnderTest.countReachableCommits(repo, first));
+        classUnderTest.store(first, 4);
+
+        RevCommit head = null;
+        for (int i = 0; i < 3; i++) {
+            head = commit("a.txt", "more " + i);
+        }
+
+        assertEquals(8, classUnderTest.countReachableCommits(repo, head));
+        assertEquals(countWithoutCheckpoints(head), classUnderTest.countReachableCommits(repo, head));
+    }
+
+    @Test
+    void that_merge_with_both_parents_covered_by_checkpoints_is_counted_once() throws Exception {
+        RevCommit base = commit("a.txt", "base");
+        commit("a.txt", "main 1");
+
+        git.checkout().setCreateBranch(true).setName("feature").setStartPoint(base).call();
+        commit("b.txt", "feature 1");
+        RevCommit featureTip = commit("b.txt", "feature 2");
+        classUnderTest.store(featureTip, countWithoutCheckpoints(featureTip) - 1);
+
+        git.checkout().setName("master").call();
+        RevCommit mainTip = commit("a.txt", "main 2");
+        classUnderTest.store(mainTip, countWithoutCheckpoints(mainTip) - 1);
+
+        MergeResult merge = git.merge().include(featureTip).setCommit(true).setMessage("merge").call();
+        ObjectId mergeCommit = merge.getNewHead();
+
+        assertEquals(6, countWithoutCheckpoints(mergeCommit));
+        assertEquals(6, classUnderTest.countReachableCommits(repo, mergeCommit));
+    }
+
+    @Test
+    void that_checkpoint_of_unrelated_branch_is_ignored() throws Exception {
+        RevCommit base = commit("a.txt", "base");
+        RevCommit mainTip = commit("a.txt", "main 1");
+
+        git.checkout().setCreateBranch(true).setName("other").setStartPoint(base).call();
+        RevCommit otherTip = commit("b.txt", "other 1");
+        classUnderTest.store(otherTip, countWithoutCheckpoints(otherTip) - 1);
+
+        assertEquals(2, classUnderTest.countReachableCommits(repo, mainTip));
+    }
+
+    @Test
+    void that_checkpoints_are_limited() throws Exception {
+        RevCommit head = commit("a.txt", "base");
+        for (int i = 0; i < CommitDistanceCheckpoints.MAX_CHECKPOINTS + 4; i++) {
+            head = commit("a.txt", "commit " + i);
+            classUnderTest.store(head, i + 1);
+        }
+        assertEquals(CommitDistanceCheckpoints.MAX_CHECKPOINTS, classUnderTest.load().size());
+        assertEquals(head, classUnderTest.load().get(0).getCommitId());
+    }
+}
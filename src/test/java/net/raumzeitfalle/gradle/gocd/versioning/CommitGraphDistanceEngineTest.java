@@ -0,0 +1,208 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CommitGraphDistanceEngineTest {
+
+    @TempDir
+    Path workDir;
+
+    private TestHelper.GitFixture fixture;
+
+    private Git git;
+
+    private Repository repo;
+
+    @BeforeEach
+    void prepare() throws Exception {
+        fixture = TestHelper.initRepository(workDir);
+        git = fixture.getGit();
+        repo = git.getRepository();
+    }
+
+    private void createMergeHistory() throws Exception {
+        RevCommit base = fixture.commit("a.txt", "base");
+        git.tag().setName("1.0").setObjectId(base).setAnnotated(false).call();
+        fixture.commit("a.txt", "main 1");
+        git.checkout().setCreateBranch(true).setName("feature").setStartPoint(base).call();
+        RevCommit feature = fixture.commit("b.txt", "feature 1");
+        fixture.commit("b.txt", "feature 2");
+        git.checkout().setName("master").call();
+        fixture.commit("a.txt", "main 2");
+        git.merge().include(repo.resolve("feature")).setCommit(true).setMessage("merge").call();
+        fixture.commit("a.txt", "main 3");
+        git.tag().setName("1.1").setObjectId(feature).setMessage("annotated").call();
+    }
+
+    @Test
+    void that_commit_graph_is_read_consistently_with_jgit() throws Exception {
+        createMergeHistory();
+        TestHelper.assumeCommitGraph(workDir);
+
+        CommitGraph graph = CommitGraph.open(workDir.resolve(".git"));
+        assertNotNull(graph);
+        assertEquals(7, graph.size());
+
+        ObjectId head = repo.resolve("HEAD");
+        int position = graph.findPosition(head);
+        assertTrue(position >= 0);
+        assertEquals(head, graph.getId(position));
+        assertEquals(repo.parseCommit(head).getCommitTime(), graph.getCommitTime(position));
+        assertEquals(-1, graph.findPosition(ObjectId.zeroId()));
+    }
+
+    @Test
+    void that_commit_graph_engine_matches_jgit_walk() throws Exception {
+        createMergeHistory();
+        GitTagVersionHelper.GitDetails expected = new GitTagVersionHelper(null, workDir).getLatestTag().get();
+        TestHelper.assumeCommitGraph(workDir);
+
+        CommitGraph graph = CommitGraph.open(workDir.resolve(".git"));
+        int head = graph.findPosition(repo.resolve("HEAD"));
+        GitTagCollector collector = new GitTagCollector(repo, GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, null);
+        Map<Integer, String> tags = new HashMap<>();
+        collector.collectIndex().forEach((id, tag) -> tags.put(graph.findPosition(id), tag));
+
+        CommitGraphDistanceEngine.Distance distance = new CommitGraphDistanceEngine(graph).findNearestTag(head, tags);
+
+        assertEquals("refs/tags/" + expected.getTag(), distance.getTag());
+        assertEquals(expected.getCommitCount(), distance.getCommitCount());
+
+        GitTagVersionHelper.GitDetails fromGraph = new GitTagVersionHelper(null, workDir).getLatestTag().get();
+        assertEquals(expected.getTag(), fromGraph.getTag());
+        assertEquals(expected.getCommitCount(), fromGraph.getCommitCount());
+        assertEquals(expected.getCommitDateTime(), fromGraph.getCommitDateTime());
+    }
+
+    @Test
+    void that_reachable_commits_are_counted() throws Exception {
+        createMergeHistory();
+        TestHelper.assumeCommitGraph(workDir);
+
+        CommitGraph graph = CommitGraph.open(workDir.resolve(".git"));
+        int head = graph.findPosition(repo.resolve("HEAD"));
+        CommitGraphDistanceEngine engine = new CommitGraphDistanceEngine(graph);
+
+        assertEquals(7, engine.countReachableCommits(head));
+        assertEquals(6, engine.findNearestTag(head, Collections.emptyMap()).getCommitCount());
+    }
+
+    @Test
+    void that_first_parent_mode_skips_merged_branches() throws Exception {
+        createMergeHistory();
+        GitTagVersionHelper.GitDetails fromWalk = new GitTagVersionHelper(null, workDir)
+                .setCommitCountMode(CommitCountMode.FIRST_PARENT)
+                .getLatestTag().get();
+
+        /* main 3, merge, main 2, main 1 */
+        assertEquals("1.0", fromWalk.getTag());
+        assertEquals(4, fromWalk.getCommitCount());
+
+        TestHelper.assumeCommitGraph(workDir);
+        CommitGraph graph = CommitGraph.open(workDir.resolve(".git"));
+        int head = graph.findPosition(repo.resolve("HEAD"));
+        GitTagCollector collector = new GitTagCollector(repo, GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, null);
+        Map<Integer, String> tags = new HashMap<>();
+        collector.collectIndex().forEach((id, tag) -> tags.put(graph.findPosition(id), tag));
+        CommitGraphDistanceEngine engine = new CommitGraphDistanceEngine(graph);
+
+        CommitGraphDistanceEngine.Distance distance = engine.findNearestTagOnFirstParents(head, tags);
+        assertEquals("refs/tags/1.0", distance.getTag());
+        assertEquals(4, distance.getCommitCount());
+        assertEquals(4, engine.findNearestTagOnFirstParents(head, Collections.emptyMap()).getCommitCount());
+
+        GitTagVersionHelper.GitDetails fromGraph = new GitTagVersionHelper(null, workDir)
+                .setCommitCountMode(CommitCountMode.FIRST_PARENT)
+                .getLatestTag().get();
+        assertEquals(fromWalk.getTag(), fromGraph.getTag());
+        assertEquals(fromWalk.getCommitCount(), fromGraph.getCommitCount());
+    }
+
+    @Test
+    void that_walk_stops_when_budget_is_exhausted() throws Exception {
+        createMergeHistory();
+
+        GitTagVersionHelper.GitDetails truncated = new GitTagVersionHelper(null, workDir)
+                .setMissingTagFallback("0.0")
+                .setWalkBudget(new WalkBudget(2, 0))
+                .getLatestTag().get();
+        assertTrue(truncated.isTruncated());
+        assertEquals("0.0", truncated.getTag());
+        assertEquals(2, truncated.getCommitCount());
+        assertEquals(repo.resolve("HEAD").getName(), truncated.getCommitName());
+
+        GitTagVersionHelper.GitDetails withinBudget = new GitTagVersionHelper(null, workDir)
+                .setMissingTagFallback("0.0")
+                .setWalkBudget(new WalkBudget(100, 60_000))
+                .getLatestTag().get();
+        assertFalse(withinBudget.isTruncated());
+        assertEquals("1.1", withinBudget.getTag());
+
+        GitTagVersionHelper.GitDetails withoutTags = new GitTagVersionHelper(null, workDir)
+                .setVersionTagRegex("^release-.*$")
+                .setMissingTagFallback("0.0")
+                .setWalkBudget(new WalkBudget(3, 0))
+                .getLatestTag().get();
+        assertTrue(withoutTags.isTruncated());
+        assertEquals(3, withoutTags.getCommitCount());
+    }
+
+    @Test
+    void that_commit_graph_engine_respects_budget() throws Exception {
+        createMergeHistory();
+        TestHelper.assumeCommitGraph(workDir);
+
+        CommitGraph graph = CommitGraph.open(workDir.resolve(".git"));
+        int head = graph.findPosition(repo.resolve("HEAD"));
+        Map<Integer, String> tags = Collections.singletonMap(graph.findPosition(repo.resolve("1.0")), "refs/tags/1.0");
+        CommitGraphDistanceEngine engine = new CommitGraphDistanceEngine(graph, new WalkBudget(2, 0));
+
+        CommitGraphDistanceEngine.Distance distance = engine.findNearestTag(head, tags);
+        assertTrue(distance.isTruncated());
+        assertNull(distance.getTag());
+        assertEquals(2, distance.getCommitCount());
+        assertTrue(engine.findNearestTagOnFirstParents(head, tags).isTruncated());
+        assertTrue(engine.findNearestTag(head, Collections.emptyMap()).isTruncated());
+        assertEquals(-1, engine.countReachableCommits(head));
+
+        GitTagVersionHelper.GitDetails fromGraph = new GitTagVersionHelper(null, workDir)
+                .setMissingTagFallback("0.0")
+                .setWalkBudget(new WalkBudget(2, 0))
+                .getLatestTag().get();
+        assertTrue(fromGraph.isTruncated());
+        assertEquals("0.0", fromGraph.getTag());
+        assertEquals(2, fromGraph.getCommitCount());
+    }
+
+    @Test
+    void that_stale_commit_graph_falls_back_to_walk() throws Exception {
+        createMergeHistory();
+        TestHelper.assumeCommitGraph(workDir);
+        fixture.commit("a.txt", "not in graph");
+
+        CommitGraph graph = CommitGraph.open(workDir.resolve(".git"));
+        assertEquals(-1, graph.findPosition(repo.resolve("HEAD")));
+
+        GitTagVersionHelper.GitDetails details = new GitTagVersionHelper(null, workDir).getLatestTag().get();
+        assertEquals("1.1", details.getTag());
+    }
+
+    @Test
+    void that_missing_commit_graph_is_reported_as_null() throws Exception {
+        createMergeHistory();
+        assertNull(CommitGraph.open(workDir.resolve(".git")));
+    }
+}
@@ -0,0 +1,88 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.time.ZonedDateTime;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DaemonVersionCacheTest {
+
+    private static final String COMMIT = "3e3c1b3d5d1a4f8fd4c0e4e5a2f1b1c9a7d3e1f0";
+
+    private static GitVersionCache.CacheKey key(String head) {
+        return key(head, GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, CommitCountMode.ALL_PARENTS);
+    }
+
+    private static GitVersionCache.CacheKey key(String head, String versionTagRegex, CommitCountMode commitCountMode) {
+        return new GitVersionCache.CacheKey(Paths.get("/work/project/.git"), head, "fingerprint", versionTagRegex,
+                                            null, commitCountMode, null, null, TagSelection.NEAREST_TAG);
+    }
+
+    private static GitDetails details(String tag) {
+        return new GitDetails(tag, 3, COMMIT, ZonedDateTime.parse("2025-03-01T10:15:30+01:00"));
+    }
+
+    @Test
+    void that_entries_are_found_by_equal_keys() {
+        DaemonVersionCache classUnderTest = new DaemonVersionCache(10, 1_000_000);
+        GitDetails details = details("1.0");
+
+        classUnderTest.put(key("a"), details);
+
+        assertSame(details, classUnderTest.get(key("a")));
+        assertNull(classUnderTest.get(key("b")));
+        assertNull(classUnderTest.get(key("a", "^release-.*$", CommitCountMode.ALL_PARENTS)));
+        assertNull(classUnderTest.get(key("a", GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX,
+                                          CommitCountMode.FIRST_PARENT)));
+    }
+
+    @Test
+    void that_least_recently_used_entries_are_evicted_by_count() {
+        DaemonVersionCache classUnderTest = new DaemonVersionCache(2, 1_000_000);
+
+        classUnderTest.put(key("a"), details("1.0"));
+        classUnderTest.put(key("b"), details("1.1"));
+        classUnderTest.get(key("a"));
+        classUnderTest.put(key("c"), details("1.2"));
+
+        assertEquals(2, classUnderTest.size());
+        assertNotNull(classUnderTest.get(key("a")));
+        assertNull(classUnderTest.get(key("b")));
+        assertNotNull(classUnderTest.get(key("c")));
+    }
+
+    @Test
+    void that_entries_are_evicted_by_retained_bytes() {
+        DaemonVersionCache probe = new DaemonVersionCache(10, 1_000_000);
+        probe.put(key("a"), details("1.0"));
+        long entryBytes = probe.retainedBytes();
+        assertTrue(entryBytes > 0);
+
+        DaemonVersionCache classUnderTest = new DaemonVersionCache(10, 2 * entryBytes + entryBytes / 2);
+        classUnderTest.put(key("a"), details("1.0"));
+        classUnderTest.put(key("b"), details("1.0"));
+        classUnderTest.put(key("c"), details("1.0"));
+
+        assertEquals(2, classUnderTest.size());
+        assertEquals(2 * entryBytes, classUnderTest.retainedBytes());
+        assertNull(classUnderTest.get(key("a")));
+
+        classUnderTest.put(key("c"), details("1.0"));
+        assertEquals(2 * entryBytes, classUnderTest.retainedBytes());
+    }
+
+    @Test
+    void that_truncated_results_are_not_kept() {
+        DaemonVersionCache classUnderTest = new DaemonVersionCache(10, 1_000_000);
+        GitDetails truncated = new GitDetails("0.0", 5000, (RevCommit) null, true);
+
+        classUnderTest.put(key("a"), truncated);
+
+        assertEquals(0, classUnderTest.size());
+    }
+}
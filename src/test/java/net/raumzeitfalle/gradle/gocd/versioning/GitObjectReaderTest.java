@@ -0,0 +1,100 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.TimeZone;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GitObjectReaderTest {
+
+    @TempDir
+    Path workDir;
+
+    private TestHelper.GitFixture fixture;
+
+    private Git git;
+
+    private Repository repo;
+
+    @BeforeEach
+    void prepare() throws Exception {
+        fixture = TestHelper.initRepository(workDir.resolve("repo"), TimeZone.getTimeZone("Europe/Berlin"));
+        git = fixture.getGit();
+        repo = git.getRepository();
+    }
+
+    private static GitDetails expected(String tag, RevCommit commit) {
+        return new GitDetails(tag, 0, commit);
+    }
+
+    @Test
+    void that_loose_and_packed_objects_are_read_like_jgit() throws Exception {
+        fixture.commit("first");
+        RevCommit head = fixture.commit("second");
+        git.tag().setName("1.0").setObjectId(head).setMessage("annotated").call();
+        String tagId = repo.exactRef("refs/tags/1.0").getObjectId().getName();
+        GitObjectReader classUnderTest = new GitObjectReader(repo.getDirectory().toPath());
+
+        assertEquals(expected(null, head).getCommitDateTime(), classUnderTest.readCommitDateTime(head.getName()));
+        assertEquals(head.getName(), classUnderTest.peel(tagId));
+        assertEquals(Boolean.TRUE, classUnderTest.contains(head.getName()));
+
+        git.gc().setAggressive(false).call();
+        assertTrue(Files.notExists(repo.getDirectory().toPath().resolve("objects")
+                                       .resolve(head.getName().substring(0, 2))
+                                       .resolve(head.getName().substring(2))));
+
+        assertEquals(expected(null, head).getCommitDateTime(), classUnderTest.readCommitDateTime(head.getName()));
+        assertEquals(head.getName(), classUnderTest.peel(tagId));
+        assertEquals(GitObjectReader.OBJ_TAG, classUnderTest.read(tagId).getType());
+        assertNull(classUnderTest.read("0000000000000000000000000000000000000000"));
+        assertEquals(Boolean.TRUE, classUnderTest.contains(head.getName()));
+        assertEquals(Boolean.FALSE, classUnderTest.contains("0000000000000000000000000000000000000000"));
+        assertNull(classUnderTest.readCommitDateTime(tagId));
+    }
+
+    @Test
+    void that_release_builds_are_resolved_from_files() throws Exception {
+        fixture.commit("first");
+        RevCommit head = fixture.commit("second");
+        git.tag().setName("release-2.0").setObjectId(head).setMessage("annotated").call();
+        git.tag().setName("2.0").setObjectId(head).setMessage("annotated").call();
+
+        GitDetails details = new GitTagVersionHelper(null, workDir.resolve("repo")).getLatestTag().get();
+
+        GitDetails expected = expected("2.0", head);
+        assertEquals(expected.getTag(), details.getTag());
+        assertEquals(0, details.getCommitCount());
+        assertEquals(expected.getCommitName(), details.getCommitName());
+        assertEquals(expected.getCommitDateTime(), details.getCommitDateTime());
+
+        GitDetails latestCommit = new GitTagVersionHelper(null, workDir.resolve("repo")).getLatestCommit().get();
+        assertEquals(head.getName().substring(0, 7), latestCommit.getTag());
+        assertEquals(expected.getCommitDateTime(), latestCommit.getCommitDateTime());
+    }
+
+    @Test
+    void that_git_file_of_worktree_is_followed() throws Exception {
+        fixture.commit("first");
+        Path checkout = workDir.resolve("checkout").resolve("module");
+        Files.createDirectories(checkout);
+        Files.write(workDir.resolve("checkout").resolve(".git"),
+                    "gitdir: ../repo/.git\n".getBytes(StandardCharsets.UTF_8));
+
+        Path gitDir = GitDirectoryReader.findGitDir(checkout);
+
+        assertEquals(repo.getDirectory().toPath().toRealPath(), gitDir.toRealPath());
+        assertNull(GitDirectoryReader.findGitDir(workDir));
+    }
+}
@@ -0,0 +1,96 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GitVersionCacheTest {
+
+    @TempDir
+    Path workDir;
+
+    private Git git;
+
+    private Path gitDir;
+
+    private GitVersionCache classUnderTest;
+
+    @BeforeEach
+    void prepare() throws Exception {
+        git = Git.init().setDirectory(workDir.toFile()).setBare(false).call();
+        gitDir = workDir.resolve(".git");
+        commit("start");
+        git.tag().setName("1.0").setMessage("first release").call();
+        classUnderTest = new GitVersionCache(workDir.resolve(".gradle").resolve("gocd-version"), null);
+    }
+
+    private RevCommit commit(String message) throws Exception {
+        Path file = workDir.resolve("file.txt");
+        Files.write(file, message.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        git.add().addFilepattern("file.txt").call();
+        return git.commit().setSign(false)
+                  .setAuthor("Junit", "test@domain.xyz")
+                  .setCommitter("Junit", "test@domain.xyz")
+                  .setMessage(message)
+                  .call();
+    }
+
+    @Test
+    void that_stored_details_are_loaded_for_unchanged_repository() {
+        GitDetails details = new GitTagVersionHelper(null, workDir).getLatestTag().get();
+
+        GitVersionCache.CacheKey key = classUnderTest.keyFor(gitDir, GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, "0.0", ResolutionOptions.DEFAULT, null);
+        assertNotNull(key);
+        assertNull(classUnderTest.load(key));
+
+        classUnderTest.store(key, details);
+        GitDetails loaded = classUnderTest.load(classUnderTest.keyFor(gitDir, GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, "0.0", ResolutionOptions.DEFAULT, null));
+
+        assertAll(
+                () -> assertNotNull(loaded),
+                () -> assertEquals("1.0", loaded.getTag()),
+                () -> assertEquals(details.getCommitCount(), loaded.getCommitCount()),
+                () -> assertEquals(details.getCommitName(), loaded.getCommitName()),
+                () -> assertEquals(details.getCommitDateTime(), loaded.getCommitDateTime())
+        );
+    }
+
+    @Test
+    void that_new_commit_invalidates_entry() throws Exception {
+        GitVersionCache.CacheKey key = classUnderTest.keyFor(gitDir, GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, "0.0", ResolutionOptions.DEFAULT, null);
+        classUnderTest.store(key, new GitTagVersionHelper(null, workDir).getLatestTag().get());
+
+        commit("next");
+
+        assertNull(classUnderTest.load(classUnderTest.keyFor(gitDir, GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, "0.0", ResolutionOptions.DEFAULT, null)));
+    }
+
+    @Test
+    void that_new_tag_invalidates_entry() throws Exception {
+        GitVersionCache.CacheKey key = classUnderTest.keyFor(gitDir, GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, "0.0", ResolutionOptions.DEFAULT, null);
+        classUnderTest.store(key, new GitTagVersionHelper(null, workDir).getLatestTag().get());
+
+        git.tag().setName("1.1").setMessage("second release").call();
+
+        assertNull(classUnderTest.load(classUnderTest.keyFor(gitDir, GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, "0.0", ResolutionOptions.DEFAULT, null)));
+    }
+
+    @Test
+    void that_different_tag_regex_does_not_share_entry() {
+        GitVersionCache.CacheKey key = classUnderTest.keyFor(gitDir, GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, "0.0", ResolutionOptions.DEFAULT, null);
+        classUnderTest.store(key, new GitTagVersionHelper(null, workDir).getLatestTag().get());
+
+        assertNull(classUnderTest.load(classUnderTest.keyFor(gitDir, "^v\\d+$", "0.0", ResolutionOptions.DEFAULT, null)));
+    }
+}
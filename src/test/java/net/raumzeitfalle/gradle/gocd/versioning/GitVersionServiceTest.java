@@ -0,0 +1,95 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.gradle.api.Project;
+import org.gradle.api.provider.Provider;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GitVersionServiceTest {
+
+    private static Project project;
+
+    private static Path workDir;
+
+    @BeforeAll
+    public static void prepareProject() throws IOException, GitAPIException {
+        project = ProjectBuilder.builder().build();
+        project.getPluginManager().apply("net.raumzeitfalle.gradle.gocdversion");
+
+        workDir = Paths.get(project.getProjectDir().getAbsolutePath());
+        Git git = Git.init().setDirectory(workDir.toFile()).setBare(false).call();
+
+        Path srcDir = workDir.resolve("module-a").resolve("src");
+        Files.createDirectories(srcDir);
+        Files.createDirectories(workDir.resolve("module-b"));
+        Files.write(srcDir.resolve("EmptyProgram.java"), "\\\\ TODO: HelloWorld".getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE);
+
+        git.add().addFilepattern("module-a").call();
+        git.commit().setSign(false)
+                    .setAuthor("Junit", "test@domain.xyz")
+                    .setCommitter("Junit", "test@domain.xyz")
+                    .setMessage("start")
+                    .call();
+
+        git.tag().setName("3.1")
+                 .setMessage("Just a test")
+                 .call();
+    }
+
+    @Test
+    void that_projects_in_same_repository_share_one_resolution() {
+        GitVersionService service = GitVersionService.obtain(project);
+
+        GitVersionResolution moduleA = service.resolve(workDir.resolve("module-a"), GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, "0.0", null);
+        GitVersionResolution moduleB = service.resolve(workDir.resolve("module-b"), GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, "0.0", null);
+
+        assertSame(moduleA, moduleB);
+        assertEquals("3.1", moduleA.getLatestTag().get().getTag());
+        assertSame(moduleA.getLatestTag(), moduleB.getLatestTag());
+    }
+
+    @Test
+    void that_different_tag_settings_yield_separate_resolutions() {
+        GitVersionService service = GitVersionService.obtain(project);
+
+        GitVersionResolution defaultRegex = service.resolve(workDir, GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, "0.0", null);
+        GitVersionResolution customRegex = service.resolve(workDir, "^v\\d+$", "0.0", null);
+
+        assertNotSame(defaultRegex, customRegex);
+        assertEquals("0.0", customRegex.getLatestTag().get().getTag());
+    }
+
+    @Test
+    void that_service_is_shared_within_a_build() {
+        assertSame(GitVersionService.obtain(project), GitVersionService.obtain(project));
+    }
+
+    @Test
+    void that_value_source_provides_tag_based_version_lazily() {
+        GocdVersionPluginExtension ext = new GocdVersionPluginExtension();
+        Provider<String> version = GitVersionValueSource.create(project, ext);
+
+        ext.setAppendGitCommitCountToGitTagVersion(false);
+
+        assertEquals("3.1", version.get());
+    }
+
+    @Test
+    void that_plugin_exposes_version_provider() {
+        GocdVersionPluginExtension ext = project.getExtensions().getByType(GocdVersionPluginExtension.class);
+
+        assertTrue(ext.getVersionProvider().get().startsWith("3.1.0"));
+    }
+}
@@ -0,0 +1,164 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GocdEnvironmentSnapshotTest {
+
+    private static GocdEnvironmentSnapshot capture(Map<String, String> environment, Map<String, String> materialBranches) {
+        return GocdEnvironmentSnapshot.capture(environment::get, materialBranches, kind -> "looked-up-" + kind, null);
+    }
+
+    @Test
+    void that_values_are_parsed_once_into_typed_fields() {
+        Map<String, String> env = new HashMap<>();
+        env.put(GOCD.GO_PIPELINE_COUNTER.toString(), "216");
+        env.put(GOCD.GO_STAGE_COUNTER.toString(), "NotANumber");
+        env.put(GOCD.GO_AGENT_RESOURCES.toString(), "linux,java17");
+        env.put(GOCD.GO_PIPELINE_NAME.toString(), "release");
+
+        GocdEnvironmentSnapshot classUnderTest = capture(env, Collections.emptyMap());
+        env.clear();
+
+        assertEquals(216, classUnderTest.getPipelineCounter());
+        assertEquals(0, classUnderTest.getStageCounter());
+        assertEquals(Arrays.asList("linux", "java17"), classUnderTest.getAgentResources());
+        assertEquals("release", classUnderTest.getPipelineName());
+        assertEquals("", classUnderTest.getJobName());
+        assertTrue(classUnderTest.isAutomatedBuild());
+    }
+
+    @Test
+    void that_material_branches_are_indexed_by_material_name() {
+        Map<String, String> branches = Collections.singletonMap("GO_MATERIAL_BRANCH_MYREPO", "feature/x");
+
+        GocdEnvironmentSnapshot classUnderTest = capture(Collections.emptyMap(), branches);
+
+        assertEquals("feature/x", classUnderTest.getMaterialBranch("myRepo"));
+        assertEquals("", classUnderTest.getMaterialBranch("other"));
+        assertThrows(IllegalArgumentException.class, () -> classUnderTest.getMaterialBranch(""));
+        assertFalse(classUnderTest.isAutomatedBuild());
+    }
+
+    @Test
+    void that_material_revisions_are_indexed_by_material_name() {
+        Map<String, String> env = new HashMap<>();
+        env.put(GOCD.GO_REVISION.toString(), "0123456789abcdef0123456789abcdef01234567");
+        Map<String, String> materials = new HashMap<>();
+        materials.put("GO_REVISION_MYREPO", "1111111111111111111111111111111111111111");
+        materials.put("GO_FROM_REVISION_MYREPO", "2222222222222222222222222222222222222222");
+        materials.put("GO_TO_REVISION_MYREPO", "1111111111111111111111111111111111111111");
+        materials.put("GO_MATERIAL_BRANCH_MYREPO", "main");
+
+        GocdEnvironmentSnapshot classUnderTest = capture(env, materials);
+
+        assertEquals("1111111111111111111111111111111111111111", classUnderTest.getMaterialRevision("myRepo"));
+        assertEquals("", classUnderTest.getMaterialRevision("other"));
+        assertEquals("main", classUnderTest.getMaterialBranch("myRepo"));
+        assertEquals(2, classUnderTest.getMaterialRevisions().size());
+        MaterialRevision named = classUnderTest.getMaterialRevisions().get("MYREPO");
+        assertEquals("2222222222222222222222222222222222222222", named.getFromRevision());
+        assertEquals("1111111111111111111111111111111111111111", named.getToRevision());
+        MaterialRevision unnamed = classUnderTest.getMaterialRevisions().get("");
+        assertEquals("0123456789abcdef0123456789abcdef01234567", unnamed.getRevision());
+        assertNull(unnamed.getFromRevision());
+
+        assertSame(unnamed, MaterialRevision.select(classUnderTest.getMaterialRevisions(), null));
+        assertSame(named, MaterialRevision.select(classUnderTest.getMaterialRevisions(), "myrepo"));
+        assertSame(named, MaterialRevision.select(Collections.singletonMap("MYREPO", named), null));
+        assertNull(MaterialRevision.select(classUnderTest.getMaterialRevisions(), "other"));
+    }
+
+    @Test
+    void that_material_revisions_are_looked_up_on_first_use() {
+        AtomicInteger lookups = new AtomicInteger();
+        GocdEnvironmentSnapshot classUnderTest = GocdEnvironmentSnapshot.capture(
+                Collections.singletonMap(GOCD.GO_PIPELINE_COUNTER.toString(), "216")::get,
+                Collections.singletonMap("GO_MATERIAL_BRANCH_MYREPO", "main"),
+                () -> {
+                    lookups.incrementAndGet();
+                    return Collections.singletonMap(GOCD.GO_REVISION.toString(), "4711");
+                },
+                kind -> "host",
+                null);
+
+        assertEquals(216, classUnderTest.getPipelineCounter());
+        assertEquals("main", classUnderTest.getMaterialBranch("myRepo"));
+        assertEquals(0, lookups.get());
+
+        assertEquals("4711", classUnderTest.get(GOCD.GO_REVISION));
+        assertEquals("4711", classUnderTest.getMaterialRevisions().get("").getRevision());
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    void that_identities_come_from_environment_or_lookup() {
+        AtomicInteger lookups = new AtomicInteger();
+        GocdEnvironmentSnapshot classUnderTest = GocdEnvironmentSnapshot.capture(
+                Collections.singletonMap("USERNAME", "windowsroot")::get,
+                Collections.emptyMap(),
+                kind -> "host-" + lookups.incrementAndGet(),
+                null);
+
+        assertEquals("windowsroot", classUnderTest.getTriggerUser());
+        assertEquals("host-1", classUnderTest.getComputerName());
+        assertEquals("host-1", classUnderTest.getComputerName());
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    void that_mutable_environment_is_a_copy_of_the_snapshot() {
+        Project project = ProjectBuilder.builder().build();
+        Map<String, String> env = new HashMap<>();
+        env.put(GOCD.GO_PIPELINE_COUNTER.toString(), "216");
+        env.put(GOCD.COMPUTERNAME.toString(), "agent-1");
+        Map<String, String> materials = new HashMap<>();
+        materials.put("GO_MATERIAL_BRANCH_MYREPO", "main");
+        materials.put("GO_REVISION_MYREPO", "1111111111111111111111111111111111111111");
+        GocdEnvironmentSnapshot snapshot = capture(env, materials);
+
+        GocdEnvironment classUnderTest = snapshot.toMutableEnvironment(project);
+        classUnderTest.setEnvVariable(GOCD.GO_PIPELINE_COUNTER, "217");
+
+        assertEquals(217, classUnderTest.getPipelineCounter());
+        assertEquals("main", classUnderTest.getMaterialBranch("myRepo"));
+        assertEquals("1111111111111111111111111111111111111111", classUnderTest.getMaterialRevision("myRepo"));
+        assertEquals("agent-1", classUnderTest.getComputerName());
+        assertEquals(216, snapshot.getPipelineCounter());
+        assertEquals(216, snapshot.toMutableEnvironment(project).getPipelineCounter());
+    }
+
+    @Test
+    void that_snapshot_is_immutable_and_serializable() throws Exception {
+        GocdEnvironmentSnapshot classUnderTest = capture(Collections.singletonMap(GitlabCICD.CI.toString(), "true"),
+                                                         Collections.emptyMap());
+        assertThrows(UnsupportedOperationException.class,
+                     () -> classUnderTest.setEnvVariable(GOCD.GO_PIPELINE_COUNTER, "1"));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(classUnderTest);
+        }
+        GocdEnvironmentSnapshot copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (GocdEnvironmentSnapshot) in.readObject();
+        }
+
+        assertTrue(copy.isAutomatedBuild());
+        assertEquals("looked-up-COMPUTER_NAME", copy.getComputerName());
+        assertEquals("looked-up-USER", copy.getTriggerUser());
+    }
+}
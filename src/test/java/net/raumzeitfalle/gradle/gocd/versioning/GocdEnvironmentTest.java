@@ -7,6 +7,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.net.InetAddress;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.gradle.api.Project;
@@ -119,4 +120,72 @@ public class GocdEnvironmentTest {
         assertEquals("NotANumber", classUnderTest.get(GOCD.GO_STAGE_COUNTER));
         assertEquals("", classUnderTest.get(GOCD.GO_PIPELINE_GROUP_NAME));
     }
+
+    @Test
+    void that_variables_are_looked_up_on_request_and_can_be_overridden() {
+        Map<String,String> requested = new java.util.LinkedHashMap<>();
+        classUnderTest = new GocdEnvironmentImpl(project, name -> {
+            requested.put(name, "");
+            return GOCD.GO_PIPELINE_NAME.toString().equals(name) ? "release" : null;
+        });
+
+        assertEquals("release", classUnderTest.getPipelineName());
+        assertEquals(Collections.singleton(GOCD.GO_PIPELINE_NAME.toString()), requested.keySet());
+
+        classUnderTest.setEnvVariable(GOCD.GO_PIPELINE_NAME, "");
+        assertEquals("", classUnderTest.getPipelineName());
+
+        classUnderTest.setEnvVariable(GOCD.GO_PIPELINE_NAME, "nightly");
+        assertEquals("nightly", classUnderTest.getPipelineName());
+    }
+
+    @Test
+    void that_computer_name_is_looked_up_once_per_build() {
+        classUnderTest = new GocdEnvironmentImpl(project, Collections.emptyMap());
+        String computerName = classUnderTest.getComputerName();
+
+        String shared = GocdEnvironmentService.obtain(project)
+                                           .resolve(HostIdentityValueSource.Kind.COMPUTER_NAME, () -> "looked up again");
+
+        assertEquals(computerName, shared);
+        assertEquals(computerName, new GocdEnvironmentImpl(project, Collections.emptyMap()).getComputerName());
+    }
+
+    @Test
+    void that_environments_without_material_support_provide_the_unnamed_material() {
+        GocdEnvironment legacy = new VariablesOnlyEnvironment(mapOf(GOCD.GO_REVISION, "4711"));
+
+        assertEquals("4711", legacy.getMaterialRevisions().get("").getRevision());
+        assertEquals(1, legacy.getMaterialRevisions().size());
+        assertEquals("", legacy.getMaterialRevision("myRepo"));
+        assertTrue(new VariablesOnlyEnvironment(Collections.emptyMap()).getMaterialRevisions().isEmpty());
+    }
+
+    /**
+     * Implements only the methods all versions of {@link GocdEnvironment} declare.
+     */
+    private static final class VariablesOnlyEnvironment implements GocdEnvironment {
+        private final Map<String, String> variables;
+
+        private VariablesOnlyEnvironment(Map<String, String> variables) {
+            this.variables = variables;
+        }
+
+        @Override public String getServerUrl() { return ""; }
+        @Override public String getPipelineGroupName() { return ""; }
+        @Override public String getEnvironmentName() { return ""; }
+        @Override public List<String> getAgentResources() { return Collections.emptyList(); }
+        @Override public void setEnvVariable(GOCD variable, String value) { variables.put(variable.toString(), value); }
+        @Override public String getMaterialBranch(String materialName) { return ""; }
+        @Override public String getPipelineLabel() { return ""; }
+        @Override public String getPipelineName() { return ""; }
+        @Override public int getPipelineCounter() { return 0; }
+        @Override public String getStageName() { return ""; }
+        @Override public int getStageCounter() { return 0; }
+        @Override public String getJobName() { return ""; }
+        @Override public String getTriggerUser() { return ""; }
+        @Override public String get(GOCD variable) { return variables.getOrDefault(variable.toString(), ""); }
+        @Override public boolean isAutomatedBuild() { return false; }
+        @Override public String getComputerName() { return ""; }
+    }
 }
@@ -0,0 +1,34 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LazyVersionTest {
+
+    @Test
+    void that_version_is_generated_on_first_use_only() {
+        AtomicInteger generations = new AtomicInteger();
+        LazyVersion classUnderTest = new LazyVersion(() -> "1.2." + generations.incrementAndGet(), null);
+
+        assertFalse(classUnderTest.isResolved());
+        assertEquals(0, generations.get());
+
+        assertEquals("1.2.1", classUnderTest.toString());
+        assertEquals("1.2.1", classUnderTest.toString());
+        assertTrue(classUnderTest.isResolved());
+        assertEquals(1, generations.get());
+    }
+
+    @Test
+    void that_version_is_unspecified_while_being_generated() {
+        AtomicReference<LazyVersion> self = new AtomicReference<>();
+        LazyVersion classUnderTest = new LazyVersion(() -> "fallback-" + self.get(), null);
+        self.set(classUnderTest);
+
+        assertEquals("fallback-unspecified", classUnderTest.toString());
+    }
+}
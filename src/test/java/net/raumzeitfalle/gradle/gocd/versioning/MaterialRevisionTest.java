@@ -0,0 +1,135 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MaterialRevisionTest {
+
+    @TempDir
+    Path workDir;
+
+    private TestHelper.GitFixture fixture;
+
+    private Git git;
+
+    @BeforeEach
+    void prepare() throws Exception {
+        fixture = TestHelper.initRepository(workDir);
+        git = fixture.getGit();
+    }
+
+    private static MaterialRevision material(RevCommit revision, RevCommit from) {
+        return new MaterialRevision("", revision.getName(), null == from ? null : from.getName(), revision.getName());
+    }
+
+    private GitTagVersionHelper helper(MaterialRevision material) {
+        return new GitTagVersionHelper(null, workDir).setCommitCountMode(CommitCountMode.FIRST_PARENT)
+                                                     .setMissingTagFallback("0.0")
+                                                     .setMaterialRevision(material);
+    }
+
+    @Test
+    void that_material_revision_is_resolved_instead_of_head() throws Exception {
+        RevCommit first = fixture.commit("first");
+        fixture.tag("1.0", first);
+        RevCommit second = fixture.commit("second");
+        RevCommit third = fixture.commit("third");
+        fixture.commit("local change after checkout");
+
+        GitDetails details = helper(material(third, second)).getLatestTag().get();
+        assertEquals("1.0", details.getTag());
+        assertEquals(2, details.getCommitCount());
+        assertEquals(third.getName(), details.getCommitName());
+        assertEquals(third.getName(), helper(material(third, second)).getLatestCommit().get().getCommitName());
+
+        GitDetails tagged = helper(material(first, first)).getLatestTag().get();
+        assertEquals("1.0", tagged.getTag());
+        assertEquals(0, tagged.getCommitCount());
+
+        MaterialRevision unknown = new MaterialRevision("", "1111111111111111111111111111111111111111", null, null);
+        assertEquals(3, helper(unknown).getLatestTag().get().getCommitCount());
+        MaterialRevision subversion = new MaterialRevision("", "4711", null, null);
+        assertEquals(3, helper(subversion).getLatestTag().get().getCommitCount());
+    }
+
+    @Test
+    void that_distance_of_previous_build_is_extended_by_new_commits() throws Exception {
+        fixture.tag("1.0", fixture.commit("first"));
+        fixture.commit("second");
+        fixture.commit("third");
+        GitDetails earlier = helper(null).getLatestTag().get();
+        assertEquals(2, earlier.getCommitCount());
+
+        RevCommit from = fixture.commit("fourth");
+        RevCommit to = fixture.commit("fifth");
+
+        GitDetails extended = helper(material(to, from)).extendFirstParentDistance(earlier);
+        assertNotNull(extended);
+        assertEquals("1.0", extended.getTag());
+        assertEquals(4, extended.getCommitCount());
+        assertEquals(to.getName(), extended.getCommitName());
+        assertEquals(helper(material(to, from)).getLatestTag().get().getCommitCount(), extended.getCommitCount());
+
+        assertNull(helper(material(to, to)).extendFirstParentDistance(earlier),
+                   "previous build is outside of the modifications");
+        assertNull(helper(material(to, null)).extendFirstParentDistance(earlier), "range unknown");
+        assertNull(helper(material(to, from)).setCommitCountMode(CommitCountMode.ALL_PARENTS)
+                                             .extendFirstParentDistance(earlier));
+
+        fixture.tag("1.1", from);
+        assertNull(helper(material(to, from)).extendFirstParentDistance(earlier), "tag between the builds");
+    }
+
+    @Test
+    void that_cache_key_names_the_commit_resolution_starts_from() throws Exception {
+        fixture.tag("1.0", fixture.commit("first"));
+        RevCommit built = fixture.commit("second");
+        RevCommit head = fixture.commit("third");
+        GitVersionCache cache = new GitVersionCache(workDir.resolve(".gradle").resolve("gocd-version"), null);
+        Path gitDir = workDir.resolve(".git");
+        ResolutionOptions options = ResolutionOptions.DEFAULT.withCommitCountMode(CommitCountMode.FIRST_PARENT);
+        MaterialRevision unknown = new MaterialRevision("", "1111111111111111111111111111111111111111", null, null);
+
+        GitVersionCache.CacheKey known = cache.keyFor(gitDir, GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, "0.0",
+                                                      options.withMaterialRevision(material(built, built)), null);
+        GitVersionCache.CacheKey missing = cache.keyFor(gitDir, GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, "0.0",
+                                                        options.withMaterialRevision(unknown), null);
+
+        assertEquals(built.getName(), known.getHead());
+        assertEquals(head.getName(), missing.getHead());
+    }
+
+    @Test
+    void that_resolution_extends_cached_entry_of_previous_build() throws Exception {
+        fixture.tag("1.0", fixture.commit("first"));
+        RevCommit previous = fixture.commit("second");
+        Path cacheDir = workDir.resolve(".gradle").resolve("gocd-version");
+        Path gitDir = workDir.resolve(".git");
+        ResolutionOptions options = ResolutionOptions.DEFAULT.withCommitCountMode(CommitCountMode.FIRST_PARENT);
+
+        GitVersionResolution first = GitVersionService.createResolution(cacheDir, gitDir, workDir,
+                GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, "0.0",
+                options.withMaterialRevision(material(previous, previous)), null);
+        assertEquals(1, first.getLatestTag().get().getCommitCount());
+
+        RevCommit from = fixture.commit("third");
+        RevCommit to = fixture.commit("fourth");
+        GitVersionResolution next = GitVersionService.createResolution(cacheDir, gitDir, workDir,
+                GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, "0.0",
+                options.withMaterialRevision(material(to, from)), null);
+
+        GitDetails details = next.getLatestTag().get();
+        assertEquals("1.0", details.getTag());
+        assertEquals(3, details.getCommitCount());
+        assertEquals(to.getName(), details.getCommitName());
+    }
+}
@@ -0,0 +1,133 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModuleTagIndexTest {
+
+    @TempDir
+    Path workDir;
+
+    private TestHelper.GitFixture fixture;
+
+    private Git git;
+
+    private Repository repo;
+
+    @BeforeEach
+    void prepare() throws Exception {
+        fixture = TestHelper.initRepository(workDir);
+        git = fixture.getGit();
+        repo = git.getRepository();
+    }
+
+    private void createModuleHistory() throws Exception {
+        RevCommit first = fixture.commit("first");
+        fixture.tag("1.0", first);
+        fixture.tag("payments/v2.3.0", first);
+        RevCommit second = fixture.commit("second");
+        fixture.tag("ledger/v1.9.0", second);
+        fixture.tag("ledger/nightly", second);
+        RevCommit third = fixture.commit("third");
+        fixture.tag("payments/v2.3.1", third);
+        fixture.commit("fourth");
+        fixture.commit("fifth");
+    }
+
+    private GitDetails resolve(String prefix) {
+        return new GitTagVersionHelper(null, workDir).setTagPrefix(prefix)
+                                                     .setMissingTagFallback("0.0")
+                                                     .getLatestTag().get();
+    }
+
+    @Test
+    void that_tags_are_partitioned_by_module_prefix() throws Exception {
+        createModuleHistory();
+
+        ModuleTagIndex index = new GitTagCollector(repo, GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, null)
+                .collectModuleIndex();
+
+        assertEquals(new HashSet<>(Arrays.asList("ledger/", "payments/")), index.getModulePrefixes());
+        assertEquals(2, index.get("payments/").size());
+        assertEquals(1, index.get("ledger/").size());
+        assertEquals(1, index.get("").size());
+        assertTrue(index.get("billing/").isEmpty());
+        assertEquals(4, index.size());
+        assertEquals("payments/", ModuleTagIndex.normalizePrefix(" payments "));
+        assertNull(ModuleTagIndex.normalizePrefix(" "));
+    }
+
+    @Test
+    void that_each_module_gets_its_nearest_tag() throws Exception {
+        createModuleHistory();
+
+        GitDetails payments = resolve("payments");
+        assertEquals("v2.3.1", payments.getTag());
+        assertEquals(2, payments.getCommitCount());
+
+        GitDetails ledger = resolve("ledger/");
+        assertEquals("v1.9.0", ledger.getTag());
+        assertEquals(3, ledger.getCommitCount());
+
+        GitDetails plain = resolve(null);
+        assertEquals("1.0", plain.getTag());
+        assertEquals(4, plain.getCommitCount());
+
+        GitDetails untagged = resolve("billing");
+        assertEquals("0.0", untagged.getTag());
+        assertEquals(4, untagged.getCommitCount());
+    }
+
+    @Test
+    void that_module_tag_on_head_is_found_without_walk() throws Exception {
+        createModuleHistory();
+        fixture.tag("ledger/v2.0.0", repo.parseCommit(repo.resolve("HEAD")));
+
+        GitDetails ledger = resolve("ledger");
+        assertEquals("v2.0.0", ledger.getTag());
+        assertEquals(0, ledger.getCommitCount());
+        assertEquals("v2.3.1", resolve("payments").getTag());
+    }
+
+    @Test
+    void that_commit_graph_finds_all_modules_in_one_walk() throws Exception {
+        createModuleHistory();
+        GitDetails payments = resolve("payments");
+        GitDetails ledger = resolve("ledger");
+        TestHelper.assumeCommitGraph(workDir);
+
+        CommitGraph graph = CommitGraph.open(workDir.resolve(".git"));
+        ModuleTagIndex index = new GitTagCollector(repo, GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, null)
+                .collectModuleIndex();
+        Map<Integer, Map<String, String>> tags = new HashMap<>();
+        for (String prefix : index.getModulePrefixes()) {
+            index.get(prefix).forEach((id, tag) -> tags.computeIfAbsent(graph.findPosition(id), p -> new HashMap<>())
+                                                       .put(prefix, tag));
+        }
+        Map<String, CommitGraphDistanceEngine.Distance> distances = new CommitGraphDistanceEngine(graph)
+                .findNearestTags(graph.findPosition(repo.resolve("HEAD")), tags, index.getModulePrefixes());
+
+        assertEquals("refs/tags/payments/v2.3.1", distances.get("payments/").getTag());
+        assertEquals(payments.getCommitCount(), distances.get("payments/").getCommitCount());
+        assertEquals("refs/tags/ledger/v1.9.0", distances.get("ledger/").getTag());
+        assertEquals(ledger.getCommitCount(), distances.get("ledger/").getCommitCount());
+
+        fixture.commit("sixth");
+        assertEquals(3, resolve("payments").getCommitCount());
+        assertEquals(4, resolve("ledger").getCommitCount());
+    }
+}
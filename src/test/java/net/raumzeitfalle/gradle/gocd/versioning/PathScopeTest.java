@@ -0,0 +1,117 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PathScopeTest {
+
+    @TempDir
+    Path workDir;
+
+    private TestHelper.GitFixture fixture;
+
+    private Git git;
+
+    private Repository repo;
+
+    @BeforeEach
+    void prepare() throws Exception {
+        fixture = TestHelper.initRepository(workDir);
+        git = fixture.getGit();
+        repo = git.getRepository();
+    }
+
+    private void createMonorepoHistory() throws Exception {
+        fixture.commit("modules/payments/a.txt", "payments base");
+        RevCommit base = fixture.commit("modules/billing/b.txt", "billing base");
+        git.tag().setName("1.0").setObjectId(base).setAnnotated(false).call();
+        fixture.commit("modules/payments/a.txt", "payments 1");
+        fixture.commit("modules/billing/b.txt", "billing 1");
+        fixture.commit("README.md", "docs");
+        fixture.commit("modules/billing/b.txt", "billing 2");
+        fixture.commit("modules/payments/a.txt", "payments 2");
+    }
+
+    private GitDetails resolve(String project, boolean projectScoped) {
+        return new GitTagVersionHelper(null, workDir.resolve(project))
+                .setProjectScopedCommitCount(projectScoped)
+                .getLatestTag().get();
+    }
+
+    @Test
+    void that_murmur3_matches_reference_values() {
+        assertEquals(0, ChangedPathKey.murmur3(0, new byte[0]));
+        assertEquals(0x627b0c2c, ChangedPathKey.murmur3(0, "Hello world!".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0x2e4ff723, ChangedPathKey.murmur3(0, "The quick brown fox jumps over the lazy dog"
+                .getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void that_path_keys_contain_all_leading_directories() {
+        ChangedPathKey key = new ChangedPathKey("/modules/payments/");
+
+        assertEquals("modules/payments", key.getPath());
+        assertEquals(2, key.getHashes().size());
+        assertTrue(key.isSupportedBy(1));
+        assertFalse(new ChangedPathKey("modules/zahlungsverkehr-\u00e4").isSupportedBy(1));
+        assertTrue(new ChangedPathKey("modules/zahlungsverkehr-\u00e4").isSupportedBy(2));
+    }
+
+    @Test
+    void that_only_commits_of_the_project_directory_are_counted() throws Exception {
+        createMonorepoHistory();
+        Files.createDirectories(workDir.resolve("modules/empty"));
+
+        assertEquals(5, resolve("modules/payments", false).getCommitCount());
+        assertEquals(2, resolve("modules/payments", true).getCommitCount());
+        assertEquals(2, resolve("modules/billing", true).getCommitCount());
+        assertEquals(0, resolve("modules/empty", true).getCommitCount());
+        assertEquals("1.0", resolve("modules/payments", true).getTag());
+        assertEquals(5, resolve(".", true).getCommitCount());
+    }
+
+    @Test
+    void that_changed_path_filters_give_the_same_counts() throws Exception {
+        createMonorepoHistory();
+        GitDetails payments = resolve("modules/payments", true);
+        GitDetails billing = resolve("modules/billing", true);
+        TestHelper.assumeCommitGraph(workDir, "--changed-paths");
+
+        assertEquals(payments.getCommitCount(), resolve("modules/payments", true).getCommitCount());
+        assertEquals(billing.getCommitCount(), resolve("modules/billing", true).getCommitCount());
+        assertEquals(payments.getTag(), resolve("modules/payments", true).getTag());
+    }
+
+    @Test
+    void that_changed_path_filters_skip_unrelated_commits() throws Exception {
+        createMonorepoHistory();
+        TestHelper.assumeCommitGraph(workDir, "--changed-paths");
+        CommitGraph graph = CommitGraph.open(workDir.resolve(".git"));
+        assertNotNull(graph);
+
+        int changed = 0;
+        try (PathScope classUnderTest = new PathScope(repo, "modules/payments", graph)) {
+            assertTrue(classUnderTest.usesChangedPathFilters());
+            for (int position = 0; position < graph.size(); position++) {
+                if (classUnderTest.changedAt(position)) {
+                    changed += 1;
+                }
+            }
+            assertEquals(3, changed);
+            assertTrue(classUnderTest.getFilteredCount() > 0);
+            assertEquals(graph.size(), classUnderTest.getFilteredCount() + classUnderTest.getComparedCount());
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RepositoryPoolTest {
+
+    @TempDir
+    Path workDir;
+
+    private final AtomicLong clock = new AtomicLong(1_000);
+
+    private final AtomicInteger opened = new AtomicInteger();
+
+    @BeforeEach
+    void prepare() throws Exception {
+        for (String name : new String[] {"a", "b", "c"}) {
+            Git.init().setDirectory(workDir.resolve(name).toFile()).call().close();
+        }
+    }
+
+    private RepositoryPool.Opener opener(Path gitDir) {
+        return () -> {
+            opened.incrementAndGet();
+            return new RepositoryBuilder().setGitDir(gitDir.toFile()).setMustExist(true).build();
+        };
+    }
+
+    private RepositoryPool.Lease acquire(RepositoryPool pool, String name) throws Exception {
+        Path gitDir = workDir.resolve(name).resolve(".git");
+        return pool.acquire(gitDir, opener(gitDir));
+    }
+
+    @Test
+    void that_repository_is_reused_across_leases() throws Exception {
+        RepositoryPool classUnderTest = new RepositoryPool(60_000, 4, clock::get);
+
+        Repository first;
+        try (RepositoryPool.Lease lease = acquire(classUnderTest, "a");
+             RepositoryPool.Lease concurrent = acquire(classUnderTest, "a")) {
+            first = lease.getRepository();
+            assertSame(first, concurrent.getRepository());
+        }
+        try (RepositoryPool.Lease lease = acquire(classUnderTest, "a")) {
+            assertSame(first, lease.getRepository());
+        }
+        assertEquals(1, opened.get());
+        assertEquals(1, classUnderTest.size());
+    }
+
+    @Test
+    void that_idle_repositories_are_evicted() throws Exception {
+        RepositoryPool classUnderTest = new RepositoryPool(60_000, 4, clock::get);
+
+        RepositoryPool.Lease busy = acquire(classUnderTest, "a");
+        acquire(classUnderTest, "b").close();
+        clock.addAndGet(30_000);
+        assertEquals(0, classUnderTest.evictIdle());
+
+        clock.addAndGet(30_000);
+        assertEquals(1, classUnderTest.evictIdle());
+        assertEquals(1, classUnderTest.size());
+
+        busy.close();
+        busy.close();
+        clock.addAndGet(60_000);
+        assertEquals(1, classUnderTest.evictIdle());
+        assertEquals(0, classUnderTest.size());
+    }
+
+    @Test
+    void that_least_recently_used_repositories_exceeding_limit_are_evicted() throws Exception {
+        RepositoryPool classUnderTest = new RepositoryPool(60_000, 2, clock::get);
+
+        acquire(classUnderTest, "a").close();
+        acquire(classUnderTest, "b").close();
+        acquire(classUnderTest, "a").close();
+        acquire(classUnderTest, "c").close();
+        assertEquals(1, classUnderTest.evictIdle());
+        assertEquals(2, classUnderTest.size());
+
+        acquire(classUnderTest, "a").close();
+        acquire(classUnderTest, "c").close();
+        assertEquals(3, opened.get());
+    }
+
+    @Test
+    void that_cleared_pool_closes_leased_repository_on_release() throws Exception {
+        RepositoryPool classUnderTest = new RepositoryPool(60_000, 4, clock::get);
+
+        RepositoryPool.Lease lease = acquire(classUnderTest, "a");
+        classUnderTest.clear();
+        assertEquals(0, classUnderTest.size());
+        lease.close();
+
+        acquire(classUnderTest, "a").close();
+        assertEquals(2, opened.get());
+    }
+
+    @Test
+    void that_replaced_repository_is_not_served_while_outdated_one_is_leased() throws Exception {
+        RepositoryPool classUnderTest = new RepositoryPool(60_000, 4, clock::get);
+
+        RepositoryPool.Lease outdated = acquire(classUnderTest, "a");
+        /* keep the old directory alive so that its file key cannot be reused */
+        Files.move(workDir.resolve("a"), workDir.resolve("a-replaced"));
+        Git.init().setDirectory(workDir.resolve("a").toFile()).call().close();
+
+        try (RepositoryPool.Lease fresh = acquire(classUnderTest, "a")) {
+            assertNotSame(outdated.getRepository(), fresh.getRepository());
+            assertEquals(2, opened.get());
+        }
+        outdated.close();
+
+        try (RepositoryPool.Lease lease = acquire(classUnderTest, "a")) {
+            assertEquals(3, opened.get());
+            assertNotNull(lease.getRepository());
+        }
+        try (RepositoryPool.Lease lease = acquire(classUnderTest, "a")) {
+            assertEquals(3, opened.get());
+        }
+        assertEquals(1, classUnderTest.size());
+    }
+
+    @Test
+    void that_helper_returns_leases_to_shared_pool() throws Exception {
+        Path repository = workDir.resolve("a");
+        try (Git git = Git.open(repository.toFile())) {
+            git.commit().setSign(false).setMessage("initial").call();
+        }
+
+        GitTagVersionHelper helper = new GitTagVersionHelper(null, repository).setMissingTagFallback("0.0");
+        assertTrue(helper.getLatestTag().isPresent());
+        assertTrue(helper.getLatestCommit().isPresent());
+
+        Path gitDir = repository.resolve(".git");
+        try (RepositoryPool.Lease lease = RepositoryPool.shared().acquire(gitDir, opener(gitDir))) {
+            assertEquals(0, opened.get());
+            assertNotNull(lease.getRepository().resolve("HEAD"));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.eclipse.jgit.util.SystemReader;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    @Test
+    void that_concurrent_callers_share_one_computation() throws Exception {
+        SingleFlight<String, String> classUnderTest = new SingleFlight<>();
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        String[] results = new String[3];
+
+        Thread first = new Thread(() -> results[0] = classUnderTest.execute("repo", () -> {
+            computations.incrementAndGet();
+            started.countDown();
+            await(release);
+            return "1.0.3";
+        }));
+        first.start();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        Thread second = new Thread(() -> results[1] = classUnderTest.execute("repo", () -> {
+            computations.incrementAndGet();
+            return "other";
+        }));
+        Thread third = new Thread(() -> results[2] = classUnderTest.execute("repo", () -> {
+            computations.incrementAndGet();
+            return "other";
+        }));
+        second.start();
+        third.start();
+        /* both callers are parked on the computation in flight */
+        awaitWaiting(second);
+        awaitWaiting(third);
+        release.countDown();
+
+        for (Thread caller : new Thread[] {first, second, third}) {
+            caller.join(TimeUnit.SECONDS.toMillis(10));
+            assertFalse(caller.isAlive());
+        }
+        assertArrayEquals(new String[] {"1.0.3", "1.0.3", "1.0.3"}, results);
+        assertEquals(1, computations.get());
+    }
+
+    @Test
+    void that_finished_computations_are_not_reused() {
+        SingleFlight<String, Integer> classUnderTest = new SingleFlight<>();
+        AtomicInteger computations = new AtomicInteger();
+
+        assertEquals(1, classUnderTest.execute("repo", computations::incrementAndGet));
+        assertEquals(2, classUnderTest.execute("repo", computations::incrementAndGet));
+    }
+
+    @Test
+    void that_failures_are_propagated_and_forgotten() {
+        SingleFlight<String, String> classUnderTest = new SingleFlight<>();
+
+        assertThrows(IllegalStateException.class, () -> classUnderTest.execute("repo", () -> {
+            throw new IllegalStateException("broken repository");
+        }));
+        assertEquals("1.0", classUnderTest.execute("repo", () -> "1.0"));
+    }
+
+    @Test
+    void that_system_reader_is_installed_only_once() {
+        JGitNoExecSystemReader.install();
+        SystemReader installed = SystemReader.getInstance();
+
+        JGitNoExecSystemReader.install();
+
+        assertTrue(installed instanceof JGitNoExecSystemReader);
+        assertSame(installed, SystemReader.getInstance());
+    }
+
+    private static void awaitWaiting(Thread caller) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (Thread.State.WAITING != caller.getState() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Thread.State.WAITING, caller.getState());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
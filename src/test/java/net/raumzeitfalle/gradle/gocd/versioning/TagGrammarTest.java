@@ -0,0 +1,113 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TagGrammarTest {
+
+    private static final List<String> TAGS = Arrays.asList(
+            "1", "1.2", "1.2.3", "1.2.3.4", "1.2.3.4.5", "v1.0", "V2.0.1", "vv1.0", "1.0-SNAPSHOT", "1.0-snapshot",
+            "1.0-SNAPSHOTS", "1.0-RC1", "1.", ".1", "1..2", "", "v", "release-1.0", "release-1.0.0", "RELEASE-2.0",
+            "release-", "1.0 ", "payments/v2.3.1", "99999999999.1");
+
+    @TempDir
+    Path workDir;
+
+    @Test
+    void that_default_grammar_accepts_the_same_tags_as_the_pattern() {
+        Pattern pattern = Pattern.compile(GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, Pattern.CASE_INSENSITIVE);
+        TagGrammar classUnderTest = TagGrammar.compile(GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX);
+
+        for (String tag : TAGS) {
+            assertEquals(pattern.matcher(tag).matches(), null != classUnderTest.parse(tag), tag);
+        }
+    }
+
+    @Test
+    void that_custom_grammar_accepts_the_same_tags_as_the_pattern() {
+        for (String regex : Arrays.asList("^release-\\d+([.]\\d+)*$", "^\\d*([.]\\d*)?([.]\\d*)?$", "^v?\\d+.*",
+                                          "release-1\\.0|1\\.0")) {
+            Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+            TagGrammar classUnderTest = TagGrammar.compile(regex);
+            for (String tag : TAGS) {
+                assertEquals(pattern.matcher(tag).matches(), null != classUnderTest.parse(tag), regex + " " + tag);
+            }
+        }
+    }
+
+    @Test
+    void that_literal_prefix_is_derived_from_the_regex() {
+        assertEquals("release-", TagGrammar.literalPrefix("^release-\\d+$"));
+        assertEquals("release-", TagGrammar.literalPrefix("release-\\d+"));
+        assertEquals("rel.", TagGrammar.literalPrefix("^rel\\.\\d+$"));
+        assertEquals("release", TagGrammar.literalPrefix("^releases?-\\d+$"));
+        assertEquals("", TagGrammar.literalPrefix("^([vV])?\\d+$"));
+        assertEquals("", TagGrammar.literalPrefix("^a-\\d+|b-\\d+$"));
+    }
+
+    @Test
+    void that_digits_of_the_literal_prefix_are_part_of_the_version() {
+        TagGrammar classUnderTest = TagGrammar.compile("^1\\.\\d+$");
+        VersionTag version = classUnderTest.parse("1.7");
+
+        assertEquals(1, version.getMajor());
+        assertEquals(7, version.getMinor());
+        assertTrue(TagGrammar.compile("^2\\.\\d+$").parse("2.0").compareTo(version) > 0);
+
+        VersionTag release = TagGrammar.compile("^release-v3\\.\\d+$").parse("release-v3.2");
+        assertEquals(3, release.getMajor());
+        assertEquals(2, release.getMinor());
+    }
+
+    @Test
+    void that_versions_are_parsed_and_ordered() {
+        TagGrammar grammar = TagGrammar.compile(GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX);
+        VersionTag version = grammar.parse("v2.3.1-SNAPSHOT");
+
+        assertEquals(2, version.getMajor());
+        assertEquals(3, version.getMinor());
+        assertEquals(1, version.getPatch());
+        assertEquals(-1, version.getBuild());
+        assertTrue(version.isQualified());
+
+        assertTrue(grammar.parse("1.0.0").compareTo(grammar.parse("1.0")) > 0);
+        assertTrue(grammar.parse("1.10").compareTo(grammar.parse("1.9")) > 0);
+        assertTrue(grammar.parse("2.0").compareTo(grammar.parse("2.0-SNAPSHOT")) > 0);
+        assertEquals(0, grammar.parse("v1.0").compareTo(grammar.parse("1.0")));
+        assertEquals(Integer.MAX_VALUE, grammar.parse("99999999999.1").getMajor());
+        assertEquals(1, TagGrammar.compile("^release-\\d+([.]\\d+)*$").parse("refs/tags/release-1.4", 10).getMajor());
+        assertSame(VersionTag.UNVERSIONED, TagGrammar.compile("^nightly.*$").parse("nightly-20240101"));
+    }
+
+    @Test
+    void that_highest_version_wins_when_tags_share_a_commit() throws Exception {
+        try (Git git = Git.init().setDirectory(workDir.toFile()).setBare(false).call()) {
+            PersonIdent ident = new PersonIdent("Junit", "test@domain.xyz", new Date(1_600_000_000_000L),
+                                                TimeZone.getTimeZone("UTC"));
+            RevCommit commit = git.commit().setSign(false).setAuthor(ident).setCommitter(ident)
+                                  .setMessage("first").call();
+            for (String tag : Arrays.asList("1.0", "2.0-SNAPSHOT", "2.0", "1.9.9", "v2.0")) {
+                git.tag().setName(tag).setObjectId(commit).setAnnotated(false).call();
+            }
+
+            TagIndex index = new GitTagCollector(git.getRepository(), GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX,
+                                                 null).collectIndex();
+
+            assertEquals("refs/tags/2.0", index.findTag(commit));
+            assertEquals(2, index.findVersion(commit).getMajor());
+            assertFalse(index.findVersion(commit).isQualified());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TagIndexTest {
+
+    @TempDir
+    Path workDir;
+
+    private Git git;
+
+    private Repository repo;
+
+    private Path gitDir;
+
+    @BeforeEach
+    void prepare() throws Exception {
+        git = Git.init().setDirectory(workDir.toFile()).setBare(false).call();
+        repo = git.getRepository();
+        gitDir = workDir.resolve(".git");
+    }
+
+    private RevCommit commit(String message) throws Exception {
+        Files.write(workDir.resolve("a.txt"), message.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        git.add().addFilepattern("a.txt").call();
+        return git.commit().setSign(false)
+                  .setAuthor("Junit", "test@domain.xyz")
+                  .setCommitter("Junit", "test@domain.xyz")
+                  .setMessage(message)
+                  .call();
+    }
+
+    private TagIndex build() throws Exception {
+        try (RevWalk walk = new RevWalk(repo)) {
+            return TagIndex.build(gitDir, tag -> tag.matches("\\d+[.]\\d+"), id -> walk.peel(walk.parseAny(id)).copy());
+        }
+    }
+
+    private void writePackedRefs(String... lines) throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (String line : lines) {
+            content.append(line).append('\n');
+        }
+        Files.write(gitDir.resolve("packed-refs"), content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void that_loose_lightweight_and_annotated_tags_are_indexed_by_commit() throws Exception {
+        RevCommit first = commit("first");
+        git.tag().setName("1.0").setAnnotated(false).call();
+        RevCommit second = commit("second");
+        Ref annotated = git.tag().setName("1.1").setAnnotated(true).setMessage("release").setSigned(false).call();
+        git.tag().setName("not-a-version").setAnnotated(false).call();
+
+        TagIndex index = build();
+
+        assertEquals(2, index.size());
+        assertEquals("refs/tags/1.0", index.findTag(first));
+        assertEquals("refs/tags/1.1", index.findTag(second));
+        assertNull(index.findTag(annotated.getObjectId()));
+    }
+
+    @Test
+    void that_sorted_packed_refs_are_read_without_other_refs() throws Exception {
+        RevCommit first = commit("first");
+        RevCommit second = commit("second");
+        RevCommit third = commit("third");
+        ObjectId tagObject = ObjectId.fromString("0123456789012345678901234567890123456789");
+
+        writePackedRefs("# pack-refs with: peeled fully-peeled sorted ",
+                first.name() + " refs/heads/master",
+                second.name() + " refs/pull/1/head",
+                third.name() + " refs/remotes/origin/master",
+                first.name() + " refs/tags/1.0",
+                tagObject.name() + " refs/tags/2.0",
+                "^" + third.name(),
+                second.name() + " refs/tags/feature",
+                second.name() + " refs/zzz/after-tags");
+
+        TagIndex index = build();
+
+        assertEquals(2, index.size());
+        assertEquals("refs/tags/1.0", index.findTag(first));
+        assertEquals("refs/tags/2.0", index.findTag(third));
+        assertNull(index.findTag(second));
+        assertNull(index.findTag(tagObject));
+    }
+
+    @Test
+    void that_unsorted_packed_refs_are_scanned_completely() throws Exception {
+        RevCommit first = commit("first");
+        RevCommit second = commit("second");
+
+        writePackedRefs("# pack-refs with: peeled ",
+                second.name() + " refs/tags/2.0",
+                first.name() + " refs/heads/master",
+                first.name() + " refs/tags/1.0");
+
+        TagIndex index = build();
+
+        assertEquals(2, index.size());
+        assertEquals("refs/tags/1.0", index.findTag(first));
+        assertEquals("refs/tags/2.0", index.findTag(second));
+    }
+
+    @Test
+    void that_loose_tags_override_packed_tags() throws Exception {
+        RevCommit first = commit("first");
+        RevCommit second = commit("second");
+        writePackedRefs("# pack-refs with: peeled fully-peeled sorted ",
+                first.name() + " refs/tags/1.0");
+        Files.createDirectories(gitDir.resolve("refs").resolve("tags"));
+        Files.write(gitDir.resolve("refs").resolve("tags").resolve("1.0"),
+                (second.name() + "\n").getBytes(StandardCharsets.UTF_8));
+
+        TagIndex index = build();
+
+        assertEquals(1, index.size());
+        assertEquals("refs/tags/1.0", index.findTag(second));
+        assertNull(index.findTag(first));
+    }
+
+    @Test
+    void that_object_id_int_map_grows() {
+        ObjectIdIntMap map = new ObjectIdIntMap(1);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(map.putIfAbsent(id(i), i));
+        }
+        assertFalse(map.putIfAbsent(id(7), 99));
+        map.put(id(8), 88);
+
+        assertEquals(1000, map.size());
+        assertEquals(7, map.get(id(7)));
+        assertEquals(88, map.get(id(8)));
+        assertEquals(999, map.get(id(999)));
+        assertEquals(ObjectIdIntMap.MISSING, map.get(id(1000)));
+    }
+
+    private static ObjectId id(int value) {
+        return ObjectId.fromString(String.format("%08x%032x", value * 2654435761L & 0xFFFFFFFFL, value));
+    }
+}
@@ -0,0 +1,139 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeCommand;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TagSelectionTest {
+
+    @TempDir
+    Path workDir;
+
+    private TestHelper.GitFixture fixture;
+
+    private Git git;
+
+    @BeforeEach
+    void prepare() throws Exception {
+        fixture = TestHelper.initRepository(workDir);
+        git = fixture.getGit();
+    }
+
+    /*
+     * 1.4.0 - c2 - 2.0.0 - c4 ------- merge - HEAD
+     *     \                \         /
+     *      \                3.0.0   /   (unmerged)
+     *       \----------------- 1.4.2    (newest before the merge)
+     */
+    private void createMaintenanceHistory() throws Exception {
+        String main = git.getRepository().getBranch();
+        RevCommit first = fixture.commit("main.txt", "first");
+        fixture.tag("1.4.0", first);
+        fixture.commit("main.txt", "second");
+        fixture.tag("2.0.0", fixture.commit("main.txt", "third"));
+        RevCommit fourth = fixture.commit("main.txt", "fourth");
+
+        git.checkout().setCreateBranch(true).setName("next").setStartPoint(fourth).call();
+        fixture.tag("3.0.0", fixture.commit("next.txt", "next"));
+
+        git.checkout().setCreateBranch(true).setName("maintenance").setStartPoint(first).call();
+        RevCommit hotfix = fixture.commit("maintenance.txt", "hotfix");
+        fixture.tag("1.4.2", hotfix);
+
+        git.checkout().setName(main).call();
+        git.merge().include(hotfix).setCommit(false).setFastForward(MergeCommand.FastForwardMode.NO_FF).call();
+        fixture.commit("main.txt", "merge");
+        fixture.commit("main.txt", "head");
+    }
+
+    private GitDetails resolve(TagSelection selection, CommitCountMode mode) {
+        return new GitTagVersionHelper(null, workDir).setTagSelection(selection)
+                                                     .setCommitCountMode(mode)
+                                                     .setMissingTagFallback("0.0")
+                                                     .getLatestTag().get();
+    }
+
+    private void assertResolved(String tag, int commitCount, TagSelection selection, CommitCountMode mode) {
+        GitDetails details = resolve(selection, mode);
+        assertEquals(tag, details.getTag(), selection + " " + mode);
+        assertEquals(commitCount, details.getCommitCount(), selection + " " + mode);
+    }
+
+    private void assertAllSelections() {
+        assertResolved("1.4.2", 2, TagSelection.NEAREST_TAG, CommitCountMode.ALL_PARENTS);
+        assertResolved("2.0.0", 4, TagSelection.HIGHEST_VERSION, CommitCountMode.ALL_PARENTS);
+        assertResolved("2.0.0", 3, TagSelection.NEAREST_TAG, CommitCountMode.FIRST_PARENT);
+        assertResolved("2.0.0", 3, TagSelection.HIGHEST_VERSION, CommitCountMode.FIRST_PARENT);
+    }
+
+    @Test
+    void that_highest_reachable_version_wins_over_nearest_tag() throws Exception {
+        createMaintenanceHistory();
+
+        assertAllSelections();
+    }
+
+    @Test
+    void that_commit_graph_selects_the_same_tags() throws Exception {
+        createMaintenanceHistory();
+        TestHelper.assumeCommitGraph(workDir);
+
+        assertAllSelections();
+
+        CommitGraph graph = CommitGraph.open(workDir.resolve(".git"));
+        TagIndex index = new GitTagCollector(git.getRepository(), GitTagCollector.DEFAULT_VERSIONABLE_TAG_REGEX, null)
+                .collectIndex();
+        Map<Integer, String> tags = new HashMap<>();
+        Map<Integer, VersionTag> versions = new HashMap<>();
+        index.forEach((id, tag) -> {
+            tags.put(graph.findPosition(id), tag);
+            versions.put(graph.findPosition(id), index.findVersion(id));
+        });
+        int head = graph.findPosition(git.getRepository().resolve("HEAD"));
+        assertTrue(graph.getGeneration(head) > 0);
+
+        CommitGraphDistanceEngine.Distance highest = new CommitGraphDistanceEngine(graph)
+                .findHighestTag(head, tags, versions);
+        assertEquals("refs/tags/2.0.0", highest.getTag());
+        assertEquals(4, highest.getCommitCount());
+
+        CommitGraphDistanceEngine.Distance limited = new CommitGraphDistanceEngine(graph, new WalkBudget(3, 0))
+                .findHighestTag(head, tags, versions);
+        assertTrue(limited.isTruncated());
+        assertNull(limited.getTag());
+    }
+
+    @Test
+    void that_lower_tag_on_head_does_not_hide_higher_version() throws Exception {
+        createMaintenanceHistory();
+        fixture.tag("1.4.3", git.getRepository().parseCommit(git.getRepository().resolve("HEAD")));
+
+        assertResolved("1.4.3", 0, TagSelection.NEAREST_TAG, CommitCountMode.ALL_PARENTS);
+        assertResolved("2.0.0", 4, TagSelection.HIGHEST_VERSION, CommitCountMode.ALL_PARENTS);
+
+        TestHelper.assumeCommitGraph(workDir);
+        assertResolved("2.0.0", 4, TagSelection.HIGHEST_VERSION, CommitCountMode.ALL_PARENTS);
+    }
+
+    @Test
+    void that_highest_version_on_head_needs_no_count() throws Exception {
+        createMaintenanceHistory();
+        fixture.tag("2.1.0", git.getRepository().parseCommit(git.getRepository().resolve("HEAD")));
+        assertResolved("2.1.0", 0, TagSelection.HIGHEST_VERSION, CommitCountMode.ALL_PARENTS);
+
+        TestHelper.assumeCommitGraph(workDir);
+        assertResolved("2.1.0", 0, TagSelection.HIGHEST_VERSION, CommitCountMode.ALL_PARENTS);
+        assertResolved("2.1.0", 0, TagSelection.HIGHEST_VERSION, CommitCountMode.FIRST_PARENT);
+    }
+}
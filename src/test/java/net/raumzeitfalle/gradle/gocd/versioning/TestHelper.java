@@ -5,9 +5,20 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
 import org.junit.platform.commons.JUnitException;
 
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
 public class TestHelper {
     public static void createDirectoryTree(Path workingDir) {
         if (!Files.exists(workingDir)) {
@@ -40,4 +51,98 @@ public class TestHelper {
             throw new JUnitException("Failed to prepare file for test.", e);
         }
     }
+
+    /**
+     * Creates a repository whose commits get increasing commit times, starting at 2020-09-13T12:26:40Z (UTC).
+     */
+    public static GitFixture initRepository(Path workTree) throws Exception {
+        return initRepository(workTree, TimeZone.getTimeZone("UTC"));
+    }
+
+    public static GitFixture initRepository(Path workTree, TimeZone timeZone) throws Exception {
+        Git git = Git.init().setDirectory(workTree.toFile()).setBare(false).call();
+        return new GitFixture(git, workTree, timeZone);
+    }
+
+    /**
+     * Writes the commit-graph file with the git executable, tests depending on it are skipped
+     * when git is not installed or does not support the given options.
+     *
+     * @param options additional options of {@code git commit-graph write}, e.g. {@code --changed-paths}
+     */
+    public static void assumeCommitGraph(Path workTree, String... options) {
+        assumeTrue(writeCommitGraph(workTree, options),
+                   "git executable with commit-graph support required " + Arrays.toString(options));
+    }
+
+    private static boolean writeCommitGraph(Path workTree, String... options) {
+        List<String> command = new ArrayList<>(Arrays.asList("git", "commit-graph", "write", "--reachable"));
+        command.addAll(Arrays.asList(options));
+        try {
+            Process process = new ProcessBuilder(command)
+                    .directory(workTree.toFile())
+                    .redirectErrorStream(true)
+                    .start();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                return false;
+            }
+            return process.exitValue() == 0;
+        } catch (IOException | InterruptedException error) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates commits, tags and branches in a test repository.
+     */
+    public static final class GitFixture {
+        private final Git git;
+        private final Path workTree;
+        private final TimeZone timeZone;
+        private int commitTime = 1_600_000_000;
+
+        private GitFixture(Git git, Path workTree, TimeZone timeZone) {
+            this.git = git;
+            this.workTree = workTree;
+            this.timeZone = timeZone;
+        }
+
+        public Git getGit() {
+            return git;
+        }
+
+        public RevCommit commit(String message) throws Exception {
+            return commit("a.txt", message);
+        }
+
+        /**
+         * Appends the message to the file and commits it, one second after the previous commit.
+         */
+        public RevCommit commit(String file, String message) throws Exception {
+            Path path = workTree.resolve(file);
+            Files.createDirectories(path.getParent());
+            Files.write(path, message.getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            git.add().addFilepattern(file).call();
+            PersonIdent ident = new PersonIdent("Junit", "test@domain.xyz",
+                                                new Date(1000L * commitTime++), timeZone);
+            return git.commit().setSign(false)
+                      .setAuthor(ident)
+                      .setCommitter(ident)
+                      .setMessage(message)
+                      .call();
+        }
+
+        /**
+         * Creates an annotated tag with the name as message.
+         */
+        public void tag(String name, RevCommit commit) throws Exception {
+            git.tag().setName(name).setObjectId(commit).setMessage(name).call();
+        }
+
+        public void branch(String name, RevCommit start) throws Exception {
+            git.checkout().setCreateBranch(true).setName(name).setStartPoint(start).call();
+        }
+    }
 }
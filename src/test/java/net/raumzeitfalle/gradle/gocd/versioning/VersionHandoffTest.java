@@ -0,0 +1,85 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VersionHandoffTest {
+
+    private static final String SETTINGS = "regex\n0.0\noptions";
+
+    @TempDir
+    Path handoffDir;
+
+    private GitDetails details;
+
+    @BeforeEach
+    void prepare() {
+        details = new GitDetails("1.4", 7, "f6429d59badd6bb5e85818c3d8ec804088f55ba6",
+                                 ZonedDateTime.of(2020, 9, 13, 12, 26, 40, 0, ZoneOffset.UTC));
+    }
+
+    private VersionHandoff handoff(String projectPath, String settings, String pipelineCounter) {
+        return VersionHandoff.of(handoffDir, projectPath, settings, "my-pipeline", pipelineCounter, null);
+    }
+
+    @Test
+    void that_handed_off_details_are_loaded_by_later_stages() {
+        handoff(":app", SETTINGS, "42").store(details);
+
+        GitDetails loaded = handoff(":app", SETTINGS, "42").load();
+
+        assertAll(
+                () -> assertNotNull(loaded),
+                () -> assertEquals("1.4", loaded.getTag()),
+                () -> assertEquals(7, loaded.getCommitCount()),
+                () -> assertEquals(details.getCommitName(), loaded.getCommitName()),
+                () -> assertEquals(details.getCommitDateTime(), loaded.getCommitDateTime()),
+                () -> assertFalse(loaded.isTruncated()),
+                () -> assertEquals("1.4.7", loaded.map(true))
+        );
+    }
+
+    @Test
+    void that_descriptor_is_only_valid_for_its_pipeline_run_and_settings() {
+        handoff(":app", SETTINGS, "42").store(details);
+
+        assertNull(handoff(":app", SETTINGS, "43").load());
+        assertNull(handoff(":lib", SETTINGS, "42").load());
+        assertNull(handoff(":app", "other settings", "42").load());
+    }
+
+    @Test
+    void that_edited_descriptor_is_rejected() throws Exception {
+        VersionHandoff handoff = handoff(":app", SETTINGS, "42");
+        handoff.store(details);
+
+        List<String> lines = Files.readAllLines(handoff.getFile(), StandardCharsets.ISO_8859_1).stream()
+                                  .map(line -> line.equals("commitCount=7") ? "commitCount=8" : line)
+                                  .collect(Collectors.toList());
+        assertTrue(lines.contains("commitCount=8"));
+        Files.write(handoff.getFile(), lines, StandardCharsets.ISO_8859_1);
+
+        assertNull(handoff.load());
+    }
+
+    @Test
+    void that_handoff_requires_directory_and_pipeline_run() {
+        assertNull(VersionHandoff.of(null, ":app", SETTINGS, "my-pipeline", "42", null));
+        assertNull(VersionHandoff.of(handoffDir, ":app", SETTINGS, null, "42", null));
+        assertNull(VersionHandoff.of(handoffDir, ":app", SETTINGS, "my-pipeline", " ", null));
+        assertNull(handoff(":app", SETTINGS, "42").load());
+    }
+}
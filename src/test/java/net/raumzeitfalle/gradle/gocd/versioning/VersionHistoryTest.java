@@ -0,0 +1,152 @@
+package net.raumzeitfalle.gradle.gocd.versioning;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeCommand;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.raumzeitfalle.gradle.gocd.versioning.GitTagVersionHelper.GitDetails;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VersionHistoryTest {
+
+    @TempDir
+    Path workDir;
+
+    private TestHelper.GitFixture fixture;
+
+    private Git git;
+
+    @BeforeEach
+    void prepare() throws Exception {
+        fixture = TestHelper.initRepository(workDir);
+        git = fixture.getGit();
+    }
+
+    /*
+     * root - 20200901 - c3 - merge - 20201001 - c6 - HEAD
+     *                 \     /
+     *                  side (tagged 20200915, not on the first parent chain)
+     */
+    private void createHistory() throws Exception {
+        String main = git.getRepository().getBranch();
+        fixture.commit("main.txt", "root");
+        RevCommit tagged = fixture.commit("main.txt", "second");
+        fixture.tag("20200901", tagged);
+        git.checkout().setCreateBranch(true).setName("side").setStartPoint(tagged).call();
+        RevCommit side = fixture.commit("side.txt", "side");
+        fixture.tag("20200915", side);
+        git.checkout().setName(main).call();
+        fixture.commit("main.txt", "third");
+        git.merge().include(side).setCommit(false).setFastForward(MergeCommand.FastForwardMode.NO_FF).call();
+        fixture.commit("main.txt", "merge");
+        fixture.tag("20201001", fixture.commit("main.txt", "fifth"));
+        fixture.commit("main.txt", "sixth");
+        fixture.commit("main.txt", "head");
+    }
+
+    private List<GitDetails> history(CommitCountMode mode, String from) throws IOException {
+        List<GitDetails> rows = new ArrayList<>();
+        int count = new GitTagVersionHelper(null, workDir).setCommitCountMode(mode)
+                                                          .setMissingTagFallback("0.0")
+                                                          .walkVersionHistory("HEAD", from, rows::add);
+        assertEquals(rows.size(), count);
+        return rows;
+    }
+
+    private static List<String> versions(List<GitDetails> rows) {
+        List<String> versions = new ArrayList<>();
+        rows.forEach(row -> versions.add(row.map(true)));
+        return versions;
+    }
+
+    private void assertHistory() throws IOException {
+        List<GitDetails> firstParent = history(CommitCountMode.FIRST_PARENT, null);
+        assertEquals(Arrays.asList("20201001.2", "20201001.1", "20201001.0", "20200901.2",
+                                             "20200901.1", "20200901.0", "0.0.0"),
+                     versions(firstParent));
+        assertEquals(git.getRepository().resolve("HEAD").getName(), firstParent.get(0).getCommitName());
+        assertEquals("2020-09-13T12:26:47Z", firstParent.get(0).getCommitDateTime().toInstant().toString());
+
+        List<GitDetails> allParents = history(CommitCountMode.ALL_PARENTS, null);
+        assertEquals(Arrays.asList("20201001.2", "20201001.1", "20201001.0", "20200915.2",
+                                             "20200901.1", "20200901.0", "0.0.0"),
+                     versions(allParents));
+
+        List<GitDetails> range = history(CommitCountMode.FIRST_PARENT, "20201001");
+        assertEquals(3, range.size());
+        assertEquals("20201001.0", range.get(2).map(true));
+    }
+
+    @Test
+    void that_every_first_parent_commit_gets_a_row() throws Exception {
+        createHistory();
+
+        assertHistory();
+        List<GitDetails> rows = new ArrayList<>();
+        assertEquals(-1, new GitTagVersionHelper(null, workDir).walkVersionHistory("HEAD", "unknown", rows::add));
+        assertTrue(rows.isEmpty());
+    }
+
+    @Test
+    void that_commit_graph_yields_the_same_history() throws Exception {
+        createHistory();
+        TestHelper.assumeCommitGraph(workDir);
+
+        assertHistory();
+    }
+
+    @Test
+    void that_history_without_tags_counts_to_the_root() throws Exception {
+        fixture.commit("main.txt", "root");
+        fixture.commit("main.txt", "second");
+        fixture.commit("main.txt", "head");
+
+        assertEquals(Arrays.asList("0.0.2", "0.0.1", "0.0.0"),
+                     versions(history(CommitCountMode.FIRST_PARENT, null)));
+    }
+
+    @Test
+    void that_rows_are_written_as_csv_and_json() throws Exception {
+        createHistory();
+        GitTagVersionHelper helper = new GitTagVersionHelper(null, workDir)
+                .setCommitCountMode(CommitCountMode.FIRST_PARENT);
+
+        StringWriter csv = new StringWriter();
+        try (VersionHistoryWriter writer = VersionHistoryWriter.create("CSV", csv, true)) {
+            helper.walkVersionHistory("HEAD", "20201001", writer);
+        }
+        String[] lines = csv.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertEquals("commit,date,tag,distance,version,jpackageVersion", lines[0]);
+        assertTrue(lines[1].endsWith(",2020-09-13T12:26:47Z,20201001,2,20201001.2,20.40.2"), lines[1]);
+
+        StringWriter json = new StringWriter();
+        try (VersionHistoryWriter writer = VersionHistoryWriter.create("json", json, false)) {
+            helper.walkVersionHistory("HEAD", "20201001", writer);
+        }
+        assertTrue(json.toString().startsWith("[\n  {\"commit\": \""), json.toString());
+        assertTrue(json.toString().contains("\"tag\": \"20201001\", \"distance\": 0, \"version\": \"20201001\", "
+                                            + "\"jpackageVersion\": null}\n]\n"), json.toString());
+
+        assertNull(VersionHistoryWriter.create("xml", json, true));
+    }
+
+    @Test
+    void that_jpackage_version_is_built_quietly() {
+        assertEquals("20.40.2", JPackageVersionBuilder.compatibleVersionOf("20201001.2"));
+        assertNull(JPackageVersionBuilder.compatibleVersionOf("20201001.256"));
+        assertNull(JPackageVersionBuilder.compatibleVersionOf("20201301.2"));
+        assertNull(JPackageVersionBuilder.compatibleVersionOf("1.4.2"));
+    }
+}